@@ -46,7 +46,8 @@ public interface QueryService {
 	public List<IngestReceipt> query(QueryExpression queryExpression) throws QueryServiceException;
 	
 	/**
-	 * Returns the results of the given query such that: [startIndex, endIndex)
+	 * Returns the results of the given query such that: [startIndex, endIndex), ordered
+	 * newest transaction date first so that results of several Catalogs can be merged
 	 * @param queryExpression The query for which results will be returned
 	 * @param startIndex The start index of subset of results to be returned
 	 * @param endIndex The end index of the subset of results to be returned
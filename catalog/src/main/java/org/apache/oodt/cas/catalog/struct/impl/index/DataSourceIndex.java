@@ -418,14 +418,14 @@ public class DataSourceIndex implements Index, IngestService, QueryService {
 		try {
 			conn = this.dataSource.getConnection();
 			stmt = conn.createStatement();
-			String sqlQuery = "SELECT DISTINCT transaction_id,transaction_date FROM transactions WHERE transaction_id IN (" + this.getSqlQuery(queryExpression) + ")";
+			String sqlQuery = "SELECT DISTINCT transaction_id,transaction_date FROM transactions WHERE transaction_id IN (" + this.getSqlQuery(queryExpression) + ") ORDER BY transaction_date DESC";
 	        LOG.log(Level.INFO, "Performing Query: " + sqlQuery);
 			rs = stmt.executeQuery(sqlQuery);	
 
 			List<IngestReceipt> receipts = new Vector<IngestReceipt>();
 			int index = 0;
 			while (startIndex > index && rs.next()) index++;
-			while (rs.next() && index++ <= endIndex) 
+			while (index++ < endIndex && rs.next()) 
 				receipts.add(new IngestReceipt(this.getTransactionIdFactory().createTransactionId(rs.getString("transaction_id")), DateUtils.toCalendar(rs.getString("transaction_date"), DateUtils.FormatType.LOCAL_FORMAT).getTime()));
 			return receipts;
 		}catch (Exception e) {
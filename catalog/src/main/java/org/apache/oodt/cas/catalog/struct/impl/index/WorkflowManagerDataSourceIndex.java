@@ -196,14 +196,14 @@ public class WorkflowManagerDataSourceIndex implements Index, QueryService {
 		try {
 			conn = this.dataSource.getConnection();
 			stmt = conn.createStatement();
-			String sqlQuery = "SELECT workflow_instance_id,start_date_time FROM workflow_instances WHERE workflow_instance_id IN (" + this.getSqlQuery(queryExpression) + ")";
+			String sqlQuery = "SELECT workflow_instance_id,start_date_time FROM workflow_instances WHERE workflow_instance_id IN (" + this.getSqlQuery(queryExpression) + ") ORDER BY start_date_time DESC";
 	        LOG.log(Level.INFO, "Performing Query: " + sqlQuery);
 			rs = stmt.executeQuery(sqlQuery);
 			
 			List<IngestReceipt> receipts = new Vector<IngestReceipt>();
 			int index = 0;
 			while (startIndex > index && rs.next()) index++;
-			while (rs.next() && index++ <= endIndex) 
+			while (index++ < endIndex && rs.next()) 
 				receipts.add(new IngestReceipt(new LongTransactionIdFactory().createTransactionId(rs.getString("workflow_instance_id")), DateConvert.isoParse(rs.getString("start_date_time"))));
 			return receipts;
 		}catch (Exception e) {
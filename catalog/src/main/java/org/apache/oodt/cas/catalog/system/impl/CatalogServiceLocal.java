@@ -21,15 +21,28 @@ import java.io.File;
 import java.net.URL;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.Vector;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -69,6 +82,17 @@ import org.apache.oodt.cas.metadata.Metadata;
  * <p>
  * A Calatog Service that manages Metadata via one or more underlying Catalogs
  * <p>
+ * Catalogs are queried concurrently, on up to
+ * <code>org.apache.oodt.cas.catalog.queryThreads</code> (default 10) threads,
+ * and a catalog that hasn't answered within
+ * <code>org.apache.oodt.cas.catalog.catalogQueryTimeout.millis</code> (default
+ * 0, no limit) counts as a failed catalog.
+ * <p>
+ * When cross catalog intersecting queries are disabled, a page is merged, newest first, from
+ * the paged results of each Catalog, which are expected to be newest first too.  The cursors of
+ * the last <code>org.apache.oodt.cas.catalog.pageCursors</code> (default 20) queries paged are
+ * kept, so that asking for the next page carries on the merge instead of starting over.
+ * <p>
  */
 public class CatalogServiceLocal implements CatalogService {
 	
@@ -87,6 +111,9 @@ public class CatalogServiceLocal implements CatalogService {
 	protected boolean simplifyQueries;
 	protected boolean disableIntersectingCrossCatalogQueries;
 	protected int crossCatalogResultSortingThreshold;
+	protected ThreadPoolExecutor queryExecutor;
+	protected long catalogQueryTimeout;
+	protected Map<String, PageCursor> pageCursors;
 	
 	public CatalogServiceLocal(CatalogRepository catalogRepository, IngestMapper ingestMapper, File pluginStorageDir, TransactionIdFactory transactionIdFactory, boolean restrictQueryPermissions, boolean restrictIngestPermissions, boolean oneCatalogFailsAllFail, boolean simplifyQueries, boolean disableIntersectingCrossCatalogQueries, int crossCatalogResultSortingThreshold) throws InstantiationException {
 		try {
@@ -103,6 +130,23 @@ public class CatalogServiceLocal implements CatalogService {
 			this.simplifyQueries = simplifyQueries;
 			this.disableIntersectingCrossCatalogQueries = disableIntersectingCrossCatalogQueries;
 			this.crossCatalogResultSortingThreshold = crossCatalogResultSortingThreshold;
+			int queryThreads = Integer.getInteger("org.apache.oodt.cas.catalog.queryThreads", 10);
+			this.queryExecutor = new ThreadPoolExecutor(queryThreads, queryThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "CatalogServiceLocal query");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			this.queryExecutor.allowCoreThreadTimeOut(true);
+			this.setCatalogQueryTimeout(Long.getLong("org.apache.oodt.cas.catalog.catalogQueryTimeout.millis", 0));
+			final int maxPageCursors = Integer.getInteger("org.apache.oodt.cas.catalog.pageCursors", 20);
+			this.pageCursors = new LinkedHashMap<String, PageCursor>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				protected boolean removeEldestEntry(Map.Entry<String, PageCursor> eldest) {
+					return this.size() > maxPageCursors;
+				}
+			};
 		}catch (Exception e) {
 			e.printStackTrace();
 			throw new InstantiationException(e.getMessage());
@@ -155,6 +199,29 @@ public class CatalogServiceLocal implements CatalogService {
 	public void shutdown() throws CatalogServiceException {
 		this.catalogsLock.writeLock().lock();
 		this.ingestMapperLock.writeLock().lock();
+		this.queryExecutor.shutdownNow();
+	}
+	
+	/**
+	 * Sets the number of threads Catalogs are queried on
+	 * @param queryThreads The most Catalog queries to run at once
+	 */
+	public void setQueryThreads(int queryThreads) {
+		if (queryThreads > this.queryExecutor.getMaximumPoolSize()) {
+			this.queryExecutor.setMaximumPoolSize(queryThreads);
+			this.queryExecutor.setCorePoolSize(queryThreads);
+		}else {
+			this.queryExecutor.setCorePoolSize(queryThreads);
+			this.queryExecutor.setMaximumPoolSize(queryThreads);
+		}
+	}
+	
+	/**
+	 * Sets how long each Catalog has to answer a query
+	 * @param catalogQueryTimeout Timeout in milliseconds, 0 for none
+	 */
+	public void setCatalogQueryTimeout(long catalogQueryTimeout) {
+		this.catalogQueryTimeout = catalogQueryTimeout;
 	}
 	
 	/**
@@ -662,9 +729,7 @@ public class CatalogServiceLocal implements CatalogService {
 	}
 	
 	public Page getNextPage(Page page) throws CatalogServiceException {
-		QueryPager queryPager = new QueryPager(this._query(page.getQueryExpression(), page.getRestrictToCatalogIds()));
-		queryPager.setPageInfo(new PageInfo(page.getPageSize(), page.getPageNum() + 1));
-		return this.getPage(page.getQueryExpression(), page.getRestrictToCatalogIds(), queryPager);
+		return this.getPage(new PageInfo(page.getPageSize(), page.getPageNum() + 1), page.getQueryExpression(), page.getRestrictToCatalogIds());
 	}
 	
 	public Page getPage(PageInfo pageInfo, QueryExpression queryExpression) throws CatalogServiceException {
@@ -676,56 +741,46 @@ public class CatalogServiceLocal implements CatalogService {
 			try {
 				int totalResults = 0;
 				LinkedHashMap<String, Integer> catalogToSizeOfMap = new LinkedHashMap<String, Integer>();
+				List<CatalogCall<Integer>> sizeOfCalls = new Vector<CatalogCall<Integer>>();
 				for (String catalogId : catalogIds) {
 					Catalog catalog = this.getCatalog(catalogId);
-					QueryExpression qe = this.reduceToUnderstoodExpressions(catalog, queryExpression);
-					if (qe != null) {
-						int catalogResultSize = catalog.sizeOf(qe);
-						totalResults += catalogResultSize;
-						catalogToSizeOfMap.put(catalogId, catalogResultSize);
+					if (catalog != null)
+						sizeOfCalls.add(new CatalogSizeOf(catalog, queryExpression));
+				}
+				List<Integer> sizes = this.callCatalogs(sizeOfCalls);
+				for (int i = 0; i < sizeOfCalls.size(); i++) {
+					if (sizes.get(i) != null) {
+						totalResults += sizes.get(i);
+						catalogToSizeOfMap.put(sizeOfCalls.get(i).catalog.getId(), sizes.get(i));
 					}
 				}
 				
 				LOG.log(Level.INFO, "Routing query to catalogs as non-cross catalog intersecting queries . . .");
-				if (totalResults <= this.crossCatalogResultSortingThreshold) {
-					List<CatalogReceipt> catalogReceipts = new Vector<CatalogReceipt>();
-					for (String catalogId : catalogToSizeOfMap.keySet()) {
-						Catalog catalog = this.getCatalog(catalogId);
-						QueryExpression qe = this.reduceToUnderstoodExpressions(catalog, queryExpression);
-						if (qe != null)
-							catalogReceipts.addAll(catalog.query(qe));
-					}
-					List<TransactionReceipt> transactionReceipts = this.getPossiblyUnindexedTransactionReceipts(catalogReceipts);
-					LOG.log(Level.INFO, "Sorting Query Results . . . ");
-					Collections.sort(transactionReceipts, new Comparator<TransactionReceipt>() {
-						public int compare(TransactionReceipt o1,
-								TransactionReceipt o2) {
-							return o2.getTransactionDate().compareTo(o1.getTransactionDate());
-						}
-					});
-					QueryPager queryPager = new QueryPager(transactionReceipts);
-					queryPager.setPageInfo(pageInfo);
-					return this.getPage(queryExpression, catalogIds, queryPager);
-				}else {
-					int currentIndex = 0;
-					int desiredStartingIndex = pageInfo.getPageNum() * pageInfo.getPageSize();
-					List<CatalogReceipt> pageOfReceipts = new Vector<CatalogReceipt>();
-					for (Entry<String, Integer> entry : catalogToSizeOfMap.entrySet()) {
-						if (desiredStartingIndex - currentIndex <= entry.getValue()) {
-							Catalog catalog = this.getCatalog(entry.getKey());
-							QueryExpression qe = this.reduceToUnderstoodExpressions(catalog, queryExpression);
-							if (qe != null) {
-								List<CatalogReceipt> receipts = catalog.query(qe, desiredStartingIndex - currentIndex, Math.min((desiredStartingIndex - currentIndex) + pageInfo.getPageSize(), entry.getValue()));
-								pageOfReceipts.addAll(receipts);
-								if (pageOfReceipts.size() >= pageInfo.getPageSize())
-									break;
-							}
-						}else {
-							currentIndex += entry.getValue();
-						}
+				ProcessedPageInfo processedPageInfo = new ProcessedPageInfo(pageInfo.getPageSize(), pageInfo.getPageNum(), totalResults);
+				int startIndex = Math.max(processedPageInfo.getPageNum() - 1, 0) * processedPageInfo.getPageSize();
+				String cursorKey = queryExpression + " " + new TreeMap<String, Integer>(catalogToSizeOfMap);
+				PageCursor pageCursor;
+				synchronized (this.pageCursors) {
+					pageCursor = this.pageCursors.remove(cursorKey);
+				}
+				if (pageCursor == null || pageCursor.getPosition() > startIndex)
+					pageCursor = new PageCursor(queryExpression, catalogToSizeOfMap);
+				else
+					LOG.log(Level.INFO, "Resuming merge of catalog results at " + pageCursor.getPosition());
+				pageCursor.skip(startIndex - pageCursor.getPosition());
+				List<TransactionReceipt> transactionReceipts = pageCursor.next(processedPageInfo.getPageSize());
+				if (pageCursor.hasNext()) {
+					synchronized (this.pageCursors) {
+						this.pageCursors.put(cursorKey, pageCursor);
 					}
-					return new Page(new ProcessedPageInfo(pageInfo.getPageSize(), pageInfo.getPageNum(), totalResults), queryExpression, catalogIds, this.indexReceipts(this.getPossiblyUnindexedTransactionReceipts(pageOfReceipts)));
 				}
+				Collections.sort(transactionReceipts, new Comparator<TransactionReceipt>() {
+					public int compare(TransactionReceipt o1,
+							TransactionReceipt o2) {
+						return o2.getTransactionDate().compareTo(o1.getTransactionDate());
+					}
+				});
+				return new Page(processedPageInfo, queryExpression, catalogIds, this.indexReceipts(transactionReceipts));
 			}catch (Exception e) {
 				throw new CatalogServiceException(e.getMessage(), e);
 			}
@@ -771,21 +826,15 @@ public class CatalogServiceLocal implements CatalogService {
 			QueryResult queryResult = this.queryRecur(queryExpression, catalogIds);
 			List<CatalogReceipt> catalogReceipts = new Vector<CatalogReceipt>();
 			if (queryResult.getCatalogReceipts() == null && queryResult.getInterestedCatalogs() != null) {
-				for (Catalog catalog : this.getCurrentCatalogList()) {
-					try {
-						if (queryResult.getInterestedCatalogs().contains(catalog.getId())) {
-							LOG.log(Level.INFO, "Restricting query to understood terms for Catalog '" + catalog + "'");
-							QueryExpression reducedExpression = this.reduceToUnderstoodExpressions(catalog, queryExpression);
-							LOG.log(Level.INFO, "Querying Catalog '" + catalog + "' with query '" + reducedExpression + "'");
-							catalogReceipts.addAll(catalog.query(reducedExpression));
-						}
-					}catch (Exception e) {
-						if (this.oneCatalogFailsAllFail)
-							throw new CatalogServiceException("Failed to query catalog '" + catalog.getId() + "' for query '" + queryExpression + "' : " + e.getMessage(), e);
-						else
-							LOG.log(Level.WARNING, "Failed to query catalog '" + catalog.getId() + "' for query '" + queryExpression + "' : " + e.getMessage(), e);
-					}	
-				}
+				List<CatalogCall<List<CatalogReceipt>>> calls = new Vector<CatalogCall<List<CatalogReceipt>>>();
+				for (Catalog catalog : this.getCurrentCatalogList())
+					if (queryResult.getInterestedCatalogs().contains(catalog.getId()))
+						calls.add(new CatalogQuery(catalog, queryExpression));
+				for (List<CatalogReceipt> receipts : this.callCatalogs(calls))
+					if (receipts != null)
+						catalogReceipts.addAll(receipts);
+			}else if (queryResult.getCatalogReceipts() != null) {
+				catalogReceipts.addAll(queryResult.getCatalogReceipts());
 			}
 			List<TransactionReceipt> transactionReceipts = this.getPossiblyUnindexedTransactionReceipts(catalogReceipts);
 			LOG.log(Level.INFO, "Sorting Query Results . . . ");
@@ -1043,27 +1092,24 @@ public class CatalogServiceLocal implements CatalogService {
 			// if (QueryLogicalGroup's operator is AND and is unbalanced or a child contains query results)
 			if ((((QueryLogicalGroup) queryExpression).getOperator().equals(QueryLogicalGroup.Operator.AND) && containsUnbalancedCatalogInterest(childrenQueryResults)) || containsTranactionReceipts(childrenQueryResults)) {
 				
-				for (int i = 0; i < childrenQueryResults.size(); i++) {
-					QueryResult childQueryResult = childrenQueryResults.get(i);
-					
-					// if childQueryResult has not been used, use it
+				// query the interested catalogs of every child not yet queried, all at once
+				List<CatalogCall<List<CatalogReceipt>>> calls = new Vector<CatalogCall<List<CatalogReceipt>>>();
+				List<QueryResult> callQueryResults = new Vector<QueryResult>();
+				for (QueryResult childQueryResult : childrenQueryResults) {
 					if (childQueryResult.getCatalogReceipts() == null) { 
-						List<CatalogReceipt> catalogReceipts = new Vector<CatalogReceipt>();
+						childQueryResult.setCatalogReceipts(new Vector<CatalogReceipt>());
 						for (Catalog catalog : this.getCurrentCatalogList()) {
-							try {
-								if (childQueryResult.getInterestedCatalogs().contains(catalog.getId())) 
-									catalogReceipts.addAll(catalog.query(this.reduceToUnderstoodExpressions(catalog, childQueryResult.getQueryExpression())));
-							}catch (Exception e) {
-								if (this.oneCatalogFailsAllFail)
-									throw new CatalogServiceException("Failed to query catalog '" + catalog.getId() + "' for query '" + queryExpression + "' : " + e.getMessage(), e);
-								else
-									LOG.log(Level.WARNING, "Failed to query catalog '" + catalog.getId() + "' for query '" + queryExpression + "' : " + e.getMessage(), e);
+							if (childQueryResult.getInterestedCatalogs().contains(catalog.getId())) {
+								calls.add(new CatalogQuery(catalog, childQueryResult.getQueryExpression()));
+								callQueryResults.add(childQueryResult);
 							}
 						}
-						childQueryResult.setCatalogReceipts(catalogReceipts);
 					}
-					
 				}
+				List<List<CatalogReceipt>> callReceipts = this.callCatalogs(calls);
+				for (int i = 0; i < calls.size(); i++)
+					if (callReceipts.get(i) != null)
+						callQueryResults.get(i).getCatalogReceipts().addAll(callReceipts.get(i));
 				
 				// get intersection of results
 	   			QueryResult queryResult = new QueryResult(queryExpression);
@@ -1104,23 +1150,85 @@ public class CatalogServiceLocal implements CatalogService {
 		}
 	}
 	
+	/**
+	 * Returns the CatalogReceipts of the first QueryResult whose TransactionIds are in all the
+	 * other QueryResults, hashing the TransactionIds of the other QueryResults smallest first
+	 * so the set of common TransactionIds only shrinks
+	 */
 	protected List<CatalogReceipt> getIntersection(List<QueryResult> queryResults) {
 		List<CatalogReceipt> catalogReceipts = new Vector<CatalogReceipt>();
 		if (queryResults.size() > 0) {
-			catalogReceipts.addAll(queryResults.get(0).getCatalogReceipts());
-			for (int i = 1; i < queryResults.size(); i++) {
-				QueryResult qr = queryResults.get(i);
-TR:				for (CatalogReceipt catalogReceipt : qr.getCatalogReceipts()) {
-					for (CatalogReceipt compCatalogReceipt : catalogReceipts) {
-						if (catalogReceipt.getTransactionId().equals(compCatalogReceipt.getTransactionId()))
-							continue TR;
-					}
-					catalogReceipts.remove(catalogReceipt);
+			List<QueryResult> otherQueryResults = new Vector<QueryResult>(queryResults.subList(1, queryResults.size()));
+			Collections.sort(otherQueryResults, new Comparator<QueryResult>() {
+				public int compare(QueryResult qr1, QueryResult qr2) {
+					return qr1.getCatalogReceipts().size() - qr2.getCatalogReceipts().size();
 				}
+			});
+			Set<TransactionId<?>> commonTransactionIds = null;
+			for (QueryResult qr : otherQueryResults) {
+				Set<TransactionId<?>> transactionIds = new HashSet<TransactionId<?>>();
+				for (CatalogReceipt catalogReceipt : qr.getCatalogReceipts())
+					if (commonTransactionIds == null || commonTransactionIds.contains(catalogReceipt.getTransactionId()))
+						transactionIds.add(catalogReceipt.getTransactionId());
+				commonTransactionIds = transactionIds;
+				if (commonTransactionIds.isEmpty())
+					return catalogReceipts;
 			}
+			for (CatalogReceipt catalogReceipt : queryResults.get(0).getCatalogReceipts())
+				if (commonTransactionIds == null || commonTransactionIds.contains(catalogReceipt.getTransactionId()))
+					catalogReceipts.add(catalogReceipt);
 		}
 		return catalogReceipts;
 	}
+	
+	/**
+	 * Runs the given CatalogCalls on the query threads and waits for them, giving each Catalog
+	 * at most catalogQueryTimeout milliseconds.  A call that fails or times out fails them all if
+	 * oneCatalogFailsAllFail, otherwise it is logged and its result is null
+	 * @param calls The calls to make
+	 * @return The result of each call, in order
+	 * @throws CatalogServiceException If a call fails and oneCatalogFailsAllFail
+	 */
+	protected <T> List<T> callCatalogs(List<? extends CatalogCall<T>> calls) throws CatalogServiceException {
+		List<Future<T>> futures = new Vector<Future<T>>();
+		for (CatalogCall<T> call : calls)
+			futures.add(this.queryExecutor.submit(call));
+		long deadline = System.currentTimeMillis() + this.catalogQueryTimeout;
+		List<T> results = new Vector<T>();
+		try {
+			for (int i = 0; i < calls.size(); i++) {
+				CatalogCall<T> call = calls.get(i);
+				Future<T> future = futures.get(i);
+				try {
+					if (this.catalogQueryTimeout > 0)
+						results.add(future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+					else
+						results.add(future.get());
+				}catch (Exception e) {
+					future.cancel(true);
+					Throwable cause = e;
+					String message = e.getMessage();
+					if (e instanceof ExecutionException) {
+						cause = e.getCause();
+						message = cause.getMessage();
+					}else if (e instanceof TimeoutException) {
+						message = "no answer after " + this.catalogQueryTimeout + " ms";
+					}else if (e instanceof InterruptedException) {
+						Thread.currentThread().interrupt();
+					}
+					if (this.oneCatalogFailsAllFail)
+						throw new CatalogServiceException("Failed to query catalog '" + call.catalog.getId() + "' for query '" + call.queryExpression + "' : " + message, cause);
+					else
+						LOG.log(Level.WARNING, "Failed to query catalog '" + call.catalog.getId() + "' for query '" + call.queryExpression + "' : " + message, cause);
+					results.add(null);
+				}
+			}
+			return results;
+		}finally {
+			for (Future<T> future : futures)
+				future.cancel(true);
+		}
+	}
 
 	protected QueryExpression reduceToUnderstoodExpressions(Catalog catalog, QueryExpression queryExpression) throws CatalogDictionaryException, CatalogException {
 		if (queryExpression instanceof QueryLogicalGroup) {
@@ -1211,6 +1319,276 @@ TR:				for (CatalogReceipt catalogReceipt : qr.getCatalogReceipts()) {
 		return interestedCatalogs;
 	}
 
+	/**
+	 * A call to a Catalog for part of a query
+	 */
+	protected abstract class CatalogCall<T> implements Callable<T> {
+		
+		protected Catalog catalog;
+		protected QueryExpression queryExpression;
+		
+		public CatalogCall(Catalog catalog, QueryExpression queryExpression) {
+			this.catalog = catalog;
+			this.queryExpression = queryExpression;
+		}
+		
+	}
+	
+	/**
+	 * Queries a Catalog with the terms of a query it understands
+	 */
+	protected class CatalogQuery extends CatalogCall<List<CatalogReceipt>> {
+		
+		public CatalogQuery(Catalog catalog, QueryExpression queryExpression) {
+			super(catalog, queryExpression);
+		}
+		
+		public List<CatalogReceipt> call() throws Exception {
+			LOG.log(Level.INFO, "Restricting query to understood terms for Catalog '" + catalog + "'");
+			QueryExpression reducedExpression = reduceToUnderstoodExpressions(catalog, queryExpression);
+			LOG.log(Level.INFO, "Querying Catalog '" + catalog + "' with query '" + reducedExpression + "'");
+			return catalog.query(reducedExpression);
+		}
+		
+	}
+	
+	/**
+	 * Counts the results of a Catalog for the terms of a query it understands, or returns null if
+	 * it understands none of them
+	 */
+	protected class CatalogSizeOf extends CatalogCall<Integer> {
+		
+		public CatalogSizeOf(Catalog catalog, QueryExpression queryExpression) {
+			super(catalog, queryExpression);
+		}
+		
+		public Integer call() throws Exception {
+			QueryExpression reducedExpression = reduceToUnderstoodExpressions(catalog, queryExpression);
+			if (reducedExpression != null)
+				return catalog.sizeOf(reducedExpression);
+			else
+				return null;
+		}
+		
+	}
+	
+	/**
+	 * Queries a Catalog for the results [startIndex, endIndex) of the terms of a query it understands
+	 */
+	protected class CatalogPagedQuery extends CatalogCall<List<CatalogReceipt>> {
+		
+		protected int startIndex;
+		protected int endIndex;
+		
+		public CatalogPagedQuery(Catalog catalog, QueryExpression queryExpression, int startIndex, int endIndex) {
+			super(catalog, queryExpression);
+			this.startIndex = startIndex;
+			this.endIndex = endIndex;
+		}
+		
+		public List<CatalogReceipt> call() throws Exception {
+			QueryExpression reducedExpression = reduceToUnderstoodExpressions(catalog, queryExpression);
+			LOG.log(Level.INFO, "Querying Catalog '" + catalog + "' with query '" + reducedExpression + "' for results [" + startIndex + ", " + endIndex + ")");
+			return catalog.query(reducedExpression, startIndex, endIndex);
+		}
+		
+	}
+	
+	/**
+	 * Merges the newest first results of several Catalogs into one newest first list of
+	 * transactions.  Each Catalog is asked for at most crossCatalogResultSortingThreshold
+	 * results at a time and a heap holds the next unmerged result of each Catalog, so
+	 * only those results are held in memory however many results the Catalogs have.  A
+	 * cursor remembers how far it got so the next page can carry on from there.  Pages
+	 * and positions count transactions, not CatalogReceipts: the receipts of a transaction
+	 * already on the page join it, and those of a transaction returned on an earlier page
+	 * are dropped.  To know which to drop the cursor remembers the transactions it has
+	 * returned, but only until the merge has passed the oldest receipt of each in the
+	 * paged Catalogs, after which none of its receipts can come back.
+	 */
+	protected class PageCursor {
+		
+		protected QueryExpression queryExpression;
+		protected List<CatalogResults> unopened;
+		protected PriorityQueue<CatalogResults> heads;
+		protected int position;
+		protected List<Catalog> pagedCatalogs;
+		protected Map<TransactionId<?>, Date> returned;
+		
+		public PageCursor(QueryExpression queryExpression, Map<String, Integer> catalogToSizeOfMap) throws CatalogServiceException {
+			this.queryExpression = queryExpression;
+			this.returned = new HashMap<TransactionId<?>, Date>();
+			this.pagedCatalogs = new Vector<Catalog>();
+			this.unopened = new Vector<CatalogResults>();
+			for (Map.Entry<String, Integer> entry : new TreeMap<String, Integer>(catalogToSizeOfMap).entrySet()) {
+				Catalog catalog = getCatalog(entry.getKey());
+				if (catalog != null && entry.getValue() > 0) {
+					this.pagedCatalogs.add(catalog);
+					this.unopened.add(new CatalogResults(catalog, entry.getValue(), this.unopened.size()));
+				}
+			}
+			this.heads = new PriorityQueue<CatalogResults>(Math.max(this.unopened.size(), 1), new Comparator<CatalogResults>() {
+				public int compare(CatalogResults o1, CatalogResults o2) {
+					int compare = o2.receipts.getFirst().getTransactionDate().compareTo(o1.receipts.getFirst().getTransactionDate());
+					if (compare == 0)
+						compare = o1.order - o2.order;
+					return compare;
+				}
+			});
+		}
+		
+		public int getPosition() {
+			return this.position;
+		}
+		
+		public boolean hasNext() throws CatalogServiceException {
+			this.open();
+			return !this.heads.isEmpty();
+		}
+		
+		public void skip(int count) throws CatalogServiceException {
+			this.next(count);
+		}
+		
+		public List<TransactionReceipt> next(int count) throws CatalogServiceException {
+			// receipts with no catalog service transaction yet are each a transaction of their own
+			LinkedHashMap<Object, List<CatalogReceipt>> transactions = new LinkedHashMap<Object, List<CatalogReceipt>>();
+			while (this.hasNext()) {
+				CatalogReceipt receipt = this.heads.peek().receipts.getFirst();
+				TransactionId<?> transactionId = getCatalogServiceTransactionId(receipt.getTransactionId(), receipt.getCatalogId());
+				boolean onPage = transactionId != null && transactions.containsKey(transactionId);
+				if (!onPage && transactionId != null && this.returned.containsKey(transactionId)) {
+					this.nextReceipt();
+					continue;
+				}
+				if (!onPage && transactions.size() >= count)
+					break;
+				this.nextReceipt();
+				Object key = transactionId != null ? transactionId : new Object();
+				List<CatalogReceipt> receipts = transactions.get(key);
+				if (receipts == null) {
+					receipts = new Vector<CatalogReceipt>();
+					transactions.put(key, receipts);
+				}
+				receipts.add(receipt);
+			}
+			
+			List<TransactionReceipt> transactionReceipts = new Vector<TransactionReceipt>();
+			for (Map.Entry<Object, List<CatalogReceipt>> entry : transactions.entrySet()) {
+				TransactionId<?> transactionId = entry.getKey() instanceof TransactionId ? (TransactionId<?>) entry.getKey() : null;
+				if (transactionId != null)
+					this.returned.put(transactionId, this.getOldestReceiptDate(transactionId, entry.getValue()));
+				transactionReceipts.add(new TransactionReceipt(transactionId, entry.getValue()));
+			}
+			this.position += transactionReceipts.size();
+			this.pruneReturned();
+			return transactionReceipts;
+		}
+		
+		/**
+		 * Forgets the returned transactions whose oldest receipt is newer than every result
+		 * left to merge, since none of their receipts can still come up
+		 */
+		protected void pruneReturned() throws CatalogServiceException {
+			if (!this.hasNext()) {
+				this.returned.clear();
+				return;
+			}
+			Date headDate = this.heads.peek().receipts.getFirst().getTransactionDate();
+			for (Iterator<Date> iter = this.returned.values().iterator(); iter.hasNext();) {
+				Date oldest = iter.next();
+				if (oldest != null && oldest.after(headDate))
+					iter.remove();
+			}
+		}
+		
+		/**
+		 * @return The date of the oldest receipt the paged Catalogs hold for the given
+		 * transaction, or null if it couldn't be found out
+		 */
+		protected Date getOldestReceiptDate(TransactionId<?> transactionId, List<CatalogReceipt> receipts) {
+			Date oldest = null;
+			for (CatalogReceipt receipt : receipts)
+				if (oldest == null || receipt.getTransactionDate().before(oldest))
+					oldest = receipt.getTransactionDate();
+			if (receipts.size() == this.pagedCatalogs.size())
+				return oldest;
+			ingestMapperLock.readLock().lock();
+			try {
+				for (Catalog catalog : this.pagedCatalogs) {
+					CatalogReceipt receipt = ingestMapper.getCatalogReceipt(transactionId, catalog.getId());
+					if (receipt != null && receipt.getTransactionDate().before(oldest))
+						oldest = receipt.getTransactionDate();
+				}
+				return oldest;
+			}catch (Exception e) {
+				LOG.log(Level.WARNING, "Failed to get catalog receipts for transaction '" + transactionId + "' : " + e.getMessage(), e);
+				return null;
+			}finally {
+				ingestMapperLock.readLock().unlock();
+			}
+		}
+		
+		protected CatalogReceipt nextReceipt() throws CatalogServiceException {
+			CatalogResults head = this.heads.poll();
+			CatalogReceipt receipt = head.receipts.removeFirst();
+			if (head.receipts.isEmpty() && head.offset < head.size)
+				this.fill(Collections.singletonList(head));
+			else if (!head.receipts.isEmpty())
+				this.heads.add(head);
+			return receipt;
+		}
+		
+		/**
+		 * Fetches the first results of all the Catalogs at once, the first time they're needed
+		 */
+		protected void open() throws CatalogServiceException {
+			if (this.unopened.size() > 0) {
+				List<CatalogResults> opening = this.unopened;
+				this.unopened = Collections.emptyList();
+				this.fill(opening);
+			}
+		}
+		
+		protected void fill(List<CatalogResults> catalogResults) throws CatalogServiceException {
+			int batchSize = Math.max(crossCatalogResultSortingThreshold, 1);
+			List<CatalogCall<List<CatalogReceipt>>> calls = new Vector<CatalogCall<List<CatalogReceipt>>>();
+			for (CatalogResults results : catalogResults)
+				calls.add(new CatalogPagedQuery(results.catalog, this.queryExpression, results.offset, Math.min(results.offset + batchSize, results.size)));
+			List<List<CatalogReceipt>> receipts = callCatalogs(calls);
+			for (int i = 0; i < catalogResults.size(); i++) {
+				CatalogResults results = catalogResults.get(i);
+				if (receipts.get(i) != null && receipts.get(i).size() > 0) {
+					results.receipts.addAll(receipts.get(i));
+					results.offset += receipts.get(i).size();
+					this.heads.add(results);
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * The unmerged results fetched so far from one Catalog
+	 */
+	protected class CatalogResults {
+		
+		protected Catalog catalog;
+		protected int size;
+		protected int order;
+		protected int offset;
+		protected LinkedList<CatalogReceipt> receipts;
+		
+		public CatalogResults(Catalog catalog, int size, int order) {
+			this.catalog = catalog;
+			this.size = size;
+			this.order = order;
+			this.offset = 0;
+			this.receipts = new LinkedList<CatalogReceipt>();
+		}
+		
+	}
+	
 	protected class QueryResult {
 		
 		private QueryExpression queryExpression;
@@ -54,12 +54,19 @@ public class CatalogServiceLocalFactory implements CatalogServiceFactory {
 	protected boolean simplifyQueries = false;
 	protected boolean disableIntersectingCrossCatalogQueries = false;
 	protected int crossCatalogResultSortingThreshold = 200;
+	protected Integer queryThreads = null;
+	protected Long catalogQueryTimeout = null;
 	
 	public CatalogServiceLocalFactory() {} 
 	
 	public CatalogServiceLocal createCatalogService() {
 		try {
-			return new CatalogServiceLocal(this.catalogRepositoryFactory.createRepository(), this.ingestMapperFactory.createMapper(), new File(this.pluginStorageDir), this.transactionIdFactory, this.restrictQueryPermissions, this.restrictIngestPermissions, this.oneCatalogFailsAllFail, this.simplifyQueries, this.disableIntersectingCrossCatalogQueries, this.crossCatalogResultSortingThreshold);
+			CatalogServiceLocal catalogService = new CatalogServiceLocal(this.catalogRepositoryFactory.createRepository(), this.ingestMapperFactory.createMapper(), new File(this.pluginStorageDir), this.transactionIdFactory, this.restrictQueryPermissions, this.restrictIngestPermissions, this.oneCatalogFailsAllFail, this.simplifyQueries, this.disableIntersectingCrossCatalogQueries, this.crossCatalogResultSortingThreshold);
+			if (this.queryThreads != null)
+				catalogService.setQueryThreads(this.queryThreads);
+			if (this.catalogQueryTimeout != null)
+				catalogService.setCatalogQueryTimeout(this.catalogQueryTimeout);
+			return catalogService;
 		}catch (Exception e) {
 			LOG.log(Level.SEVERE, "Failed to create CatalogServiceLocal : " + e.getMessage(), e);
 			return null;
@@ -116,5 +123,13 @@ public class CatalogServiceLocalFactory implements CatalogServiceFactory {
 			int crossCatalogResultSortingThreshold) {
 		this.crossCatalogResultSortingThreshold = crossCatalogResultSortingThreshold;
 	}
+
+	public void setQueryThreads(int queryThreads) {
+		this.queryThreads = queryThreads;
+	}
+
+	public void setCatalogQueryTimeout(long catalogQueryTimeout) {
+		this.catalogQueryTimeout = catalogQueryTimeout;
+	}
 	
 }
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.catalog.system.impl;
+
+//JDK imports
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+//OODT imports
+import org.apache.oodt.cas.catalog.page.CatalogReceipt;
+import org.apache.oodt.cas.catalog.query.QueryExpression;
+import org.apache.oodt.cas.catalog.query.parser.QueryParser;
+import org.apache.oodt.cas.catalog.repository.MemoryBasedCatalogRepository;
+import org.apache.oodt.cas.catalog.struct.Dictionary;
+import org.apache.oodt.cas.catalog.struct.impl.transaction.UuidTransactionIdFactory;
+import org.apache.oodt.cas.catalog.system.Catalog;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * Times a cross Catalog AND query against {@link CatalogServiceLocal} for a
+ * growing number of Catalogs and results.  Half the Catalogs understand the
+ * first term and half the second, so the results of each term are
+ * intersected by the CatalogService.  Each Catalog takes the given latency to
+ * answer.  The query is timed with one query thread (Catalogs queried one
+ * after another) and with a thread per Catalog, and the intersection is timed
+ * against the nested loop intersection it replaced.
+ * <p>
+ * <pre>
+ * java -cp ... org.apache.oodt.cas.catalog.system.impl.CatalogServiceQueryBenchmark [latencyMillis]
+ * </pre>
+ */
+public class CatalogServiceQueryBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		long latencyMillis = args.length > 0 ? Long.parseLong(args[0]) : 50;
+		QueryExpression queryExpression = QueryParser.parseQueryExpression("a == 'x' AND b == 'y'");
+		System.out.println("catalog latency " + latencyMillis + " ms");
+		System.out.println(String.format("%8s %10s %12s %12s %14s %14s", "catalogs", "hits/term", "serial(ms)", "parallel(ms)", "hash-isect(ms)", "loop-isect(ms)"));
+		for (int catalogs : new int[] { 2, 4, 12 }) {
+			for (int hits : new int[] { 1000, 10000, 100000 }) {
+				CatalogServiceLocal cs = createCatalogService(catalogs, hits, latencyMillis);
+				
+				cs.setQueryThreads(1);
+				// warm up
+				cs._query(queryExpression, cs.getCurrentCatalogIds());
+				long serial = time(cs, queryExpression);
+				cs.setQueryThreads(catalogs);
+				long parallel = time(cs, queryExpression);
+				
+				List<CatalogServiceLocal.QueryResult> queryResults = getTermResults(cs, catalogs, hits);
+				long start = System.nanoTime();
+				int size = cs.getIntersection(queryResults).size();
+				long hashIntersect = (System.nanoTime() - start) / 1000000;
+				String loopIntersect = "-";
+				if (hits <= 10000) {
+					start = System.nanoTime();
+					getNestedLoopIntersection(queryResults);
+					loopIntersect = Long.toString((System.nanoTime() - start) / 1000000);
+				}
+				System.out.println(String.format("%8d %10d %12d %12d %14d %14s   (%d in intersection)", catalogs, hits, serial, parallel, hashIntersect, loopIntersect, size));
+				cs.shutdown();
+			}
+		}
+	}
+	
+	private static long time(CatalogServiceLocal cs, QueryExpression queryExpression) throws Exception {
+		long start = System.nanoTime();
+		cs._query(queryExpression, cs.getCurrentCatalogIds());
+		return (System.nanoTime() - start) / 1000000;
+	}
+	
+	/*
+	 * Catalog i has hits/catalogs TransactionIds for its term, the second
+	 * term's Catalogs shifted by half, so half the hits of each term intersect
+	 */
+	private static CatalogServiceLocal createCatalogService(int catalogs, int hits, long latencyMillis) throws Exception {
+		CatalogServiceLocal cs = new CatalogServiceLocal(new MemoryBasedCatalogRepository(), new MockIngestMapper(), new File("/dev/null"), new UuidTransactionIdFactory(), false, false, true, false, false, 200);
+		int hitsPerCatalog = hits / (catalogs / 2);
+		for (int i = 0; i < catalogs; i++) {
+			String term = i % 2 == 0 ? "a" : "b";
+			long first = (i / 2) * hitsPerCatalog + (term.equals("b") ? hits / 2 : 0);
+			MockIndex index = new MockIndex(latencyMillis);
+			index.addTransactionIds(term, first, first + hitsPerCatalog - 1);
+			cs.addCatalog(new Catalog("Catalog" + i, index, Collections.<Dictionary>singletonList(new MockDictionary(term)), false, false));
+		}
+		return cs;
+	}
+	
+	private static List<CatalogServiceLocal.QueryResult> getTermResults(CatalogServiceLocal cs, int catalogs, int hits) throws Exception {
+		List<CatalogServiceLocal.QueryResult> queryResults = new Vector<CatalogServiceLocal.QueryResult>();
+		for (String term : new String[] { "a", "b" }) {
+			CatalogServiceLocal.QueryResult queryResult = cs.new QueryResult(null);
+			List<CatalogReceipt> receipts = new Vector<CatalogReceipt>();
+			for (Catalog catalog : cs.getCurrentCatalogList())
+				if (catalog.isInterested(QueryParser.parseQueryExpression(term + " == 'x'")))
+					receipts.addAll(catalog.query(QueryParser.parseQueryExpression(term + " == 'x'")));
+			queryResult.setCatalogReceipts(receipts);
+			queryResults.add(queryResult);
+		}
+		return queryResults;
+	}
+	
+	/*
+	 * The intersection CatalogServiceLocal used to do
+	 */
+	private static List<CatalogReceipt> getNestedLoopIntersection(List<CatalogServiceLocal.QueryResult> queryResults) {
+		List<CatalogReceipt> catalogReceipts = new Vector<CatalogReceipt>();
+		catalogReceipts.addAll(queryResults.get(0).getCatalogReceipts());
+		for (int i = 1; i < queryResults.size(); i++) {
+TR:			for (CatalogReceipt catalogReceipt : queryResults.get(i).getCatalogReceipts()) {
+				for (CatalogReceipt compCatalogReceipt : catalogReceipts)
+					if (catalogReceipt.getTransactionId().equals(compCatalogReceipt.getTransactionId()))
+						continue TR;
+				catalogReceipts.remove(catalogReceipt);
+			}
+		}
+		return catalogReceipts;
+	}
+	
+}
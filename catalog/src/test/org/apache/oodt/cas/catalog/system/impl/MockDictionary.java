@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.catalog.system.impl;
+
+//JDK imports
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+//OODT imports
+import org.apache.oodt.cas.catalog.exception.CatalogDictionaryException;
+import org.apache.oodt.cas.catalog.query.QueryExpression;
+import org.apache.oodt.cas.catalog.query.TermQueryExpression;
+import org.apache.oodt.cas.catalog.struct.Dictionary;
+import org.apache.oodt.cas.catalog.term.TermBucket;
+import org.apache.oodt.cas.metadata.Metadata;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * A Dictionary which only understands term queries on the given term names
+ * <p>
+ */
+public class MockDictionary implements Dictionary {
+
+	private Set<String> termNames;
+	
+	public MockDictionary(String... termNames) {
+		this.termNames = new HashSet<String>(Arrays.asList(termNames));
+	}
+	
+	public TermBucket lookup(Metadata metadata) throws CatalogDictionaryException {
+		return null;
+	}
+
+	public Metadata reverseLookup(TermBucket termBucket) throws CatalogDictionaryException {
+		return new Metadata();
+	}
+
+	public boolean understands(QueryExpression queryExpression) throws CatalogDictionaryException {
+		return queryExpression instanceof TermQueryExpression && this.termNames.contains(((TermQueryExpression) queryExpression).getTerm().getName());
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.catalog.system.impl;
+
+//JDK imports
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Vector;
+
+//OODT imports
+import org.apache.oodt.cas.catalog.exception.CatalogIndexException;
+import org.apache.oodt.cas.catalog.exception.QueryServiceException;
+import org.apache.oodt.cas.catalog.page.IndexPager;
+import org.apache.oodt.cas.catalog.page.IngestReceipt;
+import org.apache.oodt.cas.catalog.query.QueryExpression;
+import org.apache.oodt.cas.catalog.query.TermQueryExpression;
+import org.apache.oodt.cas.catalog.struct.Index;
+import org.apache.oodt.cas.catalog.struct.QueryService;
+import org.apache.oodt.cas.catalog.struct.TransactionId;
+import org.apache.oodt.cas.catalog.struct.TransactionIdFactory;
+import org.apache.oodt.cas.catalog.struct.impl.transaction.LongTransactionIdFactory;
+import org.apache.oodt.cas.catalog.term.TermBucket;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * An in memory Index which answers a term query with the TransactionIds
+ * stored for the term's name, after a set delay.  Paged queries are answered newest first
+ * <p>
+ */
+public class MockIndex implements Index, QueryService {
+
+	private Map<String, List<IngestReceipt>> receiptsByTerm;
+	private long latencyMillis;
+	private TransactionIdFactory transactionIdFactory;
+	private int pagedReceiptsReturned;
+	
+	public MockIndex(long latencyMillis) {
+		this.receiptsByTerm = new HashMap<String, List<IngestReceipt>>();
+		this.latencyMillis = latencyMillis;
+		this.transactionIdFactory = new LongTransactionIdFactory();
+	}
+	
+	public void addTransactionIds(String termName, long firstId, long lastId) {
+		this.addTransactionIds(termName, firstId, lastId, 0);
+	}
+	
+	/**
+	 * Adds TransactionIds firstId to lastId, each dated id * dateStepMillis
+	 */
+	public void addTransactionIds(String termName, long firstId, long lastId, long dateStepMillis) {
+		List<IngestReceipt> receipts = this.receiptsByTerm.get(termName);
+		if (receipts == null)
+			this.receiptsByTerm.put(termName, receipts = new Vector<IngestReceipt>());
+		for (long id = firstId; id <= lastId; id++)
+			receipts.add(new IngestReceipt(this.transactionIdFactory.createTransactionId(Long.toString(id)), new Date(id * dateStepMillis)));
+	}
+	
+	public int getPagedReceiptsReturned() {
+		return this.pagedReceiptsReturned;
+	}
+	
+	public List<IngestReceipt> query(QueryExpression queryExpression) throws QueryServiceException {
+		this.delay();
+		if (queryExpression instanceof TermQueryExpression) {
+			List<IngestReceipt> receipts = this.receiptsByTerm.get(((TermQueryExpression) queryExpression).getTerm().getName());
+			if (receipts != null)
+				return receipts;
+		}
+		return Collections.emptyList();
+	}
+
+	public List<IngestReceipt> query(QueryExpression queryExpression, int startIndex, int endIndex) throws QueryServiceException {
+		List<IngestReceipt> receipts = new Vector<IngestReceipt>(this.query(queryExpression));
+		Collections.sort(receipts, new Comparator<IngestReceipt>() {
+			public int compare(IngestReceipt o1, IngestReceipt o2) {
+				return o2.getTransactionDate().compareTo(o1.getTransactionDate());
+			}
+		});
+		receipts = receipts.subList(Math.min(startIndex, receipts.size()), Math.min(endIndex, receipts.size()));
+		synchronized (this) {
+			this.pagedReceiptsReturned += receipts.size();
+		}
+		return receipts;
+	}
+
+	public int sizeOf(QueryExpression queryExpression) throws QueryServiceException {
+		return this.query(queryExpression).size();
+	}
+
+	public List<TermBucket> getBuckets(TransactionId<?> transactionId) throws QueryServiceException {
+		return Collections.emptyList();
+	}
+
+	public Map<TransactionId<?>, List<TermBucket>> getBuckets(List<TransactionId<?>> transactionIds) throws QueryServiceException {
+		return Collections.emptyMap();
+	}
+
+	public Properties getProperties() throws CatalogIndexException {
+		return new Properties();
+	}
+
+	public String getProperty(String key) throws CatalogIndexException {
+		return null;
+	}
+
+	public List<TransactionId<?>> getPage(IndexPager indexPage) throws CatalogIndexException {
+		return Collections.emptyList();
+	}
+
+	public TransactionIdFactory getTransactionIdFactory() throws CatalogIndexException {
+		return this.transactionIdFactory;
+	}
+
+	public boolean hasTransactionId(TransactionId<?> transactionid) throws CatalogIndexException {
+		return false;
+	}
+	
+	private void delay() throws QueryServiceException {
+		try {
+			Thread.sleep(this.latencyMillis);
+		}catch (InterruptedException e) {
+			throw new QueryServiceException("Interrupted", e);
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.catalog.system.impl;
+
+//JDK imports
+import java.util.Collections;
+import java.util.Set;
+
+//OODT imports
+import org.apache.oodt.cas.catalog.exception.CatalogRepositoryException;
+import org.apache.oodt.cas.catalog.mapping.IngestMapper;
+import org.apache.oodt.cas.catalog.page.CatalogReceipt;
+import org.apache.oodt.cas.catalog.page.IndexPager;
+import org.apache.oodt.cas.catalog.struct.TransactionId;
+import org.apache.oodt.cas.catalog.struct.TransactionIdFactory;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * An IngestMapper with no mappings, for query only tests
+ * <p>
+ */
+public class MockIngestMapper implements IngestMapper {
+
+	public void storeTransactionIdMapping(TransactionId<?> catalogServiceTransactionId, TransactionIdFactory catalogServiceTransactionIdFactory, CatalogReceipt catalogReceipt, TransactionIdFactory catalogTransactionIdFactory) throws CatalogRepositoryException {}
+
+	public Set<TransactionId<?>> getPageOfCatalogTransactionIds(IndexPager indexPager, String catalogId) throws CatalogRepositoryException {
+		return Collections.emptySet();
+	}
+
+	public void deleteTransactionIdMapping(TransactionId<?> catalogTransactionId, String catalogId) throws CatalogRepositoryException {}
+
+	public void deleteAllMappingsForCatalogServiceTransactionId(TransactionId<?> catalogServiceTransactionId) throws CatalogRepositoryException {}
+
+	public void deleteAllMappingsForCatalog(String catalogId) throws CatalogRepositoryException {}
+
+	public boolean hasCatalogServiceTransactionId(TransactionId<?> catalogServiceTransactionId) throws CatalogRepositoryException {
+		return false;
+	}
+
+	public TransactionId<?> getCatalogServiceTransactionId(TransactionId<?> catalogTransactionId, String catalogId) throws CatalogRepositoryException {
+		return null;
+	}
+
+	public TransactionId<?> getCatalogTransactionId(TransactionId<?> catalogServiceTransactionId, String catalogId) throws CatalogRepositoryException {
+		return null;
+	}
+
+	public Set<String> getCatalogIds(TransactionId<?> catalogServiceTransactionId) throws CatalogRepositoryException {
+		return Collections.emptySet();
+	}
+
+	public CatalogReceipt getCatalogReceipt(TransactionId<?> catalogServiceTransactionId, String catalogId) throws CatalogRepositoryException {
+		return null;
+	}
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.catalog.system.impl;
+
+//JDK imports
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+
+//OODT imports
+import org.apache.oodt.cas.catalog.exception.CatalogServiceException;
+import org.apache.oodt.cas.catalog.page.CatalogReceipt;
+import org.apache.oodt.cas.catalog.page.Page;
+import org.apache.oodt.cas.catalog.page.PageInfo;
+import org.apache.oodt.cas.catalog.page.TransactionReceipt;
+import org.apache.oodt.cas.catalog.query.parser.QueryParser;
+import org.apache.oodt.cas.catalog.repository.MemoryBasedCatalogRepository;
+import org.apache.oodt.cas.catalog.struct.Dictionary;
+import org.apache.oodt.cas.catalog.struct.TransactionId;
+import org.apache.oodt.cas.catalog.struct.impl.transaction.UuidTransactionIdFactory;
+import org.apache.oodt.cas.catalog.system.Catalog;
+
+//Junit imports
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * Tests how {@link CatalogServiceLocal} fans queries out to its Catalogs
+ * and intersects and pages their results
+ * <p>
+ */
+public class TestCatalogServiceLocalQueries extends TestCase {
+
+	private List<MockIndex> pagingIndexes;
+
+	public void testCatalogsQueriedConcurrently() throws Exception {
+		CatalogServiceLocal cs = createCatalogService(true);
+		for (int i = 0; i < 4; i++) {
+			MockIndex index = new MockIndex(500);
+			index.addTransactionIds("a", i * 10, i * 10 + 9);
+			cs.addCatalog(new Catalog("Catalog" + i, index, null, false, false));
+		}
+		
+		long start = System.currentTimeMillis();
+		List<TransactionReceipt> receipts = cs._query(QueryParser.parseQueryExpression("a == 'x'"), cs.getCurrentCatalogIds());
+		assertEquals(40, receipts.size());
+		assertTrue(System.currentTimeMillis() - start < 1500);
+		cs.shutdown();
+	}
+	
+	public void testSlowCatalogTimesOut() throws Exception {
+		CatalogServiceLocal cs = createCatalogService(false);
+		cs.setCatalogQueryTimeout(200);
+		MockIndex fastIndex = new MockIndex(0);
+		fastIndex.addTransactionIds("a", 1, 5);
+		cs.addCatalog(new Catalog("FastCatalog", fastIndex, null, false, false));
+		MockIndex slowIndex = new MockIndex(5000);
+		slowIndex.addTransactionIds("a", 6, 10);
+		cs.addCatalog(new Catalog("SlowCatalog", slowIndex, null, false, false));
+		
+		long start = System.currentTimeMillis();
+		List<TransactionReceipt> receipts = cs._query(QueryParser.parseQueryExpression("a == 'x'"), cs.getCurrentCatalogIds());
+		assertEquals(5, receipts.size());
+		assertTrue(System.currentTimeMillis() - start < 2000);
+		
+		cs.oneCatalogFailsAllFail = true;
+		try {
+			cs._query(QueryParser.parseQueryExpression("a == 'x'"), cs.getCurrentCatalogIds());
+			fail("Query should fail when a Catalog times out");
+		}catch (CatalogServiceException expected) {}
+		cs.shutdown();
+	}
+	
+	public void testIntersectionAcrossCatalogs() throws Exception {
+		CatalogServiceLocal cs = createCatalogService(true);
+		MockIndex indexA = new MockIndex(0);
+		indexA.addTransactionIds("a", 1, 100);
+		cs.addCatalog(new Catalog("CatalogA", indexA, Collections.<Dictionary>singletonList(new MockDictionary("a")), false, false));
+		MockIndex indexB = new MockIndex(0);
+		indexB.addTransactionIds("b", 51, 150);
+		cs.addCatalog(new Catalog("CatalogB", indexB, Collections.<Dictionary>singletonList(new MockDictionary("b")), false, false));
+
+		List<TransactionReceipt> receipts = cs._query(QueryParser.parseQueryExpression("a == 'x' AND b == 'y'"), cs.getCurrentCatalogIds());
+		assertEquals(50, receipts.size());
+		Set<String> transactionIds = new HashSet<String>();
+		for (TransactionReceipt receipt : receipts)
+			for (CatalogReceipt catalogReceipt : receipt.getCatalogReceipts())
+				transactionIds.add(catalogReceipt.getTransactionId().toString());
+		for (int i = 51; i <= 100; i++)
+			assertTrue(transactionIds.contains(Integer.toString(i)));
+		cs.shutdown();
+	}
+	
+	public void testGetIntersection() throws Exception {
+		CatalogServiceLocal cs = createCatalogService(true);
+		List<CatalogServiceLocal.QueryResult> queryResults = new Vector<CatalogServiceLocal.QueryResult>();
+		queryResults.add(createQueryResult(cs, 1, 1000));
+		queryResults.add(createQueryResult(cs, 500, 2000));
+		queryResults.add(createQueryResult(cs, 900, 950));
+		List<CatalogReceipt> intersection = cs.getIntersection(queryResults);
+		assertEquals(51, intersection.size());
+		assertEquals("900", intersection.get(0).getTransactionId().toString());
+		
+		queryResults.add(createQueryResult(cs, 3000, 3001));
+		assertEquals(0, cs.getIntersection(queryResults).size());
+		cs.shutdown();
+	}
+	
+	public void testMergedPages() throws Exception {
+		CatalogServiceLocal cs = createPagingCatalogService();
+		Date lastDate = null;
+		Set<String> transactionIds = new HashSet<String>();
+		for (int pageNum = 1; pageNum <= 19; pageNum++) {
+			Page page = cs.getPage(new PageInfo(7, pageNum), QueryParser.parseQueryExpression("a == 'x'"), cs.getCurrentCatalogIds());
+			assertEquals(130, page.getNumOfHits());
+			assertEquals(19, page.getTotalPages());
+			assertEquals(pageNum, page.getPageNum());
+			assertEquals(pageNum < 19 ? 7 : 4, page.getReceipts().size());
+			for (TransactionReceipt receipt : page.getReceipts()) {
+				if (lastDate != null)
+					assertFalse(receipt.getTransactionDate().after(lastDate));
+				lastDate = receipt.getTransactionDate();
+				CatalogReceipt catalogReceipt = receipt.getCatalogReceipts().get(0);
+				transactionIds.add(catalogReceipt.getCatalogId() + ":" + catalogReceipt.getTransactionId());
+			}
+		}
+		assertEquals(130, transactionIds.size());
+		
+		Page lastPage = cs.getPage(new PageInfo(7, PageInfo.LAST_PAGE), QueryParser.parseQueryExpression("a == 'x'"), cs.getCurrentCatalogIds());
+		assertEquals(19, lastPage.getPageNum());
+		assertEquals(4, lastPage.getReceipts().size());
+		cs.shutdown();
+	}
+	
+	public void testNextPageResumesMerge() throws Exception {
+		CatalogServiceLocal cs = createPagingCatalogService();
+		Page page = cs.getPage(new PageInfo(7, 1), QueryParser.parseQueryExpression("a == 'x'"), cs.getCurrentCatalogIds());
+		// only the first batch of each catalog is needed for the first page
+		assertTrue(getPagedReceiptsReturned() <= 30);
+		
+		while (!page.isLastPage())
+			page = cs.getNextPage(page);
+		assertEquals(19, page.getPageNum());
+		// each result was fetched once, rather than once for every page up to its own
+		assertEquals(130, getPagedReceiptsReturned());
+		cs.shutdown();
+	}
+	
+	public void testPagesCountTransactions() throws Exception {
+		// a catalog transaction id maps to the catalog service transaction of the same id, so
+		// the results of the two catalogs share transactions 41 to 50
+		CatalogServiceLocal cs = new CatalogServiceLocal(new MemoryBasedCatalogRepository(), new MockIngestMapper() {
+			public TransactionId<?> getCatalogServiceTransactionId(TransactionId<?> catalogTransactionId, String catalogId) {
+				return catalogTransactionId;
+			}
+		}, new File("/dev/null"), new UuidTransactionIdFactory(), false, false, true, false, true, 10);
+		long[][] catalogIds = { { 1, 50 }, { 41, 60 } };
+		for (int i = 0; i < catalogIds.length; i++) {
+			MockIndex index = new MockIndex(0);
+			index.addTransactionIds("a", catalogIds[i][0], catalogIds[i][1], 1000);
+			cs.addCatalog(new Catalog("Catalog" + i, index, null, false, false));
+		}
+		
+		Set<String> transactionIds = new HashSet<String>();
+		for (int pageNum = 1; pageNum <= 9; pageNum++) {
+			Page page = cs.getPage(new PageInfo(7, pageNum), QueryParser.parseQueryExpression("a == 'x'"), cs.getCurrentCatalogIds());
+			assertEquals(pageNum < 9 ? 7 : 4, page.getReceipts().size());
+			for (TransactionReceipt receipt : page.getReceipts()) {
+				String transactionId = receipt.getTransactionId().toString();
+				assertTrue("Transaction " + transactionId + " returned twice", transactionIds.add(transactionId));
+				long id = Long.parseLong(transactionId);
+				assertEquals(id > 40 && id <= 50 ? 2 : 1, receipt.getCatalogReceipts().size());
+			}
+			// every receipt of the transactions returned so far has been merged
+			for (CatalogServiceLocal.PageCursor cursor : cs.pageCursors.values())
+				assertEquals(0, cursor.returned.size());
+		}
+		assertEquals(60, transactionIds.size());
+		cs.shutdown();
+	}
+	
+	private int getPagedReceiptsReturned() {
+		int pagedReceiptsReturned = 0;
+		for (MockIndex index : pagingIndexes)
+			pagedReceiptsReturned += index.getPagedReceiptsReturned();
+		return pagedReceiptsReturned;
+	}
+	
+	private CatalogServiceLocal createPagingCatalogService() throws Exception {
+		// the catalogs' dates interleave, so pages take results from all of them
+		CatalogServiceLocal cs = new CatalogServiceLocal(new MemoryBasedCatalogRepository(), new MockIngestMapper(), new File("/dev/null"), new UuidTransactionIdFactory(), false, false, true, false, true, 10);
+		pagingIndexes = new Vector<MockIndex>();
+		long[][] catalogIds = { { 1, 50, 1000 }, { 101, 150, 300 }, { 1001, 1030, 40 } };
+		for (int i = 0; i < catalogIds.length; i++) {
+			MockIndex index = new MockIndex(0);
+			index.addTransactionIds("a", catalogIds[i][0], catalogIds[i][1], catalogIds[i][2]);
+			cs.addCatalog(new Catalog("Catalog" + i, index, null, false, false));
+			pagingIndexes.add(index);
+		}
+		return cs;
+	}
+	
+	private CatalogServiceLocal.QueryResult createQueryResult(CatalogServiceLocal cs, long firstId, long lastId) throws Exception {
+		MockIndex index = new MockIndex(0);
+		index.addTransactionIds("a", firstId, lastId);
+		CatalogServiceLocal.QueryResult queryResult = cs.new QueryResult(null);
+		queryResult.setCatalogReceipts(new Catalog("Catalog", index, null, false, false).query(QueryParser.parseQueryExpression("a == 'x'")));
+		return queryResult;
+	}
+	
+	private CatalogServiceLocal createCatalogService(boolean oneCatalogFailsAllFail) throws Exception {
+		return new CatalogServiceLocal(new MemoryBasedCatalogRepository(), new MockIngestMapper(), new File("/dev/null"), new UuidTransactionIdFactory(), false, false, oneCatalogFailsAllFail, false, false, 200);
+	}
+	
+}
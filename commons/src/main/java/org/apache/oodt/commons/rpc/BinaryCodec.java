@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.commons.rpc;
+
+//JDK imports
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.Vector;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * Encodes the values the binary RPC structures are built from. Every value
+ * is length-prefixed: strings are an int byte count (-1 for null) followed
+ * by their UTF-8 bytes, and lists and properties are an int element count
+ * (-1 for null) followed by their elements. Unlike
+ * {@link DataOutput#writeUTF(String)}, strings of any length can be
+ * written.
+ * </p>
+ */
+public final class BinaryCodec {
+
+    private static final String UTF_8 = "UTF-8";
+
+    private BinaryCodec() throws InstantiationException {
+        throw new InstantiationException("Don't instantiate BinaryCodecs!");
+    }
+
+    public static void writeString(DataOutput out, String value)
+            throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    public static void writeStringList(DataOutput out, List<String> values)
+            throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(values.size());
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    public static List<String> readStringList(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> values = new Vector<String>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    public static void writeProperties(DataOutput out, Properties props)
+            throws IOException {
+        if (props == null) {
+            out.writeInt(-1);
+        } else {
+            List<String> names = new Vector<String>(props.stringPropertyNames());
+            out.writeInt(names.size());
+            for (String name : names) {
+                writeString(out, name);
+                writeString(out, props.getProperty(name));
+            }
+        }
+    }
+
+    public static Properties readProperties(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Properties props = new Properties();
+        for (int i = 0; i < size; i++) {
+            String name = readString(in);
+            props.setProperty(name, readString(in));
+        }
+        return props;
+    }
+
+}
@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.commons.rpc;
+
+//JDK imports
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//APACHE imports
+import org.apache.xmlrpc.XmlRpcClient;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * Client side of the {@link BinaryRpcServer} protocol. Connections are
+ * opened as needed and kept for reuse once their call is done, so a client
+ * may be shared by any number of threads. A call on a reused connection
+ * is retried once on a new connection if the request couldn't be written,
+ * or the connection turned out to have been closed by the server (e.g., as
+ * idle) before the request got to it. A call that fails any later, e.g.,
+ * by timing out waiting for its response, is never retried, since the
+ * server may have carried it out.
+ * </p>
+ *
+ * <p>
+ * {@link #negotiate(XmlRpcClient, String, String, int)} asks a CAS
+ * component's XML-RPC server whether it also serves binary calls.
+ * </p>
+ */
+public class BinaryRpcClient {
+
+    /* our log stream */
+    private static final Logger LOG = Logger.getLogger(BinaryRpcClient.class
+            .getName());
+
+    private final String host;
+
+    private final int port;
+
+    private final int timeoutMillis;
+
+    private final int maxIdleConnections;
+
+    /* guarded by itself */
+    private final LinkedList<Connection> idleConnections = new LinkedList<Connection>();
+
+    /**
+     * @param host
+     *            The host the {@link BinaryRpcServer} runs on.
+     * @param port
+     *            The port the {@link BinaryRpcServer} listens on.
+     * @param timeoutMillis
+     *            How long to wait for a response, 0 to wait forever.
+     */
+    public BinaryRpcClient(String host, int port, int timeoutMillis) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+        this.maxIdleConnections = Integer.getInteger(
+                "org.apache.oodt.commons.rpc.maxIdleConnections", 8)
+                .intValue();
+    }
+
+    /**
+     * Asks a CAS component whether it serves binary calls, by calling
+     * <code>getBinaryRpcPort</code> on its XML-RPC handler. Binary calls may
+     * be turned off on the client side by setting
+     * <code>org.apache.oodt.commons.rpc.binary</code> to false.
+     *
+     * @param client
+     *            The component's XML-RPC client.
+     * @param host
+     *            The host the component runs on.
+     * @param handlerName
+     *            The component's XML-RPC handler name (e.g.
+     *            <code>filemgr</code>).
+     * @param timeoutMillis
+     *            How long binary calls should wait for a response.
+     * @return A client for the component's binary calls, or null if it
+     *         doesn't serve them.
+     */
+    public static BinaryRpcClient negotiate(XmlRpcClient client, String host,
+            String handlerName, int timeoutMillis) {
+        if (!Boolean.valueOf(
+                System.getProperty("org.apache.oodt.commons.rpc.binary",
+                        "true")).booleanValue()) {
+            return null;
+        }
+        try {
+            int port = ((Integer) client.execute(handlerName
+                    + ".getBinaryRpcPort", new Vector<Object>())).intValue();
+            if (port > 0) {
+                return new BinaryRpcClient(host, port, timeoutMillis);
+            }
+        } catch (Exception e) {
+            // servers that predate binary calls don't have the method
+            LOG.log(Level.FINE, "Server: [" + host
+                    + "] doesn't serve binary calls: Message: "
+                    + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Makes a call.
+     *
+     * @param request
+     *            The call, with its arguments.
+     * @return The encoded result of the call.
+     * @throws BinaryRpcException
+     *             If the server failed to carry out the call.
+     * @throws IOException
+     *             If the call couldn't be sent or answered.
+     */
+    public DataInputStream execute(BinaryRpcRequest request)
+            throws BinaryRpcException, IOException {
+        Connection connection = this.borrowConnection();
+        byte[] response;
+        try {
+            response = connection.call(request);
+        } catch (IOException e) {
+            connection.close();
+            if (!connection.reused || connection.delivered) {
+                throw e;
+            }
+            LOG.log(Level.FINE, "Retrying call: [" + request.getMethod()
+                    + "] on a new connection: Message: " + e.getMessage());
+            connection = this.openConnection();
+            try {
+                response = connection.call(request);
+            } catch (IOException e2) {
+                connection.close();
+                throw e2;
+            }
+        }
+        this.releaseConnection(connection);
+
+        DataInputStream result = new DataInputStream(new ByteArrayInputStream(
+                response, 1, response.length - 1));
+        if (response[0] != BinaryRpcServer.STATUS_OK) {
+            throw new BinaryRpcException(BinaryCodec.readString(result));
+        }
+        return result;
+    }
+
+    /**
+     * Closes the idle connections. Connections in use are closed once their
+     * calls are done.
+     */
+    public void close() {
+        synchronized (this.idleConnections) {
+            for (Connection connection : this.idleConnections) {
+                connection.close();
+            }
+            this.idleConnections.clear();
+        }
+    }
+
+    public String getHost() {
+        return this.host;
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+
+    private Connection borrowConnection() throws IOException {
+        synchronized (this.idleConnections) {
+            if (!this.idleConnections.isEmpty()) {
+                Connection connection = this.idleConnections.removeFirst();
+                connection.reused = true;
+                return connection;
+            }
+        }
+        return this.openConnection();
+    }
+
+    private void releaseConnection(Connection connection) {
+        synchronized (this.idleConnections) {
+            if (this.idleConnections.size() < this.maxIdleConnections) {
+                this.idleConnections.addFirst(connection);
+                return;
+            }
+        }
+        connection.close();
+    }
+
+    private Connection openConnection() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(this.host, this.port),
+                    this.timeoutMillis);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(this.timeoutMillis);
+            return new Connection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static class Connection {
+
+        private final Socket socket;
+
+        private final DataInputStream in;
+
+        private final DataOutputStream out;
+
+        private boolean reused = false;
+
+        /* whether the server may have read the last request */
+        private boolean delivered = false;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket
+                    .getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket
+                    .getOutputStream()));
+        }
+
+        /*
+         * Returns the status byte followed by the rest of the response.
+         */
+        private byte[] call(BinaryRpcRequest request) throws IOException {
+            this.delivered = false;
+            request.writeTo(this.out);
+            this.out.flush();
+            this.delivered = true;
+            int status = this.in.read();
+            if (status == -1) {
+                // the server only closes a connection without answering
+                // when it is idle, i.e., before it reads a request
+                this.delivered = false;
+                throw new EOFException("Connection closed by server");
+            }
+            int length = this.in.readInt();
+            if (length < 0) {
+                throw new IOException("Bad response length: [" + length + "]");
+            }
+            byte[] response = new byte[length + 1];
+            response[0] = (byte) status;
+            this.in.readFully(response, 1, length);
+            return response;
+        }
+
+        private void close() {
+            try {
+                this.socket.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+}
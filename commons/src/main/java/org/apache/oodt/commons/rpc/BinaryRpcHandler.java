@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.commons.rpc;
+
+//JDK imports
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * Carries out the calls a {@link BinaryRpcServer} receives for one handler
+ * name, much like an object added to an XML-RPC web server with
+ * <code>addHandler</code>. The arguments and the result are encoded by the
+ * handler itself, so both sides must agree on the encoding of each method.
+ * </p>
+ */
+public interface BinaryRpcHandler {
+
+    /**
+     * @param method
+     *            The name of the method, without the handler name.
+     * @param args
+     *            The encoded arguments of the call.
+     * @param result
+     *            Where to encode the result of the call.
+     * @throws Exception
+     *             If the call fails; its message is passed back to the
+     *             caller in a {@link BinaryRpcException}.
+     */
+    public void execute(String method, DataInputStream args,
+            DataOutputStream result) throws Exception;
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.commons.rpc;
+
+//JDK imports
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * A call to be sent by a {@link BinaryRpcClient}. The arguments of the call
+ * are written to the request, in the encoding its handler expects, before
+ * it is sent.
+ * </p>
+ */
+public class BinaryRpcRequest extends DataOutputStream {
+
+    private final String method;
+
+    /**
+     * @param method
+     *            The name of the method to call, including its handler name
+     *            (e.g. <code>filemgr.getMetadata</code>).
+     * @throws IOException
+     *             Never, in practice; the request is kept in memory.
+     */
+    public BinaryRpcRequest(String method) throws IOException {
+        super(new ByteArrayOutputStream());
+        this.method = method;
+        BinaryCodec.writeString(this, method);
+    }
+
+    public String getMethod() {
+        return this.method;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(BinaryRpcServer.MAGIC);
+        out.writeInt(this.size());
+        ((ByteArrayOutputStream) this.out).writeTo(out);
+    }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.commons.rpc;
+
+//JDK imports
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * A socket server that runs next to a CAS component's XML-RPC server and
+ * carries out calls encoded with a compact binary encoding, rather than as
+ * XML-RPC text built from nested <code>Hashtable</code>s and
+ * <code>Vector</code>s. Calls are named <code>handler.method</code>, as
+ * they are for XML-RPC, and are dispatched to the {@link BinaryRpcHandler}
+ * added for the handler name.
+ * </p>
+ *
+ * <p>
+ * Each request is the magic number, the length of the rest of the request,
+ * the method name and the handler specific arguments. Each response is a
+ * status byte, the length of the rest of the response, and either the
+ * result or an error message. A connection may carry any number of
+ * requests, and is closed once it has been idle for the idle timeout.
+ * Requests longer than
+ * <code>org.apache.oodt.commons.rpc.maxRequestBytes</code> (default 64 MB)
+ * are skipped without being read into memory, and answered with an error.
+ * </p>
+ */
+public class BinaryRpcServer {
+
+    /* marks the start of every request */
+    static final int MAGIC = 0x4F524243;
+
+    static final byte STATUS_OK = 0;
+
+    static final byte STATUS_ERROR = 1;
+
+    /* our log stream */
+    private static final Logger LOG = Logger.getLogger(BinaryRpcServer.class
+            .getName());
+
+    private final Map<String, BinaryRpcHandler> handlers = new ConcurrentHashMap<String, BinaryRpcHandler>();
+
+    private int port;
+
+    private final int idleTimeoutMillis;
+
+    private final int maxRequestBytes;
+
+    private ServerSocket serverSocket = null;
+
+    private ExecutorService connectionPool = null;
+
+    private volatile boolean running = false;
+
+    /**
+     * @param port
+     *            The port to listen on, 0 to pick a free one.
+     * @param idleTimeoutMillis
+     *            How long a connection may wait between requests before it
+     *            is closed.
+     */
+    public BinaryRpcServer(int port, int idleTimeoutMillis) {
+        this.port = port;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxRequestBytes = Integer.getInteger(
+                "org.apache.oodt.commons.rpc.maxRequestBytes",
+                64 * 1024 * 1024).intValue();
+    }
+
+    /**
+     * @param name
+     *            The handler name calls to the handler are prefixed with.
+     * @param handler
+     *            The handler.
+     */
+    public void addHandler(String name, BinaryRpcHandler handler) {
+        this.handlers.put(name, handler);
+    }
+
+    /**
+     * Binds the server socket and starts accepting connections.
+     *
+     * @throws IOException
+     *             If the port cannot be bound.
+     */
+    public synchronized void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        port = serverSocket.getLocalPort();
+
+        // connections are idle most of the time, so each gets its own thread
+        // until it times out, rather than waiting for a free one
+        connectionPool = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "BinaryRpc-" + port);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        running = true;
+        Thread acceptThread = new Thread(new Runnable() {
+            public void run() {
+                acceptConnections();
+            }
+        }, "BinaryRpcAccept-" + port);
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        LOG.log(Level.INFO, "Binary RPC server listening on port: [" + port
+                + "]");
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    public synchronized void shutdown() {
+        running = false;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException ignore) {
+            }
+            serverSocket = null;
+        }
+        if (connectionPool != null) {
+            connectionPool.shutdownNow();
+            connectionPool = null;
+        }
+    }
+
+    /**
+     * @return The port this server listens on.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                connectionPool.execute(new Runnable() {
+                    public void run() {
+                        serveConnection(socket);
+                    }
+                });
+            } catch (IOException e) {
+                if (running) {
+                    LOG.log(Level.WARNING,
+                            "Error accepting binary RPC connection: Message: "
+                                    + e.getMessage());
+                }
+            } catch (Exception e) {
+                // pool shut down underneath us
+                if (running) {
+                    LOG.log(Level.WARNING,
+                            "Unable to serve binary RPC connection: Message: "
+                                    + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(idleTimeoutMillis);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            while (running) {
+                int magic;
+                try {
+                    magic = in.readInt();
+                } catch (EOFException e) {
+                    // client is done with this connection
+                    break;
+                } catch (SocketTimeoutException e) {
+                    // idle for too long
+                    break;
+                }
+                if (magic != MAGIC) {
+                    throw new IOException("Bad request header: [" + magic
+                            + "]");
+                }
+                int length = in.readInt();
+                if (length < 0) {
+                    throw new IOException("Bad request length: [" + length
+                            + "]");
+                }
+                if (length > maxRequestBytes) {
+                    // skipped rather than read into memory
+                    skipFully(in, length);
+                    refuseRequest("Request of: [" + length
+                            + "] bytes is larger than the limit of: ["
+                            + maxRequestBytes + "] bytes", out);
+                    out.flush();
+                    continue;
+                }
+                byte[] request = new byte[length];
+                in.readFully(request);
+                serveRequest(request, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // connections interrupted by shutdown() are not worth a warning
+            if (running) {
+                LOG.log(Level.WARNING, "Binary RPC connection from: ["
+                        + socket.getRemoteSocketAddress()
+                        + "] failed: Message: " + e.getMessage());
+            }
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int length)
+            throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0) {
+                // skipBytes gives up at the end of the stream
+                in.readByte();
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private void refuseRequest(String message, DataOutputStream out)
+            throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        BinaryCodec.writeString(new DataOutputStream(result), message);
+        out.writeByte(STATUS_ERROR);
+        out.writeInt(result.size());
+        result.writeTo(out);
+    }
+
+    private void serveRequest(byte[] request, DataOutputStream out)
+            throws IOException {
+        DataInputStream args = new DataInputStream(new ByteArrayInputStream(
+                request));
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        String name = BinaryCodec.readString(args);
+        try {
+            int dot = name.lastIndexOf('.');
+            BinaryRpcHandler handler = dot != -1 ? handlers.get(name
+                    .substring(0, dot)) : null;
+            if (handler == null) {
+                throw new BinaryRpcException("No handler for method: [" + name
+                        + "]");
+            }
+            handler.execute(name.substring(dot + 1), args,
+                    new DataOutputStream(result));
+            out.writeByte(STATUS_OK);
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "Binary RPC call: [" + name + "] failed", e);
+            result.reset();
+            BinaryCodec.writeString(new DataOutputStream(result), e
+                    .getMessage() != null ? e.getMessage() : e.toString());
+            out.writeByte(STATUS_ERROR);
+        }
+        out.writeInt(result.size());
+        result.writeTo(out);
+    }
+
+}
@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.commons.xmlrpc;
+
+//JDK imports
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//APACHE imports
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodRetryHandler;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.xmlrpc.CommonsXmlRpcTransport;
+import org.apache.xmlrpc.XmlRpcClientException;
+import org.apache.xmlrpc.XmlRpcTransport;
+import org.apache.xmlrpc.XmlRpcTransportFactory;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * An {@link XmlRpcTransportFactory} whose transports share a single,
+ * JVM-wide pool of HTTP/1.1 keep-alive connections, so that clients making
+ * many calls to the same server (crawlers, PGE staging, workflow status
+ * updates) don't open a new TCP connection for each one. The pool is sized
+ * by the following properties:
+ * <ul>
+ * <li><code>org.apache.oodt.commons.xmlrpc.maxConnectionsPerHost</code>: the
+ * most connections open to any one host (default 20)</li>
+ * <li><code>org.apache.oodt.commons.xmlrpc.maxConnectionsPerHost.&lt;host&gt;</code>:
+ * overrides the above for the named host</li>
+ * <li><code>org.apache.oodt.commons.xmlrpc.maxTotalConnections</code>: the
+ * most connections open altogether (default 100)</li>
+ * <li><code>org.apache.oodt.commons.xmlrpc.keepAlive</code>: set to false to
+ * go back to closing the connection after each call</li>
+ * </ul>
+ * The call counts and latencies of each host are kept in its
+ * {@link XmlRpcCallMetrics} (see {@link #getMetrics(URL)}), and
+ * {@link #submit(Callable)} runs client calls asynchronously.
+ * </p>
+ *
+ * <p>
+ * Connection timeouts are a property of the shared pool, so the pool uses
+ * the longest one asked for by any factory; request timeouts and retries are
+ * per factory.
+ * </p>
+ */
+public class PooledXmlRpcTransportFactory implements XmlRpcTransportFactory {
+
+    private static final MultiThreadedHttpConnectionManager CONNECTION_MANAGER = createConnectionManager();
+
+    private static final ConcurrentMap<String, XmlRpcCallMetrics> METRICS = new ConcurrentHashMap<String, XmlRpcCallMetrics>();
+
+    private static ExecutorService asyncExecutor;
+
+    private final URL url;
+
+    private final HttpClient client;
+
+    private final XmlRpcCallMetrics metrics;
+
+    private final int requestTimeoutMillis;
+
+    private final boolean keepAlive;
+
+    /**
+     * Creates a factory that retries a call 3 times straight away, waits at
+     * most 20 minutes to connect and at most 60 minutes for a response.
+     *
+     * @param url
+     *            The URL of the XML-RPC server.
+     */
+    public PooledXmlRpcTransportFactory(URL url) {
+        this(url, 3, 0, 20 * 60 * 1000, 60 * 60 * 1000);
+    }
+
+    /**
+     * @param url
+     *            The URL of the XML-RPC server.
+     * @param retries
+     *            How many times to retry a call that fails before its
+     *            request has been sent. A call that fails after that is
+     *            never retried.
+     * @param retryIntervalSeconds
+     *            How long to wait before each retry.
+     * @param connectionTimeoutMillis
+     *            How long to wait for a connection to the server.
+     * @param requestTimeoutMillis
+     *            How long to wait for a response from the server.
+     */
+    public PooledXmlRpcTransportFactory(URL url, final int retries,
+            final int retryIntervalSeconds, int connectionTimeoutMillis,
+            int requestTimeoutMillis) {
+        this.url = url;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.keepAlive = Boolean.valueOf(
+                System.getProperty("org.apache.oodt.commons.xmlrpc.keepAlive",
+                        "true")).booleanValue();
+        this.metrics = getMetrics(url);
+        configureHost(url, connectionTimeoutMillis);
+
+        this.client = new HttpClient(CONNECTION_MANAGER);
+        this.client.getParams().setParameter(HttpMethodParams.RETRY_HANDLER,
+                new HttpMethodRetryHandler() {
+
+                    public boolean retryMethod(HttpMethod method,
+                            IOException e, int count) {
+                        // once the request went out the server may have
+                        // acted on it, so resending could run it twice
+                        if (count < retries && !method.isRequestSent()) {
+                            try {
+                                Thread.sleep(retryIntervalSeconds * 1000L);
+                                return true;
+                            } catch (InterruptedException ignore) {
+                            }
+                        }
+                        return false;
+                    }
+
+                });
+    }
+
+    public XmlRpcTransport createTransport() throws XmlRpcClientException {
+        MeteredTransport transport = new MeteredTransport(this.url,
+                this.client, this.metrics);
+        transport.setHttp11(this.keepAlive);
+        transport.setTimeout(this.requestTimeoutMillis);
+        return transport;
+    }
+
+    public void setProperty(String propertyName, Object value) {
+    }
+
+    /**
+     * @param url
+     *            The URL of an XML-RPC server.
+     * @return The call counts and latencies of the server's host.
+     */
+    public static XmlRpcCallMetrics getMetrics(URL url) {
+        String host = getHostKey(url);
+        XmlRpcCallMetrics metrics = METRICS.get(host);
+        if (metrics == null) {
+            metrics = new XmlRpcCallMetrics(host);
+            XmlRpcCallMetrics existing = METRICS.putIfAbsent(host, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @return The call counts and latencies of every host called so far.
+     */
+    public static List<XmlRpcCallMetrics> getAllMetrics() {
+        return new Vector<XmlRpcCallMetrics>(METRICS.values());
+    }
+
+    /**
+     * Limits the number of connections open to a host, overriding the
+     * <code>org.apache.oodt.commons.xmlrpc.maxConnectionsPerHost</code>
+     * properties.
+     *
+     * @param url
+     *            The URL of an XML-RPC server on the host.
+     * @param maxConnections
+     *            The most connections to have open to the host.
+     */
+    public static void setMaxConnectionsPerHost(URL url, int maxConnections) {
+        CONNECTION_MANAGER.getParams().setMaxConnectionsPerHost(
+                getHostConfiguration(url), maxConnections);
+    }
+
+    /**
+     * @param url
+     *            The URL of an XML-RPC server.
+     * @return The most connections that may be open to the server's host.
+     */
+    public static int getMaxConnectionsPerHost(URL url) {
+        return CONNECTION_MANAGER.getParams().getMaxConnectionsPerHost(
+                getHostConfiguration(url));
+    }
+
+    /**
+     * @param url
+     *            The URL of an XML-RPC server.
+     * @return The number of connections, busy or idle, open to the server's
+     *         host.
+     */
+    public static int getConnectionsInPool(URL url) {
+        return CONNECTION_MANAGER
+                .getConnectionsInPool(getHostConfiguration(url));
+    }
+
+    /**
+     * Closes connections that haven't been used for a while.
+     *
+     * @param idleMillis
+     *            How long a connection must have been idle to be closed.
+     */
+    public static void closeIdleConnections(long idleMillis) {
+        CONNECTION_MANAGER.closeIdleConnections(idleMillis);
+    }
+
+    /**
+     * Runs a client call in the background, on a shared pool of daemon
+     * threads sized by
+     * <code>org.apache.oodt.commons.xmlrpc.async.threads</code> (default 20).
+     * The calls themselves still go through the connection pool, so the per
+     * host limits apply to them as well.
+     *
+     * @param call
+     *            The call to make.
+     * @return The result of the call, once it is done.
+     */
+    public static <T> Future<T> submit(Callable<T> call) {
+        return getAsyncExecutor().submit(call);
+    }
+
+    private static synchronized ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            int threads = Integer.getInteger(
+                    "org.apache.oodt.commons.xmlrpc.async.threads", 20)
+                    .intValue();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+                    threads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "XmlRpcAsync-"
+                                    + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            asyncExecutor = executor;
+        }
+        return asyncExecutor;
+    }
+
+    private static MultiThreadedHttpConnectionManager createConnectionManager() {
+        MultiThreadedHttpConnectionManager manager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = manager.getParams();
+        params.setDefaultMaxConnectionsPerHost(Integer.getInteger(
+                "org.apache.oodt.commons.xmlrpc.maxConnectionsPerHost", 20)
+                .intValue());
+        params.setMaxTotalConnections(Integer.getInteger(
+                "org.apache.oodt.commons.xmlrpc.maxTotalConnections", 100)
+                .intValue());
+        params.setStaleCheckingEnabled(true);
+        return manager;
+    }
+
+    private static synchronized void configureHost(URL url,
+            int connectionTimeoutMillis) {
+        HttpConnectionManagerParams params = CONNECTION_MANAGER.getParams();
+        if (connectionTimeoutMillis > params.getConnectionTimeout()) {
+            params.setConnectionTimeout(connectionTimeoutMillis);
+        }
+        Integer hostMax = Integer
+                .getInteger("org.apache.oodt.commons.xmlrpc.maxConnectionsPerHost."
+                        + url.getHost());
+        if (hostMax != null) {
+            params.setMaxConnectionsPerHost(getHostConfiguration(url), hostMax
+                    .intValue());
+        }
+    }
+
+    private static HostConfiguration getHostConfiguration(URL url) {
+        HostConfiguration hostConfig = new HostConfiguration();
+        hostConfig.setHost(url.getHost(), getPort(url), url.getProtocol());
+        return hostConfig;
+    }
+
+    private static String getHostKey(URL url) {
+        return url.getHost() + ":" + getPort(url);
+    }
+
+    private static int getPort(URL url) {
+        return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    }
+
+    /*
+     * A transport is made for every call, so it can time its call.
+     */
+    private static class MeteredTransport extends CommonsXmlRpcTransport {
+
+        private final XmlRpcCallMetrics metrics;
+
+        private long start = -1L;
+
+        private boolean failed = false;
+
+        public MeteredTransport(URL url, HttpClient client,
+                XmlRpcCallMetrics metrics) {
+            super(url, client);
+            this.metrics = metrics;
+        }
+
+        public InputStream sendXmlRpc(byte[] request) throws IOException,
+                XmlRpcClientException {
+            this.start = System.nanoTime();
+            try {
+                return super.sendXmlRpc(request);
+            } catch (IOException e) {
+                this.failed = true;
+                throw e;
+            } catch (XmlRpcClientException e) {
+                this.failed = true;
+                throw e;
+            }
+        }
+
+        public void endClientRequest() throws XmlRpcClientException {
+            try {
+                super.endClientRequest();
+            } finally {
+                if (this.start != -1L) {
+                    this.metrics.addCall(System.nanoTime() - this.start,
+                            this.failed);
+                    this.start = -1L;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.commons.xmlrpc;
+
+//JDK imports
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * Call counts and latencies of the XML-RPC calls made to a single host
+ * through a {@link PooledXmlRpcTransportFactory}. A call's latency runs from
+ * sending the request until its response has been read.
+ * </p>
+ */
+public class XmlRpcCallMetrics {
+
+    private final String host;
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public XmlRpcCallMetrics(String host) {
+        this.host = host;
+    }
+
+    /**
+     * Records a finished call.
+     *
+     * @param nanos
+     *            How long the call took.
+     * @param failed
+     *            Whether the request couldn't be sent or answered.
+     */
+    public void addCall(long nanos, boolean failed) {
+        this.calls.incrementAndGet();
+        if (failed) {
+            this.failures.incrementAndGet();
+        }
+        this.totalNanos.addAndGet(nanos);
+        long max = this.maxNanos.get();
+        while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+            max = this.maxNanos.get();
+        }
+    }
+
+    public String getHost() {
+        return this.host;
+    }
+
+    public long getCalls() {
+        return this.calls.get();
+    }
+
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * @return The average latency of a call in milliseconds, or 0 if there
+     *         have been none.
+     */
+    public double getAverageLatency() {
+        long calls = this.calls.get();
+        return calls > 0 ? this.totalNanos.get() / 1000000.0 / calls : 0.0;
+    }
+
+    /**
+     * @return The longest latency of a call in milliseconds.
+     */
+    public double getMaxLatency() {
+        return this.maxNanos.get() / 1000000.0;
+    }
+
+    /**
+     * Forgets every recorded call.
+     */
+    public void reset() {
+        this.calls.set(0L);
+        this.failures.set(0L);
+        this.totalNanos.set(0L);
+        this.maxNanos.set(0L);
+    }
+
+    @Override
+    public String toString() {
+        return "XmlRpcCallMetrics [host=" + this.host + ", calls="
+                + this.getCalls() + ", failures=" + this.getFailures()
+                + ", avgLatencyMillis=" + this.getAverageLatency()
+                + ", maxLatencyMillis=" + this.getMaxLatency() + "]";
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.commons.rpc;
+
+//JDK imports
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+//APACHE imports
+import org.apache.xmlrpc.WebServer;
+import org.apache.xmlrpc.XmlRpcClient;
+
+//Junit imports
+import junit.framework.TestCase;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * Test case for the {@link BinaryRpcServer} and {@link BinaryRpcClient}.
+ * </p>
+ */
+public class BinaryRpcServerTest extends TestCase {
+
+    private BinaryRpcServer server;
+
+    private BinaryRpcClient client;
+
+    protected void setUp() throws Exception {
+        this.server = new BinaryRpcServer(0, 500);
+        this.server.addHandler("test", new TestHandler());
+        this.server.start();
+        this.client = new BinaryRpcClient("localhost", this.server.getPort(),
+                5000);
+    }
+
+    protected void tearDown() throws Exception {
+        this.client.close();
+        this.server.shutdown();
+    }
+
+    public void testEcho() throws Exception {
+        List<String> values = Arrays.asList("a", null, "", "\u00e9t\u00e9");
+        BinaryRpcRequest request = new BinaryRpcRequest("test.echo");
+        BinaryCodec.writeStringList(request, values);
+        assertEquals(values, BinaryCodec.readStringList(this.client
+                .execute(request)));
+    }
+
+    public void testLongString() throws Exception {
+        // longer than writeUTF allows
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+        BinaryRpcRequest request = new BinaryRpcRequest("test.echo");
+        BinaryCodec.writeStringList(request, Arrays.asList(value.toString()));
+        assertEquals(value.toString(), BinaryCodec.readStringList(
+                this.client.execute(request)).get(0));
+    }
+
+    public void testProperties() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("key1", "value1");
+        props.setProperty("key2", "value2");
+        BinaryRpcRequest request = new BinaryRpcRequest("test.properties");
+        BinaryCodec.writeProperties(request, props);
+        assertEquals(props, BinaryCodec.readProperties(this.client
+                .execute(request)));
+    }
+
+    public void testErrors() throws Exception {
+        try {
+            this.client.execute(new BinaryRpcRequest("test.fail"));
+            fail("Failed call should throw");
+        } catch (BinaryRpcException e) {
+            assertEquals("failed on purpose", e.getMessage());
+        }
+        try {
+            this.client.execute(new BinaryRpcRequest("missing.echo"));
+            fail("Call to a missing handler should throw");
+        } catch (BinaryRpcException expected) {
+        }
+
+        // the connection is still usable
+        testEcho();
+    }
+
+    public void testIdleConnectionClosed() throws Exception {
+        testEcho();
+        // the server closes the pooled connection
+        Thread.sleep(1000);
+        testEcho();
+    }
+
+    public void testRequestTooLarge() throws Exception {
+        String oldMax = System.getProperty(
+                "org.apache.oodt.commons.rpc.maxRequestBytes");
+        System.setProperty("org.apache.oodt.commons.rpc.maxRequestBytes",
+                "1024");
+        BinaryRpcServer smallServer = new BinaryRpcServer(0, 500);
+        if (oldMax != null) {
+            System.setProperty("org.apache.oodt.commons.rpc.maxRequestBytes",
+                    oldMax);
+        } else {
+            System.clearProperty("org.apache.oodt.commons.rpc.maxRequestBytes");
+        }
+        smallServer.addHandler("test", new TestHandler());
+        smallServer.start();
+        BinaryRpcClient smallClient = new BinaryRpcClient("localhost",
+                smallServer.getPort(), 5000);
+        try {
+            char[] value = new char[2000];
+            Arrays.fill(value, 'a');
+            BinaryRpcRequest request = new BinaryRpcRequest("test.echo");
+            BinaryCodec.writeStringList(request, Arrays.asList(new String(
+                    value)));
+            try {
+                smallClient.execute(request);
+                fail("Request over the limit should be refused");
+            } catch (BinaryRpcException e) {
+                assertTrue(e.getMessage().indexOf("limit") != -1);
+            }
+
+            // smaller ones still get through
+            request = new BinaryRpcRequest("test.echo");
+            BinaryCodec.writeStringList(request, Arrays.asList("a"));
+            assertEquals(Arrays.asList("a"), BinaryCodec
+                    .readStringList(smallClient.execute(request)));
+        } finally {
+            smallClient.close();
+            smallServer.shutdown();
+        }
+    }
+
+    public void testNegotiate() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+        WebServer webServer = new WebServer(port);
+        webServer.addHandler("binary", new BinaryPortHandler(this.server
+                .getPort()));
+        webServer.addHandler("xmlonly", new Object());
+        webServer.start();
+        try {
+            XmlRpcClient xmlRpcClient = new XmlRpcClient(new URL(
+                    "http://localhost:" + port));
+            BinaryRpcClient negotiated = BinaryRpcClient.negotiate(
+                    xmlRpcClient, "localhost", "binary", 5000);
+            assertNotNull(negotiated);
+            assertEquals(this.server.getPort(), negotiated.getPort());
+            assertNull(BinaryRpcClient.negotiate(xmlRpcClient, "localhost",
+                    "xmlonly", 5000));
+        } finally {
+            webServer.shutdown();
+        }
+    }
+
+    private static class TestHandler implements BinaryRpcHandler {
+        public void execute(String method, DataInputStream args,
+                DataOutputStream result) throws Exception {
+            if (method.equals("echo")) {
+                BinaryCodec.writeStringList(result, BinaryCodec
+                        .readStringList(args));
+            } else if (method.equals("properties")) {
+                BinaryCodec.writeProperties(result, BinaryCodec
+                        .readProperties(args));
+            } else if (method.equals("fail")) {
+                throw new Exception("failed on purpose");
+            } else {
+                throw new BinaryRpcException("Unknown method: [" + method
+                        + "]");
+            }
+        }
+    }
+
+    public static class BinaryPortHandler {
+        private final int port;
+
+        public BinaryPortHandler(int port) {
+            this.port = port;
+        }
+
+        public int getBinaryRpcPort() {
+            return this.port;
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.commons.xmlrpc;
+
+//JDK imports
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//APACHE imports
+import org.apache.xmlrpc.WebServer;
+import org.apache.xmlrpc.XmlRpcClient;
+
+//Junit imports
+import junit.framework.TestCase;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * Test case for the {@link PooledXmlRpcTransportFactory}.
+ * </p>
+ */
+public class PooledXmlRpcTransportFactoryTest extends TestCase {
+
+    private WebServer server;
+
+    private URL url;
+
+    protected void setUp() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+        this.server = new WebServer(port);
+        this.server.addHandler("echo", new EchoHandler());
+        this.server.start();
+        this.url = new URL("http://localhost:" + port);
+    }
+
+    protected void tearDown() throws Exception {
+        this.server.shutdown();
+    }
+
+    public void testKeepAlive() throws Exception {
+        XmlRpcClient client = new XmlRpcClient(this.url,
+                new PooledXmlRpcTransportFactory(this.url));
+        for (int i = 0; i < 10; i++) {
+            assertEquals("hello" + i, this.echo(client, "hello" + i));
+        }
+        assertEquals(1, PooledXmlRpcTransportFactory
+                .getConnectionsInPool(this.url));
+
+        XmlRpcCallMetrics metrics = PooledXmlRpcTransportFactory
+                .getMetrics(this.url);
+        assertEquals(10, metrics.getCalls());
+        assertEquals(0, metrics.getFailures());
+        assertTrue(metrics.getMaxLatency() >= metrics.getAverageLatency());
+    }
+
+    public void testSubmit() throws Exception {
+        final XmlRpcClient client = new XmlRpcClient(this.url,
+                new PooledXmlRpcTransportFactory(this.url));
+        List<Future<String>> results = new Vector<Future<String>>();
+        for (int i = 0; i < 20; i++) {
+            final String message = "hello" + i;
+            results.add(PooledXmlRpcTransportFactory
+                    .submit(new Callable<String>() {
+                        public String call() throws Exception {
+                            return echo(client, message);
+                        }
+                    }));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals("hello" + i, results.get(i).get());
+        }
+        assertTrue(PooledXmlRpcTransportFactory.getConnectionsInPool(this.url) <= PooledXmlRpcTransportFactory
+                .getMaxConnectionsPerHost(this.url));
+    }
+
+    public void testMaxConnectionsPerHost() throws Exception {
+        assertEquals(20, PooledXmlRpcTransportFactory
+                .getMaxConnectionsPerHost(this.url));
+        PooledXmlRpcTransportFactory.setMaxConnectionsPerHost(this.url, 2);
+        assertEquals(2, PooledXmlRpcTransportFactory
+                .getMaxConnectionsPerHost(this.url));
+        assertEquals(20, PooledXmlRpcTransportFactory
+                .getMaxConnectionsPerHost(new URL("http://localhost:1")));
+    }
+
+    public void testFailures() throws Exception {
+        URL badUrl = new URL("http://localhost:1");
+        XmlRpcClient client = new XmlRpcClient(badUrl,
+                new PooledXmlRpcTransportFactory(badUrl, 0, 0, 1000, 1000));
+        try {
+            this.echo(client, "hello");
+            fail("Call to a closed port should fail");
+        } catch (Exception expected) {
+        }
+        XmlRpcCallMetrics metrics = PooledXmlRpcTransportFactory
+                .getMetrics(badUrl);
+        assertEquals(1, metrics.getCalls());
+        assertEquals(1, metrics.getFailures());
+    }
+
+    public void testNoRetryAfterRequestSent() throws Exception {
+        final ServerSocket dropping = new ServerSocket(0);
+        final AtomicInteger requests = new AtomicInteger();
+        Thread acceptor = new Thread() {
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = dropping.accept();
+                        InputStream in = socket.getInputStream();
+                        if (in.read() != -1) {
+                            requests.incrementAndGet();
+                        }
+                        socket.close();
+                    }
+                } catch (Exception done) {
+                }
+            }
+        };
+        acceptor.start();
+        URL droppingUrl = new URL("http://localhost:"
+                + dropping.getLocalPort());
+        XmlRpcClient client = new XmlRpcClient(droppingUrl,
+                new PooledXmlRpcTransportFactory(droppingUrl, 3, 0, 1000,
+                        1000));
+        try {
+            this.echo(client, "hello");
+            fail("Call to a server that drops requests should fail");
+        } catch (Exception expected) {
+        } finally {
+            dropping.close();
+            acceptor.join();
+        }
+        assertEquals(1, requests.get());
+    }
+
+    private String echo(XmlRpcClient client, String message)
+            throws Exception {
+        Vector<Object> args = new Vector<Object>();
+        args.add(message);
+        return (String) client.execute("echo.echo", args);
+    }
+
+    public static class EchoHandler {
+        public String echo(String message) {
+            return message;
+        }
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.crawl;
+
+//JDK imports
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Remembers, for each directory of a crawl, its last modification time, its
+ * subdirectories and the products already handled in it (with their
+ * modification times), so that
+ * {@link ProductCrawler#crawlIncremental(File, CrawlIndex)} only has to list
+ * directories that have changed since the last crawl, and only has to handle
+ * products that are new or changed. The index can be saved to, and loaded from,
+ * a file so that it survives restarts.
+ * </p>.
+ */
+public class CrawlIndex {
+
+   private static final int MAGIC = 0x4f435849; // "OCXI"
+
+   private static final int VERSION = 1;
+
+   private final File indexFile;
+
+   private final Map<String, Directory> directories;
+
+   /**
+    * @param indexFile
+    *           The file the index is saved to and loaded from, or null to keep
+    *           it in memory only.
+    */
+   public CrawlIndex(File indexFile) {
+      this.indexFile = indexFile;
+      this.directories = new HashMap<String, Directory>();
+   }
+
+   public File getIndexFile() {
+      return indexFile;
+   }
+
+   public synchronized Directory getDirectory(File dir) {
+      return directories.get(dir.getAbsolutePath());
+   }
+
+   public synchronized void putDirectory(File dir, Directory directory) {
+      directories.put(dir.getAbsolutePath(), directory);
+   }
+
+   /**
+    * Forgets every directory not in the given set (e.g., ones that have been
+    * deleted since they were last crawled).
+    * 
+    * @param dirs
+    *           The absolute paths of the directories to keep.
+    */
+   public synchronized void retainDirectories(Set<String> dirs) {
+      directories.keySet().retainAll(dirs);
+   }
+
+   public synchronized int size() {
+      return directories.size();
+   }
+
+   public synchronized void clear() {
+      directories.clear();
+   }
+
+   /**
+    * Loads the index from its file, replacing whatever is in memory. Does
+    * nothing if there is no index file, or it doesn't exist yet.
+    */
+   public synchronized void load() throws IOException {
+      if (indexFile == null || !indexFile.exists()) {
+         return;
+      }
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(indexFile)));
+      try {
+         if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a crawl index: " + indexFile);
+         }
+         Map<String, Directory> loaded = new HashMap<String, Directory>();
+         for (int i = in.readInt(); i > 0; i--) {
+            String path = in.readUTF();
+            long lastModified = in.readLong();
+            Set<String> subdirs = new HashSet<String>();
+            for (int j = in.readInt(); j > 0; j--) {
+               subdirs.add(in.readUTF());
+            }
+            Map<String, Long> products = new HashMap<String, Long>();
+            for (int j = in.readInt(); j > 0; j--) {
+               products.put(in.readUTF(), in.readLong());
+            }
+            loaded.put(path, new Directory(lastModified, subdirs, products));
+         }
+         directories.clear();
+         directories.putAll(loaded);
+      } finally {
+         in.close();
+      }
+   }
+
+   /**
+    * Saves the index to its file. The file is replaced only once the new one
+    * has been completely written, so a crash never leaves half an index.
+    */
+   public synchronized void save() throws IOException {
+      if (indexFile == null) {
+         return;
+      }
+      File tmpFile = new File(indexFile.getAbsolutePath() + ".tmp");
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(tmpFile)));
+      try {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeInt(directories.size());
+         for (Map.Entry<String, Directory> entry : directories.entrySet()) {
+            Directory directory = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeLong(directory.lastModified);
+            out.writeInt(directory.subdirs.size());
+            for (String subdir : directory.subdirs) {
+               out.writeUTF(subdir);
+            }
+            out.writeInt(directory.products.size());
+            for (Map.Entry<String, Long> product : directory.products
+                  .entrySet()) {
+               out.writeUTF(product.getKey());
+               out.writeLong(product.getValue());
+            }
+         }
+      } finally {
+         out.close();
+      }
+      if (!tmpFile.renameTo(indexFile)) {
+         // some platforms won't rename over an existing file
+         indexFile.delete();
+         if (!tmpFile.renameTo(indexFile)) {
+            throw new IOException("Failed to replace crawl index " + indexFile
+                  + " with " + tmpFile);
+         }
+      }
+   }
+
+   /**
+    * What is known about a crawled directory.
+    */
+   public static class Directory {
+
+      private final long lastModified;
+
+      private final Set<String> subdirs;
+
+      private final Map<String, Long> products;
+
+      /**
+       * @param lastModified
+       *           The directory's modification time when it was listed, or -1
+       *           if it must be listed again next crawl.
+       * @param subdirs
+       *           The names of the directory's subdirectories.
+       * @param products
+       *           The names of the products already handled, with their
+       *           modification times when they were.
+       */
+      public Directory(long lastModified, Collection<String> subdirs,
+            Map<String, Long> products) {
+         this.lastModified = lastModified;
+         this.subdirs = new HashSet<String>(subdirs);
+         this.products = new HashMap<String, Long>(products);
+      }
+
+      public long getLastModified() {
+         return lastModified;
+      }
+
+      public Set<String> getSubdirs() {
+         return subdirs;
+      }
+
+      /**
+       * @return True if the product was handled, and hasn't been modified
+       *         since.
+       */
+      public boolean isHandled(File product) {
+         Long lastModified = products.get(product.getName());
+         return lastModified != null
+               && lastModified.longValue() == product.lastModified();
+      }
+
+      public Map<String, Long> getProducts() {
+         return products;
+      }
+   }
+}
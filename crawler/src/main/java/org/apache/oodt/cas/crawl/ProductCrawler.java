@@ -21,6 +21,7 @@ import org.apache.oodt.cas.crawl.action.CrawlerAction;
 import org.apache.oodt.cas.crawl.action.CrawlerActionRepo;
 import org.apache.oodt.cas.crawl.config.ProductCrawlerBean;
 import org.apache.oodt.cas.crawl.status.IngestStatus;
+import org.apache.oodt.cas.crawl.status.StageMetrics;
 import org.apache.oodt.cas.filemgr.ingest.Ingester;
 import org.apache.oodt.cas.filemgr.ingest.StdIngester;
 import org.apache.oodt.cas.filemgr.metadata.CoreMetKeys;
@@ -33,9 +34,20 @@ import java.io.File;
 import java.io.FileFilter;
 import java.net.URL;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -67,7 +79,17 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
       }
    };
 
+   // marks the end of the products handed from one pipeline stage to the next
+   private static final File END_OF_PRODUCTS = new File("");
+   private static final CrawledProduct END_OF_CRAWL = new CrawledProduct(
+         (IngestStatus) null);
+
+   // directories modified more recently than this are listed again next
+   // incremental crawl
+   private static final long RECENTLY_MODIFIED_MILLIS = 2000L;
+
    protected List<IngestStatus> ingestStatus = new Vector<IngestStatus>();
+   protected List<StageMetrics> stageMetrics = new Vector<StageMetrics>();
    protected CrawlerActionRepo actionRepo;
    protected Ingester ingester;
 
@@ -76,8 +98,32 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
    }
 
    public void crawl(File dirRoot) {
+      prepareCrawl(dirRoot);
+
+      // Start crawling.
+      if (isPipelined()) {
+         crawlPipelined(dirRoot);
+      } else {
+         try {
+            walk(dirRoot, new ProductVisitor() {
+               public void visit(File product) {
+                  ingestStatus.add(handleFile(product));
+               }
+            }, null);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   /*
+    * Resets the ingest status and sets up the actions and ingester for a
+    * crawl of the given directory.
+    */
+   private void prepareCrawl(File dirRoot) {
       // Reset ingest status.
       ingestStatus.clear();
+      stageMetrics.clear();
 
       // Load actions.
       loadAndValidateActions();
@@ -89,27 +135,287 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
       if (dirRoot == null || !dirRoot.exists()) {
          throw new IllegalArgumentException("dir root is null or non existant!");
       }
+   }
+
+   /**
+    * Crawls only what has changed since the crawl recorded in the given index:
+    * directories whose modification time hasn't changed are not listed (their
+    * recorded subdirectories are still visited), and products already handled
+    * are not handled again unless their modification time has changed. The
+    * index is updated as the crawl goes.
+    * 
+    * <p>
+    * Only ingested products count as handled: a directory holding any product
+    * that failed, was skipped or failed its preconditions is listed again
+    * every crawl until all of its products are ingested. A product rewritten
+    * in place after being ingested doesn't change its directory's
+    * modification time, so it is only picked up by a crawl with an empty
+    * index. Incremental crawls are never pipelined.
+    * </p>
+    * 
+    * @param dirRoot
+    *           The directory to crawl.
+    * @param index
+    *           What the last crawl of dirRoot found.
+    */
+   public void crawlIncremental(File dirRoot, CrawlIndex index) {
+      prepareCrawl(dirRoot);
 
       // Start crawling.
+      Set<String> crawledDirs = new HashSet<String>();
+      Stack<File> stack = new Stack<File>();
+      stack.push(dirRoot.isDirectory() ? dirRoot : dirRoot.getParentFile());
+      while (!stack.isEmpty()) {
+         File dir = (File) stack.pop();
+         crawledDirs.add(dir.getAbsolutePath());
+
+         long lastModified = dir.lastModified();
+         CrawlIndex.Directory known = index.getDirectory(dir);
+         if (known == null || known.getLastModified() != lastModified) {
+            known = crawlChangedDirectory(dir, lastModified, known);
+            index.putDirectory(dir, known);
+         }
+
+         if (!isNoRecur()) {
+            for (String subdir : known.getSubdirs()) {
+               stack.push(new File(dir, subdir));
+            }
+         }
+      }
+      if (!isNoRecur()) {
+         index.retainDirectories(crawledDirs);
+      }
+   }
+
+   /*
+    * Lists a directory that changed since it was last crawled and handles
+    * its new and changed products.
+    */
+   private CrawlIndex.Directory crawlChangedDirectory(File dir,
+         long lastModified, CrawlIndex.Directory known) {
+      LOG.log(Level.INFO, "Crawling " + dir);
+
+      File[] productFiles = null;
+      if (isCrawlForDirs()) {
+         productFiles = dir.listFiles(DIR_FILTER);
+      } else {
+         productFiles = dir.listFiles(FILE_FILTER);
+      }
+      if (productFiles == null) {
+         // the directory has gone away
+         productFiles = new File[0];
+      }
+
+      Map<String, Long> handled = new HashMap<String, Long>();
+      boolean complete = true;
+      for (int j = 0; j < productFiles.length; j++) {
+         File product = productFiles[j];
+         if (known != null && known.isHandled(product)) {
+            handled.put(product.getName(), product.lastModified());
+            continue;
+         }
+         long productLastModified = product.lastModified();
+         IngestStatus status = handleFile(product);
+         ingestStatus.add(status);
+         if (status.getResult().equals(IngestStatus.Result.SUCCESS)) {
+            handled.put(product.getName(), productLastModified);
+         } else {
+            // try again next crawl, the product may have become acceptable
+            // without its directory changing
+            complete = false;
+         }
+      }
+
+      List<String> subdirs = new Vector<String>();
+      File[] subdirFiles = dir.listFiles(DIR_FILTER);
+      if (subdirFiles != null) {
+         for (int j = 0; j < subdirFiles.length; j++) {
+            subdirs.add(subdirFiles[j].getName());
+         }
+      }
+
+      // A directory changed so recently that it could change again within
+      // the file system's timestamp granularity can't be trusted to show it.
+      if (System.currentTimeMillis() - lastModified < RECENTLY_MODIFIED_MILLIS) {
+         complete = false;
+      }
+      return new CrawlIndex.Directory(complete ? lastModified : -1, subdirs,
+            handled);
+   }
+
+   public IngestStatus handleFile(File product) {
+      CrawledProduct crawled = prepareProduct(product);
+      if (crawled.status != null) {
+         return crawled.status;
+      }
+      return ingestProduct(crawled.product, crawled.metadata);
+   }
+
+   /**
+    * @return The throughput of each stage of the last pipelined crawl (or of
+    *         the one still running), in pipeline order; empty if the last crawl
+    *         was not pipelined.
+    */
+   public List<StageMetrics> getStageMetrics() {
+      return Collections.unmodifiableList(stageMetrics);
+   }
+
+   /*
+    * Runs the crawl as three stages connected by bounded queues: this thread
+    * lists product files, extractorThreads threads check preconditions,
+    * extract met and run the preIngest actions, and ingestThreads threads
+    * ingest and run the postIngest actions. A stage that gets ahead of the
+    * next one blocks once the queue between them is full. With more than one
+    * thread in a stage, the extractors, actions and File Manager client that
+    * stage uses are shared between its threads and must be thread-safe.
+    */
+   private void crawlPipelined(File dirRoot) {
+      int queueSize = Math.max(1, getPipelineQueueSize());
+      final int numExtractors = Math.max(1, getExtractorThreads());
+      final int numIngesters = Math.max(1, getIngestThreads());
+      final BlockingQueue<File> toExtract = new ArrayBlockingQueue<File>(
+            queueSize);
+      final BlockingQueue<CrawledProduct> toIngest =
+            new ArrayBlockingQueue<CrawledProduct>(queueSize);
+      final StageMetrics listStage = new StageMetrics("list", 1);
+      final StageMetrics extractStage = new StageMetrics("extract",
+            numExtractors);
+      final StageMetrics ingestStage = new StageMetrics("ingest",
+            numIngesters);
+      stageMetrics.add(listStage);
+      stageMetrics.add(extractStage);
+      stageMetrics.add(ingestStage);
+
+      final AtomicInteger runningExtractors = new AtomicInteger(numExtractors);
+      ExecutorService workers = Executors.newFixedThreadPool(numExtractors
+            + numIngesters, new ThreadFactory() {
+         private final AtomicInteger count = new AtomicInteger();
+         public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ProductCrawler-"
+                  + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+      try {
+         extractStage.start();
+         for (int i = 0; i < numExtractors; i++) {
+            workers.execute(new Runnable() {
+               public void run() {
+                  try {
+                     for (File product = toExtract.take();
+                           product != END_OF_PRODUCTS;
+                           product = toExtract.take()) {
+                        long start = System.nanoTime();
+                        CrawledProduct crawled = prepareProductSafely(product);
+                        extractStage.addProduct(System.nanoTime() - start);
+                        if (crawled.status != null) {
+                           ingestStatus.add(crawled.status);
+                        } else {
+                           long blockStart = System.nanoTime();
+                           toIngest.put(crawled);
+                           extractStage.addBlocked(System.nanoTime()
+                                 - blockStart);
+                        }
+                     }
+                  } catch (InterruptedException e) {
+                     Thread.currentThread().interrupt();
+                  } finally {
+                     if (runningExtractors.decrementAndGet() == 0) {
+                        extractStage.stop();
+                        try {
+                           for (int j = 0; j < numIngesters; j++) {
+                              toIngest.put(END_OF_CRAWL);
+                           }
+                        } catch (InterruptedException e) {
+                           Thread.currentThread().interrupt();
+                        }
+                     }
+                  }
+               }
+            });
+         }
+         ingestStage.start();
+         for (int i = 0; i < numIngesters; i++) {
+            workers.execute(new Runnable() {
+               public void run() {
+                  try {
+                     for (CrawledProduct crawled = toIngest.take();
+                           crawled != END_OF_CRAWL;
+                           crawled = toIngest.take()) {
+                        long start = System.nanoTime();
+                        ingestStatus.add(ingestProductSafely(crawled.product,
+                              crawled.metadata));
+                        ingestStage.addProduct(System.nanoTime() - start);
+                     }
+                  } catch (InterruptedException e) {
+                     Thread.currentThread().interrupt();
+                  }
+               }
+            });
+         }
+         workers.shutdown();
+
+         listStage.start();
+         try {
+            walk(dirRoot, new ProductVisitor() {
+               public void visit(File product) throws InterruptedException {
+                  listStage.addProduct(0L);
+                  long blockStart = System.nanoTime();
+                  toExtract.put(product);
+                  listStage.addBlocked(System.nanoTime() - blockStart);
+               }
+            }, listStage);
+         } finally {
+            listStage.stop();
+            for (int i = 0; i < numExtractors; i++) {
+               toExtract.put(END_OF_PRODUCTS);
+            }
+         }
+
+         workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+         ingestStage.stop();
+      } catch (InterruptedException e) {
+         LOG.log(Level.WARNING, "Interrupted while crawling " + dirRoot
+               + ": stopping crawl");
+         workers.shutdownNow();
+         Thread.currentThread().interrupt();
+      }
+
+      for (StageMetrics stage : stageMetrics) {
+         LOG.log(Level.INFO, stage.toString());
+      }
+   }
+
+   private void walk(File dirRoot, ProductVisitor visitor,
+         StageMetrics listStage) throws InterruptedException {
       Stack<File> stack = new Stack<File>();
       stack.push(dirRoot.isDirectory() ? dirRoot : dirRoot.getParentFile());
       while (!stack.isEmpty()) {
          File dir = (File) stack.pop();
          LOG.log(Level.INFO, "Crawling " + dir);
 
+         long start = System.nanoTime();
          File[] productFiles = null;
          if (isCrawlForDirs()) {
             productFiles = dir.listFiles(DIR_FILTER);
          } else {
             productFiles = dir.listFiles(FILE_FILTER);
          }
+         if (listStage != null) {
+            listStage.addBusy(System.nanoTime() - start);
+         }
 
          for (int j = 0; j < productFiles.length; j++) {
-            ingestStatus.add(handleFile(productFiles[j]));
+            visitor.visit(productFiles[j]);
          }
 
          if (!isNoRecur()) {
+            start = System.nanoTime();
             File[] subdirs = dir.listFiles(DIR_FILTER);
+            if (listStage != null) {
+               listStage.addBusy(System.nanoTime() - start);
+            }
             if (subdirs != null) {
                for (int j = 0; j < subdirs.length; j++) {
                   stack.push(subdirs[j]);
@@ -119,7 +425,11 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
       }
    }
 
-   public IngestStatus handleFile(File product) {
+   /*
+    * Everything handleFile does up to, but not including, ingest. The
+    * returned product has a status if handling it is already finished.
+    */
+   private CrawledProduct prepareProduct(File product) {
       LOG.log(Level.INFO, "Handling file " + product);
 
       // Check preconditions.
@@ -127,9 +437,9 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
          LOG.log(Level.WARNING,
                "Failed to pass preconditions for ingest of product: ["
                      + product.getAbsolutePath() + "]");
-         return createIngestStatus(product,
+         return new CrawledProduct(createIngestStatus(product,
                IngestStatus.Result.PRECONDS_FAILED,
-               "Failed to pass preconditions");
+               "Failed to pass preconditions"));
       }
 
       // Generate Metadata for product.
@@ -141,9 +451,9 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
          LOG.log(Level.SEVERE,
                "Failed to get metadata for product : " + e.getMessage(), e);
          performPostIngestOnFailActions(product, productMetadata);
-         return createIngestStatus(product,
+         return new CrawledProduct(createIngestStatus(product,
                IngestStatus.Result.FAILURE,
-               "Failed to get metadata for product : " + e.getMessage());
+               "Failed to get metadata for product : " + e.getMessage()));
       }
 
       // Rename the product.
@@ -153,8 +463,9 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
          LOG.log(Level.SEVERE,
                "Failed to rename product : " + e.getMessage(), e);
          performPostIngestOnFailActions(product, productMetadata);
-         return createIngestStatus(product, IngestStatus.Result.FAILURE,
-               "Failed to rename product : " + e.getMessage());
+         return new CrawledProduct(createIngestStatus(product,
+               IngestStatus.Result.FAILURE,
+               "Failed to rename product : " + e.getMessage()));
       }
 
       // Set known metadata if not already specified.
@@ -165,25 +476,30 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
          LOG.log(Level.SEVERE, "Missing required metadata for product '"
                + product + "'");
          performPostIngestOnFailActions(product, productMetadata);
-         return createIngestStatus(product, IngestStatus.Result.FAILURE,
-               "Missing required metadata");
+         return new CrawledProduct(createIngestStatus(product,
+               IngestStatus.Result.FAILURE, "Missing required metadata"));
       }
 
       // Run preIngest actions.
       if (!performPreIngestActions(product, productMetadata)) {
          performPostIngestOnFailActions(product, productMetadata);
-         return createIngestStatus(product, IngestStatus.Result.FAILURE,
-            "PreIngest actions failed to complete");            
+         return new CrawledProduct(createIngestStatus(product,
+               IngestStatus.Result.FAILURE,
+               "PreIngest actions failed to complete"));
       }
 
       // Check if ingest has been turned off.
       if (isSkipIngest()) {
          LOG.log(Level.INFO, "Skipping ingest of product: ["
                + product.getAbsolutePath() + "]");
-         return createIngestStatus(product, IngestStatus.Result.SKIPPED,
-               "Crawler ingest turned OFF");
+         return new CrawledProduct(createIngestStatus(product,
+               IngestStatus.Result.SKIPPED, "Crawler ingest turned OFF"));
       }
 
+      return new CrawledProduct(product, productMetadata);
+   }
+
+   private IngestStatus ingestProduct(File product, Metadata productMetadata) {
       // Ingest product.
       boolean ingestSuccess = ingest(product, productMetadata);
 
@@ -206,6 +522,34 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
       }
    }
 
+   /*
+    * A pipeline stage must keep going when one product blows up, or the
+    * stages feeding it would block forever on a full queue.
+    */
+   private CrawledProduct prepareProductSafely(File product) {
+      try {
+         return prepareProduct(product);
+      } catch (RuntimeException e) {
+         LOG.log(Level.SEVERE, "Failed to handle product: [" + product
+               + "]: " + e.getMessage(), e);
+         return new CrawledProduct(createIngestStatus(product,
+               IngestStatus.Result.FAILURE, "Failed to handle product : "
+                     + e.getMessage()));
+      }
+   }
+
+   private IngestStatus ingestProductSafely(File product,
+         Metadata productMetadata) {
+      try {
+         return ingestProduct(product, productMetadata);
+      } catch (RuntimeException e) {
+         LOG.log(Level.SEVERE, "Failed to ingest product: [" + product
+               + "]: " + e.getMessage(), e);
+         return createIngestStatus(product, IngestStatus.Result.FAILURE,
+               "Failed to ingest product : " + e.getMessage());
+      }
+   }
+
    public List<IngestStatus> getIngestStatus() {
       return Collections.unmodifiableList(ingestStatus);
    }
@@ -367,4 +711,33 @@ public abstract class ProductCrawler extends ProductCrawlerBean {
       }
       return allSucceeded;
    }
+
+   private interface ProductVisitor {
+      void visit(File product) throws InterruptedException;
+   }
+
+   /*
+    * A product on its way through the crawl: either ready to ingest, with
+    * its metadata, or finished, with its status.
+    */
+   private static class CrawledProduct {
+
+      private final File product;
+
+      private final Metadata metadata;
+
+      private final IngestStatus status;
+
+      private CrawledProduct(File product, Metadata metadata) {
+         this.product = product;
+         this.metadata = metadata;
+         this.status = null;
+      }
+
+      private CrawledProduct(IngestStatus status) {
+         this.product = null;
+         this.metadata = null;
+         this.status = status;
+      }
+   }
 }
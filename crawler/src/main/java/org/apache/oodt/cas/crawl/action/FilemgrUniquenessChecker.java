@@ -21,6 +21,7 @@ import static org.apache.oodt.cas.filemgr.metadata.CoreMetKeys.PRODUCT_NAME;
 
 //JDK imports
 import java.io.File;
+import java.net.MalformedURLException;
 import java.net.URL;
 
 //Apache imports
@@ -28,6 +29,9 @@ import org.apache.commons.lang.Validate;
 
 //OODT imports
 import org.apache.oodt.cas.crawl.structs.exceptions.CrawlerActionException;
+import org.apache.oodt.cas.crawl.util.SiblingFiles;
+import org.apache.oodt.cas.filemgr.ingest.ProductExistenceCache;
+import org.apache.oodt.cas.filemgr.structs.exceptions.ConnectionException;
 import org.apache.oodt.cas.filemgr.system.XmlRpcFileManagerClient;
 import org.apache.oodt.cas.metadata.Metadata;
 
@@ -40,6 +44,8 @@ public class FilemgrUniquenessChecker extends CrawlerAction {
 
    private String filemgrUrl;
 
+   private XmlRpcFileManagerClient fmClient;
+
    @Override
    public boolean performAction(File product, Metadata productMetadata)
          throws CrawlerActionException {
@@ -47,9 +53,19 @@ public class FilemgrUniquenessChecker extends CrawlerAction {
          Validate.notNull(productMetadata.getMetadata(PRODUCT_NAME),
                PRODUCT_NAME + " was not found in metadata");
 
-         XmlRpcFileManagerClient fmClient = new XmlRpcFileManagerClient(
-               new URL(this.filemgrUrl));
-         return !fmClient.hasProduct(productMetadata.getMetadata(PRODUCT_NAME));
+         // products named after their files are checked a directory at a
+         // time, the rest one by one
+         String productName = productMetadata.getMetadata(PRODUCT_NAME);
+         ProductExistenceCache cache = getExistenceCache();
+         if (productName.equals(product.getName())) {
+            Boolean exists = cache.lookup(productName);
+            if (exists == null) {
+               exists = Boolean.valueOf(cache.prefetch(getClient(),
+                     productName, SiblingFiles.getSiblingNames(product)));
+            }
+            return !exists.booleanValue();
+         }
+         return !cache.hasProduct(getClient(), productName);
       } catch (Exception e) {
          throw new CrawlerActionException("Product failed uniqueness check : ["
                + product + "] : " + e.getMessage());
@@ -68,5 +84,22 @@ public class FilemgrUniquenessChecker extends CrawlerAction {
 
    public void setFilemgrUrl(String filemgrUrl) {
       this.filemgrUrl = filemgrUrl;
+      this.fmClient = null;
+   }
+
+   /**
+    * @return The cache of product existence checks made against the File
+    *         Manager, shared with the ingester.
+    */
+   public ProductExistenceCache getExistenceCache() throws MalformedURLException {
+      return ProductExistenceCache.getCache(new URL(this.filemgrUrl));
+   }
+
+   private synchronized XmlRpcFileManagerClient getClient()
+         throws MalformedURLException, ConnectionException {
+      if (this.fmClient == null) {
+         this.fmClient = new XmlRpcFileManagerClient(new URL(this.filemgrUrl));
+      }
+      return this.fmClient;
    }
 }
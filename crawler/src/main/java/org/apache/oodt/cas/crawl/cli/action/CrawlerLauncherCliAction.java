@@ -19,9 +19,13 @@ package org.apache.oodt.cas.crawl.cli.action;
 //OODT imports
 import org.apache.oodt.cas.cli.action.CmdLineAction;
 import org.apache.oodt.cas.cli.exception.CmdLineActionException;
+import org.apache.oodt.cas.crawl.CrawlIndex;
 import org.apache.oodt.cas.crawl.ProductCrawler;
 import org.apache.oodt.cas.crawl.daemon.CrawlDaemon;
 
+//JDK imports
+import java.io.File;
+
 //Spring imports
 import org.springframework.context.support.FileSystemXmlApplicationContext;
 
@@ -52,8 +56,10 @@ public class CrawlerLauncherCliAction extends CmdLineAction {
                .getBean(crawlerId != null ? crawlerId : getName());
          pc.setApplicationContext(appContext);
          if (pc.getDaemonPort() != -1 && pc.getDaemonWait() != -1) {
-            new CrawlDaemon(pc.getDaemonWait(), pc, pc.getDaemonPort())
-                  .startCrawling();
+            CrawlIndex crawlIndex = pc.getCrawlIndexFile() != null ?
+                  new CrawlIndex(new File(pc.getCrawlIndexFile())) : null;
+            new CrawlDaemon(pc.getDaemonWait(), pc, pc.getDaemonPort(),
+                  crawlIndex, pc.getFullCrawlInterval()).startCrawling();
          } else {
             pc.crawl();
          }
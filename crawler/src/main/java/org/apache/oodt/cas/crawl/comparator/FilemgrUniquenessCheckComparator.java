@@ -23,6 +23,9 @@ import java.io.File;
 import java.net.URL;
 
 //OODT imports
+import org.apache.oodt.cas.crawl.util.SiblingFiles;
+import org.apache.oodt.cas.filemgr.ingest.ProductExistenceCache;
+import org.apache.oodt.cas.filemgr.structs.exceptions.ConnectionException;
 import org.apache.oodt.cas.filemgr.system.XmlRpcFileManagerClient;
 import org.apache.oodt.cas.metadata.exceptions.PreconditionComparatorException;
 import org.apache.oodt.cas.metadata.preconditions.PreConditionComparator;
@@ -45,13 +48,23 @@ public class FilemgrUniquenessCheckComparator extends
 
     private String filemgrUrl;
 
+    private XmlRpcFileManagerClient fmClient;
+
     @Override
     protected int performCheck(File product, Boolean compareItem)
             throws PreconditionComparatorException {
         try {
-            boolean returnVal = new XmlRpcFileManagerClient(new URL(
-                    this.filemgrUrl)).hasProduct(product.getName());
-            return new Boolean(returnVal).compareTo(compareItem);
+            URL fmUrl = new URL(this.filemgrUrl);
+            // on a miss the rest of the directory is checked too
+            ProductExistenceCache cache = ProductExistenceCache
+                    .getCache(fmUrl);
+            Boolean returnVal = cache.lookup(product.getName());
+            if (returnVal == null) {
+                returnVal = Boolean.valueOf(cache.prefetch(this
+                        .getClient(fmUrl), product.getName(), SiblingFiles
+                        .getSiblingNames(product)));
+            }
+            return returnVal.compareTo(compareItem);
         } catch (Exception e) {
             throw new PreconditionComparatorException(
                     "Failed to check for product " + product + " : "
@@ -62,6 +75,14 @@ public class FilemgrUniquenessCheckComparator extends
     @Required
     public void setFilemgrUrl(String filemgrUrl) {
         this.filemgrUrl = filemgrUrl;
+        this.fmClient = null;
+    }
+
+    private synchronized XmlRpcFileManagerClient getClient(URL fmUrl)
+            throws ConnectionException {
+        if (this.fmClient == null)
+            this.fmClient = new XmlRpcFileManagerClient(fmUrl);
+        return this.fmClient;
     }
 
 }
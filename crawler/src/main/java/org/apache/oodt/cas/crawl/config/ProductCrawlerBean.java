@@ -51,6 +51,14 @@ public abstract class ProductCrawlerBean implements
 
     private int daemonWait, daemonPort;
 
+    private boolean pipelined;
+
+    private int extractorThreads, ingestThreads, pipelineQueueSize;
+
+    private String crawlIndexFile;
+
+    private int fullCrawlInterval;
+
     private String productPath;
 
     private ApplicationContext applicationContext;
@@ -70,6 +78,11 @@ public abstract class ProductCrawlerBean implements
         this.skipIngest = false;
         this.daemonPort = -1;
         this.daemonWait = -1;
+        this.pipelined = false;
+        this.extractorThreads = 1;
+        this.ingestThreads = 1;
+        this.pipelineQueueSize = 100;
+        this.fullCrawlInterval = 0;
         this.globalMetadata = new Metadata();
     }
 
@@ -163,6 +176,67 @@ public abstract class ProductCrawlerBean implements
         return this.daemonPort;
     }
 
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public boolean isPipelined() {
+        return this.pipelined;
+    }
+
+    /**
+     * @param extractorThreads Number of threads checking preconditions,
+     *        extracting met and running the preIngest actions in a pipelined
+     *        crawl. When greater than 1 the configured extractors,
+     *        preconditions and preIngest actions are called from several
+     *        threads at once and must be thread-safe.
+     */
+    public void setExtractorThreads(int extractorThreads) {
+        this.extractorThreads = extractorThreads;
+    }
+
+    public int getExtractorThreads() {
+        return this.extractorThreads;
+    }
+
+    /**
+     * @param ingestThreads Number of threads ingesting and running the
+     *        postIngest actions in a pipelined crawl. When greater than 1 the
+     *        configured postIngest actions and the File Manager client are
+     *        called from several threads at once and must be thread-safe.
+     */
+    public void setIngestThreads(int ingestThreads) {
+        this.ingestThreads = ingestThreads;
+    }
+
+    public int getIngestThreads() {
+        return this.ingestThreads;
+    }
+
+    public void setPipelineQueueSize(int pipelineQueueSize) {
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
+
+    public int getPipelineQueueSize() {
+        return this.pipelineQueueSize;
+    }
+
+    public void setCrawlIndexFile(String crawlIndexFile) {
+        this.crawlIndexFile = crawlIndexFile;
+    }
+
+    public String getCrawlIndexFile() {
+        return this.crawlIndexFile;
+    }
+
+    public void setFullCrawlInterval(int fullCrawlInterval) {
+        this.fullCrawlInterval = fullCrawlInterval;
+    }
+
+    public int getFullCrawlInterval() {
+        return this.fullCrawlInterval;
+    }
+
     @Required
     public void setProductPath(String productPath) {
         this.productPath = productPath;
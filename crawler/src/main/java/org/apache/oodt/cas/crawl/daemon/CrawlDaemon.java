@@ -19,9 +19,12 @@
 package org.apache.oodt.cas.crawl.daemon;
 
 //OODT imports
+import org.apache.oodt.cas.crawl.CrawlIndex;
 import org.apache.oodt.cas.crawl.ProductCrawler;
 
 //JDK imports
+import java.io.File;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,6 +39,15 @@ import org.apache.xmlrpc.WebServer;
  * A daemon utility class for {@link ProductCrawler}s that allows a regular
  * ProductCrawler to be run as a daemon, and statistics about crawling to be
  * kept. The daemon is an XML-RPC accessible web service.
+ * </p>
+ * 
+ * <p>
+ * Given a {@link CrawlIndex}, the daemon crawls incrementally: each crawl only
+ * lists directories and handles products that changed since the last one (see
+ * {@link ProductCrawler#crawlIncremental(File, CrawlIndex)}). A full crawl,
+ * which starts from an empty index, is done when there is no saved index, and
+ * after every <code>fullCrawlInterval</code> incremental crawls (never, if it
+ * is 0). Crawl times are kept separately for full and incremental crawls.
  * </p>.
  */
 public class CrawlDaemon {
@@ -61,10 +73,35 @@ public class CrawlDaemon {
     /* the port that this crawl daemon should run on */
     private int daemonPort = 9999;
 
+    /* what has been crawled so far, or null to always crawl everything */
+    private CrawlIndex crawlIndex = null;
+
+    /* number of incremental crawls between full crawls, 0 for none */
+    private int fullCrawlInterval = 0;
+
+    /* number of incremental crawls since the last full one */
+    private int incrementalCrawlsSinceFull = 0;
+
+    /* number of full and incremental crawls, and miliseconds spent on them */
+    private int numFullCrawls = 0;
+
+    private long milisFullCrawling = 0L;
+
+    private int numIncrementalCrawls = 0;
+
+    private long milisIncrementalCrawling = 0L;
+
     public CrawlDaemon(int wait, ProductCrawler crawler, int port) {
+        this(wait, crawler, port, null, 0);
+    }
+
+    public CrawlDaemon(int wait, ProductCrawler crawler, int port,
+            CrawlIndex crawlIndex, int fullCrawlInterval) {
         this.waitInterval = wait;
         this.crawler = crawler;
         this.daemonPort = port;
+        this.crawlIndex = crawlIndex;
+        this.fullCrawlInterval = fullCrawlInterval;
     }
 
     public void startCrawling() {
@@ -76,13 +113,31 @@ public class CrawlDaemon {
         LOG.log(Level.INFO, "Crawl Daemon started by "
                 + System.getProperty("user.name", "unknown"));
 
+        if (crawlIndex != null) {
+            try {
+                crawlIndex.load();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to load crawl index ["
+                        + crawlIndex.getIndexFile() + "]: " + e.getMessage()
+                        + ": starting with a full crawl", e);
+                crawlIndex.clear();
+            }
+        }
+
         while (running) {
             // okay, time to crawl
             long timeBefore = System.currentTimeMillis();
-            crawler.crawl();
+            boolean fullCrawl = crawl();
             long timeAfter = System.currentTimeMillis();
             milisCrawling += (timeAfter - timeBefore);
             numCrawls++;
+            if (fullCrawl) {
+                milisFullCrawling += (timeAfter - timeBefore);
+                numFullCrawls++;
+            } else {
+                milisIncrementalCrawling += (timeAfter - timeBefore);
+                numIncrementalCrawls++;
+            }
 
             LOG.log(Level.INFO, "Sleeping for: [" + waitInterval + "] seconds");
             // take a nap
@@ -98,13 +153,75 @@ public class CrawlDaemon {
                 + (this.milisCrawling / 1000.0) + "] seconds");
         LOG.log(Level.INFO, "Average Crawl Time: ["
                 + (this.getAverageCrawlTime() / 1000.0) + "] seconds");
+        if (crawlIndex != null) {
+            LOG.log(Level.INFO, "Num Full Crawls: [" + this.numFullCrawls
+                    + "]: Average Full Crawl Time: ["
+                    + (this.getAverageFullCrawlTime() / 1000.0) + "] seconds");
+            LOG.log(Level.INFO, "Num Incremental Crawls: ["
+                    + this.numIncrementalCrawls
+                    + "]: Average Incremental Crawl Time: ["
+                    + (this.getAverageIncrementalCrawlTime() / 1000.0)
+                    + "] seconds");
+        }
         server.shutdown();
     }
 
+    /*
+     * Runs one crawl, returning true if it was a full crawl.
+     */
+    private boolean crawl() {
+        if (crawlIndex == null) {
+            crawler.crawl();
+            return true;
+        }
+
+        boolean fullCrawl = crawlIndex.size() == 0
+                || (fullCrawlInterval > 0 && incrementalCrawlsSinceFull >= fullCrawlInterval);
+        if (fullCrawl) {
+            crawlIndex.clear();
+            incrementalCrawlsSinceFull = 0;
+        } else {
+            incrementalCrawlsSinceFull++;
+        }
+        crawler.crawlIncremental(new File(crawler.getProductPath()),
+                crawlIndex);
+        try {
+            crawlIndex.save();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to save crawl index ["
+                    + crawlIndex.getIndexFile() + "]: " + e.getMessage(), e);
+        }
+        return fullCrawl;
+    }
+
     public double getAverageCrawlTime() {
         return (1.0 * milisCrawling) / (1.0 * numCrawls);
     }
 
+    public double getAverageFullCrawlTime() {
+        return numFullCrawls > 0 ? (1.0 * milisFullCrawling)
+                / (1.0 * numFullCrawls) : 0.0;
+    }
+
+    public double getAverageIncrementalCrawlTime() {
+        return numIncrementalCrawls > 0 ? (1.0 * milisIncrementalCrawling)
+                / (1.0 * numIncrementalCrawls) : 0.0;
+    }
+
+    /**
+     * @return the numFullCrawls
+     */
+    public int getNumFullCrawls() {
+        return numFullCrawls;
+    }
+
+    /**
+     * @return the numIncrementalCrawls
+     */
+    public int getNumIncrementalCrawls() {
+        return numIncrementalCrawls;
+    }
+
     /**
      * @return the crawler
      */
@@ -70,6 +70,22 @@ public class CrawlDaemonController {
         return avgCrawlTime;
     }
 
+    public double getAverageFullCrawlTime() throws CrawlException {
+        return getDouble("crawldaemon.getAverageFullCrawlTime");
+    }
+
+    public double getAverageIncrementalCrawlTime() throws CrawlException {
+        return getDouble("crawldaemon.getAverageIncrementalCrawlTime");
+    }
+
+    public int getNumFullCrawls() throws CrawlException {
+        return getInt("crawldaemon.getNumFullCrawls");
+    }
+
+    public int getNumIncrementalCrawls() throws CrawlException {
+        return getInt("crawldaemon.getNumIncrementalCrawls");
+    }
+
     public int getMilisCrawling() throws CrawlException {
         Vector argList = new Vector();
 
@@ -156,8 +172,33 @@ public class CrawlDaemonController {
         }
     }
 
+    private double getDouble(String method) throws CrawlException {
+        try {
+            return ((Double) client.execute(method, new Vector()))
+                    .doubleValue();
+        } catch (XmlRpcException e) {
+            throw new CrawlException(e.getMessage());
+        } catch (IOException e) {
+            throw new CrawlException(e.getMessage());
+        }
+    }
+
+    private int getInt(String method) throws CrawlException {
+        try {
+            return ((Integer) client.execute(method, new Vector())).intValue();
+        } catch (XmlRpcException e) {
+            throw new CrawlException(e.getMessage());
+        } catch (IOException e) {
+            throw new CrawlException(e.getMessage());
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         String avgCrawlOperation = "--getAverageCrawlTime\n";
+        String avgFullCrawlOperation = "--getAverageFullCrawlTime\n";
+        String avgIncrementalCrawlOperation = "--getAverageIncrementalCrawlTime\n";
+        String getNumFullCrawlsOperation = "--getNumFullCrawls\n";
+        String getNumIncrementalCrawlsOperation = "--getNumIncrementalCrawls\n";
         String getMilisCrawlOperation = "--getMilisCrawling\n";
         String getNumCrawlsOperation = "--getNumCrawls\n";
         String getWaitIntervalOperation = "--getWaitInterval\n";
@@ -167,8 +208,12 @@ public class CrawlDaemonController {
         String usage = "CrawlController --url <url to xml rpc service> --operation [<operation> [params]]\n"
                 + "operations:\n"
                 + avgCrawlOperation
+                + avgFullCrawlOperation
+                + avgIncrementalCrawlOperation
                 + getMilisCrawlOperation
                 + getNumCrawlsOperation
+                + getNumFullCrawlsOperation
+                + getNumIncrementalCrawlsOperation
                 + getWaitIntervalOperation
                 + isRunningOperation + stopOperation;
 
@@ -193,6 +238,20 @@ public class CrawlDaemonController {
         if (operation.equals("--getAverageCrawlTime")) {
             double avgCrawlTime = controller.getAverageCrawlTime();
             System.out.println("Average Crawl Time: [" + avgCrawlTime + "]");
+        } else if (operation.equals("--getAverageFullCrawlTime")) {
+            double avgCrawlTime = controller.getAverageFullCrawlTime();
+            System.out.println("Average Full Crawl Time: [" + avgCrawlTime
+                    + "]");
+        } else if (operation.equals("--getAverageIncrementalCrawlTime")) {
+            double avgCrawlTime = controller.getAverageIncrementalCrawlTime();
+            System.out.println("Average Incremental Crawl Time: ["
+                    + avgCrawlTime + "]");
+        } else if (operation.equals("--getNumFullCrawls")) {
+            int numCrawls = controller.getNumFullCrawls();
+            System.out.println("Num Full Crawls: [" + numCrawls + "]");
+        } else if (operation.equals("--getNumIncrementalCrawls")) {
+            int numCrawls = controller.getNumIncrementalCrawls();
+            System.out.println("Num Incremental Crawls: [" + numCrawls + "]");
         } else if (operation.equals("--getMilisCrawling")) {
             int crawlTime = controller.getMilisCrawling();
             System.out.println("Total Crawl Time: [" + crawlTime
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.crawl.status;
+
+//JDK imports
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Throughput of one stage (listing, met extraction or ingest) of a pipelined
+ * {@link org.apache.oodt.cas.crawl.ProductCrawler} crawl. Busy time is the time
+ * the stage's threads spent working on products; blocked time is the time they
+ * spent waiting for the next stage to make room for their results.
+ * </p>
+ */
+public class StageMetrics {
+
+   private final String name;
+
+   private final int threads;
+
+   private final AtomicLong products = new AtomicLong();
+
+   private final AtomicLong busyNanos = new AtomicLong();
+
+   private final AtomicLong blockedNanos = new AtomicLong();
+
+   private volatile long startTime = -1;
+
+   private volatile long endTime = -1;
+
+   public StageMetrics(String name, int threads) {
+      this.name = name;
+      this.threads = threads;
+   }
+
+   public void start() {
+      startTime = System.currentTimeMillis();
+   }
+
+   public void stop() {
+      endTime = System.currentTimeMillis();
+   }
+
+   public void addProduct(long busyNanos) {
+      products.incrementAndGet();
+      this.busyNanos.addAndGet(busyNanos);
+   }
+
+   public void addBusy(long busyNanos) {
+      this.busyNanos.addAndGet(busyNanos);
+   }
+
+   public void addBlocked(long blockedNanos) {
+      this.blockedNanos.addAndGet(blockedNanos);
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   public int getThreads() {
+      return threads;
+   }
+
+   public long getProducts() {
+      return products.get();
+   }
+
+   public long getBusyMillis() {
+      return busyNanos.get() / 1000000L;
+   }
+
+   public long getBlockedMillis() {
+      return blockedNanos.get() / 1000000L;
+   }
+
+   /**
+    * @return The time from the start of the stage until it finished (or until
+    *         now, if it is still running).
+    */
+   public long getElapsedMillis() {
+      if (startTime < 0) {
+         return 0;
+      }
+      return (endTime < 0 ? System.currentTimeMillis() : endTime) - startTime;
+   }
+
+   /**
+    * @return Products handled per second while the stage was running.
+    */
+   public double getThroughput() {
+      long elapsed = getElapsedMillis();
+      return elapsed > 0 ? getProducts() * 1000.0 / elapsed : 0.0;
+   }
+
+   public String toString() {
+      return "Stage [" + name + "]: threads: [" + threads + "]: products: ["
+            + getProducts() + "]: elapsed: [" + getElapsedMillis()
+            + " ms]: busy: [" + getBusyMillis() + " ms]: blocked: ["
+            + getBlockedMillis() + " ms]: throughput: ["
+            + String.format("%.2f", getThroughput()) + " products/s]";
+   }
+}
@@ -31,6 +31,8 @@ public interface MimeExtractorConfigMetKeys {
 
     public static final String MAGIC_ATTR = "magic";
 
+    public static final String NAME_FIRST_ATTR = "nameFirst";
+
     public static final String MIME_REPO_ATTR = "mimeRepo";
 
     public static final String DEFAULT_EXTRACTOR_TAG = "default";
@@ -56,6 +56,10 @@ public final class MimeExtractorConfigReader implements
             MimeExtractorRepo extractorRepo = new MimeExtractorRepo();
             extractorRepo.setMagic(Boolean.valueOf(
                     root.getAttribute(MAGIC_ATTR)).booleanValue());
+            if (root.hasAttribute(NAME_FIRST_ATTR)) {
+                extractorRepo.setNameFirst(Boolean.valueOf(
+                        root.getAttribute(NAME_FIRST_ATTR)).booleanValue());
+            }
             String mimeTypeFile = PathUtils.replaceEnvVariables(root
                   .getAttribute(MIME_REPO_ATTR));
             if (!mimeTypeFile.startsWith("/")) {
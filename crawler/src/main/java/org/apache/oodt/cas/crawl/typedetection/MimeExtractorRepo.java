@@ -21,20 +21,44 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 //OODT imports
 import org.apache.oodt.cas.metadata.util.MimeTypeUtils;
 
+//APACHE imports
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MediaTypeRegistry;
+import org.apache.tika.mime.MimeTypes;
+
 //Google imports
 import com.google.common.collect.Maps;
 
 /**
  * Repo of extractor spec and naming conventions mapped by mime-type.
  *
+ * <p>
+ * Unless turned off with {@link #setNameFirst(boolean)}, a file's mime-type is
+ * first looked up by its name (extension and filename patterns), and its
+ * content is only read if the name gives no type, or a type that content
+ * could make more specific (e.g., <code>text/plain</code> or
+ * <code>application/xml</code>). So a file whose name unambiguously gives its
+ * type is never opened, at the cost of trusting the name of a misnamed file.
+ * The last few files' mime-types, and each mime-type's extractor specs and
+ * hierarchy, are cached (up to
+ * <code>org.apache.oodt.cas.crawl.typedetection.cache.size</code> of each,
+ * 1000 by default), so a crawler asking about the same file several times
+ * only detects its type once.
+ * </p>
+ *
  * @author mattmann (Chris Mattmann)
  * @author bfoster (Brian Foster)
  */
@@ -46,6 +70,13 @@ public class MimeExtractorRepo {
 	private boolean magic;
 	private Map<String, List<MetExtractorSpec>> mimeTypeToMetExtractorSpecsMap;
 	private Map<String, String> mimeTypeToNamingConventionIdMap;
+	private boolean nameFirst;
+	private final Map<String, FileMimeType> fileMimeTypeCache;
+	private final Map<String, List<MetExtractorSpec>> extractorSpecsCache;
+	private final Map<String, List<String>> mimeTypeHierarchyCache;
+
+	/* mime-types that a file's content can make more specific */
+	private static Set<String> ambiguousMimeTypes;
 
 	/**
 	 * Default Constructor
@@ -75,6 +106,13 @@ public class MimeExtractorRepo {
 	public MimeExtractorRepo(List<MetExtractorSpec> defaultExtractorSpecs,
 	      String defaultNamingConventionId, String mimeRepoFile,
 	      boolean magic) throws FileNotFoundException {
+		int cacheSize = Integer.getInteger(
+		      "org.apache.oodt.cas.crawl.typedetection.cache.size", 1000)
+		      .intValue();
+		fileMimeTypeCache = newCache(cacheSize);
+		extractorSpecsCache = newCache(cacheSize);
+		mimeTypeHierarchyCache = newCache(cacheSize);
+		nameFirst = true;
 		setDefaultMetExtractorSpecs(defaultExtractorSpecs);
 		setDefaultNamingConventionId(defaultNamingConventionId);
 		setMimeRepoFile(mimeRepoFile);
@@ -105,6 +143,7 @@ public class MimeExtractorRepo {
 			specs = new LinkedList<MetExtractorSpec>();
 		specs.add(spec);
 		this.mimeTypeToMetExtractorSpecsMap.put(mimeType, specs);
+		this.extractorSpecsCache.clear();
 	}
 
 	public synchronized void addMetExtractorSpecs(String mimeType,
@@ -115,27 +154,40 @@ public class MimeExtractorRepo {
 			existingSpecs = new LinkedList<MetExtractorSpec>();
 		existingSpecs.addAll(specs);
 		this.mimeTypeToMetExtractorSpecsMap.put(mimeType, existingSpecs);
+		this.extractorSpecsCache.clear();
 	}
 
 	public synchronized List<MetExtractorSpec> getExtractorSpecsForMimeType(
 			String mimeType) {
-		List<MetExtractorSpec> extractorSpecs = new LinkedList<MetExtractorSpec>();
-		while (mimeType != null && !mimeType.equals("application/octet-stream")) {
-			List<MetExtractorSpec> specs = this.mimeTypeToMetExtractorSpecsMap.get(mimeType);
-			if (specs != null)
-				extractorSpecs.addAll(specs);
-			mimeType = this.mimeRepo.getSuperTypeForMimeType(mimeType);
+		List<MetExtractorSpec> extractorSpecs = this.extractorSpecsCache
+				.get(mimeType);
+		if (extractorSpecs == null) {
+			extractorSpecs = new LinkedList<MetExtractorSpec>();
+			for (String type : this.getMimeTypeHierarchy(mimeType)) {
+				List<MetExtractorSpec> specs = this.mimeTypeToMetExtractorSpecsMap
+						.get(type);
+				if (specs != null)
+					extractorSpecs.addAll(specs);
+			}
+			extractorSpecs = Collections.unmodifiableList(extractorSpecs);
+			this.extractorSpecsCache.put(mimeType, extractorSpecs);
 		}
 		return !extractorSpecs.isEmpty() ? extractorSpecs : this
 				.getDefaultMetExtractorSpecs();
 	}
 
-	public synchronized List<MetExtractorSpec> getExtractorSpecsForFile(
+	public List<MetExtractorSpec> getExtractorSpecsForFile(
 			File file) throws FileNotFoundException, IOException {
-		String mimeType = this.mimeRepo.getMimeType(file);
-		if (mimeType == null && magic)
-			mimeType = this.mimeRepo.getMimeTypeByMagic(MimeTypeUtils
-					.readMagicHeader(new FileInputStream(file)));
+		String mimeType = this.getMimeType(file);
+		if (mimeType == null && magic) {
+			InputStream is = new FileInputStream(file);
+			try {
+				mimeType = this.mimeRepo.getMimeTypeByMagic(MimeTypeUtils
+						.readMagicHeader(is));
+			} finally {
+				is.close();
+			}
+		}
 		return this.getExtractorSpecsForMimeType(mimeType);
 	}
 
@@ -189,12 +241,57 @@ public class MimeExtractorRepo {
 	 */
 	public void setMimeRepoFile(String mimeRepoFile)
 			throws FileNotFoundException {
-		if (mimeRepoFile != null)
+		if (mimeRepoFile != null) {
 			this.mimeRepo = new MimeTypeUtils(mimeRepoFile, this.magic);
+			synchronized (this) {
+				this.extractorSpecsCache.clear();
+				this.mimeTypeHierarchyCache.clear();
+			}
+		}
+	}
+
+	/**
+	 * @param nameFirst
+	 *            Whether to trust a file's name for its mime-type, when the
+	 *            name gives a type the file's content couldn't make more
+	 *            specific, rather than always reading the file.
+	 */
+	public void setNameFirst(boolean nameFirst) {
+		this.nameFirst = nameFirst;
+		synchronized (this.fileMimeTypeCache) {
+			this.fileMimeTypeCache.clear();
+		}
+	}
+
+	public boolean isNameFirst() {
+		return this.nameFirst;
 	}
 
 	public String getMimeType(File file) {
-	   return mimeRepo.getMimeType(file);
+		String path = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+		synchronized (this.fileMimeTypeCache) {
+			FileMimeType cached = this.fileMimeTypeCache.get(path);
+			if (cached != null && cached.lastModified == lastModified
+					&& cached.length == length)
+				return cached.mimeType;
+		}
+
+		String mimeType = null;
+		if (this.nameFirst) {
+			mimeType = this.mimeRepo.getMimeType(file.getName());
+			if (mimeType != null && getAmbiguousMimeTypes().contains(mimeType))
+				mimeType = null;
+		}
+		if (mimeType == null)
+			mimeType = this.mimeRepo.getMimeType(file);
+
+		synchronized (this.fileMimeTypeCache) {
+			this.fileMimeTypeCache.put(path, new FileMimeType(mimeType,
+					lastModified, length));
+		}
+		return mimeType;
 	}
 
 	/**
@@ -204,12 +301,79 @@ public class MimeExtractorRepo {
 	 * @return
 	 */
 	public List<String> getMimeTypes(File file) {
-	    List<String> mimeTypes = new Vector<String>();
-	    String mimeType = getMimeType(file);
-	    mimeTypes.add(mimeType);
-	    while ((mimeType = this.mimeRepo.getSuperTypeForMimeType(mimeType)) != null
-                && !mimeType.equals("application/octet-stream"))
-	        mimeTypes.add(mimeType);
-	    return mimeTypes;
+		String mimeType = getMimeType(file);
+		List<String> mimeTypes = new Vector<String>();
+		mimeTypes.add(mimeType);
+		synchronized (this) {
+			List<String> hierarchy = this.getMimeTypeHierarchy(mimeType);
+			if (hierarchy.size() > 1)
+				mimeTypes.addAll(hierarchy.subList(1, hierarchy.size()));
+		}
+		return mimeTypes;
+	}
+
+	/*
+	 * The mime-type followed by its super-types, up to but not including
+	 * application/octet-stream. Empty if the mime-type is null or
+	 * application/octet-stream itself.
+	 */
+	private List<String> getMimeTypeHierarchy(String mimeType) {
+		List<String> hierarchy = this.mimeTypeHierarchyCache.get(mimeType);
+		if (hierarchy == null) {
+			hierarchy = new Vector<String>();
+			String type = mimeType;
+			while (type != null && !type.equals("application/octet-stream")) {
+				hierarchy.add(type);
+				type = this.mimeRepo.getSuperTypeForMimeType(type);
+			}
+			hierarchy = Collections.unmodifiableList(hierarchy);
+			this.mimeTypeHierarchyCache.put(mimeType, hierarchy);
+		}
+		return hierarchy;
+	}
+
+	/*
+	 * Every mime-type that is the super-type of another, plus
+	 * application/octet-stream, in the registry that file type detection
+	 * uses.
+	 */
+	private static synchronized Set<String> getAmbiguousMimeTypes() {
+		if (ambiguousMimeTypes == null) {
+			Set<String> types = new HashSet<String>();
+			types.add(MimeTypes.OCTET_STREAM);
+			MediaTypeRegistry registry = MimeTypes.getDefaultMimeTypes()
+					.getMediaTypeRegistry();
+			for (MediaType type : registry.getTypes()) {
+				MediaType superType = registry.getSupertype(type);
+				if (superType != null)
+					types.add(superType.toString());
+			}
+			ambiguousMimeTypes = types;
+		}
+		return ambiguousMimeTypes;
+	}
+
+	private static <V> Map<String, V> newCache(final int maxSize) {
+		return new LinkedHashMap<String, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	private static class FileMimeType {
+
+		private final String mimeType;
+		private final long lastModified;
+		private final long length;
+
+		private FileMimeType(String mimeType, long lastModified, long length) {
+			this.mimeType = mimeType;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
 	}
 }
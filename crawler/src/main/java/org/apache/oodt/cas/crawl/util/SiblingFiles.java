@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.crawl.util;
+
+//JDK imports
+import java.io.File;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Lists the names of the files next to a product, which uniqueness checks
+ * send to the File Manager along with the product's own name so that the
+ * rest of the directory is answered from the existence cache. At most
+ * <code>org.apache.oodt.cas.crawl.uniquenessCheck.prefetchMax</code>
+ * (default 1000) names are listed.
+ */
+public class SiblingFiles {
+
+   private static final int PREFETCH_MAX = Integer.getInteger(
+         "org.apache.oodt.cas.crawl.uniquenessCheck.prefetchMax", 1000)
+         .intValue();
+
+   private SiblingFiles() throws InstantiationException {
+      throw new InstantiationException("Do not instantiate SiblingFiles");
+   }
+
+   /**
+    * @param product
+    *           A file being crawled.
+    * @return The names of the other files in its directory, or an empty list
+    *         if they can't be listed.
+    */
+   public static List<String> getSiblingNames(File product) {
+      List<String> names = new Vector<String>();
+      File dir = product.getAbsoluteFile().getParentFile();
+      File[] files = dir != null ? dir.listFiles() : null;
+      if (files == null) {
+         return names;
+      }
+      for (File file : files) {
+         if (names.size() >= PREFETCH_MAX) {
+            break;
+         }
+         if (file.isFile() && !file.getName().equals(product.getName())) {
+            names.add(file.getName());
+         }
+      }
+      return names;
+   }
+}
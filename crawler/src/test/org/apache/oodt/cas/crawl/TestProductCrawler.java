@@ -28,11 +28,14 @@ import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
 
 //OODT imports
 import org.apache.oodt.cas.crawl.action.CrawlerAction;
 import org.apache.oodt.cas.crawl.action.CrawlerActionRepo;
 import org.apache.oodt.cas.crawl.status.IngestStatus;
+import org.apache.oodt.cas.crawl.status.StageMetrics;
 import org.apache.oodt.cas.crawl.structs.exceptions.CrawlerActionException;
 import org.apache.oodt.cas.filemgr.datatransfer.LocalDataTransferFactory;
 import org.apache.oodt.cas.filemgr.ingest.Ingester;
@@ -40,6 +43,9 @@ import org.apache.oodt.cas.filemgr.metadata.CoreMetKeys;
 import org.apache.oodt.cas.filemgr.structs.exceptions.IngestException;
 import org.apache.oodt.cas.metadata.Metadata;
 
+//Apache imports
+import org.apache.commons.io.FileUtils;
+
 //Spring imports
 import org.springframework.context.support.FileSystemXmlApplicationContext;
 
@@ -302,6 +308,168 @@ public class TestProductCrawler extends TestCase {
       assertFalse(pc.ranPostIngestFailActions());
    }
 
+   public void testPipelinedCrawl() throws Exception {
+      File tmpFile = File.createTempFile("bogus", "bogus");
+      File tmpDir = new File(tmpFile.getParentFile(),
+            UUID.randomUUID().toString());
+      tmpFile.delete();
+      Set<File> products = Sets.newHashSet();
+      for (int i = 0; i < 3; i++) {
+         File dir = new File(tmpDir, "dir" + i);
+         assertTrue(dir.mkdirs());
+         for (int j = 0; j < 4; j++) {
+            File product = new File(dir, "data" + j + ".dat");
+            FileUtils.writeStringToFile(product, "data");
+            products.add(product);
+         }
+      }
+
+      try {
+         // Setup Crawler with a queue small enough to make stages wait.
+         StateAwareProductCrawler pc = new StateAwareProductCrawler();
+         pc.setPipelined(true);
+         pc.setExtractorThreads(2);
+         pc.setIngestThreads(3);
+         pc.setPipelineQueueSize(1);
+
+         // Run Crawler.
+         pc.crawl(tmpDir);
+
+         // Verify every product was ingested.
+         assertEquals(products.size(), pc.getIngestStatus().size());
+         Set<File> ingested = Sets.newHashSet();
+         for (IngestStatus status : pc.getIngestStatus()) {
+            assertEquals(IngestStatus.Result.SUCCESS, status.getResult());
+            ingested.add(status.getProduct());
+         }
+         assertEquals(products, ingested);
+
+         // Verify every stage saw every product.
+         assertEquals(3, pc.getStageMetrics().size());
+         assertEquals("list", pc.getStageMetrics().get(0).getName());
+         assertEquals("extract", pc.getStageMetrics().get(1).getName());
+         assertEquals("ingest", pc.getStageMetrics().get(2).getName());
+         for (StageMetrics stage : pc.getStageMetrics()) {
+            assertEquals(products.size(), stage.getProducts());
+         }
+
+         // Verify failures short of ingest skip the ingest stage.
+         pc = new StateAwareProductCrawler();
+         pc.setPipelined(true);
+         pc.markFailPreconditions();
+         pc.crawl(tmpDir);
+         assertEquals(products.size(), pc.getIngestStatus().size());
+         for (IngestStatus status : pc.getIngestStatus()) {
+            assertEquals(IngestStatus.Result.PRECONDS_FAILED,
+                  status.getResult());
+         }
+         assertEquals(products.size(), pc.getStageMetrics().get(1)
+               .getProducts());
+         assertEquals(0, pc.getStageMetrics().get(2).getProducts());
+         assertFalse(pc.ranIngest());
+      } finally {
+         FileUtils.forceDelete(tmpDir);
+      }
+   }
+
+   public void testIncrementalCrawl() throws Exception {
+      File tmpFile = File.createTempFile("bogus", "bogus");
+      File tmpDir = new File(tmpFile.getParentFile(),
+            UUID.randomUUID().toString());
+      tmpFile.delete();
+      long longAgo = System.currentTimeMillis() - 60000L;
+      for (int i = 0; i < 2; i++) {
+         File dir = new File(tmpDir, "dir" + i);
+         assertTrue(dir.mkdirs());
+         for (int j = 0; j < 3; j++) {
+            File product = new File(dir, "data" + j + ".dat");
+            FileUtils.writeStringToFile(product, "data");
+            product.setLastModified(longAgo);
+         }
+         dir.setLastModified(longAgo);
+      }
+      tmpDir.setLastModified(longAgo);
+
+      File indexFile = File.createTempFile("crawl", ".index");
+      try {
+         CrawlIndex index = new CrawlIndex(indexFile);
+
+         // First crawl handles everything.
+         StateAwareProductCrawler pc = new StateAwareProductCrawler();
+         pc.crawlIncremental(tmpDir, index);
+         assertEquals(6, pc.getIngestStatus().size());
+         assertEquals(3, index.size());
+
+         // Nothing has changed.
+         pc.crawlIncremental(tmpDir, index);
+         assertEquals(0, pc.getIngestStatus().size());
+
+         // Only new and modified products are handled.
+         File newProduct = new File(tmpDir, "dir1/data3.dat");
+         FileUtils.writeStringToFile(newProduct, "data");
+         newProduct.setLastModified(longAgo);
+         File modifiedProduct = new File(tmpDir, "dir1/data0.dat");
+         modifiedProduct.setLastModified(longAgo + 1000L);
+         new File(tmpDir, "dir1").setLastModified(longAgo + 1000L);
+         pc.crawlIncremental(tmpDir, index);
+         assertEquals(2, pc.getIngestStatus().size());
+         assertEquals(Sets.newHashSet(newProduct, modifiedProduct), Sets
+               .newHashSet(pc.getIngestStatus().get(0).getProduct(), pc
+                     .getIngestStatus().get(1).getProduct()));
+
+         // Products that failed ingest are tried again.
+         newProduct = new File(tmpDir, "dir0/data3.dat");
+         FileUtils.writeStringToFile(newProduct, "data");
+         newProduct.setLastModified(longAgo);
+         new File(tmpDir, "dir0").setLastModified(longAgo + 1000L);
+         pc.markFailIngest();
+         pc.crawlIncremental(tmpDir, index);
+         assertEquals(1, pc.getIngestStatus().size());
+         assertEquals(IngestStatus.Result.FAILURE, pc.getIngestStatus().get(0)
+               .getResult());
+         pc = new StateAwareProductCrawler();
+         pc.crawlIncremental(tmpDir, index);
+         assertEquals(1, pc.getIngestStatus().size());
+         assertEquals(IngestStatus.Result.SUCCESS, pc.getIngestStatus().get(0)
+               .getResult());
+
+         // Products that failed their preconditions are checked again, even
+         // though their directory hasn't changed since.
+         newProduct = new File(tmpDir, "dir0/data4.dat");
+         FileUtils.writeStringToFile(newProduct, "data");
+         newProduct.setLastModified(longAgo);
+         new File(tmpDir, "dir0").setLastModified(longAgo + 2000L);
+         pc = new StateAwareProductCrawler();
+         pc.markFailPreconditions();
+         pc.crawlIncremental(tmpDir, index);
+         assertEquals(1, pc.getIngestStatus().size());
+         assertEquals(IngestStatus.Result.PRECONDS_FAILED, pc
+               .getIngestStatus().get(0).getResult());
+         pc = new StateAwareProductCrawler();
+         pc.crawlIncremental(tmpDir, index);
+         assertEquals(1, pc.getIngestStatus().size());
+         assertEquals(IngestStatus.Result.SUCCESS, pc.getIngestStatus().get(0)
+               .getResult());
+
+         // The index survives being saved and loaded.
+         index.save();
+         index = new CrawlIndex(index.getIndexFile());
+         index.load();
+         assertEquals(3, index.size());
+         pc.crawlIncremental(tmpDir, index);
+         assertEquals(0, pc.getIngestStatus().size());
+
+         // Deleted directories are forgotten.
+         FileUtils.forceDelete(new File(tmpDir, "dir1"));
+         pc.crawlIncremental(tmpDir, index);
+         assertEquals(0, pc.getIngestStatus().size());
+         assertEquals(2, index.size());
+      } finally {
+         FileUtils.forceDelete(tmpDir);
+         indexFile.delete();
+      }
+   }
+
    public void testSetupIngester() {
       ProductCrawler pc = createDummyCrawler();
       pc.setClientTransferer(LocalDataTransferFactory.class.getCanonicalName());
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.crawl.typedetection;
+
+//JDK imports
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.UUID;
+
+//Apache imports
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+//OODT imports
+import org.apache.oodt.cas.metadata.util.MimeTypeUtils;
+
+//Google imports
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the rate at which an {@link org.apache.oodt.cas.crawl.AutoDetectProductCrawler}
+ * can work out the mime-type and extractor specs of the files it crawls, when
+ * every lookup reads the file (as it used to) and when {@link MimeExtractorRepo}
+ * looks up names first and caches what it found. Each file is looked up the
+ * way the crawler does: extractor specs for the preconditions, extractor specs
+ * and mime-type hierarchy for the metadata, and mime-type for renaming. Not run
+ * as part of the test suite; run it by hand with:
+ * 
+ * <pre>
+ * java org.apache.oodt.cas.crawl.typedetection.MimeDetectionBenchmark [numFiles]
+ * </pre>
+ * 
+ */
+public class MimeDetectionBenchmark {
+
+   private static final String[] NAMES = { "data%d.jpg", "data%d.pdf",
+         "data%d.hdf", "data%d.txt", "data%d.xml", "data%d", "data%d.dat",
+         "data%d.png" };
+
+   private static final String[] CONTENTS = { "ÿØÿà",
+         "%PDF-1.4\n", "\u0089HDF\r\n", "some text\n", "<?xml version=\"1.0\"?><a/>",
+         "%PDF-1.4\n", "\u0000\u0001\u0002", "\u0089PNG\r\n" };
+
+   private static final int ROUNDS = 5;
+
+   private static volatile Object sink;
+
+   public static void main(String[] args) throws Exception {
+      int numFiles = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+      File tmpFile = File.createTempFile("bogus", "bogus");
+      File tmpDir = new File(tmpFile.getParentFile(), UUID.randomUUID()
+            .toString());
+      tmpFile.delete();
+      tmpDir.mkdirs();
+      try {
+         File mimeTypesFile = new File(tmpDir, "mime-types.xml");
+         InputStream is = MimeDetectionBenchmark.class
+               .getResourceAsStream("/org/apache/tika/mime/tika-mimetypes.xml");
+         try {
+            FileUtils.writeByteArrayToFile(mimeTypesFile, IOUtils
+                  .toByteArray(is));
+         } finally {
+            is.close();
+         }
+         File dataDir = new File(tmpDir, "data");
+         List<File> files = Lists.newArrayList();
+         for (int i = 0; i < numFiles; i++) {
+            File file = new File(dataDir, String.format(
+                  NAMES[i % NAMES.length], i));
+            FileUtils.writeStringToFile(file, CONTENTS[i % CONTENTS.length],
+                  "ISO-8859-1");
+            files.add(file);
+         }
+
+         System.out.println("Files: " + numFiles);
+         MimeTypeUtils mimeUtils = new MimeTypeUtils(mimeTypesFile
+               .getAbsolutePath(), false);
+         for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (File file : files) {
+               sink = contentOnly(mimeUtils, file);
+            }
+            report("content every lookup", files.size(), start);
+
+            MimeExtractorRepo repo = new MimeExtractorRepo(Lists
+                  .<MetExtractorSpec> newLinkedList(), null, mimeTypesFile
+                  .getAbsolutePath(), false);
+            start = System.nanoTime();
+            for (File file : files) {
+               sink = lookups(repo, file);
+            }
+            report("name first, cached", files.size(), start);
+         }
+      } finally {
+         FileUtils.forceDelete(tmpDir);
+      }
+   }
+
+   /*
+    * What AutoDetectProductCrawler used to cost per file: four detections,
+    * each reading the file, and two walks up the mime-type hierarchy.
+    */
+   private static Object contentOnly(MimeTypeUtils mimeUtils, File file) {
+      Object result = null;
+      for (int i = 0; i < 4; i++) {
+         String mimeType = mimeUtils.getMimeType(file);
+         if (i == 1 || i == 2) {
+            while (mimeType != null
+                  && !mimeType.equals("application/octet-stream")) {
+               mimeType = mimeUtils.getSuperTypeForMimeType(mimeType);
+            }
+         }
+         result = mimeType;
+      }
+      return result;
+   }
+
+   private static Object lookups(MimeExtractorRepo repo, File file)
+         throws Exception {
+      repo.getExtractorSpecsForFile(file);
+      repo.getExtractorSpecsForFile(file);
+      repo.getMimeTypes(file);
+      return repo.getMimeType(file);
+   }
+
+   private static void report(String name, int numFiles, long start) {
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%-22s %8.0f files/s", name, numFiles
+            / seconds));
+   }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.crawl.typedetection;
+
+//JDK imports
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.UUID;
+
+//Apache imports
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+//OODT imports
+import org.apache.oodt.cas.metadata.extractors.CopyAndRewriteExtractor;
+import org.apache.oodt.cas.metadata.extractors.MetReaderExtractor;
+
+//Google imports
+import com.google.common.collect.Lists;
+
+//JUnit imports
+import junit.framework.TestCase;
+
+/**
+ * Test class for {@link MimeExtractorRepo}.
+ *
+ */
+public class TestMimeExtractorRepo extends TestCase {
+
+   private static final String PDF_CONTENT = "%PDF-1.4\n%âã\n";
+
+   private File tmpDir;
+   private MimeExtractorRepo repo;
+
+   @Override
+   public void setUp() throws Exception {
+      File tmpFile = File.createTempFile("bogus", "bogus");
+      tmpDir = new File(tmpFile.getParentFile(), UUID.randomUUID().toString());
+      tmpFile.delete();
+      if (!tmpDir.mkdirs()) {
+         throw new Exception("Failed to create temp directory");
+      }
+      File mimeTypesFile = new File(tmpDir, "mime-types.xml");
+      InputStream is = getClass().getResourceAsStream(
+            "/org/apache/tika/mime/tika-mimetypes.xml");
+      try {
+         FileUtils.writeByteArrayToFile(mimeTypesFile, IOUtils.toByteArray(is));
+      } finally {
+         is.close();
+      }
+      repo = new MimeExtractorRepo(Lists.<MetExtractorSpec>newLinkedList(),
+            null, mimeTypesFile.getAbsolutePath(), false);
+   }
+
+   @Override
+   public void tearDown() throws Exception {
+      FileUtils.forceDelete(tmpDir);
+   }
+
+   public void testNameFirst() throws Exception {
+      // An unambiguous name is trusted.
+      File misnamed = new File(tmpDir, "data.jpg");
+      FileUtils.writeStringToFile(misnamed, PDF_CONTENT);
+      assertEquals("image/jpeg", repo.getMimeType(misnamed));
+      repo.setNameFirst(false);
+      assertEquals("application/pdf", repo.getMimeType(misnamed));
+
+      // Otherwise the content is read.
+      repo.setNameFirst(true);
+      File unnamed = new File(tmpDir, "data");
+      FileUtils.writeStringToFile(unnamed, PDF_CONTENT);
+      assertEquals("application/pdf", repo.getMimeType(unnamed));
+      File text = new File(tmpDir, "data.txt");
+      FileUtils.writeStringToFile(text, "<html><head></head></html>");
+      String mimeType = repo.getMimeType(text);
+      repo.setNameFirst(false);
+      assertEquals(mimeType, repo.getMimeType(text));
+   }
+
+   public void testFileMimeTypeCache() throws Exception {
+      File file = new File(tmpDir, "data");
+      FileUtils.writeStringToFile(file, PDF_CONTENT);
+      assertEquals("application/pdf", repo.getMimeType(file));
+      assertEquals("application/pdf", repo.getMimeType(file));
+
+      // A changed file is detected again.
+      FileUtils.writeStringToFile(file, "just some text");
+      assertEquals("text/plain", repo.getMimeType(file));
+      assertEquals(Lists.newArrayList("text/plain"), repo.getMimeTypes(file));
+   }
+
+   public void testExtractorSpecsForMimeType() throws Exception {
+      MetExtractorSpec textSpec = new MetExtractorSpec(
+            CopyAndRewriteExtractor.class.getCanonicalName(), null,
+            Lists.<String>newArrayList());
+      MetExtractorSpec htmlSpec = new MetExtractorSpec(
+            MetReaderExtractor.class.getCanonicalName(), null,
+            Lists.<String>newArrayList());
+
+      // Super-types' specs apply.
+      repo.addMetExtractorSpec("text/plain", textSpec);
+      List<MetExtractorSpec> specs = repo
+            .getExtractorSpecsForMimeType("text/html");
+      assertEquals(Lists.newArrayList(textSpec), specs);
+
+      // Added specs aren't hidden by earlier lookups.
+      repo.addMetExtractorSpec("text/html", htmlSpec);
+      specs = repo.getExtractorSpecsForMimeType("text/html");
+      assertEquals(Lists.newArrayList(htmlSpec, textSpec), specs);
+      assertEquals(Lists.newArrayList(textSpec), repo
+            .getExtractorSpecsForMimeType("text/plain"));
+   }
+}
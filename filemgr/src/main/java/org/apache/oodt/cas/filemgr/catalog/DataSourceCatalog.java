@@ -43,12 +43,19 @@ import org.springframework.util.StringUtils;
 
 //JDK imports
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.Vector;
@@ -103,6 +110,50 @@ public class DataSourceCatalog implements Catalog {
      */
     private long cacheUpdateMinutes = 0L;
 
+    /* whether all metadata values of a product are inserted as one batch */
+    protected boolean batchMetadataWrites = false;
+
+    /* max number of products whose metadata may share one commit */
+    protected int metadataGroupCommitSize = 1;
+
+    /* max time to wait for other products to join a group commit */
+    protected long metadataGroupCommitWaitMillis = 0L;
+
+    /* products waiting for a group commit of their metadata */
+    private final LinkedList<PendingMetadataWrite> pendingMetadataWrites = new LinkedList<PendingMetadataWrite>();
+
+    /* held by the thread currently performing a group commit */
+    private final Object metadataCommitLock = new Object();
+
+    /* whether pages are fetched by seeking past the last seen product */
+    protected boolean keysetPagination = false;
+
+    /* how long a computed result count may be reused, <= 0 to disable */
+    protected long resultCountCacheSeconds = 0L;
+
+    /* max number of entries in the result count and page boundary caches */
+    private static final int PAGE_CACHE_SIZE = 1000;
+
+    /* [product type + query]=>[result count, time counted in millis] */
+    private final Map<String, long[]> resultCountCache = new LinkedHashMap<String, long[]>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > PAGE_CACHE_SIZE;
+        }
+    };
+
+    /* [product type + query + page number]=>last product on that page */
+    private final Map<String, PageKey> pageBoundaryCache = new LinkedHashMap<String, PageKey>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, PageKey> eldest) {
+            return size() > PAGE_CACHE_SIZE;
+        }
+    };
+
     /**
      * <p>
      * Default Constructor
@@ -140,7 +191,7 @@ public class DataSourceCatalog implements Catalog {
      * @see org.apache.oodt.cas.filemgr.catalog.Catalog#addMetadata(org.apache.oodt.cas.metadata.Metadata,
      *      org.apache.oodt.cas.filemgr.structs.Product)
      */
-    public synchronized void addMetadata(Metadata m, Product product)
+    public void addMetadata(Metadata m, Product product)
             throws CatalogException {
         List<Element> metadataTypes = null;
 
@@ -155,6 +206,76 @@ public class DataSourceCatalog implements Catalog {
                             + ": Message: " + e.getMessage());
         }
 
+        if (batchMetadataWrites) {
+            addMetadataBatched(m, product, metadataTypes);
+            invalidatePageCaches(product.getProductType());
+            return;
+        }
+
+        synchronized (this) {
+            for (Iterator<Element> i = metadataTypes.iterator(); i.hasNext();) {
+                Element element = i.next();
+                List<String> values = m.getAllMetadata(element.getElementName());
+
+                if (values == null) {
+                    LOG.log(Level.WARNING, "No Metadata specified for product ["
+                            + product.getProductName() + "] for required field ["
+                            + element.getElementName()
+                            + "]: Attempting to continue processing metadata");
+                    continue;
+                }
+
+                for (Iterator<String> j = values.iterator(); j.hasNext();) {
+                    addMetadataValueQuietly(element, product, j.next());
+                }
+            }
+        }
+        invalidatePageCaches(product.getProductType());
+    }
+
+    /**
+     * <p>
+     * Turns on (or off) batched metadata writes. When enabled, all of the
+     * metadata values for a product are inserted through a single
+     * {@link PreparedStatement} batch and committed in one transaction,
+     * instead of one connection and one commit per value.
+     * </p>
+     * 
+     * @param batchMetadataWrites
+     *            True to batch metadata writes, false to use the per-value
+     *            path.
+     */
+    public void setBatchMetadataWrites(boolean batchMetadataWrites) {
+        this.batchMetadataWrites = batchMetadataWrites;
+    }
+
+    /**
+     * <p>
+     * Configures group commit for batched metadata writes. Concurrent calls
+     * to {@link #addMetadata(Metadata, Product)} are coalesced so that the
+     * metadata of up to <code>groupSize</code> products is written in a
+     * single transaction. Only has an effect when batched metadata writes
+     * are turned on.
+     * </p>
+     * 
+     * @param groupSize
+     *            The maximum number of products per commit. Values
+     *            <code>&lt;= 1</code> commit each product on its own.
+     * @param waitMillis
+     *            The maximum number of milliseconds the committing thread
+     *            waits for other products to join its group.
+     */
+    public void setMetadataGroupCommit(int groupSize, long waitMillis) {
+        this.metadataGroupCommitSize = groupSize;
+        this.metadataGroupCommitWaitMillis = waitMillis;
+    }
+
+    private void addMetadataBatched(Metadata m, Product product,
+            List<Element> metadataTypes) throws CatalogException {
+        PendingMetadataWrite write = new PendingMetadataWrite(product
+                .getProductType().getName()
+                + "_metadata", product.getProductId());
+
         for (Iterator<Element> i = metadataTypes.iterator(); i.hasNext();) {
             Element element = i.next();
             List<String> values = m.getAllMetadata(element.getElementName());
@@ -168,28 +289,246 @@ public class DataSourceCatalog implements Catalog {
             }
 
             for (Iterator<String> j = values.iterator(); j.hasNext();) {
-                String value = j.next();
+                write.addValue(element, j.next());
+            }
+        }
 
+        if (write.elements.size() == 0) {
+            return;
+        }
+
+        boolean committed = false;
+        if (metadataGroupCommitSize > 1) {
+            committed = groupCommitMetadata(write);
+        } else {
+            List<PendingMetadataWrite> writes = new Vector<PendingMetadataWrite>();
+            writes.add(write);
+            committed = commitMetadataWrites(writes);
+        }
+
+        if (!committed) {
+            // a single bad value poisons the whole batch: fall back to
+            // inserting value by value so the good ones still make it in
+            LOG.log(Level.WARNING, "Batched metadata insert failed for product ["
+                    + product.getProductName()
+                    + "]: falling back to per-value inserts");
+            synchronized (this) {
+                for (int i = 0; i < write.elements.size(); i++) {
+                    addMetadataValueQuietly(write.elements.get(i), product,
+                            write.values.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Turns on (or off) keyset pagination. When enabled, the next and
+     * previous pages are fetched with a query that seeks past the first or
+     * last product of the current page (carried in the {@link ProductPage})
+     * and reads at most one page of rows, instead of scrolling the full
+     * result set to an offset. {@link #pagedQuery(Query, ProductType, int)}
+     * seeks as well when the previous page was recently served.
+     * </p>
+     * 
+     * @param keysetPagination
+     *            True to use keyset pagination, false to use offsets.
+     */
+    public void setKeysetPagination(boolean keysetPagination) {
+        this.keysetPagination = keysetPagination;
+    }
+
+    /**
+     * <p>
+     * Sets how long the total result count of a paged query is reused before
+     * it is recomputed. Counts for a product type are dropped as soon as its
+     * products or metadata change. Values <code>&lt;= 0</code> count on every
+     * page request.
+     * </p>
+     * 
+     * @param resultCountCacheSeconds
+     *            The number of seconds a result count stays valid.
+     */
+    public void setResultCountCacheSeconds(long resultCountCacheSeconds) {
+        this.resultCountCacheSeconds = resultCountCacheSeconds;
+    }
+
+    private boolean groupCommitMetadata(PendingMetadataWrite write) {
+        synchronized (pendingMetadataWrites) {
+            pendingMetadataWrites.add(write);
+            pendingMetadataWrites.notifyAll();
+        }
+
+        synchronized (metadataCommitLock) {
+            // whoever holds the commit lock writes out everything queued so
+            // far, so our rows may already have been committed by another
+            // thread while we waited for the lock
+            while (!write.done) {
+                List<PendingMetadataWrite> group = new Vector<PendingMetadataWrite>();
+                synchronized (pendingMetadataWrites) {
+                    long deadline = System.currentTimeMillis()
+                            + metadataGroupCommitWaitMillis;
+                    long remaining = metadataGroupCommitWaitMillis;
+                    while (pendingMetadataWrites.size() < metadataGroupCommitSize
+                            && remaining > 0) {
+                        try {
+                            pendingMetadataWrites.wait(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+
+                    while (!pendingMetadataWrites.isEmpty()
+                            && group.size() < metadataGroupCommitSize) {
+                        group.add(pendingMetadataWrites.removeFirst());
+                    }
+                }
+
+                boolean committed = commitMetadataWrites(group);
+                for (PendingMetadataWrite w : group) {
+                    w.committed = committed;
+                    w.done = true;
+                }
+            }
+            return write.committed;
+        }
+    }
+
+    private boolean commitMetadataWrites(List<PendingMetadataWrite> writes) {
+        Connection conn = null;
+        Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+        int numValues = 0;
+
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+
+            for (PendingMetadataWrite write : writes) {
+                PreparedStatement statement = statements
+                        .get(write.metadataTable);
+                if (statement == null) {
+                    String metaIngestSql = "INSERT INTO "
+                            + write.metadataTable
+                            + " (product_id, element_id, metadata_value) VALUES (?, ?, ?)";
+                    LOG.log(Level.FINE, "commitMetadataWrites: Preparing: "
+                            + metaIngestSql);
+                    statement = conn.prepareStatement(metaIngestSql);
+                    statements.put(write.metadataTable, statement);
+                }
+
+                for (int i = 0; i < write.elements.size(); i++) {
+                    setIdParameter(statement, 1, write.productId,
+                            productIdString);
+                    setIdParameter(statement, 2, write.elements.get(i)
+                            .getElementId(), fieldIdStringFlag);
+                    statement.setString(3, write.values.get(i));
+                    statement.addBatch();
+                    numValues++;
+                }
+            }
+
+            for (PreparedStatement statement : statements.values()) {
+                statement.executeBatch();
+            }
+            conn.commit();
+            LOG.log(Level.FINE, "commitMetadataWrites: committed [" + numValues
+                    + "] values for [" + writes.size() + "] products");
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            LOG.log(Level.WARNING,
+                    "Exception adding batched metadata values. Message: "
+                            + e.getMessage());
+            if (conn != null) {
                 try {
-                    addMetadataValue(element, product, value);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    LOG
-                            .log(
-                                    Level.WARNING,
-                                    "Exception ingesting metadata. Error inserting field: ["
-                                            + element.getElementId()
-                                            + "=>"
-                                            + value
-                                            + "]: for product: ["
-                                            + product.getProductName()
-                                            + "]: Message: "
-                                            + e.getMessage()
-                                            + ": Attempting to continue processing metadata");
+                    conn.rollback();
+                } catch (SQLException e2) {
+                    LOG.log(Level.SEVERE,
+                            "Unable to rollback batched metadata insert. Message: "
+                                    + e2.getMessage());
                 }
             }
+            return false;
+        } finally {
+            for (PreparedStatement statement : statements.values()) {
+                try {
+                    statement.close();
+                } catch (SQLException ignore) {
+                }
+            }
+
+            if (conn != null) {
+                try {
+                    conn.close();
+
+                } catch (SQLException ignore) {
+                }
+
+                conn = null;
+            }
         }
+    }
 
+    private void setIdParameter(PreparedStatement statement, int index,
+            String id, boolean quoted) throws SQLException {
+        if (quoted) {
+            statement.setString(index, id);
+        } else {
+            statement.setLong(index, Long.parseLong(id));
+        }
+    }
+
+    private void addMetadataValueQuietly(Element element, Product product,
+            String value) {
+        try {
+            addMetadataValue(element, product, value);
+        } catch (Exception e) {
+            e.printStackTrace();
+            LOG
+                    .log(
+                            Level.WARNING,
+                            "Exception ingesting metadata. Error inserting field: ["
+                                    + element.getElementId()
+                                    + "=>"
+                                    + value
+                                    + "]: for product: ["
+                                    + product.getProductName()
+                                    + "]: Message: "
+                                    + e.getMessage()
+                                    + ": Attempting to continue processing metadata");
+        }
+    }
+
+    /*
+     * the metadata rows of a single product waiting to be written by the
+     * batched write path
+     */
+    private static class PendingMetadataWrite {
+
+        private final String metadataTable;
+
+        private final String productId;
+
+        private final List<Element> elements = new Vector<Element>();
+
+        private final List<String> values = new Vector<String>();
+
+        /* guarded by metadataCommitLock */
+        private boolean done = false;
+
+        private boolean committed = false;
+
+        PendingMetadataWrite(String metadataTable, String productId) {
+            this.metadataTable = metadataTable;
+            this.productId = productId;
+        }
+
+        void addValue(Element element, String value) {
+            elements.add(element);
+            values.add(value);
+        }
     }
 
     /*
@@ -241,6 +580,7 @@ public class DataSourceCatalog implements Catalog {
                 }
             }
         }
+        invalidatePageCaches(product.getProductType());
     }
 
     /*
@@ -370,7 +710,7 @@ public class DataSourceCatalog implements Catalog {
                 conn = null;
             }
         }
-
+        invalidatePageCaches(product.getProductType());
     }
 
     /*
@@ -510,7 +850,7 @@ public class DataSourceCatalog implements Catalog {
                 conn = null;
             }
         }
-
+        invalidatePageCaches(product.getProductType());
     }
 
     /*
@@ -1242,7 +1582,7 @@ public class DataSourceCatalog implements Catalog {
      *      org.apache.oodt.cas.filemgr.structs.ProductType)
      */
     public List<String> query(Query query, ProductType type) throws CatalogException {
-        return paginateQuery(query, type, -1);
+        return paginateQuery(query, type, -1, -1);
     }
 
     /*
@@ -1637,6 +1977,11 @@ public class DataSourceCatalog implements Catalog {
         Query query = new Query();
 
         try {
+            if (keysetPagination && currentPage.getLastProductId() != null) {
+                return getKeysetPage(query, type, currentPage.getPageNum() + 1,
+                        new PageKey(currentPage.getLastProductId(), currentPage
+                                .getLastProductDateTime()), true);
+            }
             nextPage = pagedQuery(query, type, currentPage.getPageNum() + 1);
         } catch (CatalogException e) {
             LOG.log(Level.WARNING, "Exception getting next page: Message: "
@@ -1664,6 +2009,11 @@ public class DataSourceCatalog implements Catalog {
         Query query = new Query();
 
         try {
+            if (keysetPagination && currentPage.getFirstProductId() != null) {
+                return getKeysetPage(query, type, currentPage.getPageNum() - 1,
+                        new PageKey(currentPage.getFirstProductId(), currentPage
+                                .getFirstProductDateTime()), false);
+            }
             prevPage = pagedQuery(query, type, currentPage.getPageNum() - 1);
         } catch (CatalogException e) {
             LOG.log(Level.WARNING, "Exception getting prev page: Message: "
@@ -1681,8 +2031,19 @@ public class DataSourceCatalog implements Catalog {
      */
     public ProductPage pagedQuery(Query query, ProductType type, int pageNum)
             throws CatalogException {
-        int totalPages = PaginationUtils.getTotalPage(getResultListSize(query,
-                type), this.pageSize);
+        if (keysetPagination) {
+            if (pageNum == 1) {
+                return getKeysetPage(query, type, pageNum, null, true);
+            }
+
+            PageKey prevPageEnd = getPageBoundary(query, type, pageNum - 1);
+            if (prevPageEnd != null) {
+                return getKeysetPage(query, type, pageNum, prevPageEnd, true);
+            }
+        }
+
+        int numResults = getCachedResultListSize(query, type);
+        int totalPages = PaginationUtils.getTotalPage(numResults, this.pageSize);
 
         /*
          * if there are 0 total pages in the result list size then don't bother
@@ -1697,7 +2058,8 @@ public class DataSourceCatalog implements Catalog {
         retPage.setPageSize(this.pageSize);
         retPage.setTotalPages(totalPages);
 
-        List<String> productIds = paginateQuery(query, type, pageNum);
+        List<String> productIds = paginateQuery(query, type, pageNum,
+                numResults);
 
         if (productIds != null && productIds.size() > 0) {
             List<Product> products = new Vector<Product>(productIds.size());
@@ -1709,11 +2071,323 @@ public class DataSourceCatalog implements Catalog {
             }
 
             retPage.setPageProducts(products);
+
+            if (keysetPagination) {
+                // hand out a cursor so the pages after this one can seek
+                PageKey first = getPageKey(productIds.get(0));
+                PageKey last = getPageKey(productIds
+                        .get(productIds.size() - 1));
+                if (first != null && last != null) {
+                    retPage.setFirstProductId(first.productId);
+                    retPage.setFirstProductDateTime(first.productDateTime);
+                    retPage.setLastProductId(last.productId);
+                    retPage.setLastProductDateTime(last.productDateTime);
+                    putPageBoundary(query, type, pageNum, last);
+                }
+            }
+        }
+
+        return retPage;
+    }
+
+    /**
+     * Returns the number of results for the given query, reusing a
+     * previously computed count if it is younger than
+     * {@link #resultCountCacheSeconds}.
+     */
+    protected int getCachedResultListSize(Query query, ProductType type)
+            throws CatalogException {
+        if (resultCountCacheSeconds <= 0) {
+            return getResultListSize(query, type);
+        }
+
+        String cacheKey = type.getName() + ":" + query;
+        long now = System.currentTimeMillis();
+        synchronized (resultCountCache) {
+            long[] cached = resultCountCache.get(cacheKey);
+            if (cached != null
+                    && now - cached[1] < resultCountCacheSeconds * 1000L) {
+                return (int) cached[0];
+            }
+        }
+
+        int resultCount = getResultListSize(query, type);
+        synchronized (resultCountCache) {
+            resultCountCache.put(cacheKey, new long[] { resultCount, now });
+        }
+        return resultCount;
+    }
+
+    private ProductPage getKeysetPage(Query query, ProductType type,
+            int pageNum, PageKey from, boolean forward)
+            throws CatalogException {
+        int totalPages = PaginationUtils.getTotalPage(getCachedResultListSize(
+                query, type), this.pageSize);
+
+        if (totalPages == 0) {
+            return ProductPage.blankPage();
+        }
+
+        ProductPage retPage = new ProductPage();
+        retPage.setPageNum(pageNum);
+        retPage.setPageSize(this.pageSize);
+        retPage.setTotalPages(totalPages);
+
+        List<PageKey> keys = seekPage(query, type, from, forward);
+        if (keys.size() > 0) {
+            List<Product> products = new Vector<Product>(keys.size());
+            for (PageKey key : keys) {
+                products.add(getProductById(key.productId));
+            }
+            retPage.setPageProducts(products);
+
+            PageKey first = keys.get(0);
+            PageKey last = keys.get(keys.size() - 1);
+            retPage.setFirstProductId(first.productId);
+            retPage.setFirstProductDateTime(first.productDateTime);
+            retPage.setLastProductId(last.productId);
+            retPage.setLastProductDateTime(last.productDateTime);
+            putPageBoundary(query, type, pageNum, last);
         }
 
         return retPage;
     }
 
+    /*
+     * Returns the keys of at most one page of products that sort after (or,
+     * when not going forward, before) the given key, in catalog order.
+     */
+    private List<PageKey> seekPage(Query query, ProductType type,
+            PageKey from, boolean forward) throws CatalogException {
+        Connection conn = null;
+        PreparedStatement statement = null;
+        ResultSet rs = null;
+
+        try {
+            String criteriaSql = null;
+            if (query.getCriteria().size() == 1) {
+                criteriaSql = this.getSqlQuery(query.getCriteria().get(0), type);
+            } else if (query.getCriteria().size() > 1) {
+                criteriaSql = this.getSqlQuery(new BooleanQueryCriteria(query
+                        .getCriteria(), BooleanQueryCriteria.AND), type);
+            }
+
+            String metadataTable = type.getName() + "_metadata";
+            String cmp = forward ? "<" : ">";
+            String order = forward ? "DESC" : "ASC";
+            StringBuffer seekSql = new StringBuffer();
+
+            if (!productIdString) {
+                seekSql.append("SELECT DISTINCT product_id FROM "
+                        + metadataTable);
+                String conj = " WHERE ";
+                if (criteriaSql != null) {
+                    seekSql.append(conj + "product_id IN (" + criteriaSql + ")");
+                    conj = " AND ";
+                }
+                if (from != null) {
+                    seekSql.append(conj + "product_id " + cmp + " ?");
+                }
+                seekSql.append(" ORDER BY product_id " + order);
+            } else {
+                seekSql.append("SELECT products.product_id, products.product_datetime FROM products"
+                        + " WHERE products.product_id IN (");
+                seekSql.append(criteriaSql != null ? criteriaSql
+                        : "SELECT product_id FROM " + metadataTable);
+                seekSql.append(")");
+                if (from != null) {
+                    seekSql.append(" AND (products.product_datetime " + cmp
+                            + " ? OR (products.product_datetime = ?"
+                            + " AND products.product_id " + cmp + " ?))");
+                }
+                seekSql.append(" ORDER BY products.product_datetime " + order
+                        + ", products.product_id " + order);
+            }
+
+            LOG.log(Level.FINE, "catalog seek query: executing: " + seekSql);
+
+            conn = dataSource.getConnection();
+            statement = conn.prepareStatement(seekSql.toString());
+            statement.setMaxRows(pageSize);
+            statement.setFetchSize(pageSize);
+            if (from != null) {
+                if (!productIdString) {
+                    setIdParameter(statement, 1, from.productId, false);
+                } else {
+                    Timestamp fromDateTime = Timestamp
+                            .valueOf(from.productDateTime);
+                    statement.setTimestamp(1, fromDateTime);
+                    statement.setTimestamp(2, fromDateTime);
+                    statement.setString(3, from.productId);
+                }
+            }
+
+            rs = statement.executeQuery();
+            List<PageKey> keys = new Vector<PageKey>();
+            while (rs.next() && keys.size() < pageSize) {
+                if (!productIdString) {
+                    keys.add(new PageKey(rs.getString("product_id"), null));
+                } else {
+                    Timestamp dateTime = rs.getTimestamp("product_datetime");
+                    keys.add(new PageKey(rs.getString("product_id"),
+                            dateTime != null ? dateTime.toString() : null));
+                }
+            }
+
+            if (!forward) {
+                Collections.reverse(keys);
+            }
+            return keys;
+        } catch (Exception e) {
+            e.printStackTrace();
+            LOG.log(Level.WARNING, "Exception performing seek query. Message: "
+                    + e.getMessage());
+            throw new CatalogException(e.getMessage());
+        } finally {
+
+            if (rs != null) {
+                try {
+                    rs.close();
+                } catch (SQLException ignore) {
+                }
+
+                rs = null;
+            }
+
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException ignore) {
+                }
+
+                statement = null;
+            }
+
+            if (conn != null) {
+                try {
+                    conn.close();
+
+                } catch (SQLException ignore) {
+                }
+
+                conn = null;
+            }
+        }
+    }
+
+    private PageKey getPageBoundary(Query query, ProductType type, int pageNum) {
+        synchronized (pageBoundaryCache) {
+            return pageBoundaryCache.get(type.getName() + ":" + query + ":"
+                    + pageNum);
+        }
+    }
+
+    private void putPageBoundary(Query query, ProductType type, int pageNum,
+            PageKey key) {
+        synchronized (pageBoundaryCache) {
+            pageBoundaryCache.put(type.getName() + ":" + query + ":" + pageNum,
+                    key);
+        }
+    }
+
+    /*
+     * Returns the sort key of a product, or null if it has none (a string id
+     * product without a datetime).
+     */
+    private PageKey getPageKey(String productId) throws CatalogException {
+        if (!productIdString) {
+            // ids alone are the sort key
+            return new PageKey(productId, null);
+        }
+
+        Connection conn = null;
+        PreparedStatement statement = null;
+        ResultSet rs = null;
+
+        try {
+            conn = dataSource.getConnection();
+            statement = conn
+                    .prepareStatement("SELECT product_datetime FROM products WHERE product_id = ?");
+            statement.setString(1, productId);
+            rs = statement.executeQuery();
+            Timestamp dateTime = rs.next() ? rs.getTimestamp("product_datetime")
+                    : null;
+            return dateTime != null ? new PageKey(productId, dateTime
+                    .toString()) : null;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            LOG.log(Level.WARNING, "Exception getting datetime of product: ["
+                    + productId + "]. Message: " + e.getMessage());
+            throw new CatalogException(e.getMessage());
+        } finally {
+
+            if (rs != null) {
+                try {
+                    rs.close();
+                } catch (SQLException ignore) {
+                }
+
+                rs = null;
+            }
+
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException ignore) {
+                }
+
+                statement = null;
+            }
+
+            if (conn != null) {
+                try {
+                    conn.close();
+
+                } catch (SQLException ignore) {
+                }
+
+                conn = null;
+            }
+        }
+    }
+
+    /*
+     * Forgets the result counts and page boundaries of a product type's
+     * queries once its products change.
+     */
+    private void invalidatePageCaches(ProductType type) {
+        String prefix = type.getName() + ":";
+        synchronized (resultCountCache) {
+            for (Iterator<String> i = resultCountCache.keySet().iterator(); i
+                    .hasNext();) {
+                if (i.next().startsWith(prefix)) {
+                    i.remove();
+                }
+            }
+        }
+        synchronized (pageBoundaryCache) {
+            for (Iterator<String> i = pageBoundaryCache.keySet().iterator(); i
+                    .hasNext();) {
+                if (i.next().startsWith(prefix)) {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    /* the sort key of a product in paged results */
+    private static class PageKey {
+
+        private final String productId;
+
+        private final String productDateTime;
+
+        PageKey(String productId, String productDateTime) {
+            this.productId = productId;
+            this.productDateTime = productDateTime;
+        }
+    }
+
     protected int getResultListSize(Query query, ProductType type)
             throws CatalogException {
         Connection conn = null;
@@ -1993,19 +2667,16 @@ public class DataSourceCatalog implements Catalog {
         return products;
     }
 
-    private List<String> paginateQuery(Query query, ProductType type, int pageNum)
-            throws CatalogException {
+    private List<String> paginateQuery(Query query, ProductType type,
+            int pageNum, int numResults) throws CatalogException {
         Connection conn = null;
         Statement statement = null;
         ResultSet rs = null;
 
         boolean doSkip = true;
-        int numResults = -1;
 
         if (pageNum == -1) {
             doSkip = false;
-        } else {
-            numResults = getResultListSize(query, type);
         }
 
         try {
@@ -2037,7 +2708,8 @@ public class DataSourceCatalog implements Catalog {
               }	else {
                 getProductSql = this.getSqlQuery(new BooleanQueryCriteria(query.getCriteria(), BooleanQueryCriteria.AND), type);
               }
-              getProductSql += " ORDER BY products.product_datetime DESC ";
+              // ties broken the same way as the keyset seek query
+              getProductSql += " ORDER BY products.product_datetime DESC, products.product_id DESC ";
               
             }
             
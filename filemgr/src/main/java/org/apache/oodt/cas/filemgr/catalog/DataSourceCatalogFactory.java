@@ -63,6 +63,21 @@ public class DataSourceCatalogFactory implements CatalogFactory {
 
     protected boolean orderedValues = false;
 
+    /* Whether or not all of a product's metadata values are inserted as a single batch */
+    protected boolean batchMetadataWrites = false;
+
+    /* Max number of products whose batched metadata may share one commit */
+    protected int metadataGroupCommitSize = 1;
+
+    /* Max milliseconds to wait for other products to join a group commit */
+    protected long metadataGroupCommitWaitMillis = 0L;
+
+    /* Whether or not next/prev pages are fetched by seeking past the current page */
+    protected boolean keysetPagination = false;
+
+    /* Seconds a computed paged query result count may be reused */
+    protected long resultCountCacheSeconds = 0L;
+
     /**
      * <p>
      * Default Constructor
@@ -139,6 +154,42 @@ public class DataSourceCatalogFactory implements CatalogFactory {
 				System.getProperty("org.apache.oodt.cas.filemgr.catalog.datasource.productId.string", "false") );
   	
 			orderedValues = Boolean.parseBoolean(System.getProperty("org.apache.oodt.cas.filemgr.catalog.datasource.orderedValues"));
+
+			batchMetadataWrites = Boolean.parseBoolean(System.getProperty(
+			    "org.apache.oodt.cas.filemgr.catalog.datasource.batchMetadataWrites", "false"));
+			metadataGroupCommitSize = Integer
+			      .getInteger(
+			              "org.apache.oodt.cas.filemgr.catalog.datasource.metadataGroupCommit.size",
+			              1).intValue();
+			metadataGroupCommitWaitMillis = Long
+			      .getLong(
+			              "org.apache.oodt.cas.filemgr.catalog.datasource.metadataGroupCommit.waitMillis",
+			              0L).longValue();
+
+			keysetPagination = Boolean.parseBoolean(System.getProperty(
+			    "org.apache.oodt.cas.filemgr.catalog.datasource.keysetPagination", "false"));
+			resultCountCacheSeconds = Long
+			      .getLong(
+			              "org.apache.oodt.cas.filemgr.catalog.datasource.resultCountCacheSeconds",
+			              0L).longValue();
+    }
+
+    /**
+     * Applies the optional settings read from the environment (batched
+     * metadata writes, keyset pagination) to a newly created
+     * {@link DataSourceCatalog}.
+     * 
+     * @param catalog
+     *            The catalog to configure.
+     * @return The same catalog, for convenience.
+     */
+    protected DataSourceCatalog configureCatalog(DataSourceCatalog catalog) {
+        catalog.setBatchMetadataWrites(batchMetadataWrites);
+        catalog.setMetadataGroupCommit(metadataGroupCommitSize,
+                metadataGroupCommitWaitMillis);
+        catalog.setKeysetPagination(keysetPagination);
+        catalog.setResultCountCacheSeconds(resultCountCacheSeconds);
+        return catalog;
     }
 
     /*
@@ -148,11 +199,12 @@ public class DataSourceCatalogFactory implements CatalogFactory {
      */
     public Catalog createCatalog() {
     	if (validationLayer==null) {
-    			return new LenientDataSourceCatalog(dataSource, validationLayer, fieldIdStr,
-							    pageSize, cacheUpdateMinutes, productIdString, orderedValues);
+    			return configureCatalog(new LenientDataSourceCatalog(dataSource, validationLayer, fieldIdStr,
+							    pageSize, cacheUpdateMinutes, productIdString, orderedValues));
     	} else {
-        return new DataSourceCatalog(dataSource, validationLayer, fieldIdStr,
-				     pageSize, cacheUpdateMinutes, productIdString, orderedValues);
+        return configureCatalog(new DataSourceCatalog(dataSource,
+            validationLayer, fieldIdStr, pageSize, cacheUpdateMinutes,
+            productIdString, orderedValues));
     	}
     }
 
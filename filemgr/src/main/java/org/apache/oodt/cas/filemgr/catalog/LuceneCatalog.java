@@ -112,6 +112,9 @@ public class LuceneCatalog implements Catalog {
     /* lucene index merge factor */
     private int mergeFactor = -1;
 
+    /* shared searcher over the index, reopened after each write */
+    private LuceneSearcherManager searcherManager = null;
+
     /**
      * 
      * @param idxFilePath
@@ -144,6 +147,7 @@ public class LuceneCatalog implements Catalog {
         this.writeLockTimeout = writeTimeout;
         this.commitLockTimeout = commitTimeout;
         this.mergeFactor = mergeFactor;
+        this.searcherManager = new LuceneSearcherManager(idxFilePath);
     }
 
     /*
@@ -398,7 +402,7 @@ public class LuceneCatalog implements Catalog {
             boolean getRefs, boolean getMet) throws CatalogException {
         IndexSearcher searcher = null;
         try {
-            searcher = new IndexSearcher(indexFilePath);
+            searcher = searcherManager.acquire();
             Term productIdTerm = new Term("product_id", productId);
             org.apache.lucene.search.Query query = new TermQuery(productIdTerm);
             Hits hits = searcher.search(query);
@@ -422,10 +426,7 @@ public class LuceneCatalog implements Catalog {
             throw new CatalogException(e.getMessage());
         } finally {
             if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (Exception ignore) {
-                }
+                searcherManager.release(searcher);
                 searcher = null;
             }
         }
@@ -444,7 +445,7 @@ public class LuceneCatalog implements Catalog {
             throws CatalogException {
         IndexSearcher searcher = null;
         try {
-            searcher = new IndexSearcher(indexFilePath);
+            searcher = searcherManager.acquire();
             Term productIdTerm = new Term("product_name", productName);
             org.apache.lucene.search.Query query = new TermQuery(productIdTerm);
             Sort sort = new Sort(new SortField("CAS.ProductReceivedTime",
@@ -472,10 +473,7 @@ public class LuceneCatalog implements Catalog {
             throw new CatalogException(e.getMessage());
         } finally {
             if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (Exception ignore) {
-                }
+                searcherManager.release(searcher);
                 searcher = null;
             }
         }
@@ -508,7 +506,7 @@ public class LuceneCatalog implements Catalog {
         List<Product> products = null;
 
         try {
-            searcher = new IndexSearcher(indexFilePath);
+            searcher = searcherManager.acquire();
             Term productIdTerm = new Term("myfield", "myvalue");
             org.apache.lucene.search.Query query = new TermQuery(productIdTerm);
             Sort sort = new Sort(new SortField("CAS.ProductReceivedTime",
@@ -538,10 +536,7 @@ public class LuceneCatalog implements Catalog {
             throw new CatalogException(e.getMessage());
         } finally {
             if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (Exception ignore) {
-                }
+                searcherManager.release(searcher);
                 searcher = null;
             }
         }
@@ -565,7 +560,7 @@ public class LuceneCatalog implements Catalog {
         List<Product> products = null;
 
         try {
-            searcher = new IndexSearcher(indexFilePath);
+            searcher = searcherManager.acquire();
             Term productIdTerm = new Term("product_type_id", type
                     .getProductTypeId());
             org.apache.lucene.search.Query query = new TermQuery(productIdTerm);
@@ -596,10 +591,7 @@ public class LuceneCatalog implements Catalog {
             throw new CatalogException(e.getMessage());
         } finally {
             if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (Exception ignore) {
-                }
+                searcherManager.release(searcher);
                 searcher = null;
             }
         }
@@ -610,7 +602,7 @@ public class LuceneCatalog implements Catalog {
     public Metadata getMetadata(Product product) throws CatalogException {
         IndexSearcher searcher = null;
         try {
-            searcher = new IndexSearcher(indexFilePath);
+            searcher = searcherManager.acquire();
             Term productIdTerm = new Term("product_id", product.getProductId());
             org.apache.lucene.search.Query query = new TermQuery(productIdTerm);
             Hits hits = searcher.search(query);
@@ -634,10 +626,7 @@ public class LuceneCatalog implements Catalog {
             throw new CatalogException(e.getMessage());
         } finally {
             if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (Exception ignore) {
-                }
+                searcherManager.release(searcher);
                 searcher = null;
             }
         }
@@ -687,7 +676,7 @@ public class LuceneCatalog implements Catalog {
         IndexSearcher searcher = null;
 
         try {
-            searcher = new IndexSearcher(indexFilePath);
+            searcher = searcherManager.acquire();
 
             // construct a Boolean query here
             BooleanQuery booleanQuery = new BooleanQuery();
@@ -721,10 +710,7 @@ public class LuceneCatalog implements Catalog {
             throw new CatalogException(e.getMessage());
         } finally {
             if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (Exception ignore) {
-                }
+                searcherManager.release(searcher);
                 searcher = null;
             }
         }
@@ -970,6 +956,8 @@ public class LuceneCatalog implements Catalog {
                 reader = null;
             }
 
+            // make the deletion visible to readers
+            searcherManager.refresh();
         }
     }
 
@@ -1011,6 +999,9 @@ public class LuceneCatalog implements Catalog {
             } catch (Exception ignore) {
             }
             writer = null;
+
+            // make the new document visible to readers
+            searcherManager.refresh();
         }
 
     }
@@ -1245,7 +1236,7 @@ public class LuceneCatalog implements Catalog {
         int numHits = -1;
 
         try {
-            searcher = new IndexSearcher(indexFilePath);
+            searcher = searcherManager.acquire();
 
             // construct a Boolean query here
             BooleanQuery booleanQuery = new BooleanQuery();
@@ -1271,10 +1262,7 @@ public class LuceneCatalog implements Catalog {
             throw new CatalogException(e.getMessage());
         } finally {
             if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (Exception ignore) {
-                }
+                searcherManager.release(searcher);
                 searcher = null;
             }
         }
@@ -1294,7 +1282,7 @@ public class LuceneCatalog implements Catalog {
         }
 
         try {
-            searcher = new IndexSearcher(indexFilePath);
+            searcher = searcherManager.acquire();
 
             // construct a Boolean query here
             BooleanQuery booleanQuery = new BooleanQuery();
@@ -1360,10 +1348,7 @@ public class LuceneCatalog implements Catalog {
             throw new CatalogException(e.getMessage());
         } finally {
             if (searcher != null) {
-                try {
-                    searcher.close();
-                } catch (Exception ignore) {
-                }
+                searcherManager.release(searcher);
                 searcher = null;
             }
         }
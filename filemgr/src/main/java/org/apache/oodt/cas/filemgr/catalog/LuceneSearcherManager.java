@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.catalog;
+
+//JDK imports
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//Lucene imports
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * Hands out a single, long-lived {@link IndexSearcher} over a Lucene index
+ * directory to any number of reading threads. Each searcher is reference
+ * counted: callers {@link #acquire()} a searcher, use it, and
+ * {@link #release(IndexSearcher)} it when done. After a write,
+ * {@link #refresh()} opens a new searcher and atomically swaps it in; the
+ * previous searcher is closed once its last reader releases it, so readers
+ * never block on writers.
+ * </p>
+ *
+ * <p>
+ * Only writes made through the owner of this manager are noticed. Changes
+ * made to the index by another process become visible on the next
+ * {@link #refresh()}.
+ * </p>
+ */
+public class LuceneSearcherManager {
+
+    /* our log stream */
+    private static final Logger LOG = Logger
+            .getLogger(LuceneSearcherManager.class.getName());
+
+    /* the path to the index directory */
+    private String indexFilePath = null;
+
+    /* the searcher handed out to new readers, guarded by this */
+    private IndexSearcher current = null;
+
+    /* outstanding references per open searcher, guarded by this */
+    private Map<IndexSearcher, RefCount> refCounts = new IdentityHashMap<IndexSearcher, RefCount>();
+
+    /**
+     * @param indexFilePath
+     *            A file path pointing to the lucene index directory.
+     */
+    public LuceneSearcherManager(String indexFilePath) {
+        this.indexFilePath = indexFilePath;
+    }
+
+    /**
+     * Returns the current searcher, opening it if necessary. Every call must
+     * be paired with a call to {@link #release(IndexSearcher)}.
+     *
+     * @return The current {@link IndexSearcher}.
+     * @throws IOException
+     *             If the index cannot be opened.
+     */
+    public synchronized IndexSearcher acquire() throws IOException {
+        if (current == null) {
+            current = new IndexSearcher(indexFilePath);
+            // the manager holds one reference for as long as it is current
+            refCounts.put(current, new RefCount());
+        }
+        refCounts.get(current).count++;
+        return current;
+    }
+
+    /**
+     * Releases a searcher obtained from {@link #acquire()}.
+     *
+     * @param searcher
+     *            The searcher to release.
+     */
+    public synchronized void release(IndexSearcher searcher) {
+        decRef(searcher);
+    }
+
+    /**
+     * Opens a new searcher over the index and makes it current. Readers
+     * still holding the previous searcher continue to use it until they
+     * release it.
+     */
+    public void refresh() {
+        IndexSearcher newSearcher = null;
+        try {
+            newSearcher = new IndexSearcher(indexFilePath);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to reopen index: [" + indexFilePath
+                    + "]: Message: " + e.getMessage()
+                    + ": searcher will be reopened on next read");
+        }
+
+        synchronized (this) {
+            IndexSearcher oldSearcher = current;
+            current = newSearcher;
+            if (newSearcher != null) {
+                refCounts.put(newSearcher, new RefCount());
+            }
+            if (oldSearcher != null) {
+                decRef(oldSearcher);
+            }
+        }
+    }
+
+    /**
+     * Drops the current searcher. It is closed as soon as no reader holds it.
+     */
+    public synchronized void close() {
+        if (current != null) {
+            IndexSearcher oldSearcher = current;
+            current = null;
+            decRef(oldSearcher);
+        }
+    }
+
+    private void decRef(IndexSearcher searcher) {
+        RefCount ref = refCounts.get(searcher);
+        if (ref == null) {
+            return;
+        }
+
+        if (--ref.count == 0) {
+            refCounts.remove(searcher);
+            try {
+                searcher.close();
+            } catch (Exception ignore) {
+            }
+        }
+    }
+
+    private static class RefCount {
+        private int count = 1;
+    }
+
+}
@@ -79,13 +79,11 @@ public class MappedDataSourceCatalog extends DataSourceCatalog {
      *      org.apache.oodt.cas.filemgr.structs.Product)
      */
     @Override
-    public synchronized void addMetadata(Metadata metadata, Product product)
+    public void addMetadata(Metadata metadata, Product product)
             throws CatalogException {
-        String origProductTypeName = product.getProductType().getName();
-        product.getProductType().setName(
-                getProductTypeTableName(origProductTypeName));
-        super.addMetadata(metadata, product);
-        product.getProductType().setName(origProductTypeName);
+        // not synchronized: the write goes through a copy carrying the table
+        // name, so concurrent ingests can share a group commit
+        super.addMetadata(metadata, withTableName(product));
     }
 
     /*
@@ -216,6 +214,28 @@ public class MappedDataSourceCatalog extends DataSourceCatalog {
         return results;
     }
 
+    /*
+     * Returns a copy of the product whose product type is named for its
+     * table, leaving the (possibly shared) original product type untouched.
+     */
+    private Product withTableName(Product product) {
+        ProductType type = product.getProductType();
+        ProductType mappedType = new ProductType(type.getProductTypeId(),
+                getProductTypeTableName(type.getName()), type
+                        .getDescription(), type.getProductRepositoryPath(),
+                type.getVersioner());
+        mappedType.setTypeMetadata(type.getTypeMetadata());
+        mappedType.setExtractors(type.getExtractors());
+        mappedType.setHandlers(type.getHandlers());
+
+        Product mapped = new Product(product.getProductName(), mappedType,
+                product.getProductStructure(), product.getTransferStatus(),
+                product.getProductReferences());
+        mapped.setProductId(product.getProductId());
+        mapped.setRootRef(product.getRootRef());
+        return mapped;
+    }
+
     protected String getProductTypeTableName(String origName) {
         if (typeMap != null && typeMap.containsKey(origName)) {
             return typeMap.getProperty(origName);
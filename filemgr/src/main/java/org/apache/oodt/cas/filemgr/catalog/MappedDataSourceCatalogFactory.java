@@ -64,8 +64,9 @@ public class MappedDataSourceCatalogFactory extends DataSourceCatalogFactory {
      */
     @Override
     public Catalog createCatalog() {
-        return new MappedDataSourceCatalog(dataSource, validationLayer,
-                fieldIdStr, pageSize, cacheUpdateMinutes, typeMap);
+        return configureCatalog(new MappedDataSourceCatalog(dataSource,
+                validationLayer, fieldIdStr, pageSize, cacheUpdateMinutes,
+                typeMap));
     }
 
 }
@@ -26,6 +26,15 @@ package org.apache.oodt.cas.filemgr.datatransfer;
  */
 public class LocalDataTransferFactory implements DataTransferFactory {
 
+    /* the max number of references transferred at once */
+    private int transferThreads = Integer.getInteger(
+            "org.apache.oodt.cas.filemgr.datatransfer.local.transferThreads",
+            1).intValue();
+
+    /* whether ingested files may be renamed into the repository */
+    private boolean renameOnSameFilesystem = Boolean.getBoolean(
+            "org.apache.oodt.cas.filemgr.datatransfer.local.renameOnSameFilesystem");
+
     /**
      * <p>Default Constructor</p>
      */
@@ -37,7 +46,7 @@ public class LocalDataTransferFactory implements DataTransferFactory {
      * @see org.apache.oodt.cas.datatransfer.DataTransferFactory#createDataTransfer()
      */
     public DataTransfer createDataTransfer() {
-        return new LocalDataTransferer();
+        return new LocalDataTransferer(transferThreads, renameOnSameFilesystem);
     }
 
 }
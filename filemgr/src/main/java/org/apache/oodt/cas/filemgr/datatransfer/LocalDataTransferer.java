@@ -34,9 +34,17 @@ import org.apache.tika.mime.MimeTypesFactory;
 //JDK imports
 import java.io.IOException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
 import java.util.List;
 import java.util.Iterator;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 import java.net.URI;
@@ -55,6 +63,14 @@ import java.net.URISyntaxException;
  *          NFS mounted disk, or via the locally mounted file repository.
  *          </p>
  * 
+ *          <p>
+ *          The references of a product can be transferred by a bounded pool
+ *          of threads, and, if allowed, moved with a rename when source and
+ *          destination share a filesystem. Files are copied straight into
+ *          their destination, so the {@link TransferStatusTracker} keeps
+ *          reporting accurate per reference progress while they are written.
+ *          </p>
+ * 
  */
 public class LocalDataTransferer implements DataTransfer {
 
@@ -62,9 +78,18 @@ public class LocalDataTransferer implements DataTransfer {
    private static final Logger LOG = Logger.getLogger(LocalDataTransferer.class
          .getName());
 
+   /* bytes handed to a single FileChannel#transferTo call */
+   private static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+
    /* file manager client */
    private XmlRpcFileManagerClient client = null;
 
+   /* the max number of references transferred at once */
+   private int transferThreads = 1;
+
+   /* whether ingested files may be renamed into the repository */
+   private boolean renameOnSameFilesystem = false;
+
    /**
     * <p>
     * Default Constructor
@@ -73,6 +98,20 @@ public class LocalDataTransferer implements DataTransfer {
    public LocalDataTransferer() {
    }
 
+   /**
+    * @param transferThreads
+    *           The max number of references transferred at once.
+    * @param renameOnSameFilesystem
+    *           If true, ingested files are renamed into the repository when
+    *           it is on the same filesystem, which removes them from their
+    *           original location. Otherwise they are always copied.
+    */
+   public LocalDataTransferer(int transferThreads,
+         boolean renameOnSameFilesystem) {
+      this.transferThreads = Math.max(1, transferThreads);
+      this.renameOnSameFilesystem = renameOnSameFilesystem;
+   }
+
    /*
     * (non-Javadoc)
     * 
@@ -281,13 +320,14 @@ public class LocalDataTransferer implements DataTransfer {
                   + dirRef.getDataStoreReference() + " into directory "
                   + directory.getAbsolutePath());
 
+      List<Callable<Object>> transfers = new Vector<Callable<Object>>();
       for (Iterator<Reference> i = product.getProductReferences().iterator(); i
             .hasNext();) {
          Reference r = i.next();
          File fileRef = new File(new URI(r.getDataStoreReference()));
 
          if (fileRef.isFile()) {
-            copyFile(r, directory);
+            transfers.add(copyFileTask(r, directory));
          } else if (fileRef.isDirectory()
                && (fileRef.list() != null && fileRef.list().length == 0)) {
             // if it's a directory and it doesn't exist yet, we should
@@ -311,6 +351,7 @@ public class LocalDataTransferer implements DataTransfer {
              }
          }
       }
+      runTransfers(transfers);
    }
 
    private void moveDirToProductRepo(Product product) throws IOException,
@@ -325,13 +366,14 @@ public class LocalDataTransferer implements DataTransfer {
       // notify the file manager that we started
       quietNotifyTransferProduct(product);
 
+      List<Callable<Object>> transfers = new Vector<Callable<Object>>();
       for (Iterator<Reference> i = product.getProductReferences().iterator(); i
             .hasNext();) {
          Reference r = i.next();
          File fileRef = new File(new URI(r.getOrigReference()));
 
          if (fileRef.isFile()) {
-            moveFile(r, false);
+            transfers.add(moveFileTask(r, false));
          } else if (fileRef.isDirectory()
                && (fileRef.list() != null && fileRef.list().length == 0)) {
             // if it's a directory and it doesn't exist yet, we should
@@ -353,6 +395,7 @@ public class LocalDataTransferer implements DataTransfer {
              }
          }
       }
+      runTransfers(transfers);
 
       // notify the file manager that we're done
       quietNotifyProductTransferComplete(product);
@@ -366,10 +409,12 @@ public class LocalDataTransferer implements DataTransfer {
       // notify the file manager that we started
       quietNotifyTransferProduct(product);
 
+      List<Callable<Object>> transfers = new Vector<Callable<Object>>();
       for (Iterator<Reference> i = refs.iterator(); i.hasNext();) {
          Reference r = (Reference) i.next();
-         moveFile(r, true);
+         transfers.add(moveFileTask(r, true));
       }
+      runTransfers(transfers);
 
       // notify the file manager that we're done
       quietNotifyProductTransferComplete(product);
@@ -378,9 +423,93 @@ public class LocalDataTransferer implements DataTransfer {
    private void copyFilesToDir(Product product, File directory)
          throws IOException, URISyntaxException {
       List<Reference> refs = product.getProductReferences();
+      List<Callable<Object>> transfers = new Vector<Callable<Object>>();
       for (Iterator<Reference> i = refs.iterator(); i.hasNext();) {
          Reference r = (Reference) i.next();
-         copyFile(r, directory);
+         transfers.add(copyFileTask(r, directory));
+      }
+      runTransfers(transfers);
+   }
+
+   private Callable<Object> moveFileTask(final Reference r, final boolean log) {
+      return new Callable<Object>() {
+         public Object call() throws Exception {
+            moveFile(r, log);
+            return null;
+         }
+      };
+   }
+
+   private Callable<Object> copyFileTask(final Reference r,
+         final File directory) {
+      return new Callable<Object>() {
+         public Object call() throws Exception {
+            copyFile(r, directory);
+            return null;
+         }
+      };
+   }
+
+   /**
+    * Runs the given transfers, on up to {@link #transferThreads} threads, and
+    * waits for all of them to finish. The first failure is rethrown once
+    * every transfer has completed.
+    */
+   private void runTransfers(List<Callable<Object>> transfers)
+         throws IOException, URISyntaxException {
+      if (transferThreads <= 1 || transfers.size() <= 1) {
+         for (Callable<Object> transfer : transfers) {
+            try {
+               transfer.call();
+            } catch (Exception e) {
+               rethrow(e);
+            }
+         }
+         return;
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+            transferThreads, transfers.size()));
+      try {
+         List<Future<Object>> results = new Vector<Future<Object>>();
+         for (Callable<Object> transfer : transfers) {
+            results.add(executor.submit(transfer));
+         }
+
+         Exception failure = null;
+         for (Future<Object> result : results) {
+            try {
+               result.get();
+            } catch (ExecutionException e) {
+               if (failure == null) {
+                  failure = e.getCause() instanceof Exception ? (Exception) e
+                        .getCause() : e;
+               }
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               throw new IOException("Interrupted while transferring files");
+            }
+         }
+         if (failure != null) {
+            rethrow(failure);
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private static void rethrow(Exception e) throws IOException,
+         URISyntaxException {
+      if (e instanceof IOException) {
+         throw (IOException) e;
+      } else if (e instanceof URISyntaxException) {
+         throw (URISyntaxException) e;
+      } else if (e instanceof RuntimeException) {
+         throw (RuntimeException) e;
+      } else {
+         IOException ioe = new IOException(e.getMessage());
+         ioe.initCause(e);
+         throw ioe;
       }
    }
 
@@ -394,7 +523,14 @@ public class LocalDataTransferer implements DataTransfer {
       File srcFileRef = new File(new URI(r.getOrigReference()));
       File destFileRef = new File(new URI(r.getDataStoreReference()));
 
-      FileUtils.copyFile(srcFileRef, destFileRef);
+      if (renameOnSameFilesystem && renameFile(srcFileRef, destFileRef)) {
+         return;
+      }
+      if (transferThreads > 1) {
+         transferFile(srcFileRef, destFileRef);
+      } else {
+         FileUtils.copyFile(srcFileRef, destFileRef);
+      }
    }
 
    private void copyFile(Reference r, File directory) throws IOException,
@@ -404,7 +540,72 @@ public class LocalDataTransferer implements DataTransfer {
             "LocalDataTransfer: Copying File: " + r.getDataStoreReference()
                   + " to file:" + directory.getAbsolutePath() + "/"
                   + srcFileRef.getName());
-      FileUtils.copyFile(srcFileRef, new File(directory, srcFileRef.getName()));
+      if (transferThreads > 1) {
+         transferFile(srcFileRef, new File(directory, srcFileRef.getName()));
+      } else {
+         FileUtils.copyFile(srcFileRef, new File(directory, srcFileRef.getName()));
+      }
+   }
+
+   /**
+    * Renames src to dest. {@link File#renameTo(File)} fails when the two are
+    * on different filesystems, in which case the caller falls back to a copy.
+    */
+   private boolean renameFile(File src, File dest) {
+      if (dest.getParentFile() != null) {
+         dest.getParentFile().mkdirs();
+      }
+      if (dest.exists() && !dest.delete()) {
+         return false;
+      }
+      if (src.renameTo(dest)) {
+         LOG.log(Level.FINE, "LocalDataTransfer: Renamed File: [" + src
+               + "] to [" + dest + "]");
+         return true;
+      }
+      return false;
+   }
+
+   /**
+    * Copies src to dest with {@link FileChannel#transferTo}. The copy is
+    * written straight into dest in bounded chunks, so its length reflects the
+    * progress of the transfer.
+    */
+   private void transferFile(File src, File dest) throws IOException {
+      if (dest.getParentFile() != null) {
+         FileUtils.forceMkdir(dest.getParentFile());
+      }
+
+      FileInputStream in = null;
+      FileOutputStream out = null;
+      try {
+         in = new FileInputStream(src);
+         out = new FileOutputStream(dest);
+         FileChannel inChannel = in.getChannel();
+         FileChannel outChannel = out.getChannel();
+         long size = inChannel.size();
+         long position = 0;
+         while (position < size) {
+            position += inChannel.transferTo(position, Math.min(
+                  TRANSFER_CHUNK_SIZE, size - position), outChannel);
+         }
+      } finally {
+         if (in != null) {
+            try {
+               in.close();
+            } catch (IOException ignore) {
+            }
+         }
+         if (out != null) {
+            out.close();
+         }
+      }
+
+      if (src.length() != dest.length()) {
+         throw new IOException("Failed to copy full contents from: [" + src
+               + "] to [" + dest + "]");
+      }
+      dest.setLastModified(src.lastModified());
    }
 
    private void quietNotifyTransferProduct(Product p) {
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.datatransfer;
+
+//JDK imports
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * A Factory for constructing {@link StreamingDataTransferer} objects.
+ * </p>
+ * 
+ */
+public class StreamingDataTransferFactory implements DataTransferFactory {
+
+    /* the port of the file manager's streaming transfer server */
+    private int port = -1;
+
+    /* whether interrupted transfers are resumed */
+    private boolean resume = true;
+
+    /* whether transferred files are verified by checksum */
+    private boolean verify = true;
+
+    /* our log stream */
+    private static final Logger LOG = Logger
+            .getLogger(StreamingDataTransferFactory.class.getName());
+
+    /**
+     * 
+     */
+    public StreamingDataTransferFactory() throws InstantiationException {
+        port = Integer.getInteger(
+                "org.apache.oodt.cas.filemgr.datatransfer.streaming.port",
+                -1).intValue();
+        if (port <= 0) {
+            throw new InstantiationException(
+                    "No port set for streaming data transfer: set property: [org.apache.oodt.cas.filemgr.datatransfer.streaming.port]");
+        }
+        resume = Boolean.valueOf(
+                System.getProperty(
+                        "org.apache.oodt.cas.filemgr.datatransfer.streaming.resume",
+                        "true")).booleanValue();
+        verify = Boolean.valueOf(
+                System.getProperty(
+                        "org.apache.oodt.cas.filemgr.datatransfer.streaming.verifyChecksum",
+                        "true")).booleanValue();
+
+        LOG.log(Level.INFO, "StreamingDataTransfer enabled: using port: ["
+                + port + "]: resume: [" + resume + "]: verify: [" + verify
+                + "]");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.oodt.cas.filemgr.datatransfer.DataTransferFactory#createDataTransfer()
+     */
+    public DataTransfer createDataTransfer() {
+        return new StreamingDataTransferer(port, resume, verify);
+    }
+
+}
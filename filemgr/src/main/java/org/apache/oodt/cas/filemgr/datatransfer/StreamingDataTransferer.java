@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.datatransfer;
+
+//OODT imports
+import org.apache.oodt.cas.filemgr.structs.Product;
+import org.apache.oodt.cas.filemgr.structs.Reference;
+import org.apache.oodt.cas.filemgr.structs.exceptions.ConnectionException;
+import org.apache.oodt.cas.filemgr.structs.exceptions.DataTransferException;
+import org.apache.oodt.cas.filemgr.system.XmlRpcFileManagerClient;
+
+//JDK imports
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @version $Revision$
+ *
+ *          <p>
+ *          An implementation of the {@link DataTransfer} interface that moves
+ *          files to and from a remote file manager over its
+ *          {@link StreamingTransferServer}, instead of in XML-RPC chunks. The
+ *          file manager must be started with the
+ *          <code>org.apache.oodt.cas.filemgr.datatransfer.streaming.port</code>
+ *          property set to the same port this transferer is configured with.
+ *          </p>
+ *
+ */
+public class StreamingDataTransferer implements DataTransfer {
+
+   /* our log stream */
+   private static final Logger LOG = Logger
+         .getLogger(StreamingDataTransferer.class.getName());
+
+   /* the port of the remote streaming transfer server */
+   private int port = -1;
+
+   /* whether interrupted transfers are resumed */
+   private boolean resume = true;
+
+   /* whether transferred files are verified by checksum */
+   private boolean verify = true;
+
+   /* the host the remote file manager runs on */
+   private String host = null;
+
+   /* our file manager client, used for transfer status notifications */
+   private XmlRpcFileManagerClient client = null;
+
+   /**
+    * @param port
+    *           The port of the remote {@link StreamingTransferServer}.
+    * @param resume
+    *           Whether interrupted transfers are resumed.
+    * @param verify
+    *           Whether transferred files are verified by checksum.
+    */
+   public StreamingDataTransferer(int port, boolean resume, boolean verify) {
+      this.port = port;
+      this.resume = resume;
+      this.verify = verify;
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see
+    * org.apache.oodt.cas.filemgr.datatransfer.DataTransfer#setFileManagerUrl
+    * (java.net.URL)
+    */
+   public void setFileManagerUrl(URL url) {
+      this.host = url.getHost();
+      try {
+         client = new XmlRpcFileManagerClient(url);
+         LOG.log(Level.INFO, "Streaming Data Transfer to: [" + host + ":"
+               + port + "] enabled");
+      } catch (ConnectionException e) {
+         LOG.log(Level.WARNING, "Connection exception for filemgr: [" + url
+               + "]");
+      }
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see
+    * org.apache.oodt.cas.filemgr.datatransfer.DataTransfer#transferProduct(
+    * org.apache.oodt.cas.filemgr.structs.Product)
+    */
+   public void transferProduct(Product product) throws DataTransferException,
+         IOException {
+      if (host == null) {
+         throw new DataTransferException(
+               "No file manager url specified for streaming data transfer: cannot transfer product: ["
+                     + product.getProductName() + "]!");
+      }
+
+      quietNotifyTransferProduct(product);
+
+      StreamingTransferClient transferClient = new StreamingTransferClient(
+            host, port);
+      try {
+         for (Reference r : product.getProductReferences()) {
+            File origFile = null;
+            File destFile = null;
+            try {
+               origFile = new File(new URI(r.getOrigReference()));
+               destFile = new File(new URI(r.getDataStoreReference()));
+            } catch (URISyntaxException e) {
+               throw new DataTransferException("Bad reference: ["
+                     + r.getOrigReference() + "] -> ["
+                     + r.getDataStoreReference() + "]: Message: "
+                     + e.getMessage(), e);
+            }
+
+            if (origFile.isDirectory()) {
+               LOG.log(Level.FINE, "StreamingTransfer: skipping reference: ["
+                     + origFile.getAbsolutePath() + "] of product: ["
+                     + product.getProductName() + "]: ref is a directory");
+               continue;
+            }
+
+            try {
+               transferClient.put(origFile, destFile.getAbsolutePath(),
+                     resume, verify);
+            } catch (IOException e) {
+               throw new DataTransferException("Error transferring file: ["
+                     + origFile + "] to [" + destFile + "]: Message: "
+                     + e.getMessage(), e);
+            }
+         }
+      } finally {
+         transferClient.close();
+      }
+
+      quietNotifyProductTransferComplete(product);
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see
+    * org.apache.oodt.cas.filemgr.datatransfer.DataTransfer#retrieveProduct(org.
+    * apache.oodt.cas.filemgr.structs.Product, java.io.File)
+    */
+   public void retrieveProduct(Product product, File directory)
+         throws DataTransferException, IOException {
+      if (host == null) {
+         throw new DataTransferException(
+               "No file manager url specified for streaming data transfer: cannot retrieve product: ["
+                     + product.getProductName() + "]!");
+      }
+
+      StreamingTransferClient transferClient = new StreamingTransferClient(
+            host, port);
+      try {
+         for (Reference reference : product.getProductReferences()) {
+            File dataStoreFile = null;
+            try {
+               dataStoreFile = new File(new URI(
+                     reference.getDataStoreReference()));
+            } catch (URISyntaxException e) {
+               throw new DataTransferException("Bad reference: ["
+                     + reference.getDataStoreReference() + "]: Message: "
+                     + e.getMessage(), e);
+            }
+            File dest = new File(directory, dataStoreFile.getName());
+            LOG.log(Level.INFO, "StreamingDataTransfer: Copying File: "
+                  + "fmp:" + dataStoreFile.getAbsolutePath() + " to "
+                  + "file:" + dest.getAbsolutePath());
+            try {
+               transferClient.get(dataStoreFile.getAbsolutePath(), dest,
+                     resume, verify);
+            } catch (IOException e) {
+               throw new DataTransferException("Error retrieving file: ["
+                     + dataStoreFile + "] to [" + dest + "]: Message: "
+                     + e.getMessage(), e);
+            }
+         }
+      } finally {
+         transferClient.close();
+      }
+   }
+
+   /*
+    * (non-Javadoc)
+    *
+    * @see
+    * org.apache.oodt.cas.filemgr.datatransfer.DataTransfer#deleteProduct(org.
+    * apache.oodt.cas.filemgr.structs.Product)
+    */
+   public void deleteProduct(Product product) throws DataTransferException,
+         IOException {
+      for (Reference ref : product.getProductReferences()) {
+         File dataFile = new File(URI.create(ref.getDataStoreReference())
+               .toURL().getPath());
+         if (!dataFile.delete()) {
+            throw new IOException(String.format(
+                  "Failed to delete file %s - delete returned false",
+                  dataFile));
+         }
+      }
+   }
+
+   private void quietNotifyTransferProduct(Product p) {
+      if (client == null) {
+         return;
+      }
+      try {
+         client.transferringProduct(p);
+      } catch (DataTransferException e) {
+         LOG.log(Level.WARNING,
+               "Error notifying file manager of product transfer initiation for product: ["
+                     + p.getProductId() + "]: Message: " + e.getMessage());
+      }
+   }
+
+   private void quietNotifyProductTransferComplete(Product p) {
+      if (client == null) {
+         return;
+      }
+      try {
+         client.removeProductTransferStatus(p);
+      } catch (DataTransferException e) {
+         LOG.log(Level.WARNING,
+               "Error notifying file manager of product transfer completion for product: ["
+                     + p.getProductId() + "]: Message: " + e.getMessage());
+      }
+   }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.datatransfer;
+
+//JDK imports
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * @version $Revision$
+ *
+ *          <p>
+ *          Client side of the {@link StreamingTransferServer} protocol. One
+ *          client holds one connection, which is opened on first use and
+ *          reused for every following request until {@link #close()}. Not
+ *          thread-safe.
+ *          </p>
+ *
+ */
+public class StreamingTransferClient {
+
+   /* our log stream */
+   private static final Logger LOG = Logger
+         .getLogger(StreamingTransferClient.class.getName());
+
+   private String host = null;
+
+   private int port = -1;
+
+   private SocketChannel channel = null;
+
+   private DataInputStream in = null;
+
+   /**
+    * @param host
+    *           The host the {@link StreamingTransferServer} runs on.
+    * @param port
+    *           The port the {@link StreamingTransferServer} listens on.
+    */
+   public StreamingTransferClient(String host, int port) {
+      this.host = host;
+      this.port = port;
+   }
+
+   /**
+    * @param remotePath
+    *           The path of a file on the server.
+    * @return The length of the file, or -1 if it does not exist.
+    * @throws IOException
+    *            If the request fails.
+    */
+   public long length(String remotePath) throws IOException {
+      sendHeader(StreamingTransferServer.OP_LENGTH, remotePath, null);
+      readStatus(remotePath);
+      return in.readLong();
+   }
+
+   /**
+    * @param remotePath
+    *           The path of a file on the server.
+    * @param length
+    *           The number of leading bytes to checksum.
+    * @return The CRC32 checksum of the first <code>length</code> bytes of the
+    *         file.
+    * @throws IOException
+    *            If the file is shorter than <code>length</code> or the
+    *            request fails.
+    */
+   public long checksum(String remotePath, long length) throws IOException {
+      ByteArrayOutputStream args = new ByteArrayOutputStream();
+      new DataOutputStream(args).writeLong(length);
+      sendHeader(StreamingTransferServer.OP_CHECKSUM, remotePath, args);
+      readStatus(remotePath);
+      return in.readLong();
+   }
+
+   /**
+    * Uploads a local file to the server.
+    *
+    * @param localFile
+    *           The file to upload.
+    * @param remotePath
+    *           Where to store it on the server. Missing directories are
+    *           created.
+    * @param resume
+    *           If true and the server already holds a prefix of the file
+    *           with a matching checksum, only the rest is sent.
+    * @param verify
+    *           If true, the checksum of the stored file is compared with the
+    *           local one once the upload completes.
+    * @throws IOException
+    *            If the upload fails or does not verify.
+    */
+   public void put(File localFile, String remotePath, boolean resume,
+         boolean verify) throws IOException {
+      long localLength = localFile.length();
+      long offset = 0L;
+      if (resume) {
+         long remoteLength = length(remotePath);
+         if (remoteLength > 0 && remoteLength <= localLength
+               && checksum(remotePath, remoteLength) == checksum(localFile,
+                     remoteLength)) {
+            offset = remoteLength;
+            LOG.log(Level.FINE, "Resuming upload of: [" + localFile
+                  + "] at byte: [" + offset + "]");
+         }
+      }
+
+      RandomAccessFile raf = null;
+      try {
+         raf = new RandomAccessFile(localFile, "r");
+         FileChannel fileChannel = raf.getChannel();
+
+         ByteArrayOutputStream args = new ByteArrayOutputStream();
+         DataOutputStream argsOut = new DataOutputStream(args);
+         argsOut.writeLong(offset);
+         argsOut.writeLong(localLength - offset);
+         sendHeader(StreamingTransferServer.OP_PUT, remotePath, args);
+
+         long position = offset;
+         while (position < localLength) {
+            position += fileChannel.transferTo(position, localLength
+                  - position, channel);
+         }
+      } catch (IOException e) {
+         close();
+         throw e;
+      } finally {
+         if (raf != null) {
+            try {
+               raf.close();
+            } catch (IOException ignore) {
+            }
+         }
+      }
+
+      try {
+         readStatus(remotePath);
+      } catch (IOException e) {
+         // the server may have stopped reading part way through the data, so
+         // the connection can't be trusted for another request
+         close();
+         throw e;
+      }
+      long storedLength = in.readLong();
+      if (storedLength != localLength) {
+         throw new IOException("Upload of: [" + localFile + "] to: ["
+               + remotePath + "] stored [" + storedLength + "] of ["
+               + localLength + "] bytes");
+      }
+
+      if (verify
+            && checksum(remotePath, localLength) != checksum(localFile,
+                  localLength)) {
+         throw new IOException("Checksum mismatch after upload of: ["
+               + localFile + "] to: [" + remotePath + "]");
+      }
+   }
+
+   /**
+    * Downloads a file from the server.
+    *
+    * @param remotePath
+    *           The path of the file on the server.
+    * @param localFile
+    *           Where to write it locally.
+    * @param resume
+    *           If true and <code>localFile</code> already holds a prefix of
+    *           the remote file with a matching checksum, only the rest is
+    *           fetched.
+    * @param verify
+    *           If true, the checksum of the downloaded file is compared with
+    *           the remote one once the download completes.
+    * @throws IOException
+    *            If the download fails or does not verify.
+    */
+   public void get(String remotePath, File localFile, boolean resume,
+         boolean verify) throws IOException {
+      long offset = 0L;
+      if (resume && localFile.exists() && localFile.length() > 0) {
+         long remoteLength = length(remotePath);
+         if (localFile.length() <= remoteLength
+               && checksum(remotePath, localFile.length()) == checksum(
+                     localFile, localFile.length())) {
+            offset = localFile.length();
+            LOG.log(Level.FINE, "Resuming download of: [" + remotePath
+                  + "] at byte: [" + offset + "]");
+         }
+      }
+
+      ByteArrayOutputStream args = new ByteArrayOutputStream();
+      new DataOutputStream(args).writeLong(offset);
+      sendHeader(StreamingTransferServer.OP_GET, remotePath, args);
+      readStatus(remotePath);
+      long count = in.readLong();
+
+      RandomAccessFile raf = null;
+      try {
+         raf = new RandomAccessFile(localFile, "rw");
+         raf.setLength(offset);
+         FileChannel fileChannel = raf.getChannel();
+         long position = offset;
+         long end = offset + count;
+         while (position < end) {
+            long transferred = fileChannel.transferFrom(channel, position, end
+                  - position);
+            if (transferred <= 0) {
+               throw new EOFException("Connection closed after ["
+                     + (position - offset) + "] of [" + count
+                     + "] bytes for file: [" + remotePath + "]");
+            }
+            position += transferred;
+         }
+      } catch (IOException e) {
+         close();
+         throw e;
+      } finally {
+         if (raf != null) {
+            try {
+               raf.close();
+            } catch (IOException ignore) {
+            }
+         }
+      }
+
+      if (verify
+            && checksum(remotePath, offset + count) != checksum(localFile,
+                  offset + count)) {
+         throw new IOException("Checksum mismatch after download of: ["
+               + remotePath + "] to: [" + localFile + "]");
+      }
+   }
+
+   /**
+    * Closes the connection to the server, if open.
+    */
+   public void close() {
+      if (channel != null) {
+         try {
+            channel.close();
+         } catch (IOException ignore) {
+         }
+         channel = null;
+         in = null;
+      }
+   }
+
+   /**
+    * Computes the CRC32 checksum of the first <code>length</code> bytes of a
+    * file.
+    *
+    * @param file
+    *           The file to checksum.
+    * @param length
+    *           The number of leading bytes to include.
+    * @return The checksum.
+    * @throws IOException
+    *            If the file cannot be read or is shorter than
+    *            <code>length</code>.
+    */
+   public static long checksum(File file, long length) throws IOException {
+      InputStream is = null;
+      try {
+         is = new FileInputStream(file);
+         CRC32 crc = new CRC32();
+         byte[] buf = new byte[64 * 1024];
+         long remaining = length;
+         while (remaining > 0) {
+            int numBytes = is.read(buf, 0, (int) Math.min(buf.length,
+                  remaining));
+            if (numBytes == -1) {
+               throw new EOFException("File: [" + file + "] is shorter than ["
+                     + length + "] bytes");
+            }
+            crc.update(buf, 0, numBytes);
+            remaining -= numBytes;
+         }
+         return crc.getValue();
+      } finally {
+         if (is != null) {
+            try {
+               is.close();
+            } catch (IOException ignore) {
+            }
+         }
+      }
+   }
+
+   private void sendHeader(byte op, String path, ByteArrayOutputStream args)
+         throws IOException {
+      if (channel == null) {
+         channel = SocketChannel.open(new InetSocketAddress(host, port));
+         channel.socket().setTcpNoDelay(true);
+         in = new DataInputStream(channel.socket().getInputStream());
+      }
+
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(header);
+      out.writeInt(StreamingTransferServer.MAGIC);
+      out.writeByte(op);
+      out.writeUTF(path);
+      if (args != null) {
+         args.writeTo(out);
+      }
+      try {
+         StreamingTransferServer.writeFully(channel, header);
+      } catch (IOException e) {
+         close();
+         throw e;
+      }
+   }
+
+   private void readStatus(String path) throws IOException {
+      try {
+         if (in.readByte() != StreamingTransferServer.STATUS_OK) {
+            throw new IOException("Streaming transfer of: [" + path
+                  + "] failed on server: " + in.readUTF());
+         }
+      } catch (EOFException e) {
+         close();
+         throw new IOException("Streaming transfer server closed connection during transfer of: ["
+               + path + "]");
+      }
+   }
+
+}
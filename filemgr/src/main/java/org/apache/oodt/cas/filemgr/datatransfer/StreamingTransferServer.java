@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.datatransfer;
+
+//JDK imports
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * @version $Revision$
+ *
+ *          <p>
+ *          A raw socket server that runs next to the File Manager's XML-RPC
+ *          server and moves whole files in and out of the repository with
+ *          {@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)}
+ *          and
+ *          {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ *          , rather than in base64 encoded XML-RPC chunks. Transfers may start
+ *          at any offset, so interrupted transfers can be resumed, and either
+ *          side can ask for the CRC32 checksum of a file prefix to verify
+ *          them.
+ *          </p>
+ *
+ *          <p>
+ *          Each request is a header (magic number, operation, file path and
+ *          operation specific arguments) optionally followed by file data.
+ *          Each response starts with a status byte; on error it is followed
+ *          by a message. A connection may carry any number of requests.
+ *          </p>
+ *
+ *          <p>
+ *          Only files under the server's root directories (normally the
+ *          File Manager's product repositories) may be read or written;
+ *          requests for any other path are answered with an error.
+ *          </p>
+ *
+ */
+public class StreamingTransferServer {
+
+   /* marks the start of every request */
+   static final int MAGIC = 0x4F4F4454;
+
+   /* returns the length of a file, or -1 if it does not exist */
+   static final byte OP_LENGTH = 1;
+
+   /* returns the CRC32 checksum of the first n bytes of a file */
+   static final byte OP_CHECKSUM = 2;
+
+   /* writes n bytes to a file starting at an offset, truncating it there */
+   static final byte OP_PUT = 3;
+
+   /* reads a file starting at an offset */
+   static final byte OP_GET = 4;
+
+   static final byte STATUS_OK = 0;
+
+   static final byte STATUS_ERROR = 1;
+
+   /* our log stream */
+   private static final Logger LOG = Logger
+         .getLogger(StreamingTransferServer.class.getName());
+
+   private final InetAddress bindAddress;
+
+   private int port = -1;
+
+   private int maxConnections = 16;
+
+   private ServerSocketChannel serverChannel = null;
+
+   private ExecutorService connectionPool = null;
+
+   private Thread acceptThread = null;
+
+   private volatile boolean running = false;
+
+   /* canonical directories files may be transferred in and out of */
+   private final List<File> roots = new CopyOnWriteArrayList<File>();
+
+   /**
+    * @param bindAddress
+    *           The address to listen on, or null to listen on all of them.
+    * @param port
+    *           The port to listen on, 0 to pick a free one.
+    * @param maxConnections
+    *           The maximum number of connections served at once.
+    * @param roots
+    *           The directories files may be transferred in and out of.
+    * @throws IOException
+    *            If a root's canonical path can't be worked out.
+    */
+   public StreamingTransferServer(InetAddress bindAddress, int port,
+         int maxConnections, List<File> roots) throws IOException {
+      this.bindAddress = bindAddress;
+      this.port = port;
+      this.maxConnections = maxConnections;
+      for (File root : roots) {
+         addRoot(root);
+      }
+   }
+
+   /**
+    * Allows files under another directory to be transferred.
+    *
+    * @param root
+    *           The directory.
+    * @throws IOException
+    *            If its canonical path can't be worked out.
+    */
+   public void addRoot(File root) throws IOException {
+      File canonicalRoot = root.getCanonicalFile();
+      if (!roots.contains(canonicalRoot)) {
+         roots.add(canonicalRoot);
+      }
+   }
+
+   /**
+    * Binds the server socket and starts accepting connections.
+    *
+    * @throws IOException
+    *            If the port cannot be bound.
+    */
+   public synchronized void start() throws IOException {
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.socket().setReuseAddress(true);
+      serverChannel.socket().bind(new InetSocketAddress(bindAddress, port));
+      port = serverChannel.socket().getLocalPort();
+
+      connectionPool = Executors.newFixedThreadPool(maxConnections,
+            new ThreadFactory() {
+               public Thread newThread(Runnable r) {
+                  Thread t = new Thread(r, "StreamingTransfer-" + port);
+                  t.setDaemon(true);
+                  return t;
+               }
+            });
+
+      running = true;
+      acceptThread = new Thread(new Runnable() {
+         public void run() {
+            acceptConnections();
+         }
+      }, "StreamingTransferAccept-" + port);
+      acceptThread.setDaemon(true);
+      acceptThread.start();
+      LOG.log(Level.INFO, "Streaming data transfer server listening on port: ["
+            + port + "] for files under: " + roots);
+   }
+
+   /**
+    * Stops accepting connections and closes the open ones.
+    */
+   public synchronized void shutdown() {
+      running = false;
+      if (serverChannel != null) {
+         try {
+            serverChannel.close();
+         } catch (IOException ignore) {
+         }
+         serverChannel = null;
+      }
+      if (connectionPool != null) {
+         connectionPool.shutdownNow();
+         connectionPool = null;
+      }
+   }
+
+   /**
+    * @return The port this server listens on.
+    */
+   public int getPort() {
+      return port;
+   }
+
+   private void acceptConnections() {
+      while (running) {
+         try {
+            final SocketChannel channel = serverChannel.accept();
+            connectionPool.execute(new Runnable() {
+               public void run() {
+                  serveConnection(channel);
+               }
+            });
+         } catch (IOException e) {
+            if (running) {
+               LOG.log(Level.WARNING,
+                     "Error accepting streaming transfer connection: Message: "
+                           + e.getMessage());
+            }
+         } catch (Exception e) {
+            // pool shut down underneath us
+            if (running) {
+               LOG.log(Level.WARNING,
+                     "Unable to serve streaming transfer connection: Message: "
+                           + e.getMessage());
+            }
+         }
+      }
+   }
+
+   private void serveConnection(SocketChannel channel) {
+      try {
+         channel.socket().setTcpNoDelay(true);
+         DataInputStream in = new DataInputStream(channel.socket()
+               .getInputStream());
+         while (true) {
+            int magic;
+            try {
+               magic = in.readInt();
+            } catch (EOFException e) {
+               // client is done with this connection
+               break;
+            }
+            if (magic != MAGIC) {
+               throw new IOException("Bad request header: [" + magic + "]");
+            }
+            byte op = in.readByte();
+            String path = in.readUTF();
+            serveRequest(op, path, in, channel);
+         }
+      } catch (IOException e) {
+         // connections interrupted by shutdown() are not worth a warning
+         if (running) {
+            LOG.log(Level.WARNING, "Streaming transfer connection from: ["
+                  + channel.socket().getRemoteSocketAddress()
+                  + "] failed: Message: " + e.getMessage());
+         }
+      } finally {
+         try {
+            channel.close();
+         } catch (IOException ignore) {
+         }
+      }
+   }
+
+   private void serveRequest(byte op, String path, DataInputStream in,
+         SocketChannel channel) throws IOException {
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(header);
+
+      switch (op) {
+      case OP_LENGTH:
+         try {
+            File file = resolve(path);
+            out.writeByte(STATUS_OK);
+            out.writeLong(file.exists() ? file.length() : -1L);
+         } catch (IOException e) {
+            writeError(out, e);
+         }
+         writeFully(channel, header);
+         break;
+
+      case OP_CHECKSUM:
+         long length = in.readLong();
+         try {
+            long checksum = StreamingTransferClient.checksum(resolve(path),
+                  length);
+            out.writeByte(STATUS_OK);
+            out.writeLong(checksum);
+         } catch (IOException e) {
+            writeError(out, e);
+         }
+         writeFully(channel, header);
+         break;
+
+      case OP_PUT:
+         long putOffset = in.readLong();
+         long count = in.readLong();
+         // the data follows the header, so a put that can't even be started
+         // still has to consume it before answering
+         File putFile;
+         RandomAccessFile raf;
+         try {
+            putFile = resolve(path);
+            raf = openForPut(putFile, putOffset);
+         } catch (IOException e) {
+            skipFully(channel, count);
+            writeError(out, e);
+            writeFully(channel, header);
+            break;
+         }
+         try {
+            receiveFile(channel, raf, putFile, putOffset, count);
+         } catch (EOFException e) {
+            // the client went away
+            throw e;
+         } catch (IOException e) {
+            // how much of the data was consumed is unknown, so the error is
+            // the last thing sent on this connection
+            writeError(out, e);
+            writeFully(channel, header);
+            throw e;
+         }
+         out.writeByte(STATUS_OK);
+         out.writeLong(putFile.length());
+         writeFully(channel, header);
+         break;
+
+      case OP_GET:
+         long getOffset = in.readLong();
+         File getFile;
+         try {
+            getFile = resolve(path);
+         } catch (IOException e) {
+            writeError(out, e);
+            writeFully(channel, header);
+            break;
+         }
+         if (!getFile.isFile() || getOffset > getFile.length()) {
+            writeError(out, new IOException("Cannot read file: [" + path
+                  + "] from offset: [" + getOffset + "]"));
+            writeFully(channel, header);
+            break;
+         }
+         sendFile(channel, getFile, getOffset, out, header);
+         break;
+
+      default:
+         throw new IOException("Unknown operation: [" + op + "]");
+      }
+   }
+
+   /*
+    * Returns the canonical file for a requested path, which must be under one
+    * of the roots.
+    */
+   private File resolve(String path) throws IOException {
+      File file = new File(path);
+      if (file.isAbsolute()) {
+         file = file.getCanonicalFile();
+         for (File root : roots) {
+            if (isUnder(file, root)) {
+               return file;
+            }
+         }
+      }
+      throw new IOException("Path: [" + path
+            + "] is not under a directory this server transfers files for");
+   }
+
+   private static boolean isUnder(File file, File root) {
+      for (File parent = file.getParentFile(); parent != null; parent = parent
+            .getParentFile()) {
+         if (parent.equals(root)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static RandomAccessFile openForPut(File file, long offset)
+         throws IOException {
+      if (file.getParentFile() != null) {
+         file.getParentFile().mkdirs();
+      }
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      if (offset > raf.length()) {
+         long length = raf.length();
+         raf.close();
+         throw new IOException("Cannot write file: [" + file
+               + "] at offset: [" + offset + "]: file is only [" + length
+               + "] bytes long");
+      }
+      return raf;
+   }
+
+   private static void skipFully(SocketChannel channel, long count)
+         throws IOException {
+      ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+      while (count > 0) {
+         buf.clear();
+         if (count < buf.capacity()) {
+            buf.limit((int) count);
+         }
+         int read = channel.read(buf);
+         if (read < 0) {
+            throw new EOFException("Connection closed with [" + count
+                  + "] bytes of a refused put left");
+         }
+         count -= read;
+      }
+   }
+
+   private void receiveFile(SocketChannel channel, RandomAccessFile raf,
+         File file, long offset, long count) throws IOException {
+      try {
+         raf.setLength(offset);
+         FileChannel fileChannel = raf.getChannel();
+         long position = offset;
+         long end = offset + count;
+         while (position < end) {
+            long transferred = fileChannel.transferFrom(channel, position, end
+                  - position);
+            if (transferred <= 0) {
+               throw new EOFException("Connection closed after ["
+                     + (position - offset) + "] of [" + count
+                     + "] bytes for file: [" + file + "]");
+            }
+            position += transferred;
+         }
+      } finally {
+         try {
+            raf.close();
+         } catch (IOException ignore) {
+         }
+      }
+   }
+
+   private void sendFile(SocketChannel channel, File file, long offset,
+         DataOutputStream out, ByteArrayOutputStream header)
+         throws IOException {
+      RandomAccessFile raf = null;
+      try {
+         raf = new RandomAccessFile(file, "r");
+         FileChannel fileChannel = raf.getChannel();
+         long end = fileChannel.size();
+         out.writeByte(STATUS_OK);
+         out.writeLong(end - offset);
+         writeFully(channel, header);
+
+         long position = offset;
+         while (position < end) {
+            position += fileChannel.transferTo(position, end - position,
+                  channel);
+         }
+      } finally {
+         if (raf != null) {
+            try {
+               raf.close();
+            } catch (IOException ignore) {
+            }
+         }
+      }
+   }
+
+   private static void writeError(DataOutputStream out, Exception e)
+         throws IOException {
+      out.writeByte(STATUS_ERROR);
+      out.writeUTF(e.getMessage() != null ? e.getMessage() : e.toString());
+   }
+
+   static void writeFully(SocketChannel channel, ByteArrayOutputStream bytes)
+         throws IOException {
+      ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+      while (buf.hasRemaining()) {
+         channel.write(buf);
+      }
+   }
+
+}
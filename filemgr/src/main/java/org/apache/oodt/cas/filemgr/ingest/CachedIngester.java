@@ -21,6 +21,8 @@ package org.apache.oodt.cas.filemgr.ingest;
 import java.io.File;
 import java.io.FileInputStream;
 import java.net.URL;
+import java.util.List;
+import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -131,6 +133,20 @@ public class CachedIngester extends StdIngester {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.oodt.cas.filemgr.ingest.StdIngester#hasProducts(java.net.URL,
+     *      java.util.List)
+     */
+    public List<Boolean> hasProducts(URL fmUrl, List<String> productNames)
+            throws CatalogException {
+        List<Boolean> results = new Vector<Boolean>(productNames.size());
+        for (String productName : productNames)
+            results.add(Boolean.valueOf(hasProduct(fmUrl, productName)));
+        return results;
+    }
+
     /**
      * 
      * @throws CacheException
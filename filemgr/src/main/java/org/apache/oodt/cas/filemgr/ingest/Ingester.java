@@ -129,4 +129,19 @@ public interface Ingester {
      */
     public boolean hasProduct(URL fmUrl, String productName) throws CatalogException;
 
+    /**
+     * Checks the file manager at the given {@link URL} for several
+     * {@link Product}s at once, identified by name as in
+     * {@link #hasProduct(URL, String)}.
+     * 
+     * @param fmUrl
+     *            The {@link URL} pointer to the file manager service.
+     * @param productNames
+     *            The names of the {@link Product}s to search for.
+     * @return Whether the file manager has each product, in the order of the
+     *         given names.
+     */
+    public List<Boolean> hasProducts(URL fmUrl, List<String> productNames)
+            throws CatalogException;
+
 }
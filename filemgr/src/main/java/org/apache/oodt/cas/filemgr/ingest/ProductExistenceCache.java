@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.ingest;
+
+//OODT imports
+import org.apache.oodt.cas.filemgr.structs.exceptions.CatalogException;
+import org.apache.oodt.cas.filemgr.system.XmlRpcFileManagerClient;
+
+//JDK imports
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * Remembers recent answers to "does this product exist?" for a single File
+ * Manager, so that crawlers and push/pull re-checking the same files over and
+ * over don't ask the File Manager every time. Products found to exist, or
+ * ingested through this client, are remembered until they expire (60 seconds
+ * by default, as they may be removed by someone else) or are pushed out by
+ * newer entries (least recently used first). Products found missing by a
+ * single lookup are only remembered if
+ * <code>org.apache.oodt.cas.filemgr.ingest.existenceCache.missingTtlSeconds</code>
+ * is set, since they may be ingested by someone else at any time.
+ * </p>
+ *
+ * <p>
+ * {@link #hasProducts(XmlRpcFileManagerClient, List)} sends the names that
+ * miss the cache to the File Manager in a single
+ * {@link XmlRpcFileManagerClient#hasProducts(List)} call, and also remembers
+ * the products it finds missing for
+ * <code>org.apache.oodt.cas.filemgr.ingest.existenceCache.prefetchTtlSeconds</code>
+ * (default 30), so that a crawler can check a whole directory up front and
+ * then look its files up one by one.
+ * </p>
+ *
+ * <p>
+ * There is one cache per File Manager URL, shared by everything in the JVM
+ * talking to that File Manager (see {@link #getCache(URL)}).
+ * </p>
+ *
+ */
+public class ProductExistenceCache {
+
+    private static final ConcurrentMap<String, ProductExistenceCache> CACHES = new ConcurrentHashMap<String, ProductExistenceCache>();
+
+    private final int maxEntries;
+
+    private final long existsTtlMillis;
+
+    private final long missingTtlMillis;
+
+    private final long prefetchTtlMillis;
+
+    /* guarded by this */
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxEntries
+     *            The most product names to remember; 0 disables the cache.
+     * @param existsTtlMillis
+     *            How long to remember that a product exists.
+     * @param missingTtlMillis
+     *            How long to remember that a product doesn't exist; 0 to not
+     *            remember it at all.
+     */
+    public ProductExistenceCache(int maxEntries, long existsTtlMillis,
+            long missingTtlMillis) {
+        this(maxEntries, existsTtlMillis, missingTtlMillis, 0L);
+    }
+
+    /**
+     * @param maxEntries
+     *            The most product names to remember; 0 disables the cache.
+     * @param existsTtlMillis
+     *            How long to remember that a product exists.
+     * @param missingTtlMillis
+     *            How long to remember that a product doesn't exist; 0 to not
+     *            remember it at all.
+     * @param prefetchTtlMillis
+     *            How long to remember that a product doesn't exist when it
+     *            was checked as part of a bulk lookup, if longer than
+     *            missingTtlMillis.
+     */
+    public ProductExistenceCache(final int maxEntries, long existsTtlMillis,
+            long missingTtlMillis, long prefetchTtlMillis) {
+        this.maxEntries = maxEntries;
+        this.existsTtlMillis = existsTtlMillis;
+        this.missingTtlMillis = missingTtlMillis;
+        this.prefetchTtlMillis = Math.max(missingTtlMillis, prefetchTtlMillis);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Gets the cache shared by everything talking to the given File Manager,
+     * creating it from the
+     * <code>org.apache.oodt.cas.filemgr.ingest.existenceCache.*</code>
+     * properties the first time it is asked for.
+     *
+     * @param fmUrl
+     *            The File Manager's URL.
+     * @return The File Manager's cache.
+     */
+    public static ProductExistenceCache getCache(URL fmUrl) {
+        // URL.equals resolves host names, so key on the string form
+        String key = fmUrl.toString();
+        ProductExistenceCache cache = CACHES.get(key);
+        if (cache == null) {
+            cache = new ProductExistenceCache(Integer.getInteger(
+                    "org.apache.oodt.cas.filemgr.ingest.existenceCache.maxEntries",
+                    100000).intValue(), Long.getLong(
+                    "org.apache.oodt.cas.filemgr.ingest.existenceCache.existsTtlSeconds",
+                    60L).longValue() * 1000L, Long.getLong(
+                    "org.apache.oodt.cas.filemgr.ingest.existenceCache.missingTtlSeconds",
+                    0L).longValue() * 1000L, Long.getLong(
+                    "org.apache.oodt.cas.filemgr.ingest.existenceCache.prefetchTtlSeconds",
+                    30L).longValue() * 1000L);
+            ProductExistenceCache existing = CACHES.putIfAbsent(key, cache);
+            if (existing != null) {
+                cache = existing;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Checks whether a product exists, asking the File Manager only if the
+     * answer isn't cached.
+     *
+     * @param fmClient
+     *            The client to ask the File Manager with.
+     * @param productName
+     *            The name of the product.
+     * @return True if the product exists and has been fully received.
+     * @throws CatalogException
+     *             If the File Manager can't be asked.
+     */
+    public boolean hasProduct(XmlRpcFileManagerClient fmClient,
+            String productName) throws CatalogException {
+        Boolean cached = this.lookup(productName);
+        if (cached != null) {
+            return cached.booleanValue();
+        }
+        boolean exists = fmClient.hasProduct(productName);
+        this.put(productName, exists);
+        return exists;
+    }
+
+    /**
+     * Asks the File Manager whether a product exists, checking the given
+     * names, typically those of the product's neighbours, in the same call.
+     * All the answers are remembered as by
+     * {@link #hasProducts(XmlRpcFileManagerClient, List)}. Meant to be called
+     * when {@link #lookup(String)} has no answer for the product.
+     *
+     * @param fmClient
+     *            The client to ask the File Manager with.
+     * @param productName
+     *            The name of the product.
+     * @param prefetchNames
+     *            The names of other products likely to be asked for soon.
+     * @return True if the product exists and has been fully received.
+     * @throws CatalogException
+     *             If the File Manager can't be asked.
+     */
+    public boolean prefetch(XmlRpcFileManagerClient fmClient,
+            String productName, List<String> prefetchNames)
+            throws CatalogException {
+        List<String> productNames = new Vector<String>(prefetchNames.size() + 1);
+        productNames.add(productName);
+        for (String prefetchName : prefetchNames) {
+            if (!prefetchName.equals(productName)
+                    && this.peek(prefetchName) == null) {
+                productNames.add(prefetchName);
+            }
+        }
+        List<Boolean> answers = fmClient.hasProducts(productNames);
+        for (int i = 0; i < productNames.size(); i++) {
+            this.put(productNames.get(i), answers.get(i).booleanValue(),
+                    true);
+        }
+        return answers.get(0).booleanValue();
+    }
+
+    /**
+     * Checks whether several products exist. The ones whose answers aren't
+     * cached are checked in a single call to the File Manager, and the ones
+     * found missing are remembered for the prefetch time to live.
+     *
+     * @param fmClient
+     *            The client to ask the File Manager with.
+     * @param productNames
+     *            The names of the products.
+     * @return Whether each product exists, in the order of the given names.
+     * @throws CatalogException
+     *             If the File Manager can't be asked.
+     */
+    public List<Boolean> hasProducts(XmlRpcFileManagerClient fmClient,
+            List<String> productNames) throws CatalogException {
+        List<Boolean> results = new Vector<Boolean>(productNames.size());
+        List<Integer> unknownIndexes = new Vector<Integer>();
+        List<String> unknownNames = new Vector<String>();
+        for (String productName : productNames) {
+            Boolean cached = this.lookup(productName);
+            if (cached == null) {
+                unknownIndexes.add(results.size());
+                unknownNames.add(productName);
+            }
+            results.add(cached);
+        }
+
+        if (unknownNames.size() > 0) {
+            List<Boolean> answers = fmClient.hasProducts(unknownNames);
+            for (int i = 0; i < unknownNames.size(); i++) {
+                this.put(unknownNames.get(i), answers.get(i).booleanValue(),
+                        true);
+                results.set(unknownIndexes.get(i), answers.get(i));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param productName
+     *            The name of the product.
+     * @return The cached answer for the product, or null if there is none.
+     */
+    public Boolean lookup(String productName) {
+        Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(productName);
+            if (entry != null && entry.expires < System.currentTimeMillis()) {
+                this.entries.remove(productName);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return Boolean.valueOf(entry.exists);
+    }
+
+    /*
+     * Like lookup, but without counting a hit or miss.
+     */
+    private synchronized Entry peek(String productName) {
+        Entry entry = this.entries.get(productName);
+        return entry != null && entry.expires >= System.currentTimeMillis() ? entry
+                : null;
+    }
+
+    /**
+     * Records whether a product exists.
+     *
+     * @param productName
+     *            The name of the product.
+     * @param exists
+     *            Whether it exists.
+     */
+    public void put(String productName, boolean exists) {
+        this.put(productName, exists, false);
+    }
+
+    private void put(String productName, boolean exists, boolean bulk) {
+        long ttl = exists ? this.existsTtlMillis
+                : (bulk ? this.prefetchTtlMillis : this.missingTtlMillis);
+        synchronized (this) {
+            if (ttl <= 0 || this.maxEntries <= 0) {
+                this.entries.remove(productName);
+            } else {
+                this.entries.put(productName, new Entry(exists, System
+                        .currentTimeMillis()
+                        + ttl));
+            }
+        }
+    }
+
+    /**
+     * Forgets what is known about a product.
+     *
+     * @param productName
+     *            The name of the product.
+     */
+    public synchronized void remove(String productName) {
+        this.entries.remove(productName);
+    }
+
+    /**
+     * Forgets everything, and resets the hit and miss counts.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.hits.set(0L);
+        this.misses.set(0L);
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return The fraction of lookups answered from the cache, or 0 if there
+     *         have been none.
+     */
+    public double getHitRate() {
+        long hits = this.hits.get();
+        long total = hits + this.misses.get();
+        return total > 0 ? (double) hits / total : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductExistenceCache [size=" + this.size() + ", hits="
+                + this.getHits() + ", misses=" + this.getMisses() + "]";
+    }
+
+    private static class Entry {
+
+        private final boolean exists;
+
+        private final long expires;
+
+        private Entry(boolean exists, long expires) {
+            this.exists = exists;
+            this.expires = expires;
+        }
+    }
+
+}
@@ -197,6 +197,7 @@ public class StdIngester implements Ingester, CoreMetKeys {
 
         try {
             productID = fmClient.ingestProduct(product, met, true);
+            ProductExistenceCache.getCache(fmUrl).put(productName, true);
         } catch (Exception e) {
             e.printStackTrace();
             LOG.log(Level.WARNING, "exception ingesting product: ["
@@ -281,7 +282,8 @@ public class StdIngester implements Ingester, CoreMetKeys {
     public boolean hasProduct(URL fmUrl, String productName) throws CatalogException{
         checkOrSetFileManager(fmUrl);
         try {
-            return fmClient.hasProduct(productName);
+            return ProductExistenceCache.getCache(fmUrl).hasProduct(fmClient,
+                    productName);
         } catch (CatalogException e) {
             LOG.log(Level.WARNING,
                     "Unable to check for existance of product: [" + productName
@@ -290,4 +292,24 @@ public class StdIngester implements Ingester, CoreMetKeys {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.oodt.cas.filemgr.ingest.Ingester#hasProducts(java.net.URL,
+     *      java.util.List)
+     */
+    public List<Boolean> hasProducts(URL fmUrl, List<String> productNames)
+            throws CatalogException {
+        checkOrSetFileManager(fmUrl);
+        try {
+            return ProductExistenceCache.getCache(fmUrl).hasProducts(fmClient,
+                    productNames);
+        } catch (CatalogException e) {
+            LOG.log(Level.WARNING, "Unable to check for existance of ["
+                    + productNames.size() + "] products: Message: "
+                    + e.getMessage(), e);
+            throw e;
+        }
+    }
+
 }
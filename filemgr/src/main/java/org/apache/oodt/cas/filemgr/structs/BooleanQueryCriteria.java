@@ -153,6 +153,17 @@ public class BooleanQueryCriteria extends QueryCriteria {
     public void setElementName(String elementName) {
     }
 
+    /**
+     * Returns a copy of this query, with copies of its terms.
+     */
+    public BooleanQueryCriteria clone() {
+        BooleanQueryCriteria copy = (BooleanQueryCriteria) super.clone();
+        copy.terms = new Vector<QueryCriteria>(terms.size());
+        for (QueryCriteria term : terms)
+            copy.terms.add(term.clone());
+        return copy;
+    }
+
     /**
      * Method to convert the query to a string.
      * 
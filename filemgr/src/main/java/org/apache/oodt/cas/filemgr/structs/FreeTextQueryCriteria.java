@@ -110,6 +110,16 @@ public class FreeTextQueryCriteria extends QueryCriteria {
         values.add(v);
     }
 
+    /**
+     * Returns a copy of this criteria, with its own list of values.
+     */
+    public FreeTextQueryCriteria clone() {
+        FreeTextQueryCriteria copy = (FreeTextQueryCriteria) super.clone();
+        if (values != null)
+            copy.values = new ArrayList<String>(values);
+        return copy;
+    }
+
     /**
      * A method for adding unparsed free text to the FreeTextCriteria. Free text
      * entered as a string is tokenized and punctuation and common words are
@@ -48,6 +48,18 @@ public class ProductPage {
     /* the computed number of total hits for the query */
     private long numOfHits;
 
+    /* keyset pagination cursor: id of the first product on this page */
+    private String firstProductId = null;
+
+    /* keyset pagination cursor: datetime of the first product on this page */
+    private String firstProductDateTime = null;
+
+    /* keyset pagination cursor: id of the last product on this page */
+    private String lastProductId = null;
+
+    /* keyset pagination cursor: datetime of the last product on this page */
+    private String lastProductDateTime = null;
+
 
     /**
      * <p>
@@ -167,6 +179,70 @@ public class ProductPage {
       this.numOfHits = numOfHits;
     }    
 
+    /**
+     * @return The id of the first product on this page, or null if this
+     *         page does not carry a keyset pagination cursor.
+     */
+    public String getFirstProductId() {
+        return firstProductId;
+    }
+
+    /**
+     * @param firstProductId
+     *            The id of the first product on this page.
+     */
+    public void setFirstProductId(String firstProductId) {
+        this.firstProductId = firstProductId;
+    }
+
+    /**
+     * @return The datetime of the first product on this page, or null if the
+     *         catalog orders products by id alone.
+     */
+    public String getFirstProductDateTime() {
+        return firstProductDateTime;
+    }
+
+    /**
+     * @param firstProductDateTime
+     *            The datetime of the first product on this page.
+     */
+    public void setFirstProductDateTime(String firstProductDateTime) {
+        this.firstProductDateTime = firstProductDateTime;
+    }
+
+    /**
+     * @return The id of the last product on this page, or null if this page
+     *         does not carry a keyset pagination cursor.
+     */
+    public String getLastProductId() {
+        return lastProductId;
+    }
+
+    /**
+     * @param lastProductId
+     *            The id of the last product on this page.
+     */
+    public void setLastProductId(String lastProductId) {
+        this.lastProductId = lastProductId;
+    }
+
+    /**
+     * @return The datetime of the last product on this page, or null if the
+     *         catalog orders products by id alone.
+     */
+    public String getLastProductDateTime() {
+        return lastProductDateTime;
+    }
+
+    /**
+     * @param lastProductDateTime
+     *            The datetime of the last product on this page.
+     */
+    public void setLastProductDateTime(String lastProductDateTime) {
+        this.lastProductDateTime = lastProductDateTime;
+    }
+
     /**
      * 
      * @return A blank, unpopulated {@link ProductPage}.
@@ -57,4 +57,20 @@ public abstract class QueryCriteria implements Cloneable {
      */
     public abstract String toString();
 
+    /**
+     * Returns a copy of this criteria that can be changed (e.g., by a
+     * {@link org.apache.oodt.cas.filemgr.structs.type.TypeHandler}) without
+     * changing this one.
+     * 
+     * @return The copy.
+     */
+    public QueryCriteria clone() {
+        try {
+            return (QueryCriteria) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // we're Cloneable
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
 }
@@ -23,7 +23,12 @@ import org.apache.xmlrpc.WebServer;
 //OODT imports
 import org.apache.oodt.cas.metadata.Metadata;
 import org.apache.oodt.cas.metadata.exceptions.MetExtractionException;
+import org.apache.oodt.cas.metadata.util.BinaryMetadataCodec;
 import org.apache.oodt.commons.date.DateUtils;
+import org.apache.oodt.commons.rpc.BinaryCodec;
+import org.apache.oodt.commons.rpc.BinaryRpcException;
+import org.apache.oodt.commons.rpc.BinaryRpcHandler;
+import org.apache.oodt.commons.rpc.BinaryRpcServer;
 import org.apache.oodt.cas.filemgr.catalog.Catalog;
 import org.apache.oodt.cas.filemgr.metadata.ProductMetKeys;
 import org.apache.oodt.cas.filemgr.metadata.extractors.FilemgrMetExtractor;
@@ -35,6 +40,7 @@ import org.apache.oodt.cas.filemgr.structs.ProductPage;
 import org.apache.oodt.cas.filemgr.structs.ProductType;
 import org.apache.oodt.cas.filemgr.structs.Product;
 import org.apache.oodt.cas.filemgr.structs.Query;
+import org.apache.oodt.cas.filemgr.structs.QueryCriteria;
 import org.apache.oodt.cas.filemgr.structs.Reference;
 import org.apache.oodt.cas.filemgr.structs.exceptions.CatalogException;
 import org.apache.oodt.cas.filemgr.structs.exceptions.QueryFormulationException;
@@ -50,6 +56,8 @@ import org.apache.oodt.cas.filemgr.structs.query.filter.ObjectTimeEvent;
 import org.apache.oodt.cas.filemgr.structs.query.filter.TimeEvent;
 import org.apache.oodt.cas.filemgr.structs.type.TypeHandler;
 import org.apache.oodt.cas.filemgr.datatransfer.DataTransfer;
+import org.apache.oodt.cas.filemgr.datatransfer.StreamingTransferServer;
+import org.apache.oodt.cas.filemgr.util.BinaryStructFactory;
 import org.apache.oodt.cas.filemgr.util.GenericFileManagerObjectFactory;
 import org.apache.oodt.cas.filemgr.util.XmlRpcStructFactory;
 import org.apache.oodt.cas.filemgr.versioning.Versioner;
@@ -65,16 +73,28 @@ import com.google.common.collect.Lists;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -106,14 +126,32 @@ public class XmlRpcFileManager {
     /* our log stream */
     private static final Logger LOG = Logger.getLogger(XmlRpcFileManager.class.getName());
 
+    /* comma separated directories the streaming transfer server is confined to */
+    private static final String STREAMING_ROOTS_PROPERTY = "org.apache.oodt.cas.filemgr.datatransfer.streaming.roots";
+
     /* our xml rpc web server */
     private WebServer webServer = null;
 
     /* our data transfer status tracker */
     private TransferStatusTracker transferStatusTracker = null;
+
+    /* our streaming data transfer server, if enabled */
+    private StreamingTransferServer streamingTransferServer = null;
+
+    /* our binary rpc server, if enabled */
+    private BinaryRpcServer binaryRpcServer = null;
     
     /* whether or not to expand a product instance into met */
     private boolean expandProductMet;
+
+    /* the fewest products a complex query fetches per task */
+    private static final int QUERY_BATCH_SIZE_MIN = 50;
+
+    /* the number of threads complex queries are run with */
+    private int queryThreads;
+
+    /* runs the parts of complex queries in parallel */
+    private ExecutorService queryExecutor = null;
     
     /**
      * <p>
@@ -134,6 +172,48 @@ public class XmlRpcFileManager {
         webServer.start();
 
         this.loadConfiguration();
+
+        int streamingPort = Integer.getInteger(
+                "org.apache.oodt.cas.filemgr.datatransfer.streaming.port", -1)
+                .intValue();
+        if (streamingPort > 0) {
+            String bindAddress = System
+                    .getProperty("org.apache.oodt.cas.filemgr.datatransfer.streaming.bindAddress");
+            streamingTransferServer = new StreamingTransferServer(
+                    bindAddress != null ? InetAddress.getByName(bindAddress)
+                            : null,
+                    streamingPort,
+                    Integer.getInteger(
+                            "org.apache.oodt.cas.filemgr.datatransfer.streaming.maxConnections",
+                            16).intValue(), getStreamingRoots());
+            streamingTransferServer.start();
+        }
+
+        // 0 picks a free port, which clients learn from getBinaryRpcPort()
+        int binaryPort = Integer.getInteger(
+                "org.apache.oodt.cas.filemgr.binary.port", -1).intValue();
+        if (binaryPort >= 0) {
+            binaryRpcServer = new BinaryRpcServer(
+                    binaryPort,
+                    Integer.getInteger(
+                            "org.apache.oodt.cas.filemgr.binary.idleTimeout.millis",
+                            60000).intValue());
+            binaryRpcServer.addHandler("filemgr", new BinaryHandler());
+            binaryRpcServer.start();
+        }
+
+        queryThreads = Math.max(1, Integer.getInteger(
+                "org.apache.oodt.cas.filemgr.complexQuery.threads", 4)
+                .intValue());
+        queryExecutor = Executors.newFixedThreadPool(queryThreads,
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "ComplexQuery");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
         LOG.log(Level.INFO, "File Manager started by "
                 + System.getProperty("user.name", "unknown"));
 
@@ -146,6 +226,15 @@ public class XmlRpcFileManager {
     public boolean isAlive() {
         return true;
     }
+
+    /**
+     * @return The port this File Manager serves binary RPC calls on, or -1
+     *         if it doesn't serve them.
+     */
+    public int getBinaryRpcPort() {
+        return this.binaryRpcServer != null ? this.binaryRpcServer.getPort()
+                : -1;
+    }
     
     public boolean refreshConfigAndPolicy() {
       boolean status = false;
@@ -330,6 +419,19 @@ public class XmlRpcFileManager {
         ProductType productType = XmlRpcStructFactory
                 .getProductTypeFromXmlRpc(productTypeHash);
         repositoryManager.addProductType(productType);
+        if (streamingTransferServer != null
+                && System.getProperty(STREAMING_ROOTS_PROPERTY) == null) {
+            File root = getRepositoryDir(productType);
+            if (root != null) {
+                try {
+                    streamingTransferServer.addRoot(root);
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "Unable to serve repository: ["
+                            + root + "] for streaming transfers: Message: "
+                            + e.getMessage());
+                }
+            }
+        }
         return productType.getProductTypeId();
 
     }
@@ -405,6 +507,44 @@ public class XmlRpcFileManager {
                 && p.getTransferStatus().equals(Product.STATUS_RECEIVED);
     }
 
+    /**
+     * Checks for several products at once, saving a round trip per product.
+     * 
+     * @param productNames
+     *            The names of the products to check for.
+     * @return Whether each product exists and has been fully received, in
+     *         the same order as the given names.
+     * @throws CatalogException
+     *             If the catalog can't be queried.
+     */
+    public Vector<Boolean> hasProducts(Vector<String> productNames)
+            throws CatalogException {
+        List<Callable<List<Boolean>>> batches = new Vector<Callable<List<Boolean>>>();
+        for (int i = 0; i < productNames.size(); i += QUERY_BATCH_SIZE_MIN) {
+            final List<String> batch = productNames.subList(i, Math.min(i
+                    + QUERY_BATCH_SIZE_MIN, productNames.size()));
+            batches.add(new Callable<List<Boolean>>() {
+                public List<Boolean> call() throws Exception {
+                    List<Boolean> results = new Vector<Boolean>(batch.size());
+                    for (String productName : batch)
+                        results.add(Boolean.valueOf(hasProduct(productName)));
+                    return results;
+                }
+            });
+        }
+
+        try {
+            Vector<Boolean> results = new Vector<Boolean>(productNames.size());
+            for (List<Boolean> batchResults : this.runQueryTasks(batches))
+                results.addAll(batchResults);
+            return results;
+        } catch (CatalogException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CatalogException(e.getMessage(), e);
+        }
+    }
+
     public Hashtable<String, Object> getMetadata(
             Hashtable<String, Object> productHash) throws CatalogException {
         Product product = XmlRpcStructFactory.getProductFromXmlRpc(productHash);
@@ -438,12 +578,62 @@ public class XmlRpcFileManager {
     public Vector<Hashtable<String, Object>> getProductReferences(
             Hashtable<String, Object> productHash)
             throws CatalogException {
-        List<Reference> referenceList = null;
         Product product = XmlRpcStructFactory.getProductFromXmlRpc(productHash);
+        return XmlRpcStructFactory.getXmlRpcReferences(this
+                .loadProductReferences(product));
+    }
+
+    /**
+     * Looks up the references of several products at once, saving a round
+     * trip per product.
+     * 
+     * @param productIds
+     *            The ids of the products whose references are wanted.
+     * @return The references of each product, in the same order as the given
+     *         ids.
+     * @throws CatalogException
+     *             If the catalog can't be queried.
+     */
+    public Vector<Vector<Hashtable<String, Object>>> getProductReferencesByIds(
+            Vector<String> productIds) throws CatalogException {
+        List<Callable<List<Vector<Hashtable<String, Object>>>>> batches = new Vector<Callable<List<Vector<Hashtable<String, Object>>>>>();
+        for (int i = 0; i < productIds.size(); i += QUERY_BATCH_SIZE_MIN) {
+            final List<String> batch = productIds.subList(i, Math.min(i
+                    + QUERY_BATCH_SIZE_MIN, productIds.size()));
+            batches.add(new Callable<List<Vector<Hashtable<String, Object>>>>() {
+                public List<Vector<Hashtable<String, Object>>> call()
+                        throws Exception {
+                    List<Vector<Hashtable<String, Object>>> results = new Vector<Vector<Hashtable<String, Object>>>(
+                            batch.size());
+                    for (String productId : batch) {
+                        Product product = new Product();
+                        product.setProductId(productId);
+                        results.add(XmlRpcStructFactory
+                                .getXmlRpcReferences(loadProductReferences(product)));
+                    }
+                    return results;
+                }
+            });
+        }
 
         try {
-            referenceList = catalog.getProductReferences(product);
-            return XmlRpcStructFactory.getXmlRpcReferences(referenceList);
+            Vector<Vector<Hashtable<String, Object>>> results = new Vector<Vector<Hashtable<String, Object>>>(
+                    productIds.size());
+            for (List<Vector<Hashtable<String, Object>>> batchResults : this
+                    .runQueryTasks(batches))
+                results.addAll(batchResults);
+            return results;
+        } catch (CatalogException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CatalogException(e.getMessage(), e);
+        }
+    }
+
+    private List<Reference> loadProductReferences(Product product)
+            throws CatalogException {
+        try {
+            return catalog.getProductReferences(product);
         } catch (CatalogException e) {
             e.printStackTrace();
             LOG.log(Level.SEVERE, "Unable to obtain references for product: ["
@@ -456,6 +646,12 @@ public class XmlRpcFileManager {
 
     public Hashtable<String, Object> getProductById(String productId)
             throws CatalogException {
+        return XmlRpcStructFactory.getXmlRpcProduct(this
+                .loadProductById(productId));
+    }
+
+    private Product loadProductById(String productId)
+            throws CatalogException {
         Product product = null;
 
         try {
@@ -467,7 +663,7 @@ public class XmlRpcFileManager {
             product.setProductType(this.repositoryManager
                     .getProductTypeById(product.getProductType()
                             .getProductTypeId()));
-            return XmlRpcStructFactory.getXmlRpcProduct(product);
+            return product;
         } catch (CatalogException e) {
             e.printStackTrace();
             LOG.log(Level.SEVERE, "Unable to obtain product by id: ["
@@ -485,6 +681,12 @@ public class XmlRpcFileManager {
 
     public Hashtable<String, Object> getProductByName(String productName)
             throws CatalogException {
+        return XmlRpcStructFactory.getXmlRpcProduct(this
+                .loadProductByName(productName));
+    }
+
+    private Product loadProductByName(String productName)
+            throws CatalogException {
         Product product = null;
 
         try {
@@ -496,7 +698,7 @@ public class XmlRpcFileManager {
             product.setProductType(this.repositoryManager
                     .getProductTypeById(product.getProductType()
                             .getProductTypeId()));
-            return XmlRpcStructFactory.getXmlRpcProduct(product);
+            return product;
         } catch (CatalogException e) {
             e.printStackTrace();
             LOG.log(Level.SEVERE, "Unable to obtain product by name: ["
@@ -586,59 +788,51 @@ public class XmlRpcFileManager {
         try {
             ComplexQuery complexQuery = XmlRpcStructFactory
                     .getComplexQueryFromXmlRpc(complexQueryHash);
-
-            // get ProductTypes
-            List<ProductType> productTypes = null;
-            if (complexQuery.getReducedProductTypeNames() == null) {
-                productTypes = this.repositoryManager.getProductTypes();
-            } else {
-                productTypes = new Vector<ProductType>();
-                for (String productTypeName : complexQuery
-                        .getReducedProductTypeNames())
-                    productTypes.add(this.repositoryManager
-                            .getProductTypeByName(productTypeName));
-            }
-
-            // get Metadata
-            List<QueryResult> queryResults = new LinkedList<QueryResult>();
-            for (ProductType productType : productTypes) {
-                List<String> productIds = catalog.query(this.getCatalogQuery(
-                        complexQuery, productType), productType);
-                for (String productId : productIds) {
-                    Product product = catalog.getProductById(productId);
-                    product.setProductType(productType);
-                    QueryResult qr = new QueryResult(product, this
-                            .getReducedMetadata(product, complexQuery
-                                    .getReducedMetadata()));
-                    qr.setToStringFormat(complexQuery
-                            .getToStringResultFormat());
-                    queryResults.add(qr);
-                }
-            }
-
-            LOG.log(Level.INFO, "Query returned " + queryResults.size()
-                    + " results");
-
-            // filter query results
-            if (complexQuery.getQueryFilter() != null) {
-                queryResults = applyFilterToResults(queryResults, complexQuery
-                        .getQueryFilter());
-                LOG.log(Level.INFO, "Filter returned " + queryResults.size()
-                        + " results");
-            }
-
-            // sort query results
-            if (complexQuery.getSortByMetKey() != null)
-                queryResults = sortQueryResultList(queryResults, complexQuery
-                        .getSortByMetKey());
-
-            return XmlRpcStructFactory.getXmlRpcQueryResults(queryResults);
+            return XmlRpcStructFactory.getXmlRpcQueryResults(this
+                    .complexQuery(complexQuery, 0, -1));
         } catch (Exception e) {
             e.printStackTrace();
             throw new CatalogException("Failed to perform complex query : "
                     + e.getMessage());
         }
     }
+
+    /**
+     * Performs a {@link ComplexQuery}, returning only the given page of its
+     * (filtered and sorted) results. Only the products and metadata for the
+     * requested page are fetched in full, so large result sets can be walked
+     * through without materializing them all at once.
+     * 
+     * @param complexQueryHash
+     *            The XML-RPC form of the {@link ComplexQuery}.
+     * @param pageNum
+     *            The page to return, starting at 1.
+     * @param pageSize
+     *            The number of results per page.
+     * @return The {@link QueryResult}s on the requested page, which is empty
+     *         past the last page.
+     * @throws CatalogException
+     *             If the query fails.
+     */
+    public Vector<Hashtable<String, Object>> pagedComplexQuery(
+            Hashtable<String, Object> complexQueryHash, int pageNum,
+            int pageSize) throws CatalogException {
+        if (pageNum < 1 || pageSize < 1) {
+            throw new CatalogException("Invalid page: pageNum: [" + pageNum
+                    + "], pageSize: [" + pageSize + "]");
+        }
+        try {
+            ComplexQuery complexQuery = XmlRpcStructFactory
+                    .getComplexQueryFromXmlRpc(complexQueryHash);
+            return XmlRpcStructFactory.getXmlRpcQueryResults(this
+                    .complexQuery(complexQuery, (pageNum - 1) * pageSize,
+                            pageSize));
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new CatalogException("Failed to perform paged complex query : "
+                    + e.getMessage());
+        }
+    }
     
     public Vector<Hashtable<String, Object>> query(
             Hashtable<String, Object> queryHash,
@@ -1027,6 +1221,18 @@ public class XmlRpcFileManager {
     }
 
     public boolean shutdown() {
+        if (this.queryExecutor != null) {
+            this.queryExecutor.shutdown();
+            this.queryExecutor = null;
+        }
+        if (this.streamingTransferServer != null) {
+            this.streamingTransferServer.shutdown();
+            this.streamingTransferServer = null;
+        }
+        if (this.binaryRpcServer != null) {
+            this.binaryRpcServer.shutdown();
+            this.binaryRpcServer = null;
+        }
         if (this.webServer != null) {
             this.webServer.shutdown();
             this.webServer = null;
@@ -1035,6 +1241,46 @@ public class XmlRpcFileManager {
             return false;
     }
 
+    /*
+     * The directories the streaming transfer server may read and write: those
+     * listed in the roots property, or else every product type's repository.
+     */
+    private List<File> getStreamingRoots() throws RepositoryManagerException {
+        List<File> roots = new LinkedList<File>();
+        String rootList = System.getProperty(STREAMING_ROOTS_PROPERTY);
+        if (rootList != null) {
+            for (String root : rootList.split(",")) {
+                if (root.trim().length() > 0) {
+                    roots.add(new File(root.trim()));
+                }
+            }
+            return roots;
+        }
+        for (ProductType type : repositoryManager.getProductTypes()) {
+            File root = getRepositoryDir(type);
+            if (root != null) {
+                roots.add(root);
+            }
+        }
+        return roots;
+    }
+
+    private static File getRepositoryDir(ProductType type) {
+        String path = type.getProductRepositoryPath();
+        if (path == null) {
+            return null;
+        }
+        try {
+            return path.startsWith("file:") ? new File(new URI(path))
+                    : new File(path);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Product type: [" + type.getName()
+                    + "] repository path: [" + path
+                    + "] is not a local directory: Message: " + e.getMessage());
+            return null;
+        }
+    }
+
     private synchronized String catalogProduct(Product p)
             throws CatalogException {
         try {
@@ -1143,6 +1389,207 @@ public class XmlRpcFileManager {
         }
     }
     
+    /*
+     * Runs a ComplexQuery, returning results [offset, offset + limit) of the
+     * filtered, sorted result list (all of them if limit < 0).
+     * 
+     * The catalog is first asked for the matching product ids of every
+     * product type in parallel. Without a filter or sort, only the hits in the
+     * requested window are fetched. With one, unless everything is returned
+     * anyway, only the metadata keys the filter and sort need are fetched for
+     * every hit; the sort keeps just the top offset + limit hits, and only
+     * those in the window are fetched in full.
+     */
+    private List<QueryResult> complexQuery(ComplexQuery complexQuery,
+            int offset, int limit) throws Exception {
+        // get ProductTypes
+        List<ProductType> productTypes = null;
+        if (complexQuery.getReducedProductTypeNames() == null) {
+            productTypes = this.repositoryManager.getProductTypes();
+        } else {
+            productTypes = new Vector<ProductType>();
+            for (String productTypeName : complexQuery
+                    .getReducedProductTypeNames())
+                productTypes.add(this.repositoryManager
+                        .getProductTypeByName(productTypeName));
+        }
+
+        List<QueryHit> hits = this.queryProductTypes(complexQuery,
+                productTypes);
+        LOG.log(Level.INFO, "Query returned " + hits.size() + " results");
+
+        QueryFilter queryFilter = complexQuery.getQueryFilter();
+        String sortByMetKey = complexQuery.getSortByMetKey();
+        if (queryFilter == null && sortByMetKey == null) {
+            hits = window(hits, offset, limit);
+        } else {
+            if (limit < 0) {
+                this.fetchQueryHits(hits, complexQuery.getReducedMetadata(),
+                        true);
+            } else {
+                this.fetchQueryHits(hits, this.getKeyElements(complexQuery),
+                        false);
+            }
+
+            // filter query results
+            if (queryFilter != null) {
+                hits = this.applyFilterToHits(hits, queryFilter);
+                LOG.log(Level.INFO, "Filter returned " + hits.size()
+                        + " results");
+            }
+
+            // sort query results
+            if (sortByMetKey != null) {
+                hits = sortQueryHits(hits, sortByMetKey, limit < 0 ? -1
+                        : offset + limit);
+            }
+            hits = window(hits, offset, limit);
+        }
+
+        List<QueryHit> incomplete = new Vector<QueryHit>();
+        for (QueryHit hit : hits)
+            if (!hit.complete)
+                incomplete.add(hit);
+        this.fetchQueryHits(incomplete, complexQuery.getReducedMetadata(),
+                true);
+
+        List<QueryResult> queryResults = new Vector<QueryResult>(hits.size());
+        for (QueryHit hit : hits) {
+            hit.result.setToStringFormat(complexQuery.getToStringResultFormat());
+            queryResults.add(hit.result);
+        }
+        return queryResults;
+    }
+
+    private List<QueryHit> queryProductTypes(final ComplexQuery complexQuery,
+            List<ProductType> productTypes) throws Exception {
+        List<Callable<List<String>>> queries = new Vector<Callable<List<String>>>();
+        for (final ProductType productType : productTypes) {
+            queries.add(new Callable<List<String>>() {
+                public List<String> call() throws Exception {
+                    // type handlers rewrite the criteria, so give each type
+                    // its own copy of them
+                    List<QueryCriteria> criteria = new Vector<QueryCriteria>();
+                    for (QueryCriteria qc : complexQuery.getCriteria())
+                        criteria.add(qc.clone());
+                    Query query = new Query(criteria);
+                    return catalog.query(getCatalogQuery(query, productType),
+                            productType);
+                }
+            });
+        }
+
+        List<QueryHit> hits = new Vector<QueryHit>();
+        List<List<String>> productIdLists = this.runQueryTasks(queries);
+        for (int i = 0; i < productTypes.size(); i++) {
+            if (productIdLists.get(i) != null) {
+                for (String productId : productIdLists.get(i))
+                    hits.add(new QueryHit(hits.size(), productId, productTypes
+                            .get(i)));
+            }
+        }
+        return hits;
+    }
+
+    /*
+     * Fetches the product and metadata of the given hits, in parallel batches.
+     * A complete fetch gets the full product and the given reduced metadata;
+     * otherwise only the given metadata elements are fetched, and the product
+     * only if building its metadata needs it.
+     */
+    private void fetchQueryHits(List<QueryHit> hits,
+            final List<String> elements, final boolean complete)
+            throws Exception {
+        if (hits.isEmpty())
+            return;
+        int batchSize = Math.max(QUERY_BATCH_SIZE_MIN, (hits.size()
+                + this.queryThreads - 1) / this.queryThreads);
+        List<Callable<Object>> batches = new Vector<Callable<Object>>();
+        for (int i = 0; i < hits.size(); i += batchSize) {
+            final List<QueryHit> batch = hits.subList(i, Math.min(i
+                    + batchSize, hits.size()));
+            batches.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (QueryHit hit : batch)
+                        fetchQueryHit(hit, elements, complete);
+                    return null;
+                }
+            });
+        }
+        this.runQueryTasks(batches);
+    }
+
+    private void fetchQueryHit(QueryHit hit, List<String> elements,
+            boolean complete) throws CatalogException {
+        Product product = hit.result.getProduct();
+        if (product == null) {
+            if (complete || this.expandProductMet) {
+                product = catalog.getProductById(hit.productId);
+                product.setProductType(hit.productType);
+                hit.result.setProduct(product);
+            } else {
+                // enough for the catalog to look up the product's metadata
+                product = new Product();
+                product.setProductId(hit.productId);
+                product.setProductType(hit.productType);
+            }
+        }
+        if (complete || (elements != null && elements.size() > 0)) {
+            hit.result.setMetadata(this.getReducedMetadata(product, elements));
+        }
+        hit.complete = complete;
+    }
+
+    /*
+     * The metadata keys the filter and sort of the given query read, out of
+     * those the query returns.
+     */
+    private List<String> getKeyElements(ComplexQuery complexQuery) {
+        List<String> keys = new Vector<String>();
+        if (complexQuery.getSortByMetKey() != null)
+            keys.add(complexQuery.getSortByMetKey());
+        QueryFilter queryFilter = complexQuery.getQueryFilter();
+        if (queryFilter != null) {
+            keys.add(queryFilter.getStartDateTimeMetKey());
+            keys.add(queryFilter.getEndDateTimeMetKey());
+            keys.add(queryFilter.getPriorityMetKey());
+        }
+        if (complexQuery.getReducedMetadata() != null
+                && complexQuery.getReducedMetadata().size() > 0)
+            keys.retainAll(complexQuery.getReducedMetadata());
+        return keys;
+    }
+
+    private <T> List<T> runQueryTasks(List<? extends Callable<T>> tasks)
+            throws Exception {
+        List<T> results = new Vector<T>(tasks.size());
+        if (tasks.size() == 1 || this.queryThreads <= 1) {
+            for (Callable<T> task : tasks)
+                results.add(task.call());
+            return results;
+        }
+
+        for (Future<T> future : this.queryExecutor.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception)
+                    throw (Exception) e.getCause();
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    private static List<QueryHit> window(List<QueryHit> hits, int offset,
+            int limit) {
+        if (offset >= hits.size())
+            return new Vector<QueryHit>();
+        int end = limit < 0 ? hits.size() : Math.min(hits.size(), offset
+                + limit);
+        return hits.subList(offset, end);
+    }
+
     private List<Product> query(Query query, ProductType productType) throws CatalogException {
         List<String> productIdList = null;
         List<Product> productList = null;
@@ -1249,45 +1696,73 @@ public class XmlRpcFileManager {
     }
 
     @SuppressWarnings("unchecked")
-    private List<QueryResult> applyFilterToResults(
-            List<QueryResult> queryResults, QueryFilter queryFilter)
-            throws Exception {
+    private List<QueryHit> applyFilterToHits(List<QueryHit> hits,
+            QueryFilter queryFilter) throws Exception {
         List<TimeEvent> events = new LinkedList<TimeEvent>();
-        for (QueryResult queryResult : queryResults) {
+        for (QueryHit hit : hits) {
+            Metadata hitMet = hit.result.getMetadata();
             Metadata m = new Metadata();
-            m.addMetadata(queryFilter.getPriorityMetKey(), queryResult
-                .getMetadata().getMetadata(queryFilter.getPriorityMetKey()));
-            events.add(new ObjectTimeEvent<QueryResult>(
-                DateUtils.getTimeInMillis(DateUtils.toCalendar(queryResult
-                    .getMetadata().getMetadata(queryFilter.getStartDateTimeMetKey()),
+            m.addMetadata(queryFilter.getPriorityMetKey(), hitMet
+                .getMetadata(queryFilter.getPriorityMetKey()));
+            events.add(new ObjectTimeEvent<QueryHit>(
+                DateUtils.getTimeInMillis(DateUtils.toCalendar(hitMet
+                    .getMetadata(queryFilter.getStartDateTimeMetKey()),
                     DateUtils.FormatType.UTC_FORMAT), DateUtils.julianEpoch), 
-                DateUtils.getTimeInMillis(DateUtils.toCalendar(queryResult.getMetadata()
+                DateUtils.getTimeInMillis(DateUtils.toCalendar(hitMet
                     .getMetadata(queryFilter.getEndDateTimeMetKey()),
                     DateUtils.FormatType.UTC_FORMAT),
                 DateUtils.julianEpoch), queryFilter.getConverter()
                     .convertToPriority(this.getCatalogValues(m,
-                    queryResult.getProduct().getProductType())
+                    hit.productType)
                     .getMetadata(queryFilter.getPriorityMetKey())),
-                queryResult));
+                hit));
         }
         events = queryFilter.getFilterAlgor().filterEvents(events);
-        List<QueryResult> filteredQueryResults = new LinkedList<QueryResult>();
+        List<QueryHit> filteredHits = new Vector<QueryHit>(events.size());
         for (TimeEvent event : events)
-            filteredQueryResults.add(((ObjectTimeEvent<QueryResult>) event)
+            filteredHits.add(((ObjectTimeEvent<QueryHit>) event)
                     .getTimeObject());
 
-        return filteredQueryResults;
+        return filteredHits;
     }
 
-    private List<QueryResult> sortQueryResultList(List<QueryResult> queryResults,
-      String sortByMetKey) {
-    QueryResult[] resultsArray = queryResults
-        .toArray(new QueryResult[queryResults.size()]);
-    QueryResultComparator qrComparator = new QueryResultComparator();
-    qrComparator.setSortByMetKey(sortByMetKey);
-    Arrays.sort(resultsArray, qrComparator);
-    return Arrays.asList(resultsArray);
-  }
+    /*
+     * Sorts the hits by the given key, keeping hits with equal keys in their
+     * original order. If topK >= 0, only the first topK hits are kept, using
+     * a bounded heap rather than sorting everything.
+     */
+    private static List<QueryHit> sortQueryHits(List<QueryHit> hits,
+            String sortByMetKey, int topK) {
+        final QueryResultComparator qrComparator = new QueryResultComparator();
+        qrComparator.setSortByMetKey(sortByMetKey);
+        Comparator<QueryHit> comparator = new Comparator<QueryHit>() {
+            public int compare(QueryHit hit1, QueryHit hit2) {
+                int result = qrComparator.compare(hit1.result, hit2.result);
+                return result != 0 ? result : hit1.index - hit2.index;
+            }
+        };
+
+        if (topK < 0 || topK >= hits.size()) {
+            QueryHit[] hitsArray = hits.toArray(new QueryHit[hits.size()]);
+            Arrays.sort(hitsArray, comparator);
+            return Arrays.asList(hitsArray);
+        }
+
+        // a max-heap of the best topK hits seen so far
+        PriorityQueue<QueryHit> best = new PriorityQueue<QueryHit>(Math.max(
+                topK, 1), Collections.reverseOrder(comparator));
+        for (QueryHit hit : hits) {
+            if (best.size() < topK) {
+                best.add(hit);
+            } else if (topK > 0 && comparator.compare(hit, best.peek()) < 0) {
+                best.poll();
+                best.add(hit);
+            }
+        }
+        QueryHit[] hitsArray = best.toArray(new QueryHit[best.size()]);
+        Arrays.sort(hitsArray, comparator);
+        return Arrays.asList(hitsArray);
+    }
 
     private Metadata buildProductMetadata(Product product, Metadata metadata)
       throws CatalogException {
@@ -1366,4 +1841,78 @@ public class XmlRpcFileManager {
         .getBoolean("org.apache.oodt.cas.filemgr.metadata.expandProduct");
   }
 
+
+    /*
+     * A product matching a complex query, with as much of its product and
+     * metadata as has been fetched so far.
+     */
+    private static class QueryHit {
+
+        /* position in catalog order, to keep sorts stable */
+        private final int index;
+
+        private final String productId;
+
+        private final ProductType productType;
+
+        private final QueryResult result;
+
+        /* whether the product and all the requested metadata are fetched */
+        private boolean complete;
+
+        private QueryHit(int index, String productId, ProductType productType) {
+            this.index = index;
+            this.productId = productId;
+            this.productType = productType;
+            this.result = new QueryResult(null, new Metadata());
+            this.complete = false;
+        }
+    }
+
+    /*
+     * Serves the binary RPC forms of the calls clients make most, on top of
+     * the same methods their XML-RPC forms use.
+     */
+    private class BinaryHandler implements BinaryRpcHandler {
+
+        public void execute(String method, DataInputStream args,
+                DataOutputStream result) throws Exception {
+            if (method.equals("getMetadata")) {
+                BinaryMetadataCodec.writeMetadata(result, getMetadata(
+                        BinaryStructFactory.readProduct(args)));
+            } else if (method.equals("getReducedMetadata")) {
+                Product product = BinaryStructFactory.readProduct(args);
+                BinaryMetadataCodec.writeMetadata(result, getReducedMetadata(
+                        product, BinaryCodec.readStringList(args)));
+            } else if (method.equals("getProductById")) {
+                BinaryStructFactory.writeProduct(result,
+                        loadProductById(BinaryCodec.readString(args)));
+            } else if (method.equals("getProductByName")) {
+                BinaryStructFactory.writeProduct(result,
+                        loadProductByName(BinaryCodec.readString(args)));
+            } else if (method.equals("getProductReferences")) {
+                BinaryStructFactory.writeReferences(result,
+                        loadProductReferences(BinaryStructFactory
+                                .readProduct(args)));
+            } else if (method.equals("complexQuery")) {
+                BinaryStructFactory.writeQueryResults(result, complexQuery(
+                        BinaryStructFactory.readComplexQuery(args), 0, -1));
+            } else if (method.equals("pagedComplexQuery")) {
+                ComplexQuery complexQuery = BinaryStructFactory
+                        .readComplexQuery(args);
+                int pageNum = args.readInt();
+                int pageSize = args.readInt();
+                if (pageNum < 1 || pageSize < 1) {
+                    throw new CatalogException("Invalid page: pageNum: ["
+                            + pageNum + "], pageSize: [" + pageSize + "]");
+                }
+                BinaryStructFactory.writeQueryResults(result, complexQuery(
+                        complexQuery, (pageNum - 1) * pageSize, pageSize));
+            } else {
+                throw new BinaryRpcException("Unknown method: [" + method
+                        + "]");
+            }
+        }
+    }
+
 }
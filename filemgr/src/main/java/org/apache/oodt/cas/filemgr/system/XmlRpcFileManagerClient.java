@@ -18,28 +18,29 @@
 package org.apache.oodt.cas.filemgr.system;
 
 //APACHE imports
-import org.apache.xmlrpc.CommonsXmlRpcTransport;
 import org.apache.xmlrpc.XmlRpcClient;
-import org.apache.xmlrpc.XmlRpcClientException;
 import org.apache.xmlrpc.XmlRpcException;
-import org.apache.xmlrpc.XmlRpcTransport;
-import org.apache.xmlrpc.XmlRpcTransportFactory;
 //JDK imports
 import java.net.URL;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.File;
 //OODT imports
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpMethod;
-import org.apache.commons.httpclient.HttpMethodRetryHandler;
-import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.oodt.commons.rpc.BinaryCodec;
+import org.apache.oodt.commons.rpc.BinaryRpcClient;
+import org.apache.oodt.commons.rpc.BinaryRpcException;
+import org.apache.oodt.commons.rpc.BinaryRpcRequest;
+import org.apache.oodt.commons.xmlrpc.PooledXmlRpcTransportFactory;
 import org.apache.oodt.cas.metadata.Metadata;
+import org.apache.oodt.cas.metadata.util.BinaryMetadataCodec;
 import org.apache.oodt.cas.cli.CmdLineUtility;
 import org.apache.oodt.cas.filemgr.structs.exceptions.CatalogException;
 import org.apache.oodt.cas.filemgr.structs.exceptions.RepositoryManagerException;
@@ -51,6 +52,7 @@ import org.apache.oodt.cas.filemgr.structs.ProductType;
 import org.apache.oodt.cas.filemgr.structs.Product;
 import org.apache.oodt.cas.filemgr.structs.Query;
 import org.apache.oodt.cas.filemgr.structs.Reference;
+import org.apache.oodt.cas.filemgr.util.BinaryStructFactory;
 import org.apache.oodt.cas.filemgr.util.GenericFileManagerObjectFactory;
 import org.apache.oodt.cas.filemgr.util.XmlRpcStructFactory;
 import org.apache.oodt.cas.filemgr.versioning.Versioner;
@@ -70,12 +72,25 @@ import org.apache.oodt.cas.filemgr.structs.query.QueryResult;
  * The XML RPC based file manager client.
  * </p>
  * 
+ * <p>
+ * If the File Manager also serves binary RPC calls (see
+ * {@link XmlRpcFileManager#getBinaryRpcPort()}), product, metadata and
+ * complex query lookups are made with them instead, falling back to XML-RPC
+ * if the binary server can't be reached.
+ * </p>
+ * 
  */
 public class XmlRpcFileManagerClient {
 
     /* our xml rpc client */
     private XmlRpcClient client = null;
 
+    /* our binary rpc client, if the file manager serves binary calls */
+    private BinaryRpcClient binaryClient = null;
+
+    /* whether we've asked the file manager if it serves binary calls */
+    private boolean binaryNegotiated = false;
+
     /* our log stream */
     private static Logger LOG = Logger.getLogger(XmlRpcFileManagerClient.class
             .getName());
@@ -120,56 +135,7 @@ public class XmlRpcFileManagerClient {
 
         }
 
-        XmlRpcTransportFactory transportFactory = new XmlRpcTransportFactory() {
-
-            public XmlRpcTransport createTransport()
-                    throws XmlRpcClientException {
-                HttpClient client = new HttpClient();
-                client.getParams().setParameter(HttpMethodParams.RETRY_HANDLER,
-                        new HttpMethodRetryHandler() {
-
-                            public boolean retryMethod(HttpMethod method,
-                                    IOException e, int count) {
-                                if (count < Integer
-                                        .getInteger(
-                                                "org.apache.oodt.cas.filemgr.system.xmlrpc.connection.retries",
-                                                3).intValue()) {
-                                    try {
-                                        Thread
-                                                .sleep(Integer
-                                                        .getInteger(
-                                                                "org.apache.oodt.cas.filemgr.system.xmlrpc.connection.retry.interval.seconds",
-                                                                0).intValue() * 1000);
-                                        return true;
-                                    } catch (Exception e1) {
-                                    }
-                                }
-                                return false;
-                            }
-
-                        });
-                CommonsXmlRpcTransport transport = new CommonsXmlRpcTransport(
-                        url, client);
-                transport
-                        .setConnectionTimeout(Integer
-                                .getInteger(
-                                        "org.apache.oodt.cas.filemgr.system.xmlrpc.connectionTimeout.minutes",
-                                        20).intValue() * 60 * 1000);
-                transport
-                        .setTimeout(Integer
-                                .getInteger(
-                                        "org.apache.oodt.cas.filemgr.system.xmlrpc.requestTimeout.minutes",
-                                        60).intValue() * 60 * 1000);
-
-                return transport;
-            }
-
-            public void setProperty(String arg0, Object arg1) {
-            }
-
-        };
-
-        client = new XmlRpcClient(url, transportFactory);
+        client = createClient(url);
         fileManagerUrl = url;
 
         if (testConnection && !isAlive()) {
@@ -615,6 +581,48 @@ public class XmlRpcFileManagerClient {
 
     }
 
+    /**
+     * Like {@link #hasProduct(String)}, but doesn't wait for the answer.
+     * 
+     * @param productName
+     *            The name of the product.
+     * @return Whether the product exists and has been fully received, once
+     *         the File Manager has answered.
+     */
+    public Future<Boolean> hasProductAsync(final String productName) {
+        return PooledXmlRpcTransportFactory.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(hasProduct(productName));
+            }
+        });
+    }
+
+    /**
+     * Checks for several products in a single call to the File Manager.
+     * 
+     * @param productNames
+     *            The names of the products to check for.
+     * @return Whether each product exists and has been fully received, in
+     *         the same order as the given names.
+     * @throws CatalogException
+     *             If the check fails.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Boolean> hasProducts(List<String> productNames)
+            throws CatalogException {
+        Vector<Object> argList = new Vector<Object>();
+        argList.add(new Vector<String>(productNames));
+
+        try {
+            return (Vector<Boolean>) client.execute("filemgr.hasProducts",
+                    argList);
+        } catch (XmlRpcException e) {
+            throw new CatalogException(e.getMessage());
+        } catch (IOException e) {
+            throw new CatalogException(e.getMessage());
+        }
+    }
+
     public int getNumProducts(ProductType type) throws CatalogException {
         Vector<Object> argList = new Vector<Object>();
         argList.add(XmlRpcStructFactory.getXmlRpcProductType(type));
@@ -767,6 +775,21 @@ public class XmlRpcFileManagerClient {
 
     @SuppressWarnings("unchecked")
     public Metadata getMetadata(Product product) throws CatalogException {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "filemgr.getMetadata");
+                BinaryStructFactory.writeProduct(request, product);
+                DataInputStream result = binaryClient.execute(request);
+                return BinaryMetadataCodec.readMetadata(result);
+            } catch (BinaryRpcException e) {
+                throw new CatalogException(e.getMessage());
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
         Vector<Object> argList = new Vector<Object>();
         Hashtable<String, Object> productHash = XmlRpcStructFactory
                 .getXmlRpcProduct(product);
@@ -789,9 +812,40 @@ public class XmlRpcFileManagerClient {
 
     }
 
+    /**
+     * Like {@link #getMetadata(Product)}, but doesn't wait for the answer.
+     * 
+     * @param product
+     *            The product to get the metadata of.
+     * @return The product's metadata, once the File Manager has answered.
+     */
+    public Future<Metadata> getMetadataAsync(final Product product) {
+        return PooledXmlRpcTransportFactory.submit(new Callable<Metadata>() {
+            public Metadata call() throws Exception {
+                return getMetadata(product);
+            }
+        });
+    }
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public Metadata getReducedMetadata(Product product, List<?> elements)
             throws CatalogException {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "filemgr.getReducedMetadata");
+                BinaryStructFactory.writeProduct(request, product);
+                BinaryCodec.writeStringList(request, (List<String>) elements);
+                DataInputStream result = binaryClient.execute(request);
+                return BinaryMetadataCodec.readMetadata(result);
+            } catch (BinaryRpcException e) {
+                throw new CatalogException(e.getMessage());
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
         Vector<Object> argList = new Vector<Object>();
         Hashtable<String, Object> productHash = XmlRpcStructFactory
                 .getXmlRpcProduct(product);
@@ -994,6 +1048,21 @@ public class XmlRpcFileManagerClient {
 
     public List<QueryResult> complexQuery(ComplexQuery complexQuery)
             throws CatalogException {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "filemgr.complexQuery");
+                BinaryStructFactory.writeComplexQuery(request, complexQuery);
+                DataInputStream result = binaryClient.execute(request);
+                return BinaryStructFactory.readQueryResults(result);
+            } catch (BinaryRpcException e) {
+                throw new CatalogException(e.getMessage());
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
         try {
             Hashtable<String, Object> complexQueryHash = XmlRpcStructFactory
                     .getXmlRpcComplexQuery(complexQuery);
@@ -1010,6 +1079,57 @@ public class XmlRpcFileManagerClient {
         }
     }
 
+    /**
+     * Performs a {@link ComplexQuery}, returning a single page of its
+     * results. Pages are numbered from 1; a page past the last one is empty.
+     * 
+     * @param complexQuery
+     *            The query to perform.
+     * @param pageNum
+     *            The page to return.
+     * @param pageSize
+     *            The number of results per page.
+     * @return The {@link QueryResult}s on the requested page.
+     * @throws CatalogException
+     *             If the query fails.
+     */
+    public List<QueryResult> pagedComplexQuery(ComplexQuery complexQuery,
+            int pageNum, int pageSize) throws CatalogException {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "filemgr.pagedComplexQuery");
+                BinaryStructFactory.writeComplexQuery(request, complexQuery);
+                request.writeInt(pageNum);
+                request.writeInt(pageSize);
+                DataInputStream result = binaryClient.execute(request);
+                return BinaryStructFactory.readQueryResults(result);
+            } catch (BinaryRpcException e) {
+                throw new CatalogException(e.getMessage());
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
+        try {
+            Hashtable<String, Object> complexQueryHash = XmlRpcStructFactory
+                    .getXmlRpcComplexQuery(complexQuery);
+            Vector<Object> argList = new Vector<Object>();
+            argList.add(complexQueryHash);
+            argList.add(new Integer(pageNum));
+            argList.add(new Integer(pageSize));
+            @SuppressWarnings("unchecked")
+            Vector<Hashtable<String, Object>> queryResultHashVector = (Vector<Hashtable<String, Object>>) client
+                    .execute("filemgr.pagedComplexQuery", argList);
+            return XmlRpcStructFactory
+                    .getQueryResultsFromXmlRpc(queryResultHashVector);
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new CatalogException(e.getMessage());
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public List<Product> query(Query query, ProductType type)
             throws CatalogException {
@@ -1115,6 +1235,21 @@ public class XmlRpcFileManagerClient {
     @SuppressWarnings("unchecked")
     public List<Reference> getProductReferences(Product product)
             throws CatalogException {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "filemgr.getProductReferences");
+                BinaryStructFactory.writeProduct(request, product);
+                DataInputStream result = binaryClient.execute(request);
+                return BinaryStructFactory.readReferences(result);
+            } catch (BinaryRpcException e) {
+                throw new CatalogException(e.getMessage());
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
         Vector<Object> argList = new Vector<Object>();
 
         Vector<Hashtable<String, Object>> productReferenceVector = null;
@@ -1139,8 +1274,58 @@ public class XmlRpcFileManagerClient {
         }
     }
 
+    /**
+     * Looks up the references of several products in a single call to the
+     * File Manager.
+     * 
+     * @param productIds
+     *            The ids of the products whose references are wanted.
+     * @return The references of each product, in the same order as the given
+     *         ids.
+     * @throws CatalogException
+     *             If the lookup fails.
+     */
+    @SuppressWarnings("unchecked")
+    public List<List<Reference>> getProductReferencesByIds(
+            List<String> productIds) throws CatalogException {
+        Vector<Object> argList = new Vector<Object>();
+        argList.add(new Vector<String>(productIds));
+
+        Vector<Vector<Hashtable<String, Object>>> referenceVectors = null;
+        try {
+            referenceVectors = (Vector<Vector<Hashtable<String, Object>>>) client
+                    .execute("filemgr.getProductReferencesByIds", argList);
+        } catch (XmlRpcException e) {
+            throw new CatalogException(e.getMessage());
+        } catch (IOException e) {
+            throw new CatalogException(e.getMessage());
+        }
+
+        List<List<Reference>> references = new Vector<List<Reference>>(
+                referenceVectors.size());
+        for (Vector<Hashtable<String, Object>> referenceVector : referenceVectors)
+            references.add(XmlRpcStructFactory
+                    .getReferencesFromXmlRpc(referenceVector));
+        return references;
+    }
+
     @SuppressWarnings("unchecked")
     public Product getProductById(String productId) throws CatalogException {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "filemgr.getProductById");
+                BinaryCodec.writeString(request, productId);
+                DataInputStream result = binaryClient.execute(request);
+                return BinaryStructFactory.readProduct(result);
+            } catch (BinaryRpcException e) {
+                throw new CatalogException(e.getMessage());
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
         Vector<Object> argList = new Vector<Object>();
 
         Hashtable<String, Object> productHash = null;
@@ -1162,8 +1347,38 @@ public class XmlRpcFileManagerClient {
         }
     }
 
+    /**
+     * Like {@link #getProductById(String)}, but doesn't wait for the answer.
+     * 
+     * @param productId
+     *            The id of the product.
+     * @return The product, once the File Manager has answered.
+     */
+    public Future<Product> getProductByIdAsync(final String productId) {
+        return PooledXmlRpcTransportFactory.submit(new Callable<Product>() {
+            public Product call() throws Exception {
+                return getProductById(productId);
+            }
+        });
+    }
+
     @SuppressWarnings("unchecked")
     public Product getProductByName(String productName) throws CatalogException {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "filemgr.getProductByName");
+                BinaryCodec.writeString(request, productName);
+                DataInputStream result = binaryClient.execute(request);
+                return BinaryStructFactory.readProduct(result);
+            } catch (BinaryRpcException e) {
+                throw new CatalogException(e.getMessage());
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
         Vector<Object> argList = new Vector<Object>();
 
         Hashtable<String, Object> productHash = null;
@@ -1306,6 +1521,27 @@ public class XmlRpcFileManagerClient {
 
     }
 
+    /**
+     * Like {@link #ingestProduct(Product, Metadata, boolean)}, but doesn't
+     * wait for the ingest to finish.
+     * 
+     * @param product
+     *            The product to ingest.
+     * @param metadata
+     *            The product's metadata.
+     * @param clientTransfer
+     *            Whether this client should transfer the product's files.
+     * @return The id of the ingested product, once it has been ingested.
+     */
+    public Future<String> ingestProductAsync(final Product product,
+            final Metadata metadata, final boolean clientTransfer) {
+        return PooledXmlRpcTransportFactory.submit(new Callable<String>() {
+            public String call() throws Exception {
+                return ingestProduct(product, metadata, clientTransfer);
+            }
+        });
+    }
+
     @SuppressWarnings("unchecked")
     public Metadata getCatalogValues(Metadata metadata, ProductType productType)
             throws XmlRpcException, IOException {
@@ -1345,6 +1581,55 @@ public class XmlRpcFileManagerClient {
                         .execute("filemgr.getCatalogQuery", args));
     }
 
+    /*
+     * All clients share a pool of keep-alive connections; see
+     * PooledXmlRpcTransportFactory.
+     */
+    private static XmlRpcClient createClient(URL url) {
+        return new XmlRpcClient(url, new PooledXmlRpcTransportFactory(url,
+                Integer.getInteger(
+                        "org.apache.oodt.cas.filemgr.system.xmlrpc.connection.retries",
+                        3).intValue(),
+                Integer.getInteger(
+                        "org.apache.oodt.cas.filemgr.system.xmlrpc.connection.retry.interval.seconds",
+                        0).intValue(),
+                Integer.getInteger(
+                        "org.apache.oodt.cas.filemgr.system.xmlrpc.connectionTimeout.minutes",
+                        20).intValue() * 60 * 1000,
+                Integer.getInteger(
+                        "org.apache.oodt.cas.filemgr.system.xmlrpc.requestTimeout.minutes",
+                        60).intValue() * 60 * 1000));
+    }
+
+    /*
+     * Asks the file manager, the first time it's needed, whether it serves
+     * binary calls.
+     */
+    private synchronized BinaryRpcClient getBinaryClient() {
+        if (!this.binaryNegotiated) {
+            this.binaryClient = BinaryRpcClient.negotiate(this.client,
+                    this.fileManagerUrl.getHost(), "filemgr", Integer
+                            .getInteger(
+                                    "org.apache.oodt.cas.filemgr.system.xmlrpc.requestTimeout.minutes",
+                                    60).intValue() * 60 * 1000);
+            this.binaryNegotiated = true;
+        }
+        return this.binaryClient;
+    }
+
+    /*
+     * Falls back to XML-RPC for the rest of this client's calls.
+     */
+    private synchronized void binaryFailed(IOException e) {
+        LOG.log(Level.WARNING, "Binary call to file manager: ["
+                + this.fileManagerUrl + "] failed, using XML-RPC: Message: "
+                + e.getMessage());
+        if (this.binaryClient != null) {
+            this.binaryClient.close();
+            this.binaryClient = null;
+        }
+    }
+
     public static void main(String[] args) {
        CmdLineUtility cmdLineUtility = new CmdLineUtility();
        cmdLineUtility.run(args);
@@ -1365,7 +1650,14 @@ public class XmlRpcFileManagerClient {
         this.fileManagerUrl = fileManagerUrl;
 
         // reset the client
-        this.client = new XmlRpcClient(fileManagerUrl);
+        this.client = createClient(fileManagerUrl);
+        synchronized (this) {
+            if (this.binaryClient != null) {
+                this.binaryClient.close();
+            }
+            this.binaryClient = null;
+            this.binaryNegotiated = false;
+        }
     }
 
     /**
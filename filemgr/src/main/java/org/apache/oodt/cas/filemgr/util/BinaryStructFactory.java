@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.util;
+
+//OODT imports
+import org.apache.oodt.cas.filemgr.structs.BooleanQueryCriteria;
+import org.apache.oodt.cas.filemgr.structs.ExtractorSpec;
+import org.apache.oodt.cas.filemgr.structs.Product;
+import org.apache.oodt.cas.filemgr.structs.ProductType;
+import org.apache.oodt.cas.filemgr.structs.QueryCriteria;
+import org.apache.oodt.cas.filemgr.structs.RangeQueryCriteria;
+import org.apache.oodt.cas.filemgr.structs.Reference;
+import org.apache.oodt.cas.filemgr.structs.TermQueryCriteria;
+import org.apache.oodt.cas.filemgr.structs.exceptions.QueryFormulationException;
+import org.apache.oodt.cas.filemgr.structs.query.ComplexQuery;
+import org.apache.oodt.cas.filemgr.structs.query.QueryFilter;
+import org.apache.oodt.cas.filemgr.structs.query.QueryResult;
+import org.apache.oodt.cas.filemgr.structs.query.filter.FilterAlgor;
+import org.apache.oodt.cas.filemgr.structs.type.TypeHandler;
+import org.apache.oodt.cas.metadata.util.BinaryMetadataCodec;
+import org.apache.oodt.commons.rpc.BinaryCodec;
+
+//JDK imports
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * The binary RPC counterpart of {@link XmlRpcStructFactory}: writes File
+ * Manager structs straight to, and reads them straight from, a binary RPC
+ * call (see {@link org.apache.oodt.commons.rpc.BinaryRpcServer}), without
+ * building <code>Hashtable</code>s on the way. Every struct is written field
+ * by field in a fixed order, preceded by a flag saying whether it is null.
+ * Reading a struct gives the same struct {@link XmlRpcStructFactory} would
+ * have read from its XML-RPC form.
+ * </p>
+ *
+ */
+public final class BinaryStructFactory {
+
+    private static final byte TERM_CRITERIA = 1;
+
+    private static final byte RANGE_CRITERIA = 2;
+
+    private static final byte BOOLEAN_CRITERIA = 3;
+
+    private BinaryStructFactory() throws InstantiationException {
+        throw new InstantiationException(
+                "Don't instantiate BinaryStructFactories!");
+    }
+
+    public static void writeProduct(DataOutput out, Product product)
+            throws IOException {
+        out.writeBoolean(product != null);
+        if (product == null) {
+            return;
+        }
+        BinaryCodec.writeString(out, product.getProductId());
+        BinaryCodec.writeString(out, product.getProductName());
+        writeProductType(out, product.getProductType());
+        BinaryCodec.writeString(out, product.getProductStructure());
+        BinaryCodec.writeString(out, product.getTransferStatus());
+        writeReferences(out, product.getProductReferences());
+        writeReference(out, product.getRootRef());
+    }
+
+    public static Product readProduct(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Product product = new Product();
+        product.setProductId(BinaryCodec.readString(in));
+        product.setProductName(BinaryCodec.readString(in));
+        ProductType type = readProductType(in);
+        if (type != null) {
+            product.setProductType(type);
+        }
+        product.setProductStructure(BinaryCodec.readString(in));
+        product.setTransferStatus(BinaryCodec.readString(in));
+        List<Reference> references = readReferences(in);
+        if (references != null) {
+            product.setProductReferences(references);
+        }
+        Reference rootRef = readReference(in);
+        if (rootRef != null) {
+            product.setRootRef(rootRef);
+        }
+        return product;
+    }
+
+    public static void writeProductType(DataOutput out, ProductType type)
+            throws IOException {
+        out.writeBoolean(type != null);
+        if (type == null) {
+            return;
+        }
+        BinaryCodec.writeString(out, type.getProductTypeId());
+        BinaryCodec.writeString(out, type.getName());
+        BinaryCodec.writeString(out, type.getDescription());
+        BinaryCodec.writeString(out, type.getProductRepositoryPath());
+        BinaryCodec.writeString(out, type.getVersioner());
+        BinaryMetadataCodec.writeMetadata(out, type.getTypeMetadata());
+
+        List<ExtractorSpec> extractors = type.getExtractors();
+        out.writeInt(extractors != null ? extractors.size() : -1);
+        if (extractors != null) {
+            for (ExtractorSpec spec : extractors) {
+                BinaryCodec.writeString(out, spec.getClassName());
+                BinaryCodec.writeProperties(out, spec.getConfiguration());
+            }
+        }
+
+        List<TypeHandler> handlers = type.getHandlers();
+        out.writeInt(handlers != null ? handlers.size() : -1);
+        if (handlers != null) {
+            for (TypeHandler handler : handlers) {
+                BinaryCodec.writeString(out, handler != null ? handler
+                        .getClass().getName() : null);
+                BinaryCodec.writeString(out, handler != null ? handler
+                        .getElementName() : null);
+            }
+        }
+    }
+
+    public static ProductType readProductType(DataInput in)
+            throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        ProductType type = new ProductType();
+        type.setProductTypeId(BinaryCodec.readString(in));
+        type.setName(BinaryCodec.readString(in));
+        type.setDescription(BinaryCodec.readString(in));
+        type.setProductRepositoryPath(BinaryCodec.readString(in));
+        type.setVersioner(BinaryCodec.readString(in));
+        type.setTypeMetadata(BinaryMetadataCodec.readMetadata(in));
+
+        int numExtractors = in.readInt();
+        if (numExtractors >= 0) {
+            List<ExtractorSpec> extractors = new Vector<ExtractorSpec>(
+                    numExtractors);
+            for (int i = 0; i < numExtractors; i++) {
+                ExtractorSpec spec = new ExtractorSpec();
+                spec.setClassName(BinaryCodec.readString(in));
+                spec.setConfiguration(BinaryCodec.readProperties(in));
+                extractors.add(spec);
+            }
+            type.setExtractors(extractors);
+        }
+
+        int numHandlers = in.readInt();
+        if (numHandlers >= 0) {
+            List<TypeHandler> handlers = new Vector<TypeHandler>(numHandlers);
+            for (int i = 0; i < numHandlers; i++) {
+                String className = BinaryCodec.readString(in);
+                String elementName = BinaryCodec.readString(in);
+                TypeHandler handler = className != null ? GenericFileManagerObjectFactory
+                        .getTypeHandlerFromClassName(className)
+                        : null;
+                if (handler != null) {
+                    handler.setElementName(elementName);
+                }
+                handlers.add(handler);
+            }
+            type.setHandlers(handlers);
+        }
+        return type;
+    }
+
+    public static void writeReference(DataOutput out, Reference reference)
+            throws IOException {
+        out.writeBoolean(reference != null);
+        if (reference == null) {
+            return;
+        }
+        BinaryCodec.writeString(out, reference.getOrigReference());
+        BinaryCodec.writeString(out, reference.getDataStoreReference());
+        out.writeLong(reference.getFileSize());
+        BinaryCodec.writeString(out, reference.getMimeType() != null ? reference
+                .getMimeType().getName() : null);
+    }
+
+    public static Reference readReference(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Reference reference = new Reference();
+        reference.setOrigReference(BinaryCodec.readString(in));
+        reference.setDataStoreReference(BinaryCodec.readString(in));
+        reference.setFileSize(in.readLong());
+        reference.setMimeType(BinaryCodec.readString(in));
+        return reference;
+    }
+
+    public static void writeReferences(DataOutput out,
+            List<Reference> references) throws IOException {
+        out.writeInt(references != null ? references.size() : -1);
+        if (references != null) {
+            for (Reference reference : references) {
+                writeReference(out, reference);
+            }
+        }
+    }
+
+    public static List<Reference> readReferences(DataInput in)
+            throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<Reference> references = new Vector<Reference>(size);
+        for (int i = 0; i < size; i++) {
+            references.add(readReference(in));
+        }
+        return references;
+    }
+
+    public static void writeQueryResults(DataOutput out,
+            List<QueryResult> queryResults) throws IOException {
+        out.writeInt(queryResults.size());
+        for (QueryResult queryResult : queryResults) {
+            writeProduct(out, queryResult.getProduct());
+            BinaryMetadataCodec.writeMetadata(out, queryResult.getMetadata());
+            BinaryCodec.writeString(out, queryResult.getToStringFormat());
+        }
+    }
+
+    public static List<QueryResult> readQueryResults(DataInput in)
+            throws IOException {
+        int size = in.readInt();
+        List<QueryResult> queryResults = new Vector<QueryResult>(size);
+        for (int i = 0; i < size; i++) {
+            Product product = readProduct(in);
+            QueryResult queryResult = new QueryResult(product,
+                    BinaryMetadataCodec.readMetadata(in));
+            queryResult.setToStringFormat(BinaryCodec.readString(in));
+            queryResults.add(queryResult);
+        }
+        return queryResults;
+    }
+
+    public static void writeComplexQuery(DataOutput out,
+            ComplexQuery complexQuery) throws IOException {
+        writeCriteriaList(out, complexQuery.getCriteria());
+        BinaryCodec.writeStringList(out, complexQuery
+                .getReducedProductTypeNames());
+        BinaryCodec.writeStringList(out, complexQuery.getReducedMetadata());
+        BinaryCodec.writeString(out, complexQuery.getSortByMetKey());
+        BinaryCodec.writeString(out, complexQuery.getToStringResultFormat());
+
+        QueryFilter queryFilter = complexQuery.getQueryFilter();
+        out.writeBoolean(queryFilter != null);
+        if (queryFilter != null) {
+            BinaryCodec.writeString(out, queryFilter.getStartDateTimeMetKey());
+            BinaryCodec.writeString(out, queryFilter.getEndDateTimeMetKey());
+            BinaryCodec.writeString(out, queryFilter.getPriorityMetKey());
+            BinaryCodec.writeString(out, queryFilter.getFilterAlgor()
+                    .getClass().getName());
+            out.writeLong(queryFilter.getFilterAlgor().getEpsilon());
+            BinaryCodec.writeString(out, queryFilter.getConverter()
+                    .getClass().getName());
+        }
+    }
+
+    public static ComplexQuery readComplexQuery(DataInput in)
+            throws IOException {
+        ComplexQuery complexQuery = new ComplexQuery();
+        complexQuery.setCriteria(readCriteriaList(in));
+        // like the XML-RPC form, an empty list means no reduction
+        List<String> reducedProductTypeNames = BinaryCodec.readStringList(in);
+        if (reducedProductTypeNames != null
+                && reducedProductTypeNames.size() > 0) {
+            complexQuery.setReducedProductTypeNames(reducedProductTypeNames);
+        }
+        List<String> reducedMetadata = BinaryCodec.readStringList(in);
+        if (reducedMetadata != null && reducedMetadata.size() > 0) {
+            complexQuery.setReducedMetadata(reducedMetadata);
+        }
+        complexQuery.setSortByMetKey(BinaryCodec.readString(in));
+        complexQuery.setToStringResultFormat(BinaryCodec.readString(in));
+
+        if (in.readBoolean()) {
+            String startDateTimeMetKey = BinaryCodec.readString(in);
+            String endDateTimeMetKey = BinaryCodec.readString(in);
+            String priorityMetKey = BinaryCodec.readString(in);
+            FilterAlgor filterAlgor = GenericFileManagerObjectFactory
+                    .getFilterAlgorFromClassName(BinaryCodec.readString(in));
+            filterAlgor.setEpsilon(in.readLong());
+            QueryFilter queryFilter = new QueryFilter(startDateTimeMetKey,
+                    endDateTimeMetKey, priorityMetKey, filterAlgor);
+            queryFilter.setConverter(GenericFileManagerObjectFactory
+                    .getVersionConverterFromClassName(BinaryCodec
+                            .readString(in)));
+            complexQuery.setQueryFilter(queryFilter);
+        }
+        return complexQuery;
+    }
+
+    public static void writeCriteriaList(DataOutput out,
+            List<QueryCriteria> criteriaList) throws IOException {
+        out.writeInt(criteriaList.size());
+        for (QueryCriteria criteria : criteriaList) {
+            writeCriteria(out, criteria);
+        }
+    }
+
+    public static List<QueryCriteria> readCriteriaList(DataInput in)
+            throws IOException {
+        int size = in.readInt();
+        List<QueryCriteria> criteriaList = new Vector<QueryCriteria>(size);
+        for (int i = 0; i < size; i++) {
+            criteriaList.add(readCriteria(in));
+        }
+        return criteriaList;
+    }
+
+    public static void writeCriteria(DataOutput out, QueryCriteria criteria)
+            throws IOException {
+        if (criteria instanceof TermQueryCriteria) {
+            out.writeByte(TERM_CRITERIA);
+            BinaryCodec.writeString(out, criteria.getElementName());
+            BinaryCodec.writeString(out, ((TermQueryCriteria) criteria)
+                    .getValue());
+        } else if (criteria instanceof RangeQueryCriteria) {
+            RangeQueryCriteria rangeCriteria = (RangeQueryCriteria) criteria;
+            out.writeByte(RANGE_CRITERIA);
+            BinaryCodec.writeString(out, rangeCriteria.getElementName());
+            BinaryCodec.writeString(out, rangeCriteria.getStartValue());
+            BinaryCodec.writeString(out, rangeCriteria.getEndValue());
+            out.writeBoolean(rangeCriteria.getInclusive());
+        } else if (criteria instanceof BooleanQueryCriteria) {
+            BooleanQueryCriteria boolCriteria = (BooleanQueryCriteria) criteria;
+            out.writeByte(BOOLEAN_CRITERIA);
+            out.writeInt(boolCriteria.getOperator());
+            writeCriteriaList(out, boolCriteria.getTerms());
+        } else {
+            throw new IOException("Unsupported query criteria: ["
+                    + criteria.getClass().getName() + "]");
+        }
+    }
+
+    public static QueryCriteria readCriteria(DataInput in) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+        case TERM_CRITERIA:
+            TermQueryCriteria termCriteria = new TermQueryCriteria();
+            termCriteria.setElementName(BinaryCodec.readString(in));
+            termCriteria.setValue(BinaryCodec.readString(in));
+            return termCriteria;
+
+        case RANGE_CRITERIA:
+            RangeQueryCriteria rangeCriteria = new RangeQueryCriteria();
+            rangeCriteria.setElementName(BinaryCodec.readString(in));
+            rangeCriteria.setStartValue(BinaryCodec.readString(in));
+            rangeCriteria.setEndValue(BinaryCodec.readString(in));
+            rangeCriteria.setInclusive(in.readBoolean());
+            return rangeCriteria;
+
+        case BOOLEAN_CRITERIA:
+            BooleanQueryCriteria boolCriteria = new BooleanQueryCriteria();
+            try {
+                boolCriteria.setOperator(in.readInt());
+                for (QueryCriteria term : readCriteriaList(in)) {
+                    boolCriteria.addTerm(term);
+                }
+            } catch (QueryFormulationException e) {
+                throw new IOException("Invalid boolean query: "
+                        + e.getMessage());
+            }
+            return boolCriteria;
+
+        default:
+            throw new IOException("Unknown query criteria: [" + kind + "]");
+        }
+    }
+
+}
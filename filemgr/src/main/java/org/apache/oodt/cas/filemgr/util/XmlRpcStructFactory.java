@@ -121,6 +121,14 @@ public final class XmlRpcStructFactory {
         productPageHash.put("pageSize", new Integer(page.getPageSize()));
         productPageHash.put("pageProducts", getXmlRpcProductList(page
                 .getPageProducts()));
+        if (page.getFirstProductId() != null)
+            productPageHash.put("firstProductId", page.getFirstProductId());
+        if (page.getFirstProductDateTime() != null)
+            productPageHash.put("firstProductDateTime", page.getFirstProductDateTime());
+        if (page.getLastProductId() != null)
+            productPageHash.put("lastProductId", page.getLastProductId());
+        if (page.getLastProductDateTime() != null)
+            productPageHash.put("lastProductDateTime", page.getLastProductDateTime());
         return productPageHash;
     }
 
@@ -135,6 +143,10 @@ public final class XmlRpcStructFactory {
                 .intValue());
         page.setPageProducts(getProductListFromXmlRpc((Vector<Hashtable<String, Object>>) productPageHash
                 .get("pageProducts")));
+        page.setFirstProductId((String) productPageHash.get("firstProductId"));
+        page.setFirstProductDateTime((String) productPageHash.get("firstProductDateTime"));
+        page.setLastProductId((String) productPageHash.get("lastProductId"));
+        page.setLastProductDateTime((String) productPageHash.get("lastProductDateTime"));
         return page;
     }
     
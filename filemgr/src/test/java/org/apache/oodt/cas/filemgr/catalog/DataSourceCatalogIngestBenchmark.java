@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.catalog;
+
+//JDK imports
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Vector;
+import javax.sql.DataSource;
+
+//OODT imports
+import org.apache.oodt.cas.filemgr.structs.Element;
+import org.apache.oodt.cas.filemgr.structs.Product;
+import org.apache.oodt.cas.filemgr.structs.ProductType;
+import org.apache.oodt.cas.filemgr.structs.exceptions.ValidationLayerException;
+import org.apache.oodt.cas.filemgr.validation.ValidationLayer;
+import org.apache.oodt.cas.metadata.Metadata;
+import org.apache.oodt.commons.database.DatabaseConnectionBuilder;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * A simple benchmark comparing the metadata ingest rate of a
+ * {@link DataSourceCatalog} using the per-value write path against batched
+ * and group-committed writes. Runs against an in-memory HSQLDB; usage:
+ * </p>
+ * 
+ * <pre>
+ * java DataSourceCatalogIngestBenchmark [numProducts] [numElements] [numThreads]
+ * </pre>
+ */
+public class DataSourceCatalogIngestBenchmark {
+
+  private static final String PRODUCT_TYPE_NAME = "Bench";
+
+  public static void main(String[] args) throws Exception {
+    int numProducts = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    int numElements = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+    System.out.println("Ingesting [" + numProducts + "] products with ["
+        + numElements + "] metadata values each using [" + numThreads
+        + "] threads");
+
+    run("per-value", numProducts, numElements, numThreads, false, 1);
+    run("batched", numProducts, numElements, numThreads, true, 1);
+    run("group commit (8)", numProducts, numElements, numThreads, true, 8);
+  }
+
+  private static void run(String label, int numProducts, int numElements,
+      int numThreads, boolean batch, int groupSize) throws Exception {
+    DataSource ds = DatabaseConnectionBuilder.buildDataSource("sa", "",
+        "org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:bench" + label.hashCode());
+    createSchema(ds);
+
+    List<Element> elements = new Vector<Element>();
+    for (int i = 0; i < numElements; i++) {
+      elements.add(new Element("urn:bench:Element" + i, "Element" + i, null,
+          null, null, null));
+    }
+
+    final DataSourceCatalog catalog = new DataSourceCatalog(ds,
+        new FixedValidationLayer(elements), true, 20, 5L);
+    catalog.setBatchMetadataWrites(batch);
+    catalog.setMetadataGroupCommit(groupSize, 0L);
+
+    final Metadata met = new Metadata();
+    for (int i = 0; i < numElements; i++) {
+      met.addMetadata("Element" + i, "value" + i);
+    }
+
+    final int productsPerThread = numProducts / numThreads;
+    List<Thread> threads = new Vector<Thread>();
+    long start = System.currentTimeMillis();
+    for (int t = 0; t < numThreads; t++) {
+      final int offset = t * productsPerThread;
+      Thread thread = new Thread() {
+        public void run() {
+          for (int i = 0; i < productsPerThread; i++) {
+            Product product = new Product();
+            product.setProductName("product" + (offset + i));
+            product.setProductId(String.valueOf(offset + i));
+            ProductType type = new ProductType();
+            type.setName(PRODUCT_TYPE_NAME);
+            product.setProductType(type);
+            try {
+              catalog.addMetadata(met, product);
+            } catch (Exception e) {
+              e.printStackTrace();
+            }
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+    int ingested = productsPerThread * numThreads;
+
+    System.out.println(label + ": " + ingested + " products in " + elapsed
+        + " ms (" + (ingested * 1000L / elapsed) + " products/sec, "
+        + ((long) ingested * numElements * 1000L / elapsed) + " values/sec)");
+
+    Connection conn = ds.getConnection();
+    Statement statement = conn.createStatement();
+    statement.execute("SHUTDOWN");
+    statement.close();
+    conn.close();
+  }
+
+  private static void createSchema(DataSource ds) throws Exception {
+    Connection conn = ds.getConnection();
+    Statement statement = conn.createStatement();
+    statement.execute("CREATE TABLE " + PRODUCT_TYPE_NAME + "_metadata "
+        + "(product_id int NOT NULL, element_id varchar(1000) NOT NULL, "
+        + "metadata_value varchar(2500) NOT NULL)");
+    statement.close();
+    conn.close();
+  }
+
+  /* returns the same element list for every product type */
+  private static class FixedValidationLayer implements ValidationLayer {
+
+    private List<Element> elements;
+
+    FixedValidationLayer(List<Element> elements) {
+      this.elements = elements;
+    }
+
+    public void addElement(Element element) throws ValidationLayerException {
+    }
+
+    public void modifyElement(Element element) throws ValidationLayerException {
+    }
+
+    public void removeElement(Element element) throws ValidationLayerException {
+    }
+
+    public void addElementToProductType(ProductType type, Element element)
+        throws ValidationLayerException {
+    }
+
+    public void removeElementFromProductType(ProductType type, Element element)
+        throws ValidationLayerException {
+    }
+
+    public List<Element> getElements(ProductType type)
+        throws ValidationLayerException {
+      return elements;
+    }
+
+    public List<Element> getElements() throws ValidationLayerException {
+      return elements;
+    }
+
+    public Element getElementById(String elementId)
+        throws ValidationLayerException {
+      return null;
+    }
+
+    public Element getElementByName(String elementName)
+        throws ValidationLayerException {
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.catalog;
+
+//JDK imports
+import java.io.File;
+import java.util.List;
+import java.util.Vector;
+
+//OODT imports
+import org.apache.oodt.cas.filemgr.metadata.CoreMetKeys;
+import org.apache.oodt.cas.filemgr.structs.Product;
+import org.apache.oodt.cas.filemgr.structs.Reference;
+import org.apache.oodt.cas.filemgr.validation.XMLValidationLayer;
+import org.apache.oodt.cas.metadata.Metadata;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * A simple benchmark of {@link LuceneCatalog#getMetadata(Product)}
+ * throughput with 1, 8 and 32 concurrent readers sharing one catalog. Usage:
+ * </p>
+ *
+ * <pre>
+ * java LuceneCatalogReadBenchmark [numProducts] [secondsPerRun]
+ * </pre>
+ */
+public class LuceneCatalogReadBenchmark {
+
+    private static final int[] NUM_READERS = { 1, 8, 32 };
+
+    public static void main(String[] args) throws Exception {
+        int numProducts = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File tempFile = File.createTempFile("foo", "bar");
+        tempFile.deleteOnExit();
+        File indexDir = new File(tempFile.getParentFile(), "benchLuceneCat");
+
+        List<String> valDirs = new Vector<String>();
+        valDirs.add(new File(LuceneCatalogReadBenchmark.class.getResource(
+                "/examples/core").getFile()).toURI().toString());
+        LuceneCatalog catalog = new LuceneCatalog(indexDir.getAbsolutePath(),
+                new XMLValidationLayer(valDirs), 20, 60L, 60L, 20);
+
+        System.out.println("Indexing [" + numProducts + "] products");
+        final List<Product> products = new Vector<Product>();
+        for (int i = 0; i < numProducts; i++) {
+            Product product = Product.getDefaultFlatProduct("product" + i,
+                    "urn:oodt:GenericFile");
+            product.getProductType().setName("GenericFile");
+            List<Reference> refs = new Vector<Reference>();
+            refs.add(new Reference("file:///orig/" + i, "file:///data/" + i,
+                    100));
+            product.setProductReferences(refs);
+            catalog.addProduct(product);
+            catalog.addProductReferences(product);
+            Metadata met = new Metadata();
+            met.addMetadata(CoreMetKeys.FILENAME, "product" + i + ".dat");
+            met.addMetadata(CoreMetKeys.FILE_LOCATION, "/data");
+            catalog.addMetadata(met, product);
+            products.add(product);
+        }
+
+        for (int r = 0; r < NUM_READERS.length; r++) {
+            run(catalog, products, NUM_READERS[r], seconds);
+        }
+
+        File[] files = indexDir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        indexDir.delete();
+    }
+
+    private static void run(final LuceneCatalog catalog,
+            final List<Product> products, int numReaders, int seconds)
+            throws Exception {
+        final long deadline = System.currentTimeMillis() + seconds * 1000L;
+        final long[] ops = new long[numReaders];
+        List<Thread> readers = new Vector<Thread>();
+        for (int t = 0; t < numReaders; t++) {
+            final int readerNum = t;
+            Thread reader = new Thread() {
+                public void run() {
+                    int i = readerNum;
+                    while (System.currentTimeMillis() < deadline) {
+                        try {
+                            catalog.getMetadata(products.get(i
+                                    % products.size()));
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                            return;
+                        }
+                        ops[readerNum]++;
+                        i += 7;
+                    }
+                }
+            };
+            readers.add(reader);
+            reader.start();
+        }
+
+        long total = 0;
+        for (int t = 0; t < numReaders; t++) {
+            readers.get(t).join();
+            total += ops[t];
+        }
+
+        System.out.println(numReaders + " reader(s): " + total
+                + " getMetadata calls in " + seconds + " s ("
+                + (total / seconds) + " ops/sec)");
+    }
+
+}
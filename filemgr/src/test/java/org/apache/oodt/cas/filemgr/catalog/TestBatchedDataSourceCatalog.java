@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.catalog;
+
+//JDK imports
+import java.util.List;
+import java.util.Properties;
+import java.util.Vector;
+
+//OODT imports
+import org.apache.oodt.cas.filemgr.structs.Product;
+import org.apache.oodt.cas.metadata.Metadata;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Runs the {@link TestDataSourceCatalog} suite against a
+ * {@link DataSourceCatalog} with batched metadata writes turned on, and
+ * tests group commit of concurrently ingested metadata.
+ * </p>.
+ */
+public class TestBatchedDataSourceCatalog extends TestDataSourceCatalog {
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    Properties properties = new Properties(System.getProperties());
+    properties.setProperty(
+        "org.apache.oodt.cas.filemgr.catalog.datasource.batchMetadataWrites",
+        "true");
+    System.setProperties(properties);
+
+    setCatalog(getCatalog());
+  }
+
+  protected Catalog getCatalog() {
+    return new DataSourceCatalogFactory().createCatalog();
+  }
+
+  public void testQuotedValues() throws Exception {
+    Product testProduct = getTestProduct();
+    testProduct.setProductId("1");
+    Metadata met = new Metadata();
+    met.addMetadata("CAS.ProductName", "it's quoted");
+    met.addMetadata("CAS.ProductName", "so is 'this'");
+
+    myCat.addMetadata(met, testProduct);
+
+    Metadata retMet = myCat.getMetadata(testProduct);
+    assertNotNull(retMet);
+    List<String> names = retMet.getAllMetadata("CAS.ProductName");
+    assertNotNull(names);
+    assertEquals(2, names.size());
+    assertTrue(names.contains("it's quoted"));
+    assertTrue(names.contains("so is 'this'"));
+  }
+
+  public void testGroupCommit() throws Exception {
+    ((DataSourceCatalog) myCat).setMetadataGroupCommit(4, 50L);
+
+    final int numProducts = 10;
+    final List<Exception> errors = new Vector<Exception>();
+    List<Thread> threads = new Vector<Thread>();
+    for (int i = 0; i < numProducts; i++) {
+      final int productNum = i;
+      Thread t = new Thread() {
+        public void run() {
+          Product product = getTestProduct();
+          product.setProductId(String.valueOf(100 + productNum));
+          Metadata met = new Metadata();
+          met.addMetadata("CAS.ProductName", "product" + productNum);
+          met.addMetadata("Filename", "file" + productNum + ".txt");
+          try {
+            myCat.addMetadata(met, product);
+          } catch (Exception e) {
+            errors.add(e);
+          }
+        }
+      };
+      threads.add(t);
+      t.start();
+    }
+
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertTrue(errors.toString(), errors.isEmpty());
+
+    for (int i = 0; i < numProducts; i++) {
+      Product product = getTestProduct();
+      product.setProductId(String.valueOf(100 + i));
+      Metadata retMet = myCat.getMetadata(product);
+      assertEquals("product" + i, retMet.getMetadata("CAS.ProductName"));
+      assertEquals("file" + i + ".txt", retMet.getMetadata("Filename"));
+    }
+  }
+
+  private static Product getTestProduct() {
+    Product testProduct = Product.getDefaultFlatProduct("test",
+        "urn:oodt:GenericFile");
+    testProduct.getProductType().setName("GenericFile");
+    return testProduct;
+  }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.catalog;
+
+//JDK imports
+import java.util.Properties;
+
+//OODT imports
+import org.apache.oodt.cas.filemgr.structs.Product;
+import org.apache.oodt.cas.filemgr.structs.ProductPage;
+import org.apache.oodt.cas.filemgr.structs.ProductType;
+import org.apache.oodt.cas.filemgr.structs.Query;
+import org.apache.oodt.cas.metadata.Metadata;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Runs the {@link TestDataSourceCatalog} suite against a
+ * {@link DataSourceCatalog} using keyset pagination and cached result
+ * counts, and checks that seeking yields the same pages as offsets.
+ * </p>.
+ */
+public class TestKeysetDataSourceCatalog extends TestDataSourceCatalog {
+
+  private static final int NUM_PRODUCTS = 45;
+
+  private Properties originalProperties;
+
+  @Override
+  protected void setUp() throws Exception {
+    originalProperties = System.getProperties();
+    super.setUp();
+
+    Properties properties = new Properties(System.getProperties());
+    properties.setProperty(
+        "org.apache.oodt.cas.filemgr.catalog.datasource.keysetPagination",
+        "true");
+    properties.setProperty(
+        "org.apache.oodt.cas.filemgr.catalog.datasource.resultCountCacheSeconds",
+        "60");
+    System.setProperties(properties);
+
+    setCatalog(getCatalog());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    super.tearDown();
+    System.setProperties(originalProperties);
+  }
+
+  protected Catalog getCatalog() {
+    return new DataSourceCatalogFactory().createCatalog();
+  }
+
+  public void testKeysetPagesMatchOffsetPages() throws Exception {
+    addProducts(0, NUM_PRODUCTS);
+
+    ProductType type = getTestProduct().getProductType();
+    ProductPage firstPage = myCat.getFirstPage(type);
+    assertNotNull(firstPage);
+    assertEquals(3, firstPage.getTotalPages());
+    assertNotNull(firstPage.getLastProductId());
+    assertEquals("product44", firstPage.getPageProducts().get(0)
+        .getProductName());
+
+    ProductPage secondPage = myCat.getNextPage(type, firstPage);
+    assertEquals(2, secondPage.getPageNum());
+    assertEquals(20, secondPage.getPageProducts().size());
+    assertEquals("product24", secondPage.getPageProducts().get(0)
+        .getProductName());
+
+    ProductPage lastPage = myCat.getNextPage(type, secondPage);
+    assertEquals(3, lastPage.getPageNum());
+    assertTrue(lastPage.isLastPage());
+    assertEquals(5, lastPage.getPageProducts().size());
+    assertEquals("product0", lastPage.getPageProducts().get(4)
+        .getProductName());
+
+    // walking back must give the same page as going forward did
+    ProductPage backPage = myCat.getPrevPage(type, lastPage);
+    assertEquals(2, backPage.getPageNum());
+    assertEquals(secondPage.getFirstProductId(), backPage.getFirstProductId());
+    assertEquals(secondPage.getLastProductId(), backPage.getLastProductId());
+
+    // a page requested by number seeks from the cached previous page, and
+    // must agree with the offset based result
+    DataSourceCatalog offsetCat = (DataSourceCatalog) myCat;
+    ProductPage byNumber = offsetCat.pagedQuery(new Query(), type, 3);
+    offsetCat.setKeysetPagination(false);
+    ProductPage byOffset = offsetCat.pagedQuery(new Query(), type, 3);
+    assertEquals(byOffset.getPageProducts().size(), byNumber
+        .getPageProducts().size());
+    for (int i = 0; i < byOffset.getPageProducts().size(); i++) {
+      assertEquals(byOffset.getPageProducts().get(i).getProductId(), byNumber
+          .getPageProducts().get(i).getProductId());
+    }
+  }
+
+  public void testResultCountInvalidatedByWrites() throws Exception {
+    addProducts(0, NUM_PRODUCTS);
+    ProductType type = getTestProduct().getProductType();
+    assertEquals(3, myCat.getFirstPage(type).getTotalPages());
+
+    // the cached count must not outlive new products
+    addProducts(NUM_PRODUCTS, NUM_PRODUCTS + 16);
+    ProductPage firstPage = myCat.getFirstPage(type);
+    assertEquals(4, firstPage.getTotalPages());
+    assertEquals("product60", firstPage.getPageProducts().get(0)
+        .getProductName());
+
+    // nor removed ones
+    for (int i = 0; i < 16; i++) {
+      Product product = firstPage.getPageProducts().get(i);
+      product.setProductType(type);
+      myCat.removeProduct(product);
+    }
+    assertEquals(3, myCat.getFirstPage(type).getTotalPages());
+  }
+
+  public void testOffsetPageHasCursor() throws Exception {
+    addProducts(0, NUM_PRODUCTS);
+    ProductType type = getTestProduct().getProductType();
+
+    // nothing is known about page 1, so page 2 comes from an offset query
+    ProductPage secondPage = myCat.pagedQuery(new Query(), type, 2);
+    assertEquals(20, secondPage.getPageProducts().size());
+    assertEquals(secondPage.getPageProducts().get(0).getProductId(),
+        secondPage.getFirstProductId());
+    assertEquals(secondPage.getPageProducts().get(19).getProductId(),
+        secondPage.getLastProductId());
+
+    ProductPage lastPage = myCat.getNextPage(type, secondPage);
+    assertEquals(3, lastPage.getPageNum());
+    assertEquals(5, lastPage.getPageProducts().size());
+    assertEquals("product4", lastPage.getPageProducts().get(0)
+        .getProductName());
+    assertEquals("product0", lastPage.getPageProducts().get(4)
+        .getProductName());
+  }
+
+  private void addProducts(int from, int to) throws Exception {
+    for (int i = from; i < to; i++) {
+      Product product = getTestProduct();
+      product.setProductName("product" + i);
+      myCat.addProduct(product);
+      Metadata met = new Metadata();
+      met.addMetadata("CAS.ProductName", "product" + i);
+      myCat.addMetadata(met, product);
+    }
+  }
+
+  private static Product getTestProduct() {
+    Product testProduct = Product.getDefaultFlatProduct("test",
+        "urn:oodt:GenericFile");
+    testProduct.getProductType().setName("GenericFile");
+    return testProduct;
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.catalog;
+
+//JDK imports
+import java.io.File;
+
+//Lucene imports
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+
+//Junit imports
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * Test suite for the {@link LuceneSearcherManager}.
+ * </p>.
+ */
+public class TestLuceneSearcherManager extends TestCase {
+
+    private File indexDir = null;
+
+    private LuceneSearcherManager manager = null;
+
+    protected void setUp() throws Exception {
+        File tempFile = File.createTempFile("foo", "bar");
+        tempFile.deleteOnExit();
+        indexDir = new File(tempFile.getParentFile(), "testSearcherManager");
+        addDoc("1", true);
+        manager = new LuceneSearcherManager(indexDir.getAbsolutePath());
+    }
+
+    protected void tearDown() throws Exception {
+        manager.close();
+        File[] files = indexDir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                files[i].delete();
+            }
+        }
+        indexDir.delete();
+    }
+
+    public void testSearcherIsShared() throws Exception {
+        IndexSearcher first = manager.acquire();
+        IndexSearcher second = manager.acquire();
+        assertSame(first, second);
+        manager.release(first);
+        manager.release(second);
+
+        IndexSearcher third = manager.acquire();
+        assertSame(first, third);
+        manager.release(third);
+    }
+
+    public void testRefreshSeesWrites() throws Exception {
+        IndexSearcher before = manager.acquire();
+        assertEquals(1, numHits(before, "1"));
+        assertEquals(0, numHits(before, "2"));
+
+        addDoc("2", false);
+        manager.refresh();
+
+        IndexSearcher after = manager.acquire();
+        assertNotSame(before, after);
+        assertEquals(1, numHits(after, "2"));
+
+        // the old searcher stays usable until it is released
+        assertEquals(1, numHits(before, "1"));
+        manager.release(before);
+        manager.release(after);
+    }
+
+    private int numHits(IndexSearcher searcher, String id) throws Exception {
+        return searcher.search(new TermQuery(new Term("product_id", id)))
+                .length();
+    }
+
+    private void addDoc(String id, boolean create) throws Exception {
+        IndexWriter writer = new IndexWriter(indexDir.getAbsolutePath(),
+                new StandardAnalyzer(), create);
+        Document doc = new Document();
+        doc.add(new Field("product_id", id, Field.Store.YES,
+                Field.Index.UN_TOKENIZED));
+        writer.addDocument(doc);
+        writer.close();
+    }
+
+}
@@ -93,6 +93,66 @@ public class TestLocalDataTransferer extends TestCase {
             FileUtils.contentEquals(origFile, destFile));
    }
 
+   public void testParallelTransferAndRetrieve() throws DataTransferException, IOException {
+      transfer = new LocalDataTransferer(4, false);
+      Product testProduct = Product.getDefaultFlatProduct("test",
+            "urn:oodt:GenericFile");
+      File origDir = new File(testDir, "orig");
+      for (int i = 0; i < 10; i++) {
+         File f = new File(origDir, "file" + i + ".txt");
+         FileUtils.writeStringToFile(f, "contents of file " + i);
+         testProduct.getProductReferences().add(
+               new Reference(f.toURI().toString(), new File(repoDir, f
+                     .getName()).toURI().toString(), f.length()));
+      }
+
+      transfer.transferProduct(testProduct);
+      transfer.retrieveProduct(testProduct, destDir);
+
+      for (int i = 0; i < 10; i++) {
+         File orig = new File(origDir, "file" + i + ".txt");
+         assertTrue("Original file should not be removed by a copy",
+               orig.exists());
+         assertTrue(FileUtils.contentEquals(orig, new File(repoDir, orig
+               .getName())));
+         assertTrue(FileUtils.contentEquals(orig, new File(destDir, orig
+               .getName())));
+      }
+   }
+
+   public void testParallelTransferFailure() throws IOException {
+      transfer = new LocalDataTransferer(4, false);
+      Product testProduct = createDummyProduct();
+      testProduct.getProductReferences().add(
+            new Reference(new File(testDir, "missing.txt").toURI().toString(),
+                  new File(repoDir, "missing.txt").toURI().toString(), 1));
+      try {
+         transfer.transferProduct(testProduct);
+         fail("Transfer of a missing file should fail");
+      } catch (DataTransferException e) {
+         fail("Unexpected exception: " + e.getMessage());
+      } catch (IOException expected) {
+      }
+      assertTrue(FileUtils.contentEquals(origFile, repoFile));
+   }
+
+   public void testRenameOnSameFilesystem() throws DataTransferException, IOException {
+      transfer = new LocalDataTransferer(1, true);
+      File movable = new File(testDir, "movable.txt");
+      FileUtils.copyFile(origFile, movable);
+      Product testProduct = Product.getDefaultFlatProduct("test",
+            "urn:oodt:GenericFile");
+      testProduct.getProductReferences().add(
+            new Reference(movable.toURI().toString(), repoFile.toURI()
+                  .toString(), movable.length()));
+
+      transfer.transferProduct(testProduct);
+
+      assertFalse("Renamed file should leave its original location",
+            movable.exists());
+      assertTrue(FileUtils.contentEquals(origFile, repoFile));
+   }
+
    private Product createDummyProduct() {
       Product testProduct = Product.getDefaultFlatProduct("test",
             "urn:oodt:GenericFile");
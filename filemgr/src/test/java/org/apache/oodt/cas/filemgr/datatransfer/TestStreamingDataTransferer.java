@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.filemgr.datatransfer;
+
+//Apache imports
+import org.apache.commons.io.FileUtils;
+
+//OODT imports
+import org.apache.oodt.cas.filemgr.structs.Product;
+import org.apache.oodt.cas.filemgr.structs.Reference;
+
+//JDK imports
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.UUID;
+
+//Junit imports
+import junit.framework.TestCase;
+
+/**
+ * Test class for {@link StreamingDataTransferer}.
+ *
+ */
+public class TestStreamingDataTransferer extends TestCase {
+
+   private StreamingTransferServer server;
+
+   private StreamingDataTransferer transfer;
+
+   private File origFile;
+   private File testDir;
+   private File repoDir;
+   private File repoFile;
+   private File destDir;
+   private File destFile;
+
+   public void setUp() throws Exception {
+      URL url = this.getClass().getResource("/test.txt");
+      origFile = new File(url.getFile());
+      File testFile = File.createTempFile("test", ".txt");
+      testDir = new File(testFile.getParentFile(), UUID.randomUUID().toString());
+      repoDir = new File(testDir, "repo");
+      if (!repoDir.mkdirs()) {
+         throw new Exception("Failed to create repo directory!");
+      }
+      repoFile = new File(repoDir, "test.txt");
+      destDir = new File(testDir, "dest");
+      if (!destDir.mkdirs()) {
+         throw new Exception("Failed to create destination directory!");
+      }
+      destFile = new File(destDir, "test.txt");
+
+      server = new StreamingTransferServer(InetAddress.getByName("localhost"),
+            0, 2, Collections.singletonList(repoDir));
+      server.start();
+      transfer = new StreamingDataTransferer(server.getPort(), true, true);
+      // nothing listens here: transfer status notifications are skipped
+      transfer.setFileManagerUrl(new URL("http://localhost:1"));
+   }
+
+   public void tearDown() throws Exception {
+      server.shutdown();
+      FileUtils.forceDelete(testDir);
+   }
+
+   public void testTransferAndRetrieve() throws Exception {
+      Product testProduct = createDummyProduct();
+
+      transfer.transferProduct(testProduct);
+      assertTrue("Repo file does not exist", repoFile.exists());
+      assertTrue("Repo file does not have the same contents as orig file",
+            FileUtils.contentEquals(origFile, repoFile));
+
+      transfer.retrieveProduct(testProduct, destDir);
+      assertTrue("Destination file does not exist", destFile.exists());
+      assertTrue("Destination file does not have the same contents as orig file",
+            FileUtils.contentEquals(origFile, destFile));
+   }
+
+   public void testResume() throws Exception {
+      long half = origFile.length() / 2;
+      copyPrefix(origFile, repoFile, half);
+      copyPrefix(origFile, destFile, half);
+
+      StreamingTransferClient client = new StreamingTransferClient(
+            "localhost", server.getPort());
+      try {
+         assertEquals(half, client.length(repoFile.getAbsolutePath()));
+         client.put(origFile, repoFile.getAbsolutePath(), true, true);
+         assertTrue(FileUtils.contentEquals(origFile, repoFile));
+
+         client.get(repoFile.getAbsolutePath(), destFile, true, true);
+         assertTrue(FileUtils.contentEquals(origFile, destFile));
+      } finally {
+         client.close();
+      }
+   }
+
+   public void testOverwriteMismatchedPrefix() throws Exception {
+      FileUtils.writeStringToFile(repoFile, "not the original file");
+
+      StreamingTransferClient client = new StreamingTransferClient(
+            "localhost", server.getPort());
+      try {
+         client.put(origFile, repoFile.getAbsolutePath(), true, true);
+         assertTrue(FileUtils.contentEquals(origFile, repoFile));
+      } finally {
+         client.close();
+      }
+   }
+
+   public void testMissingFile() throws Exception {
+      StreamingTransferClient client = new StreamingTransferClient(
+            "localhost", server.getPort());
+      File missing = new File(repoDir, "missing.txt");
+      try {
+         assertEquals(-1L, client.length(missing.getAbsolutePath()));
+         try {
+            client.get(missing.getAbsolutePath(), destFile, false, false);
+            fail("Retrieving a missing file should fail");
+         } catch (IOException expected) {
+         }
+         // the connection is still usable after an error response
+         client.put(origFile, repoFile.getAbsolutePath(), false, true);
+         assertTrue(FileUtils.contentEquals(origFile, repoFile));
+      } finally {
+         client.close();
+      }
+   }
+
+   public void testPathOutsideRoots() throws Exception {
+      StreamingTransferClient client = new StreamingTransferClient(
+            "localhost", server.getPort());
+      String escaped = new File(repoDir, ".." + File.separator + "dest"
+            + File.separator + "test.txt").getAbsolutePath();
+      try {
+         try {
+            client.put(origFile, destFile.getAbsolutePath(), false, false);
+            fail("Writing outside the roots should fail");
+         } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("not under"));
+         }
+         assertFalse(destFile.exists());
+         try {
+            client.put(origFile, escaped, false, false);
+            fail("Writing outside the roots through .. should fail");
+         } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("not under"));
+         }
+         assertFalse(destFile.exists());
+         try {
+            client.length(origFile.getAbsolutePath());
+            fail("Reading outside the roots should fail");
+         } catch (IOException expected) {
+         }
+         try {
+            client.get(origFile.getAbsolutePath(), destFile, false, false);
+            fail("Reading outside the roots should fail");
+         } catch (IOException expected) {
+         }
+         try {
+            client.length("test.txt");
+            fail("Relative paths should be refused");
+         } catch (IOException expected) {
+         }
+         // files under the roots are still served
+         client.put(origFile, repoFile.getAbsolutePath(), false, true);
+         assertTrue(FileUtils.contentEquals(origFile, repoFile));
+      } finally {
+         client.close();
+      }
+   }
+
+   private void copyPrefix(File from, File to, long length) throws Exception {
+      byte[] bytes = FileUtils.readFileToByteArray(from);
+      RandomAccessFile raf = new RandomAccessFile(to, "rw");
+      try {
+         raf.setLength(0);
+         raf.write(bytes, 0, (int) length);
+      } finally {
+         raf.close();
+      }
+   }
+
+   private Product createDummyProduct() {
+      Product testProduct = Product.getDefaultFlatProduct("test",
+            "urn:oodt:GenericFile");
+      testProduct.getProductReferences().add(
+            new Reference(origFile.toURI().toString(), new File(repoDir,
+                  "test.txt").toURI().toString(), origFile.length()));
+      return testProduct;
+   }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.ingest;
+
+//OODT imports
+import org.apache.oodt.cas.filemgr.structs.exceptions.CatalogException;
+import org.apache.oodt.cas.filemgr.system.XmlRpcFileManagerClient;
+
+//JDK imports
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+//Junit imports
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Test suite for the {@link ProductExistenceCache}.
+ * </p>.
+ */
+public class TestProductExistenceCache extends TestCase {
+
+    private CountingClient fmClient;
+
+    protected void setUp() throws Exception {
+        fmClient = new CountingClient();
+        fmClient.existing.add("exists1");
+        fmClient.existing.add("exists2");
+    }
+
+    public void testCachesExistingProducts() throws CatalogException {
+        ProductExistenceCache cache = new ProductExistenceCache(100, 60000L, 0L);
+        assertTrue(cache.hasProduct(fmClient, "exists1"));
+        assertTrue(cache.hasProduct(fmClient, "exists1"));
+        assertFalse(cache.hasProduct(fmClient, "missing"));
+        assertFalse(cache.hasProduct(fmClient, "missing"));
+        // missing products aren't remembered by default
+        assertEquals(3, fmClient.numChecked);
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(0.25, cache.getHitRate(), 0.0001);
+
+        // an ingested product is known to exist from then on
+        cache.put("missing", true);
+        assertTrue(cache.hasProduct(fmClient, "missing"));
+        assertEquals(3, fmClient.numChecked);
+    }
+
+    public void testBulkCheck() throws CatalogException {
+        ProductExistenceCache cache = new ProductExistenceCache(100, 60000L,
+                60000L);
+        assertTrue(cache.hasProduct(fmClient, "exists1"));
+        List<Boolean> results = cache.hasProducts(fmClient, Arrays.asList(
+                "missing", "exists1", "exists2"));
+        assertEquals(Arrays.asList(Boolean.FALSE, Boolean.TRUE, Boolean.TRUE),
+                results);
+        assertEquals(1, fmClient.numBulkCalls);
+        assertEquals(3, fmClient.numChecked);
+
+        results = cache.hasProducts(fmClient, Arrays.asList("exists2",
+                "missing"));
+        assertEquals(Arrays.asList(Boolean.TRUE, Boolean.FALSE), results);
+        assertEquals(1, fmClient.numBulkCalls);
+    }
+
+    public void testPrefetch() throws CatalogException {
+        ProductExistenceCache cache = new ProductExistenceCache(100, 60000L,
+                0L, 60000L);
+        assertNull(cache.lookup("missing"));
+        assertFalse(cache.prefetch(fmClient, "missing", Arrays.asList(
+                "missing", "exists1", "missing2")));
+        assertEquals(1, fmClient.numBulkCalls);
+        assertEquals(3, fmClient.numChecked);
+
+        // the neighbours are answered from the cache, missing ones included
+        assertTrue(cache.hasProduct(fmClient, "exists1"));
+        assertFalse(cache.hasProduct(fmClient, "missing2"));
+        assertEquals(3, fmClient.numChecked);
+
+        // but a single missing lookup still isn't remembered
+        assertFalse(cache.hasProduct(fmClient, "missing3"));
+        assertFalse(cache.hasProduct(fmClient, "missing3"));
+        assertEquals(5, fmClient.numChecked);
+    }
+
+    public void testEvictionAndExpiry() throws Exception {
+        ProductExistenceCache cache = new ProductExistenceCache(2, 60000L, 0L);
+        cache.put("a", true);
+        cache.put("b", true);
+        assertEquals(Boolean.TRUE, cache.lookup("a"));
+        cache.put("c", true);
+        assertEquals(2, cache.size());
+        // "b" was the least recently used
+        assertNull(cache.lookup("b"));
+        assertEquals(Boolean.TRUE, cache.lookup("a"));
+
+        cache = new ProductExistenceCache(2, 1L, 0L);
+        cache.put("a", true);
+        Thread.sleep(10);
+        assertNull(cache.lookup("a"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testSharedPerFileManager() throws Exception {
+        assertSame(ProductExistenceCache.getCache(new URL(
+                "http://localhost:9000")), ProductExistenceCache
+                .getCache(new URL("http://localhost:9000")));
+        assertNotSame(ProductExistenceCache.getCache(new URL(
+                "http://localhost:9000")), ProductExistenceCache
+                .getCache(new URL("http://localhost:9001")));
+    }
+
+    private static class CountingClient extends XmlRpcFileManagerClient {
+
+        private List<String> existing = new Vector<String>();
+
+        private int numChecked;
+
+        private int numBulkCalls;
+
+        public CountingClient() throws Exception {
+            super(new URL("http://localhost:9000"), false);
+        }
+
+        public boolean hasProduct(String productName) {
+            numChecked++;
+            return existing.contains(productName);
+        }
+
+        public List<Boolean> hasProducts(List<String> productNames) {
+            numBulkCalls++;
+            List<Boolean> results = new Vector<Boolean>();
+            for (String productName : productNames) {
+                numChecked++;
+                results.add(Boolean.valueOf(existing.contains(productName)));
+            }
+            return results;
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.structs;
+
+//JDK imports
+import java.util.ArrayList;
+import java.util.Arrays;
+
+//Junit imports
+import junit.framework.TestCase;
+
+/**
+ *
+ * Test harness for copying {@link QueryCriteria}, which type handlers
+ * rewrite in place.
+ *
+ */
+public class TestQueryCriteria extends TestCase {
+
+  public void testCloneIsDeep() throws Exception {
+    TermQueryCriteria term = new TermQueryCriteria("Filename", "a.txt");
+    RangeQueryCriteria range = new RangeQueryCriteria("StartDateTime",
+        "2013-01-01", null);
+    FreeTextQueryCriteria freeText = new FreeTextQueryCriteria("Keywords",
+        new ArrayList<String>(Arrays.asList("ocean")));
+    BooleanQueryCriteria or = new BooleanQueryCriteria();
+    or.setOperator(BooleanQueryCriteria.OR);
+    or.addTerm(term);
+    or.addTerm(range);
+    or.addTerm(freeText);
+
+    BooleanQueryCriteria copy = or.clone();
+    ((TermQueryCriteria) copy.getTerms().get(0)).setValue("b.txt");
+    ((RangeQueryCriteria) copy.getTerms().get(1)).setEndValue("2014-01-01");
+    ((FreeTextQueryCriteria) copy.getTerms().get(2)).addValue("wind");
+    copy.addTerm(new TermQueryCriteria("Filename", "c.txt"));
+
+    assertEquals(BooleanQueryCriteria.OR, copy.getOperator());
+    assertEquals(3, or.getTerms().size());
+    assertEquals("a.txt", term.getValue());
+    assertNull(range.getEndValue());
+    assertEquals(Arrays.asList("ocean"), freeText.getValues());
+    assertEquals("b.txt", ((TermQueryCriteria) copy.getTerms().get(0))
+        .getValue());
+  }
+
+}
@@ -23,6 +23,7 @@ import org.apache.oodt.cas.filemgr.ingest.StdIngester;
 import org.apache.oodt.cas.filemgr.metadata.CoreMetKeys;
 import org.apache.oodt.cas.filemgr.structs.Product;
 import org.apache.oodt.cas.filemgr.structs.ProductType;
+import org.apache.oodt.cas.filemgr.structs.Reference;
 import org.apache.oodt.cas.filemgr.structs.query.ComplexQuery;
 import org.apache.oodt.cas.filemgr.structs.query.QueryResult;
 import org.apache.oodt.cas.filemgr.util.SqlParser;
@@ -171,6 +172,150 @@ public class TestXmlRpcFileManagerClient extends TestCase {
 
     
     public void testComplexQuery() throws Exception {
+        ingestTestFiles();
+        
+        //perform complex query
+        ComplexQuery complexQuery = new ComplexQuery();
+        List<String> reducedMetadata = new Vector<String>();
+        reducedMetadata.add(CoreMetKeys.FILENAME);
+        complexQuery.setReducedMetadata(reducedMetadata);
+        List<String> productTypeNames = new Vector<String>();
+        productTypeNames.add("GenericFile");
+        complexQuery.setReducedProductTypeNames(productTypeNames);
+        complexQuery.setSortByMetKey(CoreMetKeys.FILENAME);
+        complexQuery.setToStringResultFormat("$" + CoreMetKeys.FILENAME);
+        complexQuery.addCriterion(SqlParser.parseSqlWhereClause("Filename != 'test.txt'"));
+        XmlRpcFileManagerClient fmc = new XmlRpcFileManagerClient(new URL(
+                "http://localhost:" + FM_PORT));
+        List<QueryResult> queryResults = fmc.complexQuery(complexQuery);
+        assertEquals("[test-file-1.txt, test-file-2.txt]", queryResults.toString());
+    }
+
+    public void testHasProducts() throws Exception {
+        ingestTestFiles();
+        XmlRpcFileManagerClient fmc = new XmlRpcFileManagerClient(new URL(
+                "http://localhost:" + FM_PORT));
+        List<String> productNames = new Vector<String>();
+        productNames.add("TestFile1");
+        productNames.add("NotAProduct");
+        productNames.add("TestFile2");
+        List<Boolean> results = fmc.hasProducts(productNames);
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).booleanValue());
+        assertFalse(results.get(1).booleanValue());
+        assertTrue(results.get(2).booleanValue());
+    }
+
+    public void testGetProductReferencesByIds() throws Exception {
+        ingestTestFiles();
+        XmlRpcFileManagerClient fmc = new XmlRpcFileManagerClient(new URL(
+                "http://localhost:" + FM_PORT));
+        List<String> productIds = new Vector<String>();
+        productIds.add(fmc.getProductByName("TestFile2").getProductId());
+        productIds.add(fmc.getProductByName("TestFile1").getProductId());
+        List<List<Reference>> references = fmc.getProductReferencesByIds(productIds);
+        assertEquals(2, references.size());
+        assertEquals(1, references.get(0).size());
+        assertTrue(references.get(0).get(0).getDataStoreReference().endsWith(
+                "test-file-2.txt"));
+        assertEquals(1, references.get(1).size());
+        assertTrue(references.get(1).get(0).getDataStoreReference().endsWith(
+                "test-file-1.txt"));
+    }
+
+    public void testPagedComplexQuery() throws Exception {
+        ingestTestFiles();
+
+        ComplexQuery complexQuery = new ComplexQuery();
+        List<String> reducedMetadata = new Vector<String>();
+        reducedMetadata.add(CoreMetKeys.FILENAME);
+        complexQuery.setReducedMetadata(reducedMetadata);
+        List<String> productTypeNames = new Vector<String>();
+        productTypeNames.add("GenericFile");
+        complexQuery.setReducedProductTypeNames(productTypeNames);
+        complexQuery.setToStringResultFormat("$" + CoreMetKeys.FILENAME);
+        complexQuery.addCriterion(SqlParser.parseSqlWhereClause("Filename != 'none.txt'"));
+        XmlRpcFileManagerClient fmc = new XmlRpcFileManagerClient(new URL(
+                "http://localhost:" + FM_PORT));
+
+        // unsorted pages follow catalog order
+        List<QueryResult> allResults = fmc.complexQuery(complexQuery);
+        assertEquals(3, allResults.size());
+        assertEquals(allResults.subList(0, 2).toString(), fmc
+                .pagedComplexQuery(complexQuery, 1, 2).toString());
+        assertEquals(allResults.subList(2, 3).toString(), fmc
+                .pagedComplexQuery(complexQuery, 2, 2).toString());
+
+        // sorted pages are slices of the fully sorted results
+        complexQuery.setSortByMetKey(CoreMetKeys.FILENAME);
+        List<QueryResult> sortedResults = fmc.complexQuery(complexQuery);
+        assertEquals("[test-file-1.txt, test-file-2.txt]", fmc
+                .pagedComplexQuery(complexQuery, 1, 2).toString());
+        assertEquals(sortedResults.subList(2, 3).toString(), fmc
+                .pagedComplexQuery(complexQuery, 2, 2).toString());
+        assertEquals("[test-file-2.txt]", fmc.pagedComplexQuery(complexQuery,
+                2, 1).toString());
+        assertEquals(0, fmc.pagedComplexQuery(complexQuery, 3, 2).size());
+        assertNotNull(fmc.pagedComplexQuery(complexQuery, 1, 1).get(0)
+                .getProduct().getProductName());
+    }
+
+    public void testBinaryCalls() throws Exception {
+        ingestTestFiles();
+
+        ComplexQuery complexQuery = new ComplexQuery();
+        List<String> productTypeNames = new Vector<String>();
+        productTypeNames.add("GenericFile");
+        complexQuery.setReducedProductTypeNames(productTypeNames);
+        complexQuery.setSortByMetKey(CoreMetKeys.FILENAME);
+        complexQuery.setToStringResultFormat("$" + CoreMetKeys.FILENAME);
+        complexQuery.addCriterion(SqlParser.parseSqlWhereClause(
+                "Filename != 'none.txt'"));
+
+        // answers over XML-RPC, from a file manager without binary calls
+        assertEquals(-1, fm.getBinaryRpcPort());
+        XmlRpcFileManagerClient fmc = new XmlRpcFileManagerClient(new URL(
+                "http://localhost:" + FM_PORT));
+        Product xmlRpcProduct = fmc.getProductByName("TestFile1");
+        Metadata xmlRpcMet = fmc.getMetadata(xmlRpcProduct);
+        String xmlRpcRefs = fmc.getProductReferences(xmlRpcProduct)
+                .toString();
+        String xmlRpcResults = fmc.complexQuery(complexQuery).toString();
+        String xmlRpcPage = fmc.pagedComplexQuery(complexQuery, 2, 1)
+                .toString();
+
+        // restart the file manager with binary calls on
+        fm.shutdown();
+        System.setProperty("org.apache.oodt.cas.filemgr.binary.port", "0");
+        fm = new XmlRpcFileManager(FM_PORT);
+        assertTrue(fm.getBinaryRpcPort() > 0);
+
+        fmc = new XmlRpcFileManagerClient(new URL("http://localhost:"
+                + FM_PORT));
+        Product product = fmc.getProductByName("TestFile1");
+        assertEquals(xmlRpcProduct.getProductId(), product.getProductId());
+        assertEquals(xmlRpcProduct.getProductType().getName(), product
+                .getProductType().getName());
+        assertEquals(xmlRpcProduct.getProductType().getProductRepositoryPath(),
+                product.getProductType().getProductRepositoryPath());
+        assertEquals(product.getProductName(), fmc.getProductById(
+                product.getProductId()).getProductName());
+        assertEquals(xmlRpcMet.getHashtable(), fmc.getMetadata(product)
+                .getHashtable());
+        List<String> elements = new Vector<String>();
+        elements.add(CoreMetKeys.FILENAME);
+        assertEquals("test-file-1.txt", fmc.getReducedMetadata(product,
+                elements).getMetadata(CoreMetKeys.FILENAME));
+        assertEquals(xmlRpcRefs, fmc.getProductReferences(product)
+                .toString());
+        assertEquals(xmlRpcResults, fmc.complexQuery(complexQuery)
+                .toString());
+        assertEquals(xmlRpcPage, fmc.pagedComplexQuery(complexQuery, 2, 1)
+                .toString());
+        assertEquals("[test-file-2.txt]", xmlRpcPage);
+    }
+
+    private void ingestTestFiles() throws Exception {
         URL ingestUrl = this.getClass().getResource("/ingest");
         URL refUrl1 = this.getClass().getResource("/ingest/test-file-1.txt");
         URL refUrl2 = this.getClass().getResource("/ingest/test-file-2.txt");
@@ -191,23 +336,7 @@ public class TestXmlRpcFileManagerClient extends TestCase {
         prodMet.replaceMetadata(CoreMetKeys.FILENAME, "test-file-2.txt");
         prodMet.replaceMetadata(CoreMetKeys.PRODUCT_NAME, "TestFile2");
         ingester.ingest(new URL("http://localhost:" + FM_PORT), new File(
-            refUrl2.getFile()), prodMet);   
-        
-        //perform complex query
-        ComplexQuery complexQuery = new ComplexQuery();
-        List<String> reducedMetadata = new Vector<String>();
-        reducedMetadata.add(CoreMetKeys.FILENAME);
-        complexQuery.setReducedMetadata(reducedMetadata);
-        List<String> productTypeNames = new Vector<String>();
-        productTypeNames.add("GenericFile");
-        complexQuery.setReducedProductTypeNames(productTypeNames);
-        complexQuery.setSortByMetKey(CoreMetKeys.FILENAME);
-        complexQuery.setToStringResultFormat("$" + CoreMetKeys.FILENAME);
-        complexQuery.addCriterion(SqlParser.parseSqlWhereClause("Filename != 'test.txt'"));
-        XmlRpcFileManagerClient fmc = new XmlRpcFileManagerClient(new URL(
-                "http://localhost:" + FM_PORT));
-        List<QueryResult> queryResults = fmc.complexQuery(complexQuery);
-        assertEquals("[test-file-1.txt, test-file-2.txt]", queryResults.toString());
+            refUrl2.getFile()), prodMet);
     }
 
     /*
@@ -228,6 +357,9 @@ public class TestXmlRpcFileManagerClient extends TestCase {
     protected void tearDown() throws Exception {
         fm.shutdown();
         fm = null;
+
+        // later file managers in this JVM should only serve XML-RPC
+        System.getProperties().remove("org.apache.oodt.cas.filemgr.binary.port");
         
         // blow away lucene cat
         deleteAllFiles(luceneCatLoc);
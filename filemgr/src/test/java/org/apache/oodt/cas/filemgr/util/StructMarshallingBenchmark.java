@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.util;
+
+//JDK imports
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.Vector;
+
+//OODT imports
+import org.apache.oodt.cas.filemgr.metadata.CoreMetKeys;
+import org.apache.oodt.cas.filemgr.structs.Product;
+import org.apache.oodt.cas.filemgr.structs.Reference;
+import org.apache.oodt.cas.filemgr.structs.query.QueryResult;
+import org.apache.oodt.cas.metadata.Metadata;
+import org.apache.oodt.cas.metadata.util.BinaryMetadataCodec;
+
+//APACHE imports
+import org.apache.xmlrpc.XmlRpcClientResponseProcessor;
+import org.apache.xmlrpc.XmlRpcResponseProcessor;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * A simple benchmark of the round trip a File Manager response makes over
+ * XML-RPC ({@link XmlRpcStructFactory} to <code>Hashtable</code>s, XML-RPC
+ * text and back) and over binary RPC ({@link BinaryStructFactory} to bytes
+ * and back), for a product, its metadata and a page of complex query
+ * results. Usage:
+ * </p>
+ *
+ * <pre>
+ * java StructMarshallingBenchmark [metadataKeys] [queryResults] [secondsPerRun]
+ * </pre>
+ */
+public class StructMarshallingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numKeys = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int numResults = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        final Product product = getProduct(0);
+        final Metadata metadata = getMetadata(0, numKeys);
+        final List<QueryResult> queryResults = new Vector<QueryResult>();
+        for (int i = 0; i < numResults; i++) {
+            QueryResult queryResult = new QueryResult(getProduct(i),
+                    getMetadata(i, numKeys));
+            queryResult.setToStringFormat("$" + CoreMetKeys.FILENAME);
+            queryResults.add(queryResult);
+        }
+
+        run("Product", seconds, new Payload() {
+            public Object toXmlRpc() {
+                return XmlRpcStructFactory.getXmlRpcProduct(product);
+            }
+
+            @SuppressWarnings("unchecked")
+            public void fromXmlRpc(Object value) {
+                XmlRpcStructFactory
+                        .getProductFromXmlRpc((Hashtable<String, Object>) value);
+            }
+
+            public void write(DataOutputStream out) throws Exception {
+                BinaryStructFactory.writeProduct(out, product);
+            }
+
+            public void read(DataInputStream in) throws Exception {
+                BinaryStructFactory.readProduct(in);
+            }
+        });
+
+        run("Metadata [" + numKeys + " keys]", seconds, new Payload() {
+            public Object toXmlRpc() {
+                return metadata.getHashtable();
+            }
+
+            @SuppressWarnings("unchecked")
+            public void fromXmlRpc(Object value) {
+                new Metadata().addMetadata((Hashtable<String, Object>) value);
+            }
+
+            public void write(DataOutputStream out) throws Exception {
+                BinaryMetadataCodec.writeMetadata(out, metadata);
+            }
+
+            public void read(DataInputStream in) throws Exception {
+                BinaryMetadataCodec.readMetadata(in);
+            }
+        });
+
+        run("QueryResults [" + numResults + "]", seconds, new Payload() {
+            public Object toXmlRpc() {
+                return XmlRpcStructFactory.getXmlRpcQueryResults(queryResults);
+            }
+
+            @SuppressWarnings("unchecked")
+            public void fromXmlRpc(Object value) {
+                XmlRpcStructFactory
+                        .getQueryResultsFromXmlRpc((Vector<Hashtable<String, Object>>) value);
+            }
+
+            public void write(DataOutputStream out) throws Exception {
+                BinaryStructFactory.writeQueryResults(out, queryResults);
+            }
+
+            public void read(DataInputStream in) throws Exception {
+                BinaryStructFactory.readQueryResults(in);
+            }
+        });
+    }
+
+    private interface Payload {
+        Object toXmlRpc() throws Exception;
+
+        void fromXmlRpc(Object value) throws Exception;
+
+        void write(DataOutputStream out) throws Exception;
+
+        void read(DataInputStream in) throws Exception;
+    }
+
+    private static void run(String name, int seconds, Payload payload)
+            throws Exception {
+        XmlRpcResponseProcessor encoder = new XmlRpcResponseProcessor();
+        XmlRpcClientResponseProcessor decoder = new XmlRpcClientResponseProcessor(
+                TimeZone.getDefault());
+
+        int xmlRpcBytes = encoder.encodeResponse(payload.toXmlRpc(), "UTF-8").length;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        payload.write(new DataOutputStream(bytes));
+        int binaryBytes = bytes.size();
+
+        long xmlRpcCount = 0;
+        long deadline = System.currentTimeMillis() + seconds * 1000L;
+        while (System.currentTimeMillis() < deadline) {
+            byte[] encoded = encoder.encodeResponse(payload.toXmlRpc(),
+                    "UTF-8");
+            payload.fromXmlRpc(decoder.decodeResponse(new ByteArrayInputStream(
+                    encoded)));
+            xmlRpcCount++;
+        }
+
+        long binaryCount = 0;
+        deadline = System.currentTimeMillis() + seconds * 1000L;
+        while (System.currentTimeMillis() < deadline) {
+            bytes.reset();
+            payload.write(new DataOutputStream(bytes));
+            payload.read(new DataInputStream(new ByteArrayInputStream(bytes
+                    .toByteArray())));
+            binaryCount++;
+        }
+
+        System.out.println(name + ": XML-RPC: [" + xmlRpcBytes + "] bytes, ["
+                + (xmlRpcCount / seconds) + "] round trips/sec; binary: ["
+                + binaryBytes + "] bytes, [" + (binaryCount / seconds)
+                + "] round trips/sec");
+    }
+
+    private static Product getProduct(int i) {
+        Product product = Product.getDefaultFlatProduct("product" + i,
+                "urn:oodt:GenericFile");
+        product.setProductId("id" + i);
+        product.getProductType().setName("GenericFile");
+        product.setTransferStatus(Product.STATUS_RECEIVED);
+        List<Reference> refs = new Vector<Reference>();
+        refs.add(new Reference("file:///orig/product" + i + ".dat",
+                "file:///data/product" + i + ".dat", 1024));
+        product.setProductReferences(refs);
+        return product;
+    }
+
+    private static Metadata getMetadata(int i, int numKeys) {
+        Metadata met = new Metadata();
+        met.addMetadata(CoreMetKeys.FILENAME, "product" + i + ".dat");
+        met.addMetadata(CoreMetKeys.FILE_LOCATION, "/data");
+        for (int j = 0; j < numKeys; j++) {
+            met.addMetadata("Key" + j, "value" + j + "-" + i);
+        }
+        return met;
+    }
+
+}
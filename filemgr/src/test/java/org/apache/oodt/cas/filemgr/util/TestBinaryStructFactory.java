@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.filemgr.util;
+
+//OODT imports
+import org.apache.oodt.cas.filemgr.structs.ExtractorSpec;
+import org.apache.oodt.cas.filemgr.structs.Product;
+import org.apache.oodt.cas.filemgr.structs.ProductType;
+import org.apache.oodt.cas.filemgr.structs.Reference;
+import org.apache.oodt.cas.filemgr.structs.query.ComplexQuery;
+import org.apache.oodt.cas.filemgr.structs.query.QueryFilter;
+import org.apache.oodt.cas.filemgr.structs.query.QueryResult;
+import org.apache.oodt.cas.filemgr.structs.query.conv.AsciiSortableVersionConverter;
+import org.apache.oodt.cas.filemgr.structs.query.filter.FilterAlgor;
+import org.apache.oodt.cas.filemgr.structs.query.filter.TimeEvent;
+import org.apache.oodt.cas.metadata.Metadata;
+
+//JDK imports
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.Vector;
+
+//JUnit imports
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * Test class for {@link BinaryStructFactory}.
+ * </p>
+ */
+public class TestBinaryStructFactory extends TestCase {
+
+    private ByteArrayOutputStream bytes;
+
+    private DataOutputStream out;
+
+    protected void setUp() throws Exception {
+        bytes = new ByteArrayOutputStream();
+        out = new DataOutputStream(bytes);
+    }
+
+    public void testProduct() throws Exception {
+        BinaryStructFactory.writeProduct(out, null);
+        BinaryStructFactory.writeProduct(out, new Product());
+        Product product = getTestProduct();
+        BinaryStructFactory.writeProduct(out, product);
+
+        DataInputStream in = getInput();
+        assertNull(BinaryStructFactory.readProduct(in));
+        Product empty = BinaryStructFactory.readProduct(in);
+        assertNull(empty.getProductId());
+        assertNull(empty.getRootRef());
+
+        Product roundTrip = BinaryStructFactory.readProduct(in);
+        assertEquals(product.getProductId(), roundTrip.getProductId());
+        assertEquals(product.getProductName(), roundTrip.getProductName());
+        assertEquals(product.getProductStructure(), roundTrip
+                .getProductStructure());
+        assertEquals(product.getTransferStatus(), roundTrip
+                .getTransferStatus());
+        assertEquals(product.getProductReferences().toString(), roundTrip
+                .getProductReferences().toString());
+        assertEquals("text/plain", roundTrip.getProductReferences().get(0)
+                .getMimeType().getName());
+        assertEquals(product.getRootRef().toString(), roundTrip.getRootRef()
+                .toString());
+
+        ProductType type = roundTrip.getProductType();
+        assertEquals("urn:oodt:GenericFile", type.getProductTypeId());
+        assertEquals("GenericFile", type.getName());
+        assertEquals("/data", type.getProductRepositoryPath());
+        assertEquals(product.getProductType().getVersioner(), type
+                .getVersioner());
+        assertEquals("value", type.getTypeMetadata().getMetadata("key"));
+        assertEquals(1, type.getExtractors().size());
+        assertEquals("ExtractorClass", type.getExtractors().get(0)
+                .getClassName());
+        assertEquals("value", type.getExtractors().get(0).getConfiguration()
+                .getProperty("key"));
+    }
+
+    public void testComplexQuery() throws Exception {
+        ComplexQuery complexQuery = new ComplexQuery();
+        complexQuery.addCriterion(SqlParser.parseSqlWhereClause(
+                "Filename == 'a.txt' OR (Filename != 'b.txt' AND FileSize >= '10')"));
+        List<String> reducedMetadata = new Vector<String>();
+        reducedMetadata.add("Filename");
+        complexQuery.setReducedMetadata(reducedMetadata);
+        complexQuery.setReducedProductTypeNames(new Vector<String>());
+        complexQuery.setSortByMetKey("Filename");
+        complexQuery.setToStringResultFormat("$Filename");
+        QueryFilter filter = new QueryFilter("StartDateTime", "EndDateTime",
+                "Priority", new MockFilterAlgor());
+        filter.getFilterAlgor().setEpsilon(5);
+        filter.setConverter(new AsciiSortableVersionConverter());
+        complexQuery.setQueryFilter(filter);
+        BinaryStructFactory.writeComplexQuery(out, complexQuery);
+
+        ComplexQuery roundTrip = BinaryStructFactory
+                .readComplexQuery(getInput());
+        assertEquals(complexQuery.getCriteria().toString(), roundTrip
+                .getCriteria().toString());
+        assertEquals(reducedMetadata, roundTrip.getReducedMetadata());
+        // as over XML-RPC, an empty list means no reduction
+        assertNull(roundTrip.getReducedProductTypeNames());
+        assertEquals("Filename", roundTrip.getSortByMetKey());
+        assertEquals("$Filename", roundTrip.getToStringResultFormat());
+        QueryFilter roundTripFilter = roundTrip.getQueryFilter();
+        assertEquals("StartDateTime", roundTripFilter
+                .getStartDateTimeMetKey());
+        assertEquals("EndDateTime", roundTripFilter.getEndDateTimeMetKey());
+        assertEquals("Priority", roundTripFilter.getPriorityMetKey());
+        assertTrue(roundTripFilter.getFilterAlgor() instanceof MockFilterAlgor);
+        assertEquals(5, roundTripFilter.getFilterAlgor().getEpsilon());
+        assertTrue(roundTripFilter.getConverter() instanceof AsciiSortableVersionConverter);
+    }
+
+    public void testQueryResults() throws Exception {
+        Metadata met = new Metadata();
+        met.addMetadata("Filename", "a.txt");
+        met.addMetadata("Values", "1");
+        met.addMetadata("Values", "2");
+        QueryResult queryResult = new QueryResult(getTestProduct(), met);
+        queryResult.setToStringFormat("$Filename");
+        List<QueryResult> queryResults = new Vector<QueryResult>();
+        queryResults.add(queryResult);
+        queryResults.add(new QueryResult(null, new Metadata()));
+        BinaryStructFactory.writeQueryResults(out, queryResults);
+
+        List<QueryResult> roundTrip = BinaryStructFactory
+                .readQueryResults(getInput());
+        assertEquals(2, roundTrip.size());
+        assertEquals("a.txt", roundTrip.get(0).toString());
+        assertEquals("TestId", roundTrip.get(0).getProduct().getProductId());
+        assertEquals(met.getHashtable(), roundTrip.get(0).getMetadata()
+                .getHashtable());
+        assertNull(roundTrip.get(1).getProduct());
+    }
+
+    private DataInputStream getInput() {
+        return new DataInputStream(new ByteArrayInputStream(bytes
+                .toByteArray()));
+    }
+
+    private Product getTestProduct() {
+        Product product = Product.getDefaultFlatProduct("TestName",
+                "urn:oodt:GenericFile");
+        product.setProductId("TestId");
+        product.setTransferStatus(Product.STATUS_RECEIVED);
+        ProductType type = product.getProductType();
+        type.setName("GenericFile");
+        type.setProductRepositoryPath("/data");
+        Metadata typeMet = new Metadata();
+        typeMet.addMetadata("key", "value");
+        type.setTypeMetadata(typeMet);
+        Properties config = new Properties();
+        config.setProperty("key", "value");
+        ExtractorSpec spec = new ExtractorSpec();
+        spec.setClassName("ExtractorClass");
+        spec.setConfiguration(config);
+        List<ExtractorSpec> extractors = new Vector<ExtractorSpec>();
+        extractors.add(spec);
+        type.setExtractors(extractors);
+        List<Reference> refs = new Vector<Reference>();
+        Reference ref = new Reference("file:///orig/a.txt",
+                "file:///data/a.txt", 100);
+        ref.setMimeType("text/plain");
+        refs.add(ref);
+        product.setProductReferences(refs);
+        product.setRootRef(new Reference("file:///orig", "file:///data", 0));
+        return product;
+    }
+
+    public static class MockFilterAlgor extends FilterAlgor {
+        public List<TimeEvent> filterEvents(List<TimeEvent> events) {
+            return events;
+        }
+    }
+
+}
@@ -0,0 +1,373 @@
+// Licensed to the Apache Software Foundation (ASF) under one or more contributor
+// license agreements.  See the NOTICE.txt file distributed with this work for
+// additional information regarding copyright ownership.  The ASF licenses this
+// file to you under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy of
+// the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+// WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+// License for the specific language governing permissions and limitations under
+// the License.
+
+package org.apache.oodt.cas.metadata;
+
+//JDK imports
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+/**
+ *
+ * A {@link Metadata} that stores its keys flat rather than as a tree of
+ * groups. Each full key path (e.g., <code>Group1/sub1/key</code>) is interned
+ * and mapped to an array of its values, kept in the order the keys were first
+ * added.
+ *
+ * Value arrays are never modified once stored: adding a value swaps in a new
+ * array. This lets {@link #CompactMetadata(Metadata)} and
+ * {@link #addMetadata(Metadata)} share the source's entries instead of copying
+ * them. The entries are only copied the first time either side is changed
+ * afterwards (copy-on-write), so copies that are only read never pay for one.
+ *
+ * Like {@link Metadata}, a CompactMetadata is not thread-safe; copies of it,
+ * however, may be used by different threads.
+ *
+ * @version $Revision$
+ *
+ */
+public class CompactMetadata extends Metadata {
+
+  private Store store;
+
+  public CompactMetadata() {
+    super();
+    this.store = new Store();
+  }
+
+  public CompactMetadata(Metadata metadata) {
+    this();
+    this.addMetadata(metadata);
+  }
+
+  /**
+   * Adds (Appends if key exists) from given metadata into this metadata
+   *
+   * @param metadata
+   *          Metadata to add metadata from
+   */
+  @Override
+  public void addMetadata(Metadata metadata) {
+    if (!(metadata instanceof CompactMetadata)) {
+      super.addMetadata(metadata);
+      return;
+    }
+    CompactMetadata other = (CompactMetadata) metadata;
+    if (this.store.entries.isEmpty()) {
+      this.share(other);
+      return;
+    }
+    if (other == this) {
+      // don't iterate over the entries we're about to change
+      this.store.shared = true;
+    }
+    for (Entry<String, String[]> entry : other.store.entries.entrySet())
+      this.append(entry.getKey(), entry.getValue());
+  }
+
+  /**
+   * Adds (Replaces if key exists) from given Metadata into this Metadata
+   *
+   * @param metadata
+   */
+  @Override
+  public void replaceMetadata(Metadata metadata) {
+    if (!(metadata instanceof CompactMetadata)) {
+      super.replaceMetadata(metadata);
+      return;
+    }
+    CompactMetadata other = (CompactMetadata) metadata;
+    if (this.store.entries.isEmpty()) {
+      this.share(other);
+      return;
+    }
+    if (other != this) {
+      for (Entry<String, String[]> entry : other.store.entries.entrySet())
+        this.put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Override
+  public void addMetadata(String key, String value) {
+    this.append(normalize(key), new String[] { value });
+  }
+
+  @Override
+  public void replaceMetadata(String key, String value) {
+    this.put(normalize(key), new String[] { value });
+  }
+
+  @Override
+  public void addMetadata(String key, List<String> values) {
+    this.append(normalize(key), values.toArray(new String[values.size()]));
+  }
+
+  @Override
+  public void replaceMetadata(String key, List<String> values) {
+    this.put(normalize(key), values.toArray(new String[values.size()]));
+  }
+
+  @Override
+  public void removeMetadata(String key) {
+    if (this.store.entries.containsKey(normalize(key)))
+      this.mutableEntries().remove(normalize(key));
+  }
+
+  @Override
+  public void removeMetadataGroup(String group) {
+    if (group == null) {
+      this.clear();
+      return;
+    }
+    String normalized = normalize(group);
+    String prefix = normalized + "/";
+    if (!this.hasKeysUnder(prefix))
+      return;
+    Iterator<String> keys = this.mutableEntries().keySet().iterator();
+    while (keys.hasNext()) {
+      String key = keys.next();
+      if (key.startsWith(prefix) || key.equals(normalized))
+        keys.remove();
+    }
+  }
+
+  @Override
+  public boolean containsKey(String key) {
+    return this.store.entries.containsKey(normalize(key));
+  }
+
+  @Override
+  public boolean isMultiValued(String key) {
+    String[] values = this.store.entries.get(normalize(key));
+    return values != null && values.length > 1;
+  }
+
+  @Override
+  public Metadata getSubMetadata(String group) {
+    CompactMetadata m = new CompactMetadata();
+    if (group == null) {
+      m.share(this);
+      return m;
+    }
+    String prefix = normalize(group) + "/";
+    for (Entry<String, String[]> entry : this.store.entries.entrySet())
+      if (entry.getKey().startsWith(prefix))
+        m.store.entries.put(intern(entry.getKey().substring(prefix.length())),
+            entry.getValue());
+    return m;
+  }
+
+  @Override
+  public String getMetadata(String key) {
+    String[] values = this.store.entries.get(normalize(key));
+    return values != null ? values[0] : null;
+  }
+
+  @Override
+  public List<String> getAllMetadata(String key) {
+    String[] values = this.store.entries.get(normalize(key));
+    return values != null ? new Vector<String>(Arrays.asList(values)) : null;
+  }
+
+  @Override
+  public List<String> getKeys(String group) {
+    Vector<String> keys = new Vector<String>();
+    String prefix = group != null ? normalize(group) + "/" : "";
+    for (String key : this.store.entries.keySet())
+      if (key.startsWith(prefix) && key.indexOf('/', prefix.length()) == -1)
+        keys.add(key);
+    return keys;
+  }
+
+  @Override
+  public List<String> getKeys() {
+    return this.getKeys((String) null);
+  }
+
+  @Override
+  public List<String> getAllKeys(String group) {
+    if (group == null)
+      return this.getAllKeys();
+    Vector<String> keys = new Vector<String>();
+    String prefix = normalize(group) + "/";
+    for (String key : this.store.entries.keySet())
+      if (key.startsWith(prefix))
+        keys.add(key);
+    return keys;
+  }
+
+  @Override
+  public List<String> getAllKeys() {
+    return new Vector<String>(this.store.entries.keySet());
+  }
+
+  @Override
+  public List<String> getAllKeysWithName(String name) {
+    Vector<String> keys = new Vector<String>();
+    for (String key : this.store.entries.keySet())
+      if (key.endsWith(name)
+          && (key.length() == name.length() || key.charAt(key.length()
+              - name.length() - 1) == '/'))
+        keys.add(key);
+    return keys;
+  }
+
+  @Override
+  public List<String> getAllValues() {
+    Vector<String> values = new Vector<String>();
+    for (String[] keyValues : this.store.entries.values())
+      values.addAll(Arrays.asList(keyValues));
+    return values;
+  }
+
+  @Override
+  public void replaceMetadata(Hashtable<String, Object> metadata) {
+    this.clear();
+    this.addMetadata(metadata);
+  }
+
+  @Override
+  public boolean containsGroup(String group) {
+    if (group == null)
+      return true;
+    String normalized = normalize(group);
+    return this.store.entries.containsKey(normalized)
+        || this.hasKeysUnder(normalized + "/");
+  }
+
+  @Override
+  public List<String> getGroups() {
+    return this.getGroups((String) null);
+  }
+
+  @Override
+  public List<String> getGroups(String group) {
+    String prefix = group != null ? normalize(group) + "/" : "";
+    LinkedHashSet<String> groupNames = new LinkedHashSet<String>();
+    for (String key : this.store.entries.keySet()) {
+      if (key.startsWith(prefix) && key.length() > prefix.length()) {
+        int end = key.indexOf('/', prefix.length());
+        groupNames.add(end == -1 ? key.substring(prefix.length()) : key
+            .substring(prefix.length(), end));
+      }
+    }
+    return new Vector<String>(groupNames);
+  }
+
+  @Override
+  public Hashtable<String, Object> getHashtable() {
+    Hashtable<String, Object> table = new Hashtable<String, Object>();
+    for (Entry<String, String[]> entry : this.store.entries.entrySet())
+      table.put(entry.getKey(), new Vector<String>(Arrays.asList(entry
+          .getValue())));
+    return table;
+  }
+
+  private void share(CompactMetadata other) {
+    other.store.shared = true;
+    this.store = other.store;
+  }
+
+  private void clear() {
+    this.store = new Store();
+  }
+
+  private void append(String key, String[] values) {
+    String[] curValues = this.store.entries.get(key);
+    if (curValues == null) {
+      this.put(key, values);
+    } else if (values.length > 0) {
+      String[] newValues = new String[curValues.length + values.length];
+      System.arraycopy(curValues, 0, newValues, 0, curValues.length);
+      System.arraycopy(values, 0, newValues, curValues.length, values.length);
+      this.mutableEntries().put(key, newValues);
+    }
+  }
+
+  private void put(String key, String[] values) {
+    if (values.length == 0) {
+      // a key without values doesn't exist
+      if (this.store.entries.containsKey(key))
+        this.mutableEntries().remove(key);
+    } else {
+      this.mutableEntries().put(intern(key), values);
+    }
+  }
+
+  private boolean hasKeysUnder(String prefix) {
+    for (String key : this.store.entries.keySet())
+      if (key.startsWith(prefix))
+        return true;
+    return false;
+  }
+
+  private Map<String, String[]> mutableEntries() {
+    if (this.store.shared)
+      this.store = new Store(this.store.entries);
+    return this.store.entries;
+  }
+
+  private static String intern(String key) {
+    return key.intern();
+  }
+
+  /*
+   * Keys are paths, so "/Group1//key" names the same key as "Group1/key".
+   */
+  private static String normalize(String key) {
+    if (key == null)
+      return "";
+    if (key.length() > 0 && key.charAt(0) != '/'
+        && key.charAt(key.length() - 1) != '/' && key.indexOf("//") == -1)
+      return key;
+    StringBuilder normalized = new StringBuilder(key.length());
+    StringTokenizer tokenizer = new StringTokenizer(key, "/");
+    while (tokenizer.hasMoreTokens()) {
+      if (normalized.length() > 0)
+        normalized.append('/');
+      normalized.append(tokenizer.nextToken());
+    }
+    return normalized.toString();
+  }
+
+  /*
+   * The entries of a CompactMetadata, possibly shared with copies of it. Once
+   * shared, the entries are never changed again.
+   */
+  private static final class Store {
+
+    private final LinkedHashMap<String, String[]> entries;
+
+    private volatile boolean shared;
+
+    private Store() {
+      this.entries = new LinkedHashMap<String, String[]>();
+    }
+
+    private Store(Map<String, String[]> entries) {
+      this.entries = new LinkedHashMap<String, String[]>(entries);
+    }
+
+  }
+
+}
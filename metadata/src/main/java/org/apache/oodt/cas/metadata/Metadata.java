@@ -18,6 +18,7 @@ package org.apache.oodt.cas.metadata;
 //JDK imports
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
@@ -562,7 +563,8 @@ public class Metadata {
   public boolean equals(Object obj) {
     if (obj instanceof Metadata) {
       Metadata compMet = (Metadata) obj;
-      if (this.getKeys().equals(compMet.getKeys())) {
+      if (new HashSet<String>(this.getKeys()).equals(new HashSet<String>(
+          compMet.getKeys()))) {
         for (String key : this.getKeys())
           if (!this.getAllMetadata(key).equals(compMet.getAllMetadata(key)))
             return false;
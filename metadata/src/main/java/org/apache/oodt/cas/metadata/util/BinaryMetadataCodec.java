@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.metadata.util;
+
+//OODT imports
+import org.apache.oodt.cas.metadata.Metadata;
+import org.apache.oodt.commons.rpc.BinaryCodec;
+
+//JDK imports
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Encodes {@link Metadata} for binary RPC calls (see
+ * {@link org.apache.oodt.commons.rpc.BinaryRpcServer}): the number of keys,
+ * then each full key path followed by its values, all length-prefixed by
+ * {@link BinaryCodec}. Decoding gives the same {@link Metadata} that
+ * {@link Metadata#addMetadata(java.util.Hashtable)} would have built from
+ * its XML-RPC form.
+ * </p>
+ */
+public final class BinaryMetadataCodec {
+
+    private BinaryMetadataCodec() throws InstantiationException {
+        throw new InstantiationException(
+                "Don't instantiate BinaryMetadataCodecs!");
+    }
+
+    /**
+     * @param out
+     *            Where to encode the metadata.
+     * @param metadata
+     *            The metadata to encode, may be null.
+     * @throws IOException
+     *             If the metadata can't be written.
+     */
+    public static void writeMetadata(DataOutput out, Metadata metadata)
+            throws IOException {
+        if (metadata == null) {
+            out.writeInt(-1);
+            return;
+        }
+        List<String> keys = metadata.getAllKeys();
+        out.writeInt(keys.size());
+        for (String key : keys) {
+            BinaryCodec.writeString(out, key);
+            BinaryCodec.writeStringList(out, metadata.getAllMetadata(key));
+        }
+    }
+
+    /**
+     * @param in
+     *            Where to decode the metadata from.
+     * @return The decoded metadata, or null if null was encoded.
+     * @throws IOException
+     *             If the metadata can't be read.
+     */
+    public static Metadata readMetadata(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Metadata metadata = new Metadata();
+        for (int i = 0; i < size; i++) {
+            String key = BinaryCodec.readString(in);
+            metadata.addMetadata(key, BinaryCodec.readStringList(in));
+        }
+        return metadata;
+    }
+
+}
@@ -0,0 +1,159 @@
+// Licensed to the Apache Software Foundation (ASF) under one or more contributor
+// license agreements.  See the NOTICE.txt file distributed with this work for
+// additional information regarding copyright ownership.  The ASF licenses this
+// file to you under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy of
+// the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+// WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+// License for the specific language governing permissions and limitations under
+// the License.
+package org.apache.oodt.cas.metadata;
+
+/**
+ * Compares {@link Metadata} and {@link CompactMetadata} on the operations the
+ * crawler, file manager and workflow manager use most, and on the heap each
+ * needs to hold copies of the same metadata. Not run as part of the test
+ * suite; run it by hand with:
+ * 
+ * <pre>
+ * java org.apache.oodt.cas.metadata.MetadataBenchmark [numKeys] [numCopies]
+ * </pre>
+ * 
+ * 
+ */
+public class MetadataBenchmark {
+
+  private static final int WARMUP_ROUNDS = 3;
+
+  private static final int ROUNDS = 5;
+
+  private static volatile Object sink;
+
+  private interface Factory {
+    Metadata create();
+
+    Metadata copy(Metadata metadata);
+  }
+
+  private static final Factory TREE = new Factory() {
+    public Metadata create() {
+      return new Metadata();
+    }
+
+    public Metadata copy(Metadata metadata) {
+      return new Metadata(metadata);
+    }
+
+    public String toString() {
+      return "Metadata";
+    }
+  };
+
+  private static final Factory COMPACT = new Factory() {
+    public Metadata create() {
+      return new CompactMetadata();
+    }
+
+    public Metadata copy(Metadata metadata) {
+      return new CompactMetadata(metadata);
+    }
+
+    public String toString() {
+      return "CompactMetadata";
+    }
+  };
+
+  public static void main(String[] args) {
+    int numKeys = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+    int numCopies = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+    for (Factory factory : new Factory[] { TREE, COMPACT }) {
+      Metadata metadata = populate(factory.create(), numKeys);
+      System.out.println(factory + " (" + numKeys + " keys)");
+      time("  build", factory, metadata, numKeys, numCopies);
+      time("  copy", factory, metadata, numKeys, numCopies);
+      time("  copy + change", factory, metadata, numKeys, numCopies);
+      time("  getAllKeys", factory, metadata, numKeys, numCopies);
+      time("  getHashtable", factory, metadata, numKeys, numCopies);
+      time("  getMetadata", factory, metadata, numKeys, numCopies);
+      footprint(factory, metadata, numKeys, numCopies);
+    }
+  }
+
+  private static Metadata populate(Metadata metadata, int numKeys) {
+    for (int i = 0; i < numKeys; i++) {
+      String key = (i % 3 == 0 ? "Group" + (i % 5) + "/" : "") + "Key" + i;
+      metadata.addMetadata(key, "value" + i);
+      if (i % 4 == 0)
+        metadata.addMetadata(key, "other" + i);
+    }
+    return metadata;
+  }
+
+  private static void time(String name, Factory factory, Metadata metadata,
+      int numKeys, int iterations) {
+    long best = Long.MAX_VALUE;
+    for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++)
+        sink = run(name, factory, metadata, numKeys);
+      long elapsed = System.nanoTime() - start;
+      if (round >= WARMUP_ROUNDS)
+        best = Math.min(best, elapsed);
+    }
+    System.out.println(name + ": " + (best / iterations) + " ns/op");
+  }
+
+  private static Object run(String name, Factory factory, Metadata metadata,
+      int numKeys) {
+    if (name.endsWith("build")) {
+      return populate(factory.create(), numKeys);
+    } else if (name.endsWith("copy")) {
+      return factory.copy(metadata);
+    } else if (name.endsWith("copy + change")) {
+      Metadata copy = factory.copy(metadata);
+      copy.replaceMetadata("Key1", "changed");
+      return copy;
+    } else if (name.endsWith("getAllKeys")) {
+      return metadata.getAllKeys();
+    } else if (name.endsWith("getHashtable")) {
+      return metadata.getHashtable();
+    } else {
+      String value = null;
+      for (int i = 0; i < numKeys; i += 7)
+        value = metadata.getMetadata("Key" + i);
+      return value;
+    }
+  }
+
+  private static void footprint(Factory factory, Metadata metadata,
+      int numKeys, int numCopies) {
+    Metadata[] built = new Metadata[numCopies];
+    long before = usedMemory();
+    for (int i = 0; i < numCopies; i++)
+      built[i] = populate(factory.create(), numKeys);
+    long afterBuilt = usedMemory();
+    Metadata[] copies = new Metadata[numCopies];
+    for (int i = 0; i < numCopies; i++)
+      copies[i] = factory.copy(metadata);
+    long afterCopies = usedMemory();
+    System.out.println("  heap per instance: "
+        + ((afterBuilt - before) / numCopies) + " bytes built, "
+        + ((afterCopies - afterBuilt) / numCopies) + " bytes copied");
+    sink = built;
+    sink = copies;
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; i++)
+      System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+}
@@ -0,0 +1,137 @@
+// Licensed to the Apache Software Foundation (ASF) under one or more contributor
+// license agreements.  See the NOTICE.txt file distributed with this work for
+// additional information regarding copyright ownership.  The ASF licenses this
+// file to you under the Apache License, Version 2.0 (the "License"); you may not
+// use this file except in compliance with the License.  You may obtain a copy of
+// the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+// WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+// License for the specific language governing permissions and limitations under
+// the License.
+package org.apache.oodt.cas.metadata;
+
+//JUnit imports
+import junit.framework.TestCase;
+
+//JDK imports
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Test Case Suite for the CompactMetadata class.
+ * 
+ * 
+ */
+public class TestCompactMetadata extends TestCase {
+
+  public void testAddAndReplace() {
+    Metadata metadata = new CompactMetadata();
+    List<String> counting = new Vector<String>();
+    counting.add("1");
+    counting.add("2");
+    metadata.addMetadata("ManyTest", counting);
+    metadata.addMetadata("ManyTest", "3");
+    assertTrue(metadata.isMultiValued("ManyTest"));
+    assertEquals("1", metadata.getMetadata("ManyTest"));
+    assertEquals(3, metadata.getAllMetadata("ManyTest").size());
+    assertEquals("3", metadata.getAllMetadata("ManyTest").get(2));
+
+    metadata.replaceMetadata("ManyTest", "4");
+    assertFalse(metadata.isMultiValued("ManyTest"));
+    assertEquals("4", metadata.getMetadata("ManyTest"));
+
+    metadata.replaceMetadata("ManyTest", new Vector<String>());
+    assertFalse(metadata.containsKey("ManyTest"));
+    assertNull(metadata.getMetadata("ManyTest"));
+    assertNull(metadata.getAllMetadata("ManyTest"));
+  }
+
+  public void testGroups() {
+    Metadata metadata = new CompactMetadata();
+    metadata.addMetadata("Group1/key1", "val1");
+    metadata.addMetadata("/Group1//key2/", "val2");
+    metadata.addMetadata("Group2/key2", "val3");
+    metadata.addMetadata("Group2/key2/key3", "val4");
+    metadata.addMetadata("Group1/sub1/key2", "val5");
+    metadata.addMetadata("key4", "val6");
+
+    assertEquals("val2", metadata.getMetadata("Group1/key2"));
+    assertEquals(1, metadata.getKeys().size());
+    assertEquals("key4", metadata.getKeys().get(0));
+    assertEquals(2, metadata.getKeys("Group1").size());
+    assertEquals(3, metadata.getAllKeys("Group1").size());
+    assertEquals(6, metadata.getAllKeys().size());
+    assertEquals(3, metadata.getAllKeysWithName("key2").size());
+    assertEquals(3, metadata.getGroups().size());
+    assertTrue(metadata.getGroups("Group1").contains("sub1"));
+    assertTrue(metadata.containsGroup("Group1/sub1"));
+    assertFalse(metadata.containsGroup("Group3"));
+
+    Metadata sub = metadata.getSubMetadata("Group1");
+    assertEquals(3, sub.getAllKeys().size());
+    assertEquals("val5", sub.getMetadata("sub1/key2"));
+
+    metadata.removeMetadataGroup("Group2");
+    assertFalse(metadata.containsKey("Group2/key2"));
+    assertFalse(metadata.containsKey("Group2/key2/key3"));
+    metadata.removeMetadata("Group1/key1");
+    assertFalse(metadata.containsKey("Group1/key1"));
+    assertEquals(3, metadata.getAllKeys().size());
+  }
+
+  public void testCopyOnWrite() {
+    CompactMetadata original = new CompactMetadata();
+    original.addMetadata("key1", "val1");
+    original.addMetadata("Group/key2", "val2");
+
+    Metadata copy = new CompactMetadata(original);
+    Metadata copyOfCopy = new CompactMetadata(copy);
+    assertEquals(original, copy);
+
+    copy.addMetadata("key1", "val3");
+    copy.replaceMetadata("Group/key2", "val4");
+    assertEquals(1, original.getAllMetadata("key1").size());
+    assertEquals("val2", original.getMetadata("Group/key2"));
+    assertEquals(1, copyOfCopy.getAllMetadata("key1").size());
+    assertEquals(2, copy.getAllMetadata("key1").size());
+
+    original.removeMetadata("key1");
+    assertTrue(copyOfCopy.containsKey("key1"));
+    assertTrue(copy.containsKey("key1"));
+
+    // returned value lists are copies too
+    copyOfCopy.getAllMetadata("key1").add("val5");
+    assertEquals(1, copyOfCopy.getAllMetadata("key1").size());
+
+    copyOfCopy.addMetadata(copyOfCopy);
+    assertEquals(2, copyOfCopy.getAllMetadata("key1").size());
+  }
+
+  public void testSameAsMetadata() {
+    Metadata metadata = new Metadata();
+    metadata.addMetadata("key1", "val1");
+    metadata.addMetadata("key2", "val2");
+    metadata.addMetadata("key2", "val3");
+    metadata.addMetadata("Group/key3", "val4");
+
+    Metadata compact = new CompactMetadata(metadata);
+    assertEquals(metadata, compact);
+    assertEquals(compact, metadata);
+    assertEquals(metadata, new Metadata(compact));
+    assertEquals(metadata.getHashtable(), compact.getHashtable());
+    assertEquals(metadata.getAllValues().size(), compact.getAllValues()
+        .size());
+
+    Hashtable<String, Object> table = new Hashtable<String, Object>();
+    table.put("key5", "val5");
+    compact.replaceMetadata(table);
+    assertEquals(1, compact.getAllKeys().size());
+    assertEquals("val5", compact.getMetadata("key5"));
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.metadata.util;
+
+//JDK imports
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+//OODT imports
+import org.apache.oodt.cas.metadata.CompactMetadata;
+import org.apache.oodt.cas.metadata.Metadata;
+
+//Junit imports
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Test Case Suite for the BinaryMetadataCodec class.
+ * </p>
+ * 
+ */
+public class TestBinaryMetadataCodec extends TestCase {
+
+    public void testRoundTrip() throws IOException {
+        Metadata metadata = new Metadata();
+        metadata.addMetadata("Filename", "data.dat");
+        metadata.addMetadata("ProductType", Arrays.asList("GenericFile",
+                "OtherFile"));
+        metadata.addMetadata("Group1/sub1/key", "value");
+        metadata.addMetadata("Group1/key", "");
+
+        Metadata decoded = roundTrip(metadata);
+        assertEquals(metadata.getHashtable(), decoded.getHashtable());
+        assertEquals("value", decoded.getMetadata("Group1/sub1/key"));
+        assertEquals(Arrays.asList("GenericFile", "OtherFile"), decoded
+                .getAllMetadata("ProductType"));
+    }
+
+    public void testCompactMetadata() throws IOException {
+        CompactMetadata metadata = new CompactMetadata();
+        metadata.addMetadata("Group1/key", "value1");
+        metadata.addMetadata("Group1/key", "value2");
+        assertEquals(metadata.getHashtable(), roundTrip(metadata)
+                .getHashtable());
+    }
+
+    public void testNullAndEmpty() throws IOException {
+        assertNull(roundTrip(null));
+        assertTrue(roundTrip(new Metadata()).getAllKeys().isEmpty());
+    }
+
+    private static Metadata roundTrip(Metadata metadata) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryMetadataCodec.writeMetadata(new DataOutputStream(bytes),
+                metadata);
+        return BinaryMetadataCodec.readMetadata(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+}
@@ -64,7 +64,7 @@ public class FileStagingInfo {
    }
 
    public void addProductIds(List<String> productIds) {
-      productIds.addAll(productIds);
+      this.productIds.addAll(productIds);
    }
 
    public List<String> getProductIds() {
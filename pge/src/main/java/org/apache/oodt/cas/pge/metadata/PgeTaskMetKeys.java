@@ -100,6 +100,27 @@ public enum PgeTaskMetKeys {
    QUERY_CLIENT_TRANSFER_SERVICE_FACTORY(
          "PGETask/Query/ClientTransferServiceFactory",
          "PCS_ClientTransferServiceFactory"),
+   /**
+    * Number of files CAS-PGE stages at once (default 4).
+    */
+   STAGING_THREADS(
+         "PGETask/Query/StagingThreads",
+         "PGETask_StagingThreads"),
+   /**
+    * Node local directory in which staged product files are cached, so that
+    * later PGEs on the same node don't transfer them again. If not set, no
+    * files are cached.
+    */
+   STAGE_CACHE_DIR(
+         "PGETask/Query/StageCacheDir",
+         "PGETask_StageCacheDir"),
+   /**
+    * Most megabytes the {@link #STAGE_CACHE_DIR} may hold, the least recently
+    * used files being removed first. If not set, the cache isn't trimmed.
+    */
+   STAGE_CACHE_MAX_SIZE_MB(
+         "PGETask/Query/StageCacheMaxSizeMB",
+         "PGETask_StageCacheMaxSizeMB"),
    /**
     * The {@link DataTransferFactory} used for product ingestion.
     */
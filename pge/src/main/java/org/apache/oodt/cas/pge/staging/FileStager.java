@@ -18,6 +18,9 @@ package org.apache.oodt.cas.pge.staging;
 
 //OODT static imports
 import static org.apache.oodt.cas.pge.metadata.PgeTaskMetKeys.QUERY_FILE_MANAGER_URL;
+import static org.apache.oodt.cas.pge.metadata.PgeTaskMetKeys.STAGE_CACHE_DIR;
+import static org.apache.oodt.cas.pge.metadata.PgeTaskMetKeys.STAGE_CACHE_MAX_SIZE_MB;
+import static org.apache.oodt.cas.pge.metadata.PgeTaskMetKeys.STAGING_THREADS;
 
 //JDK imports
 import java.io.File;
@@ -25,10 +28,17 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 //OODT imports
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.oodt.cas.filemgr.structs.Product;
 import org.apache.oodt.cas.filemgr.structs.Reference;
@@ -40,48 +50,210 @@ import org.apache.oodt.cas.pge.metadata.PgeMetadata;
 //Google imports
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * Responsible for transferring Product files to a directory accessible by
  * by CAS-PGE.
+ * <p>
+ * Up to [PGETask/Query/StagingThreads] (default 4) files are staged at once,
+ * so {@link #stageFile(URI, File, PgeMetadata, Logger)} must be safe to call
+ * from several threads. The references of all the products to stage are
+ * looked up in one call to the File Manager. Files that would land under the
+ * same name in the staging directory are staged one after another rather
+ * than at once. If [PGETask/Query/StageCacheDir] is set, product files are
+ * staged through a {@link StageCache} shared by the PGEs on the node.
+ * Cached files are found again by product ID, URI and size (and modification
+ * time, for local files), so archived product files must not be changed in
+ * place.
  *
  * @author bfoster (Brian Foster)
  */
 public abstract class FileStager {
 
+   private static final int DEFAULT_STAGING_THREADS = 4;
+
    public void stageFiles(FileStagingInfo fileStagingInfo,
-         PgeMetadata pgeMetadata, Logger logger) throws Exception {
+         final PgeMetadata pgeMetadata, final Logger logger) throws Exception {
       logger.log(Level.INFO, "Creating staging directory ["
             + fileStagingInfo.getStagingDir() + "]");
-      new File(fileStagingInfo.getStagingDir()).mkdirs();
-      for (String file : fileStagingInfo.getFilePaths()) {
+      final File stagingDir = new File(fileStagingInfo.getStagingDir());
+      stagingDir.mkdirs();
+      Map<String, List<Callable<Void>>> stagings = Maps.newLinkedHashMap();
+      for (final String file : fileStagingInfo.getFilePaths()) {
          File fileHandle = new File(file);
          if (fileStagingInfo.isForceStaging() || !fileHandle.exists()) {
-            logger.log(Level.INFO, "Staging file [" + file
-                  + "] to directory ["
-                  + fileStagingInfo.getStagingDir() + "]");
-            stageFile(asURI(file), new File(fileStagingInfo.getStagingDir()),
-                  pgeMetadata, logger);
+            final URI uri = asURI(file);
+            addStaging(stagings, uri, new Callable<Void>() {
+               public Void call() throws Exception {
+                  logger.log(Level.INFO, "Staging file [" + file
+                        + "] to directory [" + stagingDir + "]");
+                  stageFile(uri, stagingDir, pgeMetadata, logger);
+                  return null;
+               }
+            });
          }
       }
+      final StageCache stageCache = createStageCache(pgeMetadata, logger);
       if (!fileStagingInfo.getProductIds().isEmpty()) {
          XmlRpcFileManagerClient fmClient = createFileManagerClient(pgeMetadata);
-         for (String productId : fileStagingInfo.getProductIds()) {
-            logger.log(Level.INFO, "Staging product [" + productId
-                  + "] to directory ["
-                  + fileStagingInfo.getStagingDir() + "]");
-            for (URI uri : getProductReferences(productId, fmClient)) {
-               logger.log(Level.INFO, "Staging product [" + productId
-                     + "] reference [" + uri
-                     + "] to directory ["
-                     + fileStagingInfo.getStagingDir() + "]");
-               stageFile(uri, new File(fileStagingInfo.getStagingDir()),
-                     pgeMetadata, logger);
+         List<String> productIds = fileStagingInfo.getProductIds();
+         List<List<Reference>> references = getProductReferences(productIds,
+               fmClient, logger);
+         for (int i = 0; i < productIds.size(); i++) {
+            final String productId = productIds.get(i);
+            for (final Reference reference : references.get(i)) {
+               final URI uri = new URI(reference.getDataStoreReference());
+               addStaging(stagings, uri, new Callable<Void>() {
+                  public Void call() throws Exception {
+                     logger.log(Level.INFO, "Staging product [" + productId
+                           + "] reference [" + uri + "] to directory ["
+                           + stagingDir + "]");
+                     stageFile(productId, uri, reference.getFileSize(),
+                           stagingDir, stageCache, pgeMetadata, logger);
+                     return null;
+                  }
+               });
+            }
+         }
+      }
+      runStagings(serializeCollisions(stagings, logger),
+            getStagingThreads(pgeMetadata));
+      if (stageCache != null) {
+         stageCache.trim();
+      }
+   }
+
+   private static void addStaging(Map<String, List<Callable<Void>>> stagings,
+         URI uri, Callable<Void> staging) {
+      String name = new File(uri.getPath()).getName();
+      List<Callable<Void>> sameName = stagings.get(name);
+      if (sameName == null) {
+         sameName = Lists.newArrayList();
+         stagings.put(name, sameName);
+      }
+      sameName.add(staging);
+   }
+
+   /*
+    * Turns the stagings of files with the same name into a single staging that
+    * runs them in turn, so they never write the same file at once.
+    */
+   @VisibleForTesting
+   static List<Callable<Void>> serializeCollisions(
+         Map<String, List<Callable<Void>>> stagings, Logger logger) {
+      List<Callable<Void>> serialized = Lists.newArrayList();
+      for (Map.Entry<String, List<Callable<Void>>> entry : stagings.entrySet()) {
+         final List<Callable<Void>> sameName = entry.getValue();
+         if (sameName.size() == 1) {
+            serialized.add(sameName.get(0));
+            continue;
+         }
+         logger.log(Level.WARNING, sameName.size() + " files named ["
+               + entry.getKey() + "] are staged to the same directory: "
+               + "staging them one at a time, the last one staged wins");
+         serialized.add(new Callable<Void>() {
+            public Void call() throws Exception {
+               for (Callable<Void> staging : sameName) {
+                  staging.call();
+               }
+               return null;
+            }
+         });
+      }
+      return serialized;
+   }
+
+   @VisibleForTesting
+   void stageFile(String productId, URI uri, long size, File destDir,
+         StageCache stageCache, PgeMetadata pgeMetadata, Logger logger)
+         throws Exception {
+      if (stageCache == null) {
+         stageFile(uri, destDir, pgeMetadata, logger);
+         return;
+      }
+      String key = getCacheKey(productId, uri, size);
+      File cachedFile = stageCache.fetch(key, size, destDir);
+      if (cachedFile != null) {
+         logger.log(Level.INFO, "Staged [" + uri + "] from stage cache to ["
+               + cachedFile + "]");
+         return;
+      }
+      File cacheStagingDir = stageCache.createStagingDir();
+      try {
+         stageFile(uri, cacheStagingDir, pgeMetadata, logger);
+         stageCache.store(key, cacheStagingDir, destDir);
+      } finally {
+         FileUtils.deleteQuietly(cacheStagingDir);
+      }
+   }
+
+   /*
+    * Identifies the file behind a product reference: a product ingested again
+    * under the same URI gets a new ID, and a local file rewritten in place a
+    * new modification time.
+    */
+   @VisibleForTesting
+   static String getCacheKey(String productId, URI uri, long size) {
+      StringBuilder key = new StringBuilder();
+      key.append(productId).append(" ").append(uri).append(" ").append(size);
+      if ("file".equals(uri.getScheme())) {
+         File file = new File(uri.getPath());
+         if (file.exists()) {
+            key.append(" ").append(file.lastModified());
+         }
+      }
+      return key.toString();
+   }
+
+   @VisibleForTesting
+   static void runStagings(List<Callable<Void>> stagings, int threads)
+         throws Exception {
+      if (stagings.isEmpty()) {
+         return;
+      }
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+            Math.min(threads, stagings.size())));
+      try {
+         List<Future<Void>> futures = Lists.newArrayList();
+         for (Callable<Void> staging : stagings) {
+            futures.add(executor.submit(staging));
+         }
+         for (Future<Void> future : futures) {
+            try {
+               future.get();
+            } catch (ExecutionException e) {
+               if (e.getCause() instanceof Exception) {
+                  throw (Exception) e.getCause();
+               }
+               throw e;
             }
          }
+      } finally {
+         executor.shutdownNow();
       }
    }
 
+   @VisibleForTesting
+   static int getStagingThreads(PgeMetadata pgeMetadata) {
+      String threads = pgeMetadata.getMetadata(STAGING_THREADS);
+      return threads != null ? Integer.parseInt(threads)
+            : DEFAULT_STAGING_THREADS;
+   }
+
+   @VisibleForTesting
+   static StageCache createStageCache(PgeMetadata pgeMetadata, Logger logger)
+         throws Exception {
+      String cacheDir = pgeMetadata.getMetadata(STAGE_CACHE_DIR);
+      if (cacheDir == null) {
+         return null;
+      }
+      String maxSizeMB = pgeMetadata.getMetadata(STAGE_CACHE_MAX_SIZE_MB);
+      logger.log(Level.INFO, "Using stage cache [" + cacheDir + "]");
+      return new StageCache(new File(cacheDir), maxSizeMB != null ? Long
+            .parseLong(maxSizeMB) * 1024 * 1024 : 0);
+   }
+
    @VisibleForTesting
    static XmlRpcFileManagerClient createFileManagerClient(PgeMetadata pgeMetadata)
          throws Exception {
@@ -94,17 +266,23 @@ public abstract class FileStager {
    }
 
    @VisibleForTesting
-   static List<URI> getProductReferences(
-         String productId, XmlRpcFileManagerClient fmClient)
-         throws URISyntaxException, CatalogException {
-      List<URI> files = Lists.newArrayList();
-      Product product = new Product();
-      product.setProductId(productId);
-      List<Reference> refs = fmClient.getProductReferences(product);
-      for (Reference ref : refs) {
-         files.add(new URI(ref.getDataStoreReference()));
-      }
-      return files;
+   static List<List<Reference>> getProductReferences(List<String> productIds,
+         XmlRpcFileManagerClient fmClient, Logger logger)
+         throws CatalogException {
+      try {
+         return fmClient.getProductReferencesByIds(productIds);
+      } catch (CatalogException e) {
+         logger.log(Level.WARNING, "Failed to look up product references in "
+               + "one call, looking them up one product at a time : "
+               + e.getMessage());
+      }
+      List<List<Reference>> references = Lists.newArrayList();
+      for (String productId : productIds) {
+         Product product = new Product();
+         product.setProductId(productId);
+         references.add(fmClient.getProductReferences(product));
+      }
+      return references;
    }
 
    @VisibleForTesting
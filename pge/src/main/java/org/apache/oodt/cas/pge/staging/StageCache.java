@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.pge.staging;
+
+//JDK imports
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+
+//Apache imports
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A node local, content addressed cache of staged files, shared by the PGEs
+ * running on a node. Each file is stored once, named by the SHA-1 digest of
+ * its contents, and every source it was staged from points at that digest.
+ * Files only enter the cache by being renamed into it, so any number of PGEs
+ * may use the same cache at once. A key is trusted to name the same contents
+ * for as long as it is cached, so it must change whenever the source does.
+ */
+public class StageCache {
+
+   private static final long STALE_STAGING_DIR_MILLIS = 24 * 60 * 60 * 1000L;
+
+   private final File objectsDir;
+   private final File refsDir;
+   private final File stagingDir;
+   private final long maxSize;
+
+   /**
+    * @param cacheDir
+    *           The directory holding the cache
+    * @param maxSize
+    *           Most bytes the cache may hold, or 0 for no limit
+    */
+   public StageCache(File cacheDir, long maxSize) throws IOException {
+      objectsDir = new File(cacheDir, "objects");
+      refsDir = new File(cacheDir, "refs");
+      stagingDir = new File(cacheDir, "staging");
+      for (File dir : new File[] { objectsDir, refsDir, stagingDir }) {
+         if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create stage cache directory ["
+                  + dir + "]");
+         }
+      }
+      this.maxSize = maxSize;
+   }
+
+   /**
+    * Copies the file cached for the given source into the given directory.
+    *
+    * @param key
+    *           Identifies the source the file is staged from, and must change
+    *           if its contents do
+    * @param size
+    *           The size of the file, if known, otherwise 0
+    * @param destDir
+    *           The directory to copy the file into
+    * @return The copied file, or null if nothing is cached for the source
+    */
+   public File fetch(String key, long size, File destDir) throws IOException {
+      File ref = getRefFile(key);
+      String[] digestAndName;
+      try {
+         digestAndName = FileUtils.readFileToString(ref, "UTF-8").split("\n");
+      } catch (FileNotFoundException e) {
+         return null;
+      }
+      File object = new File(objectsDir, digestAndName[0]);
+      if (digestAndName.length != 2 || !object.isFile()
+            || (size > 0 && object.length() != size)) {
+         ref.delete();
+         return null;
+      }
+      object.setLastModified(System.currentTimeMillis());
+      File file = new File(destDir, digestAndName[1]);
+      try {
+         FileUtils.copyFile(object, file);
+      } catch (FileNotFoundException e) {
+         // trimmed by another PGE since
+         return null;
+      }
+      return file;
+   }
+
+   /**
+    * @return A new, empty directory to stage a file into before it is cached
+    */
+   public File createStagingDir() throws IOException {
+      File dir = new File(stagingDir, UUID.randomUUID().toString());
+      if (!dir.mkdirs()) {
+         throw new IOException("Failed to create directory [" + dir + "]");
+      }
+      return dir;
+   }
+
+   /**
+    * Moves what was staged into a directory from {@link #createStagingDir()}
+    * into the given directory, caching it for the given source if it is a
+    * single file.
+    *
+    * @param key
+    *           Identifies the source the file was staged from
+    * @param staged
+    *           The directory the source was staged into
+    * @param destDir
+    *           The directory to move the staged files into
+    */
+   public void store(String key, File staged, File destDir) throws IOException {
+      File[] files = staged.listFiles();
+      if (files == null || files.length != 1 || !files[0].isFile()) {
+         for (File file : files == null ? new File[0] : files) {
+            FileUtils.deleteQuietly(new File(destDir, file.getName()));
+            FileUtils.moveToDirectory(file, destDir, true);
+         }
+         return;
+      }
+
+      File file = files[0];
+      String digest = digest(file);
+      FileUtils.copyFile(file, new File(destDir, file.getName()));
+      File object = new File(objectsDir, digest);
+      if (!object.exists() && !file.renameTo(object) && !object.exists()) {
+         throw new IOException("Failed to move [" + file + "] to [" + object
+               + "]");
+      }
+      object.setLastModified(System.currentTimeMillis());
+
+      File ref = getRefFile(key);
+      File newRef = new File(staged, ref.getName());
+      FileUtils.writeStringToFile(newRef, digest + "\n" + file.getName(),
+            "UTF-8");
+      if (!newRef.renameTo(ref)) {
+         ref.delete();
+         newRef.renameTo(ref);
+      }
+   }
+
+   /**
+    * Removes the least recently used files until the cache is no bigger than
+    * its maximum size, along with staging directories left behind by PGEs
+    * that died.
+    */
+   public void trim() {
+      File[] dirs = stagingDir.listFiles();
+      for (File dir : dirs == null ? new File[0] : dirs) {
+         if (System.currentTimeMillis() - dir.lastModified() > STALE_STAGING_DIR_MILLIS) {
+            FileUtils.deleteQuietly(dir);
+         }
+      }
+
+      if (maxSize <= 0) {
+         return;
+      }
+      File[] objects = objectsDir.listFiles();
+      if (objects == null) {
+         return;
+      }
+      long size = 0;
+      final long[] lastUsed = new long[objects.length];
+      Integer[] order = new Integer[objects.length];
+      for (int i = 0; i < objects.length; i++) {
+         size += objects[i].length();
+         lastUsed[i] = objects[i].lastModified();
+         order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+         public int compare(Integer o1, Integer o2) {
+            return lastUsed[o1] < lastUsed[o2] ? -1
+                  : (lastUsed[o1] == lastUsed[o2] ? 0 : 1);
+         }
+      });
+      for (int i = 0; i < order.length && size > maxSize; i++) {
+         File object = objects[order[i]];
+         long length = object.length();
+         if (object.delete()) {
+            size -= length;
+         }
+      }
+   }
+
+   private File getRefFile(String key) throws IOException {
+      try {
+         MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+         return new File(refsDir, toHex(sha1.digest(key.getBytes("UTF-8"))));
+      } catch (NoSuchAlgorithmException e) {
+         throw new IOException(e.getMessage());
+      }
+   }
+
+   private static String digest(File file) throws IOException {
+      InputStream in = new FileInputStream(file);
+      try {
+         MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+         byte[] buffer = new byte[64 * 1024];
+         for (int read; (read = in.read(buffer)) != -1;) {
+            sha1.update(buffer, 0, read);
+         }
+         return toHex(sha1.digest());
+      } catch (NoSuchAlgorithmException e) {
+         throw new IOException(e.getMessage());
+      } finally {
+         IOUtils.closeQuietly(in);
+      }
+   }
+
+   private static String toHex(byte[] digest) {
+      return String.format("%040x", new BigInteger(1, digest));
+   }
+}
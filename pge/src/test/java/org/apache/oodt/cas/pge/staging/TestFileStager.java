@@ -28,6 +28,11 @@ import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+//Apache imports
+import org.apache.commons.io.FileUtils;
 
 //OODT imports
 import org.apache.oodt.cas.filemgr.structs.Product;
@@ -35,6 +40,7 @@ import org.apache.oodt.cas.filemgr.structs.Reference;
 import org.apache.oodt.cas.filemgr.structs.exceptions.CatalogException;
 import org.apache.oodt.cas.filemgr.system.XmlRpcFileManager;
 import org.apache.oodt.cas.filemgr.system.XmlRpcFileManagerClient;
+import org.apache.oodt.cas.pge.config.FileStagingInfo;
 import org.apache.oodt.cas.pge.metadata.PgeMetadata;
 import org.apache.oodt.cas.pge.metadata.PgeTaskMetKeys;
 
@@ -43,6 +49,7 @@ import org.easymock.IArgumentMatcher;
 
 //Google imports
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 //JUnit imports
 import junit.framework.TestCase;
@@ -54,6 +61,23 @@ import junit.framework.TestCase;
  */
 public class TestFileStager extends TestCase {
 
+   private static final Logger LOG = Logger.getLogger(TestFileStager.class
+         .getName());
+
+   private File tmpDir;
+
+   @Override
+   public void setUp() throws Exception {
+      tmpDir = File.createTempFile("filestager", "");
+      tmpDir.delete();
+      tmpDir.mkdirs();
+   }
+
+   @Override
+   public void tearDown() throws Exception {
+      FileUtils.deleteQuietly(tmpDir);
+   }
+
    public void testCreateFileManagerClient() throws Exception {
       // Test throws case.
       PgeMetadata pgeMetadata = createStrictMock(PgeMetadata.class);
@@ -85,30 +109,173 @@ public class TestFileStager extends TestCase {
       filemgr.shutdown();
    }
 
-   public void testGetProductReferences() throws CatalogException,
-         URISyntaxException {
-      String productId = "12345";
-
-      String uri1 = "file:///path/to/file1";
-      String uri2 = "file:///path/to/file2";
+   public void testGetProductReferences() throws CatalogException {
       Reference ref1 = new Reference();
-      ref1.setDataStoreReference(uri1);
+      ref1.setDataStoreReference("file:///path/to/file1");
       Reference ref2 = new Reference();
-      ref2.setDataStoreReference(uri2);
+      ref2.setDataStoreReference("file:///path/to/file2");
+      List<String> productIds = Lists.newArrayList("12345", "67890");
+      List<List<Reference>> references = Lists.newArrayList();
+      references.add(Lists.newArrayList(ref1, ref2));
+      references.add(Lists.<Reference>newArrayList());
 
+      // Test bulk lookup.
       XmlRpcFileManagerClient fmClient = createStrictMock(XmlRpcFileManagerClient.class);
-      expect(fmClient.getProductReferences(ProductIdMatcher.eqProductId(productId))).andReturn(
-            Lists.newArrayList(ref1, ref2));
+      expect(fmClient.getProductReferencesByIds(productIds)).andReturn(references);
       replay(fmClient);
 
-      List<URI> uris = FileStager.getProductReferences(productId, fmClient);
-      assertEquals(2, uris.size());
-      assertTrue(uris.contains(new URI("file:///path/to/file1")));
-      assertTrue(uris.contains(new URI("file:///path/to/file2")));
+      assertEquals(references, FileStager.getProductReferences(productIds,
+            fmClient, LOG));
+      verify(fmClient);
+
+      // Test fall back to a lookup per product.
+      fmClient = createStrictMock(XmlRpcFileManagerClient.class);
+      expect(fmClient.getProductReferencesByIds(productIds)).andThrow(
+            new CatalogException("No such handler"));
+      expect(fmClient.getProductReferences(ProductIdMatcher.eqProductId("12345")))
+            .andReturn(Lists.newArrayList(ref1, ref2));
+      expect(fmClient.getProductReferences(ProductIdMatcher.eqProductId("67890")))
+            .andReturn(Lists.<Reference>newArrayList());
+      replay(fmClient);
 
+      assertEquals(references, FileStager.getProductReferences(productIds,
+            fmClient, LOG));
       verify(fmClient);
    }
 
+   public void testStageFilesInParallel() throws Exception {
+      final AtomicInteger staging = new AtomicInteger();
+      final AtomicInteger maxStaging = new AtomicInteger();
+      FileStager fileStager = new FileStager() {
+         @Override
+         protected void stageFile(URI stageFile, File destDir,
+               PgeMetadata pgeMetadata, Logger logger) throws Exception {
+            int current = staging.incrementAndGet();
+            synchronized (maxStaging) {
+               maxStaging.set(Math.max(maxStaging.get(), current));
+            }
+            Thread.sleep(100);
+            staging.decrementAndGet();
+         }
+      };
+      FileStagingInfo fileStagingInfo = new FileStagingInfo(tmpDir
+            .getAbsolutePath());
+      for (int i = 0; i < 12; i++) {
+         fileStagingInfo.addFilePath("/does/not/exist/file" + i);
+      }
+      PgeMetadata pgeMetadata = new PgeMetadata();
+      pgeMetadata.replaceMetadata(PgeTaskMetKeys.STAGING_THREADS, "3");
+
+      fileStager.stageFiles(fileStagingInfo, pgeMetadata, LOG);
+      assertEquals(3, maxStaging.get());
+   }
+
+   public void testStagingFailure() throws Exception {
+      FileStager fileStager = new FileStager() {
+         @Override
+         protected void stageFile(URI stageFile, File destDir,
+               PgeMetadata pgeMetadata, Logger logger) throws Exception {
+            throw new Exception("Failed to stage [" + stageFile + "]");
+         }
+      };
+      FileStagingInfo fileStagingInfo = new FileStagingInfo(tmpDir
+            .getAbsolutePath());
+      fileStagingInfo.addFilePath("/does/not/exist/file");
+      try {
+         fileStager.stageFiles(fileStagingInfo, new PgeMetadata(), LOG);
+         fail("Should have thrown Exception");
+      } catch (Exception e) {
+         assertEquals("Failed to stage [file:///does/not/exist/file]", e
+               .getMessage());
+      }
+   }
+
+   public void testStageThroughCache() throws Exception {
+      final AtomicInteger transfers = new AtomicInteger();
+      FileStager fileStager = new FileStager() {
+         @Override
+         protected void stageFile(URI stageFile, File destDir,
+               PgeMetadata pgeMetadata, Logger logger) throws Exception {
+            transfers.incrementAndGet();
+            FileUtils.writeStringToFile(new File(destDir, new File(stageFile
+                  .getPath()).getName()), "data");
+         }
+      };
+      PgeMetadata pgeMetadata = new PgeMetadata();
+      pgeMetadata.replaceMetadata(PgeTaskMetKeys.STAGE_CACHE_DIR, new File(
+            tmpDir, "cache").getAbsolutePath());
+      StageCache stageCache = FileStager.createStageCache(pgeMetadata, LOG);
+      URI uri = new URI("file:///archive/data.dat");
+      File pge1Dir = new File(tmpDir, "pge1");
+      File pge2Dir = new File(tmpDir, "pge2");
+
+      fileStager.stageFile("1", uri, 4, pge1Dir, stageCache, pgeMetadata, LOG);
+      fileStager.stageFile("1", uri, 4, pge2Dir, stageCache, pgeMetadata, LOG);
+      assertEquals(1, transfers.get());
+      assertEquals("data", FileUtils.readFileToString(new File(pge1Dir,
+            "data.dat")));
+      assertEquals("data", FileUtils.readFileToString(new File(pge2Dir,
+            "data.dat")));
+
+      // Same contents from another source are stored once.
+      fileStager.stageFile("2", new URI("file:///other/copy.dat"), 4,
+            pge2Dir, stageCache, pgeMetadata, LOG);
+      assertEquals(2, transfers.get());
+      assertEquals("data", FileUtils.readFileToString(new File(pge2Dir,
+            "copy.dat")));
+      assertEquals(1, new File(tmpDir, "cache/objects").list().length);
+   }
+
+   public void testCacheKey() throws Exception {
+      File file = new File(tmpDir, "data.dat");
+      FileUtils.writeStringToFile(file, "data");
+      file.setLastModified(1000000L);
+      URI uri = file.toURI();
+      String key = FileStager.getCacheKey("1", uri, 4);
+
+      // the same product ID reused for a new product
+      assertFalse(key.equals(FileStager.getCacheKey("2", uri, 4)));
+
+      // the file rewritten in place with contents of the same size
+      FileUtils.writeStringToFile(file, "atad");
+      file.setLastModified(2000000L);
+      assertFalse(key.equals(FileStager.getCacheKey("1", uri, 4)));
+   }
+
+   public void testSameNameStagedInTurn() throws Exception {
+      final AtomicInteger staging = new AtomicInteger();
+      final AtomicInteger maxStaging = new AtomicInteger();
+      final List<String> staged = Lists.newArrayList();
+      FileStager fileStager = new FileStager() {
+         @Override
+         protected void stageFile(URI stageFile, File destDir,
+               PgeMetadata pgeMetadata, Logger logger) throws Exception {
+            int current = staging.incrementAndGet();
+            synchronized (maxStaging) {
+               maxStaging.set(Math.max(maxStaging.get(), current));
+            }
+            Thread.sleep(100);
+            synchronized (staged) {
+               staged.add(stageFile.getPath());
+            }
+            staging.decrementAndGet();
+         }
+      };
+      FileStagingInfo fileStagingInfo = new FileStagingInfo(tmpDir
+            .getAbsolutePath());
+      for (int i = 0; i < 3; i++) {
+         fileStagingInfo.addFilePath("/does/not/exist/dir" + i + "/file");
+      }
+      PgeMetadata pgeMetadata = new PgeMetadata();
+      pgeMetadata.replaceMetadata(PgeTaskMetKeys.STAGING_THREADS, "3");
+
+      fileStager.stageFiles(fileStagingInfo, pgeMetadata, LOG);
+      assertEquals(1, maxStaging.get());
+      assertEquals(Sets.newHashSet("/does/not/exist/dir0/file",
+            "/does/not/exist/dir1/file", "/does/not/exist/dir2/file"), Sets
+            .newHashSet(staged));
+   }
+
    public void testAsURI() throws URISyntaxException {
       String absoluteHttpUri = "http://somewhere.com/path/to/data.dat";
       String absoluteFileUri = "file:///path/to/data.dat";
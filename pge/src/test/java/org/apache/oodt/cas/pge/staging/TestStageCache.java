@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.pge.staging;
+
+//JDK imports
+import java.io.File;
+
+//Apache imports
+import org.apache.commons.io.FileUtils;
+
+//JUnit imports
+import junit.framework.TestCase;
+
+/**
+ * Test class for {@link StageCache}.
+ *
+ */
+public class TestStageCache extends TestCase {
+
+   private File tmpDir;
+   private File destDir;
+
+   @Override
+   public void setUp() throws Exception {
+      tmpDir = File.createTempFile("stagecache", "");
+      tmpDir.delete();
+      destDir = new File(tmpDir, "dest");
+      destDir.mkdirs();
+   }
+
+   @Override
+   public void tearDown() throws Exception {
+      FileUtils.deleteQuietly(tmpDir);
+   }
+
+   public void testStoreAndFetch() throws Exception {
+      StageCache stageCache = new StageCache(new File(tmpDir, "cache"), 0);
+      assertNull(stageCache.fetch("file:///a.dat 5", 5, destDir));
+
+      stage(stageCache, "file:///a.dat 5", "a.dat", "aaaaa");
+      new File(destDir, "a.dat").delete();
+      File file = stageCache.fetch("file:///a.dat 5", 5, destDir);
+      assertEquals(new File(destDir, "a.dat"), file);
+      assertEquals("aaaaa", FileUtils.readFileToString(file));
+
+      // A cached file of the wrong size is a miss.
+      assertNull(stageCache.fetch("file:///a.dat 5", 6, destDir));
+   }
+
+   public void testDirectoriesAreNotCached() throws Exception {
+      StageCache stageCache = new StageCache(new File(tmpDir, "cache"), 0);
+      File staged = stageCache.createStagingDir();
+      FileUtils.writeStringToFile(new File(staged, "dir/file.dat"), "data");
+      stageCache.store("file:///dir 0", staged, destDir);
+
+      assertEquals("data", FileUtils.readFileToString(new File(destDir,
+            "dir/file.dat")));
+      assertNull(stageCache.fetch("file:///dir 0", 0, destDir));
+   }
+
+   public void testTrim() throws Exception {
+      StageCache stageCache = new StageCache(new File(tmpDir, "cache"), 10);
+      stage(stageCache, "file:///a.dat 5", "a.dat", "aaaaa");
+      stage(stageCache, "file:///b.dat 5", "b.dat", "bbbbb");
+      stage(stageCache, "file:///c.dat 5", "c.dat", "ccccc");
+      File objectsDir = new File(tmpDir, "cache/objects");
+      long now = System.currentTimeMillis();
+      for (File object : objectsDir.listFiles()) {
+         String contents = FileUtils.readFileToString(object);
+         object.setLastModified(contents.equals("bbbbb") ? now - 60000 : now);
+      }
+
+      stageCache.trim();
+      assertEquals(2, objectsDir.list().length);
+      assertNull(stageCache.fetch("file:///b.dat 5", 5, destDir));
+      assertNotNull(stageCache.fetch("file:///a.dat 5", 5, destDir));
+      assertNotNull(stageCache.fetch("file:///c.dat 5", 5, destDir));
+   }
+
+   private void stage(StageCache stageCache, String key, String name,
+         String contents) throws Exception {
+      File staged = stageCache.createStagingDir();
+      FileUtils.writeStringToFile(new File(staged, name), contents);
+      stageCache.store(key, staged, destDir);
+      FileUtils.deleteQuietly(staged);
+   }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.protocol;
+
+//OODT imports
+import org.apache.oodt.cas.protocol.exceptions.ProtocolException;
+
+//JDK imports
+import java.io.File;
+
+/**
+ * A {@link Protocol} which can download a file in segments, over several
+ * connections at once, and which can resume a download that failed part way.
+ * {@link Protocol#get(ProtocolFile, File)} uses the protocol's default
+ * number of segments; a failed download leaves its partial file in place so
+ * that the next get into the same file only fetches what is missing. The
+ * progress of a partial download is kept in files next to it whose names
+ * start with its name.
+ *
+ * @version $Revision$
+ */
+public interface SegmentedProtocol extends Protocol {
+
+    /**
+     * Downloads the given file over the given number of connections, each
+     * fetching its own part of the file. If an earlier download into toFile
+     * failed part way, only the parts it didn't finish are fetched.
+     *
+     * @param fromFile The file to download
+     * @param toFile The local file to download to
+     * @param segments The most connections to download over, 1 to download
+     *    over a single connection
+     * @throws ProtocolException If the download failed
+     */
+    public void get(ProtocolFile fromFile, File toFile, int segments) throws ProtocolException;
+
+    /**
+     * @param toFile A local file that was being downloaded to
+     * @return True if a later get into toFile will resume an earlier download
+     */
+    public boolean hasPartialDownload(File toFile);
+
+    /**
+     * Deletes a partial download and its progress, so the next get into
+     * toFile starts over.
+     *
+     * @param toFile A local file that was being downloaded to
+     */
+    public void discardPartialDownload(File toFile);
+
+}
@@ -17,11 +17,12 @@
 package org.apache.oodt.cas.protocol.http;
 
 //OODT imports
-import org.apache.oodt.cas.protocol.Protocol;
 import org.apache.oodt.cas.protocol.ProtocolFile;
+import org.apache.oodt.cas.protocol.SegmentedProtocol;
 import org.apache.oodt.cas.protocol.auth.Authentication;
 import org.apache.oodt.cas.protocol.exceptions.ProtocolException;
 import org.apache.oodt.cas.protocol.http.util.HttpUtils;
+import org.apache.oodt.cas.protocol.http.util.SegmentedDownload;
 import org.apache.oodt.cas.protocol.util.ProtocolFileFilter;
 
 //JDK imports
@@ -40,14 +41,25 @@ import java.util.Map;
 
 /**
  * 
- * Http Protocol communication class
+ * Http Protocol communication class. Files of at least
+ * <code>org.apache.oodt.cas.protocol.http.segments.minSize</code> bytes
+ * (default 16MB) are downloaded in
+ * <code>org.apache.oodt.cas.protocol.http.segments</code> segments (default
+ * 4) at once when the server serves byte ranges.
  * 
  * 
  * @author bfoster
  * @version $Revision$
  * 
  */
-public class HttpProtocol implements Protocol {
+public class HttpProtocol implements SegmentedProtocol {
+
+  private static final int SEGMENTS = Integer.getInteger(
+      "org.apache.oodt.cas.protocol.http.segments", 4).intValue();
+
+  private static final long SEGMENTS_MIN_SIZE = Long.getLong(
+      "org.apache.oodt.cas.protocol.http.segments.minSize", 16 * 1024 * 1024)
+      .longValue();
 
   private static Map<String, List<HttpFile>> linkChildren = new HashMap<String, List<HttpFile>>();
 
@@ -107,23 +119,61 @@ public class HttpProtocol implements Protocol {
 
   public void get(ProtocolFile fromFile, File toFile)
       throws ProtocolException {
+    get(fromFile, toFile, SEGMENTS, SEGMENTS_MIN_SIZE);
+  }
 
-    OutputStream out = null;
-    InputStream in = null;
+  public void get(ProtocolFile fromFile, File toFile, int segments)
+      throws ProtocolException {
+    get(fromFile, toFile, segments, 0);
+  }
+
+  private void get(ProtocolFile fromFile, File toFile, int segments,
+      long minSize) throws ProtocolException {
+    URL url;
     try {
-      out = new BufferedOutputStream(new FileOutputStream(toFile));
       if (fromFile instanceof HttpFile) {
-    	  in = ((HttpFile) fromFile).getLink().openStream();
+        url = ((HttpFile) fromFile).getLink();
       } else {
-    	  in = HttpUtils.resolveUri(currentFile.getLink().toURI(), fromFile.getPath()).toURL().openStream();
+        url = HttpUtils.resolveUri(currentFile.getLink().toURI(), fromFile.getPath()).toURL();
+      }
+    } catch (Exception e) {
+      throw new ProtocolException("Failed to get file '" + fromFile + "' : "
+          + e.getMessage(), e);
+    }
+
+    boolean partial = hasPartialDownload(toFile);
+    if (segments > 1 || partial) {
+      try {
+        SegmentedDownload download = new SegmentedDownload(url, toFile);
+        if (download.probe()
+            && (partial || download.getLength() >= minSize)) {
+          download.download(segments);
+          return;
+        }
+      } catch (Exception e) {
+        throw new ProtocolException("Failed to get file '" + fromFile + "' : "
+            + e.getMessage(), e);
       }
+    }
+    if (partial) {
+      SegmentedDownload.getProgressFile(toFile).delete();
+    }
+    get(url, fromFile, toFile);
+  }
+
+  private void get(URL url, ProtocolFile fromFile, File toFile)
+      throws ProtocolException {
+
+    OutputStream out = null;
+    InputStream in = null;
+    try {
+      out = new BufferedOutputStream(new FileOutputStream(toFile));
+      in = url.openStream();
 
-      byte[] buffer = new byte[1024];
+      byte[] buffer = new byte[64 * 1024];
       int numRead;
-      long numWritten = 0;
       while ((numRead = in.read(buffer)) != -1) {
         out.write(buffer, 0, numRead);
-        numWritten += numRead;
       }
       in.close();
       out.close();
@@ -145,6 +195,15 @@ public class HttpProtocol implements Protocol {
         }
     }
   }
+
+  public boolean hasPartialDownload(File toFile) {
+    return toFile.exists() && SegmentedDownload.getProgressFile(toFile).exists();
+  }
+
+  public void discardPartialDownload(File toFile) {
+    SegmentedDownload.getProgressFile(toFile).delete();
+    toFile.delete();
+  }
   
   public void put(File fromFile, ProtocolFile toFile) {
 	  //do nothing
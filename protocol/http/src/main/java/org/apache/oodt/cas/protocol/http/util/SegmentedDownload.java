@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.protocol.http.util;
+
+//JDK imports
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Downloads a file over HTTP in segments, using a Range request per segment
+ * over concurrent connections. Each segment is written straight to its place
+ * in the local file (which is allocated to the file's full length up front),
+ * and the progress of each segment is saved to a file next to it (its name
+ * plus {@link #PROGRESS_SUFFIX}) as the download goes. If the download
+ * fails, downloading into the same file again fetches only the missing
+ * bytes, provided the remote file hasn't changed since.
+ *
+ * @version $Revision$
+ */
+public class SegmentedDownload {
+
+  private static final Logger LOG = Logger.getLogger(SegmentedDownload.class
+      .getName());
+
+  public static final String PROGRESS_SUFFIX = ".segments";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final long CHECKPOINT_MILLIS = 1000;
+
+  private final URL url;
+
+  private final File toFile;
+
+  private final File progressFile;
+
+  private long length = -1;
+
+  private String validator;
+
+  private volatile boolean stopped;
+
+  public SegmentedDownload(URL url, File toFile) {
+    this.url = url;
+    this.toFile = toFile;
+    this.progressFile = getProgressFile(toFile);
+  }
+
+  public static File getProgressFile(File toFile) {
+    return new File(toFile.getPath() + PROGRESS_SUFFIX);
+  }
+
+  /**
+   * Asks the server for the file's length and whether it serves ranges of
+   * it.
+   *
+   * @return True if the file can be downloaded in segments
+   * @throws IOException If the server couldn't be asked
+   */
+  public boolean probe() throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    try {
+      conn.setRequestMethod("HEAD");
+      if (conn.getResponseCode() != HttpURLConnection.HTTP_OK)
+        return false;
+      String contentLength = conn.getHeaderField("Content-Length");
+      length = contentLength != null ? Long.parseLong(contentLength.trim()) : -1;
+      String acceptRanges = conn.getHeaderField("Accept-Ranges");
+      boolean acceptsRanges = acceptRanges != null
+          && acceptRanges.toLowerCase().indexOf("bytes") != -1;
+      validator = conn.getHeaderField("ETag");
+      if (validator == null)
+        validator = conn.getHeaderField("Last-Modified");
+      return acceptsRanges && length > 0;
+    } catch (NumberFormatException e) {
+      return false;
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * Downloads the file, resuming an earlier download into the same local
+   * file if there is one. {@link #probe()} must have found that the file can
+   * be downloaded in segments.
+   *
+   * @param segments The number of segments to download a new file in (a
+   *    resumed download keeps the segments it started with)
+   * @throws IOException If any segment failed, in which case the progress
+   *    made is kept for the next download
+   */
+  public void download(int segments) throws IOException {
+    List<Segment> plan = loadProgress();
+    if (plan == null) {
+      plan = newPlan(segments);
+      RandomAccessFile file = new RandomAccessFile(toFile, "rw");
+      try {
+        file.setLength(length);
+      } finally {
+        file.close();
+      }
+    } else {
+      LOG.log(Level.INFO, "Resuming download of " + url + " : "
+          + (length - remaining(plan)) + " of " + length + " bytes done");
+    }
+
+    List<Segment> unfinished = new ArrayList<Segment>();
+    for (Segment segment : plan) {
+      if (!segment.isDone())
+        unfinished.add(segment);
+    }
+
+    RandomAccessFile file = new RandomAccessFile(toFile, "rw");
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+        unfinished.size()), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "SegmentedDownload " + toFile.getName());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      final FileChannel channel = file.getChannel();
+      CompletionService<Segment> completion = new ExecutorCompletionService<Segment>(
+          executor);
+      for (final Segment segment : unfinished) {
+        completion.submit(new Callable<Segment>() {
+          public Segment call() throws Exception {
+            fetch(segment, channel);
+            return segment;
+          }
+        });
+      }
+
+      // wait for the segments, saving progress as they go
+      int finished = 0;
+      while (finished < unfinished.size()) {
+        Future<Segment> future;
+        try {
+          future = completion.poll(CHECKPOINT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          throw failed(plan, channel, e);
+        }
+        if (future != null) {
+          try {
+            future.get();
+            finished++;
+          } catch (ExecutionException e) {
+            throw failed(plan, channel, e.getCause());
+          } catch (InterruptedException e) {
+            throw failed(plan, channel, e);
+          }
+        }
+        if (finished < unfinished.size())
+          saveProgress(plan, channel);
+      }
+    } finally {
+      stopped = true;
+      executor.shutdownNow();
+      file.close();
+    }
+    progressFile.delete();
+  }
+
+  private IOException failed(List<Segment> plan, FileChannel channel,
+      Throwable cause) {
+    stopped = true;
+    try {
+      saveProgress(plan, channel);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Failed to save progress of download of " + url
+          + " : " + e.getMessage());
+    }
+    IOException e = new IOException("Segmented download of " + url
+        + " failed with " + remaining(plan) + " bytes left : "
+        + cause.getMessage());
+    e.initCause(cause);
+    return e;
+  }
+
+  private void fetch(Segment segment, FileChannel channel) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    conn.setRequestProperty("Range", "bytes=" + segment.next + "-"
+        + segment.end);
+    if (conn.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+      conn.disconnect();
+      throw new IOException("Server didn't return range " + segment.next
+          + "-" + segment.end + " : " + conn.getResponseCode() + " "
+          + conn.getResponseMessage());
+    }
+    InputStream in = conn.getInputStream();
+    try {
+      ReadableByteChannel source = Channels.newChannel(in);
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      while (segment.next <= segment.end) {
+        if (stopped)
+          throw new IOException("Download stopped");
+        buffer.clear();
+        buffer.limit((int) Math.min(BUFFER_SIZE, segment.end - segment.next
+            + 1));
+        if (source.read(buffer) < 0)
+          throw new EOFException("Range " + segment.next + "-" + segment.end
+              + " ended early");
+        buffer.flip();
+        long position = segment.next;
+        while (buffer.hasRemaining())
+          position += channel.write(buffer, position);
+        segment.next = position;
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private List<Segment> newPlan(int segments) {
+    int count = (int) Math.max(1, Math.min(segments, length));
+    long size = (length + count - 1) / count;
+    List<Segment> plan = new ArrayList<Segment>();
+    for (long start = 0; start < length; start += size) {
+      plan.add(new Segment(start, Math.min(start + size, length) - 1, start));
+    }
+    return plan;
+  }
+
+  private static long remaining(List<Segment> plan) {
+    long remaining = 0;
+    for (Segment segment : plan) {
+      remaining += segment.end - segment.next + 1;
+    }
+    return remaining;
+  }
+
+  /*
+   * Returns the saved progress of an earlier download, or null if there is
+   * none or the remote file has changed since.
+   */
+  private List<Segment> loadProgress() {
+    // without an ETag or Last-Modified there is no telling whether the
+    // remote file changed, so the download starts over
+    if (validator == null || !progressFile.exists()
+        || toFile.length() != length)
+      return null;
+    Properties progress = new Properties();
+    try {
+      InputStream in = new FileInputStream(progressFile);
+      try {
+        progress.load(in);
+      } finally {
+        in.close();
+      }
+      if (Long.parseLong(progress.getProperty("length")) != length
+          || !validator.equals(progress.getProperty("validator")))
+        return null;
+      List<Segment> plan = new ArrayList<Segment>();
+      int count = Integer.parseInt(progress.getProperty("segments"));
+      for (int i = 0; i < count; i++) {
+        String[] values = progress.getProperty("segment." + i).split(",");
+        plan.add(new Segment(Long.parseLong(values[0]), Long
+            .parseLong(values[1]), Long.parseLong(values[2])));
+      }
+      return plan;
+    } catch (Exception e) {
+      LOG.log(Level.WARNING, "Ignoring unreadable progress file "
+          + progressFile + " : " + e.getMessage());
+      return null;
+    }
+  }
+
+  private void saveProgress(List<Segment> plan, FileChannel channel)
+      throws IOException {
+    if (validator == null) {
+      // can't be resumed, see loadProgress
+      return;
+    }
+    Properties progress = new Properties();
+    progress.setProperty("length", Long.toString(length));
+    progress.setProperty("validator", validator);
+    progress.setProperty("segments", Integer.toString(plan.size()));
+    for (int i = 0; i < plan.size(); i++) {
+      // read before forcing, so only bytes already written are recorded
+      Segment segment = plan.get(i);
+      progress.setProperty("segment." + i, segment.start + "," + segment.end
+          + "," + segment.next);
+    }
+    channel.force(false);
+
+    File tmpFile = new File(progressFile.getPath() + ".tmp");
+    OutputStream out = new FileOutputStream(tmpFile);
+    try {
+      progress.store(out, "Progress of download of " + url);
+    } finally {
+      out.close();
+    }
+    progressFile.delete();
+    if (!tmpFile.renameTo(progressFile))
+      throw new IOException("Failed to rename " + tmpFile + " to "
+          + progressFile);
+  }
+
+  private static class Segment {
+
+    private final long start;
+
+    private final long end;
+
+    /* the next byte to fetch */
+    private volatile long next;
+
+    private Segment(long start, long end, long next) {
+      this.start = start;
+      this.end = end;
+      this.next = next;
+    }
+
+    private boolean isDone() {
+      return next > end;
+    }
+  }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.protocol.http.util;
+
+//JDK imports
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//APACHE imports
+import org.apache.commons.io.FileUtils;
+
+//OODT imports
+import org.apache.oodt.cas.protocol.http.HttpFile;
+import org.apache.oodt.cas.protocol.http.HttpProtocol;
+
+//Sun imports
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+//JUnits imports
+import junit.framework.TestCase;
+
+/**
+ * Test class for {@link SegmentedDownload}.
+ */
+public class TestSegmentedDownload extends TestCase {
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+	private byte[] content;
+	private HttpServer server;
+	private URL url;
+	private File toFile;
+
+	private volatile boolean acceptRanges = true;
+	private volatile boolean sendValidator = true;
+	private volatile int truncateRangeAt = -1;
+	private final AtomicInteger rangeRequests = new AtomicInteger();
+	private final AtomicLong bytesServed = new AtomicLong();
+
+	@Override
+	protected void setUp() throws Exception {
+		content = new byte[1024 * 1024 + 17];
+		new Random(42).nextBytes(content);
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/file.dat", new RangeHandler());
+		server.start();
+		url = new URL("http://localhost:" + server.getAddress().getPort() + "/file.dat");
+		toFile = File.createTempFile("segmented", ".dat");
+		toFile.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.stop(0);
+		FileUtils.deleteQuietly(toFile);
+		FileUtils.deleteQuietly(SegmentedDownload.getProgressFile(toFile));
+	}
+
+	public void testSegmentedDownload() throws IOException {
+		SegmentedDownload download = new SegmentedDownload(url, toFile);
+		assertTrue(download.probe());
+		assertEquals(content.length, download.getLength());
+		download.download(4);
+		assertEquals(4, rangeRequests.get());
+		assertTrue(Arrays.equals(content, FileUtils.readFileToByteArray(toFile)));
+		assertFalse(SegmentedDownload.getProgressFile(toFile).exists());
+	}
+
+	public void testResume() throws Exception {
+		// the range starting at the second segment breaks off part way
+		truncateRangeAt = (content.length + 3) / 4;
+		try {
+			SegmentedDownload download = new SegmentedDownload(url, toFile);
+			assertTrue(download.probe());
+			download.download(4);
+			fail("Download with a broken segment should fail");
+		} catch (IOException expected) {}
+		assertTrue(SegmentedDownload.getProgressFile(toFile).exists());
+		assertTrue(new HttpProtocol().hasPartialDownload(toFile));
+
+		// only what is missing is fetched again
+		awaitQuiet();
+		truncateRangeAt = -1;
+		bytesServed.set(0);
+		rangeRequests.set(0);
+		new HttpProtocol().get(new HttpFile(url.getPath(), false, url), toFile);
+		assertTrue(rangeRequests.get() >= 1);
+		assertTrue(bytesServed.get() < content.length);
+		assertTrue(Arrays.equals(content, FileUtils.readFileToByteArray(toFile)));
+		assertFalse(SegmentedDownload.getProgressFile(toFile).exists());
+	}
+
+	public void testNoResumeWithoutValidator() throws Exception {
+		sendValidator = false;
+		truncateRangeAt = (content.length + 3) / 4;
+		try {
+			SegmentedDownload download = new SegmentedDownload(url, toFile);
+			assertTrue(download.probe());
+			download.download(4);
+			fail("Download with a broken segment should fail");
+		} catch (IOException expected) {}
+		// the remote file can't be told apart from a changed one
+		assertFalse(new HttpProtocol().hasPartialDownload(toFile));
+
+		// all of it is fetched again, in one piece
+		awaitQuiet();
+		truncateRangeAt = -1;
+		rangeRequests.set(0);
+		new HttpProtocol().get(new HttpFile(url.getPath(), false, url), toFile);
+		assertEquals(0, rangeRequests.get());
+		assertTrue(Arrays.equals(content, FileUtils.readFileToByteArray(toFile)));
+	}
+
+	public void testNoRangeSupport() throws Exception {
+		acceptRanges = false;
+		assertFalse(new SegmentedDownload(url, toFile).probe());
+
+		// falls back to a single stream
+		new HttpProtocol().get(new HttpFile(url.getPath(), false, url), toFile, 4);
+		assertEquals(0, rangeRequests.get());
+		assertTrue(Arrays.equals(content, FileUtils.readFileToByteArray(toFile)));
+	}
+
+	/*
+	 * Waits for the server to finish with the requests of a failed download,
+	 * which it keeps answering after the client has given up.
+	 */
+	private void awaitQuiet() throws InterruptedException {
+		long served;
+		do {
+			served = bytesServed.get() + rangeRequests.get();
+			Thread.sleep(200);
+		} while (served != bytesServed.get() + rangeRequests.get());
+	}
+
+	private class RangeHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			if (acceptRanges) {
+				exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+			}
+			if (sendValidator) {
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+			}
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			if (exchange.getRequestMethod().equals("HEAD")) {
+				exchange.getResponseHeaders().add("Content-Length", Integer.toString(content.length));
+				exchange.sendResponseHeaders(200, -1);
+				exchange.close();
+				return;
+			}
+
+			int start = 0, end = content.length - 1, status = 200;
+			if (acceptRanges && range != null) {
+				Matcher matcher = RANGE.matcher(range);
+				assertTrue(matcher.matches());
+				start = Integer.parseInt(matcher.group(1));
+				end = Integer.parseInt(matcher.group(2));
+				status = 206;
+				rangeRequests.incrementAndGet();
+			}
+			int length = end - start + 1;
+			exchange.sendResponseHeaders(status, length);
+			OutputStream out = exchange.getResponseBody();
+			if (start == truncateRangeAt) {
+				// send half the range, then drop the connection
+				out.write(content, start, length / 2);
+				bytesServed.addAndGet(length / 2);
+				out.flush();
+				exchange.close();
+				return;
+			}
+			out.write(content, start, length);
+			bytesServed.addAndGet(length);
+			out.close();
+		}
+	}
+}
@@ -21,6 +21,7 @@ package org.apache.oodt.cas.pushpull.protocol;
 import org.apache.oodt.cas.protocol.Protocol;
 import org.apache.oodt.cas.protocol.ProtocolFactory;
 import org.apache.oodt.cas.protocol.ProtocolFile;
+import org.apache.oodt.cas.protocol.SegmentedProtocol;
 import org.apache.oodt.cas.pushpull.protocol.RemoteSiteFile;
 import org.apache.oodt.cas.pushpull.config.ProtocolInfo;
 import org.apache.oodt.cas.protocol.auth.BasicAuthentication;
@@ -40,6 +41,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.Map.Entry;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,16 +54,18 @@ import java.util.logging.Logger;
  * allow for the same Protocol object to be used by several classes. The
  * Protocol class has been synchronized so this is thread-safe. If you set
  * 'allowReuse' to false then a new Protocol object will be created and
- * returned.<br>
+ * returned. Sessions for downloads are best borrowed from a
+ * {@link ProtocolSessionPool} built on this handler, which reuses them
+ * between downloads.<br>
  * <br>
  *
  * @author bfoster
  */
 public class ProtocolHandler {
 
-  private final HashMap<URL, ProtocolFactory> urlAndProtocolFactory;
+  private final ConcurrentHashMap<URL, ProtocolFactory> urlAndProtocolFactory;
 
-  private final HashMap<URL, Protocol> reuseProtocols;
+  private final ConcurrentHashMap<URL, Protocol> reuseProtocols;
 
   private final HashMap<RemoteSiteFile, PagingInfo> pageInfos;
 
@@ -81,8 +85,8 @@ public class ProtocolHandler {
    */
   public ProtocolHandler(ProtocolInfo pi) {
     this.pi = pi;
-    urlAndProtocolFactory = new HashMap<URL, ProtocolFactory>();
-    reuseProtocols = new HashMap<URL, Protocol>();
+    urlAndProtocolFactory = new ConcurrentHashMap<URL, ProtocolFactory>();
+    reuseProtocols = new ConcurrentHashMap<URL, Protocol>();
     pageInfos = new HashMap<RemoteSiteFile, PagingInfo>();
     pathAndFileListMap = new HashMap<RemoteSiteFile, List<RemoteSiteFile>>();
   }
@@ -170,8 +174,18 @@ public class ProtocolHandler {
       } else {
         connect(protocol = protocolFactory.newInstance(), remoteSite, false);
       }
-      if (allowReuse)
-        this.reuseProtocols.put(remoteSite.getURL(), protocol);
+      if (allowReuse) {
+        // another thread may have created the reusable protocol meanwhile
+        Protocol existing = this.reuseProtocols.putIfAbsent(
+            remoteSite.getURL(), protocol);
+        if (existing != null) {
+          try {
+            this.disconnect(protocol);
+          } catch (RemoteConnectionException e) {
+          }
+          protocol = existing;
+        }
+      }
     }
     return protocol;
   }
@@ -274,12 +288,43 @@ public class ProtocolHandler {
       LOG.log(Level.INFO, "Finished downloading " + fromFile + " to " + toFile);
 
     } catch (Exception e) {
-      downloadFile.delete();
+      // keep a partial segmented download, so a retry only fetches the rest
+      if (!(protocol instanceof SegmentedProtocol)
+          || !((SegmentedProtocol) protocol).hasPartialDownload(downloadFile))
+        downloadFile.delete();
       throw new RemoteConnectionException("Failed to download file " + fromFile
           + " : " + e.getMessage(), e);
     }
   }
 
+  /**
+   * Deletes what a failed download to the given file left behind, including
+   * any partial download kept for a retry to resume.
+   *
+   * @param remoteSite
+   *          The site the file was being downloaded from
+   * @param toFile
+   *          The file that was being downloaded to
+   */
+  public void discardPartialDownload(RemoteSite remoteSite, File toFile) {
+    File downloadFile = new File(toFile.getParentFile(), "Downloading_"
+        + toFile.getName());
+    try {
+      // only local files are touched, so an unconnected instance will do
+      ProtocolFactory protocolFactory = this.urlAndProtocolFactory
+          .get(remoteSite.getURL());
+      Protocol protocol = protocolFactory != null ? protocolFactory
+          .newInstance() : getAppropriateProtocolBySite(remoteSite, true);
+      if (protocol instanceof SegmentedProtocol)
+        ((SegmentedProtocol) protocol).discardPartialDownload(downloadFile);
+    } catch (Exception e) {
+      LOG.log(Level.WARNING, "Failed to get protocol for " + remoteSite
+          + " to discard partial download " + downloadFile + " : "
+          + e.getMessage());
+    }
+    downloadFile.delete();
+  }
+
   /**
    * Connects the given Protocol to the given URL
    *
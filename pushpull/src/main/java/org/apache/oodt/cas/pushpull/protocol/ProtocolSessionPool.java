@@ -0,0 +1,737 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.pushpull.protocol;
+
+//OODT imports
+import org.apache.oodt.cas.protocol.Protocol;
+import org.apache.oodt.cas.protocol.exceptions.ProtocolException;
+import org.apache.oodt.cas.pushpull.exceptions.RemoteConnectionException;
+
+//JDK imports
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A pool of connected {@link Protocol} sessions, kept per {@link RemoteSite},
+ * which download workers borrow and give back. The pool bounds the number of
+ * sessions in use, overall and per site (by the site's
+ * {@link RemoteSite#getMaxConnections()}, or as set by
+ * {@link #setMaxSessions(RemoteSite, int)}) and hands sessions to waiting
+ * borrowers in the order they asked. Idle sessions are checked before they
+ * are handed out, and are disconnected once they have sat idle too long.<br>
+ * <br>
+ * The pool is tuned with the following system properties:
+ * <ul>
+ * <li><code>org.apache.oodt.cas.pushpull.session.maxIdle</code> - the most
+ * idle sessions kept per site (default 8)</li>
+ * <li><code>org.apache.oodt.cas.pushpull.session.minIdle</code> - the idle
+ * sessions per site that are never evicted (default 0)</li>
+ * <li><code>org.apache.oodt.cas.pushpull.session.idleTimeout.millis</code> -
+ * how long a session may sit idle before it is evicted, 0 to never evict
+ * (default 60000)</li>
+ * </ul>
+ *
+ * @version $Revision$
+ */
+public class ProtocolSessionPool {
+
+  private static final Logger LOG = Logger.getLogger(ProtocolSessionPool.class
+      .getName());
+
+  private final ProtocolHandler protocolHandler;
+
+  private final ResizableSemaphore permits;
+
+  private final ConcurrentHashMap<String, SitePool> sitePools;
+
+  /* guarded by itself */
+  private final Map<Protocol, PooledSession> borrowed;
+
+  private final int maxIdle;
+
+  private final int minIdle;
+
+  private final long idleTimeoutMillis;
+
+  private int maxTotal;
+
+  private volatile boolean closed;
+
+  private Timer evictor;
+
+  /* metrics */
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  private final AtomicLong borrowCount = new AtomicLong();
+
+  private final AtomicLong totalWaitNanos = new AtomicLong();
+
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  private final AtomicLong createdCount = new AtomicLong();
+
+  private final AtomicLong destroyedCount = new AtomicLong();
+
+  private final AtomicLong evictedCount = new AtomicLong();
+
+  private final AtomicLong validationFailureCount = new AtomicLong();
+
+  /* guarded by this */
+  private int activeCount;
+
+  private int peakActiveCount;
+
+  private long activeNanos;
+
+  private long lastActiveChange;
+
+  private final long createdAt;
+
+  /**
+   * Creates a pool with its idle settings read from the system properties.
+   *
+   * @param protocolHandler
+   *          Used to create, check and disconnect the sessions
+   * @param maxTotal
+   *          The most sessions that may be in use at once
+   */
+  public ProtocolSessionPool(ProtocolHandler protocolHandler, int maxTotal) {
+    this(protocolHandler, maxTotal, Integer.getInteger(
+        "org.apache.oodt.cas.pushpull.session.maxIdle", 8).intValue(), Integer
+        .getInteger("org.apache.oodt.cas.pushpull.session.minIdle", 0)
+        .intValue(), Long.getLong(
+        "org.apache.oodt.cas.pushpull.session.idleTimeout.millis", 60000)
+        .longValue());
+  }
+
+  /**
+   * @param protocolHandler
+   *          Used to create, check and disconnect the sessions
+   * @param maxTotal
+   *          The most sessions that may be in use at once
+   * @param maxIdle
+   *          The most idle sessions kept per site
+   * @param minIdle
+   *          The idle sessions per site that are never evicted
+   * @param idleTimeoutMillis
+   *          How long a session may sit idle before it is evicted, 0 to never
+   *          evict
+   */
+  public ProtocolSessionPool(ProtocolHandler protocolHandler, int maxTotal,
+      int maxIdle, int minIdle, long idleTimeoutMillis) {
+    this.protocolHandler = protocolHandler;
+    this.maxTotal = Math.max(1, maxTotal);
+    this.maxIdle = maxIdle;
+    this.minIdle = minIdle;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.permits = new ResizableSemaphore(this.maxTotal);
+    this.sitePools = new ConcurrentHashMap<String, SitePool>();
+    this.borrowed = new IdentityHashMap<Protocol, PooledSession>();
+    this.createdAt = this.lastActiveChange = System.nanoTime();
+  }
+
+  /**
+   * Borrows a session for the site of the given file, waiting for one to be
+   * given back if the pool is at its limit. The session returned has been
+   * navigated to the file's directory (or the file itself if it is a
+   * directory). It must be handed back with {@link #giveBack(Protocol)} or
+   * {@link #invalidate(Protocol)}.
+   *
+   * @param file
+   *          The file the session will be used for
+   * @return A connected session
+   * @throws RemoteConnectionException
+   *           If no session could be connected, or the wait was interrupted
+   */
+  public Protocol borrow(RemoteSiteFile file) throws RemoteConnectionException {
+    if (this.closed)
+      throw new RemoteConnectionException("Session pool is closed");
+
+    SitePool sitePool = this.getSitePool(file.getSite());
+    long start = System.nanoTime();
+    try {
+      sitePool.permits.acquire();
+      try {
+        this.permits.acquire();
+      } catch (InterruptedException e) {
+        sitePool.permits.release();
+        throw e;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RemoteConnectionException(
+          "Interrupted while waiting for a session to " + file.getSite(), e);
+    }
+    this.recordWait(System.nanoTime() - start);
+
+    try {
+      PooledSession session = this.takeValidIdleSession(sitePool, file);
+      if (session == null)
+        session = this.createSession(sitePool, file);
+      synchronized (this.borrowed) {
+        this.borrowed.put(session.protocol, session);
+      }
+      this.changeActiveCount(1);
+      return session.protocol;
+    } catch (RemoteConnectionException e) {
+      this.releasePermits(sitePool);
+      throw e;
+    } catch (RuntimeException e) {
+      this.releasePermits(sitePool);
+      throw e;
+    }
+  }
+
+  /**
+   * Gives a borrowed session back to the pool, so the next waiting borrower
+   * may use it.
+   *
+   * @param protocol
+   *          A session borrowed from this pool
+   */
+  public void giveBack(Protocol protocol) {
+    PooledSession session = this.removeBorrowed(protocol);
+    if (session == null) {
+      LOG.log(Level.WARNING, "Session " + protocol
+          + " was not borrowed from this pool -- disconnecting it");
+      this.disconnect(protocol);
+      return;
+    }
+
+    // keep the session unless the pool has since shrunk or is closing
+    boolean keep = !this.closed && this.permits.availablePermits() >= 0
+        && session.sitePool.permits.availablePermits() >= 0;
+    if (keep) {
+      synchronized (session.sitePool) {
+        if (session.sitePool.idle.size() < this.maxIdle) {
+          session.lastUsed = System.currentTimeMillis();
+          session.sitePool.idle.addFirst(session);
+          this.idleCount.incrementAndGet();
+        } else {
+          keep = false;
+        }
+      }
+    }
+    if (!keep)
+      this.destroy(session.protocol);
+    else
+      this.startEvictor();
+
+    this.releasePermits(session.sitePool);
+  }
+
+  /**
+   * Disconnects a borrowed session that is no longer usable (e.g. one whose
+   * download failed), freeing its place in the pool.
+   *
+   * @param protocol
+   *          A session borrowed from this pool
+   */
+  public void invalidate(Protocol protocol) {
+    PooledSession session = this.removeBorrowed(protocol);
+    this.destroy(protocol);
+    if (session != null)
+      this.releasePermits(session.sitePool);
+  }
+
+  /**
+   * Disconnects a borrowed session that is no longer usable and connects a
+   * new one to take its place, without giving up its place in the pool to a
+   * waiting borrower.
+   *
+   * @param protocol
+   *          A session borrowed from this pool
+   * @param file
+   *          The file the new session will be used for
+   * @return The new session, which must be handed back in place of the old
+   * @throws RemoteConnectionException
+   *           If no new session could be connected, in which case the old
+   *           session's place is given up
+   */
+  public Protocol replace(Protocol protocol, RemoteSiteFile file)
+      throws RemoteConnectionException {
+    PooledSession session = this.removeBorrowed(protocol);
+    if (session == null)
+      throw new RemoteConnectionException("Session " + protocol
+          + " was not borrowed from this pool");
+    this.destroy(protocol);
+    try {
+      PooledSession newSession = this.createSession(session.sitePool, file);
+      synchronized (this.borrowed) {
+        this.borrowed.put(newSession.protocol, newSession);
+      }
+      this.changeActiveCount(1);
+      return newSession.protocol;
+    } catch (RemoteConnectionException e) {
+      this.releasePermits(session.sitePool);
+      throw e;
+    } catch (RuntimeException e) {
+      this.releasePermits(session.sitePool);
+      throw e;
+    }
+  }
+
+  /**
+   * Changes the most sessions that may be in use at once. Borrowers already
+   * waiting are let through right away when the pool grows; when it shrinks,
+   * sessions in use are disconnected as they are given back until the pool
+   * is back under its limit.
+   *
+   * @param maxTotal
+   *          The most sessions that may be in use at once
+   */
+  public synchronized void setMaxTotal(int maxTotal) {
+    maxTotal = Math.max(1, maxTotal);
+    int delta = maxTotal - this.maxTotal;
+    this.maxTotal = maxTotal;
+    if (delta > 0)
+      this.permits.release(delta);
+    else if (delta < 0)
+      this.permits.reducePermits(-delta);
+    this.trimIdleSessions();
+  }
+
+  public synchronized int getMaxTotal() {
+    return this.maxTotal;
+  }
+
+  /**
+   * Changes the most sessions to the given site that may be in use at once,
+   * in the same way as {@link #setMaxTotal(int)}. The limit never exceeds the
+   * site's own {@link RemoteSite#getMaxConnections()}.
+   *
+   * @param site
+   *          The site to limit
+   * @param maxSessions
+   *          The most sessions to the site that may be in use at once
+   */
+  public void setMaxSessions(RemoteSite site, int maxSessions) {
+    this.getSitePool(site).setMaxSessions(maxSessions);
+  }
+
+  /**
+   * @param site
+   *          A site sessions are borrowed for
+   * @return The most sessions to the site that may be in use at once
+   */
+  public int getMaxSessions(RemoteSite site) {
+    return this.getSitePool(site).getMaxSessions();
+  }
+
+  /**
+   * Disconnects the sessions that have been idle longer than the idle
+   * timeout, keeping the minimum number of idle sessions for each site.
+   *
+   * @return The number of sessions evicted
+   */
+  public int evictIdleSessions() {
+    if (this.idleTimeoutMillis <= 0)
+      return 0;
+    long cutoff = System.currentTimeMillis() - this.idleTimeoutMillis;
+    List<PooledSession> evicted = new LinkedList<PooledSession>();
+    for (SitePool sitePool : this.sitePools.values()) {
+      synchronized (sitePool) {
+        // the oldest sessions are at the end of the list
+        while (sitePool.idle.size() > this.minIdle
+            && sitePool.idle.getLast().lastUsed < cutoff) {
+          evicted.add(sitePool.idle.removeLast());
+          this.idleCount.decrementAndGet();
+        }
+      }
+    }
+    for (PooledSession session : evicted) {
+      LOG.log(Level.FINE, "Evicting idle session to "
+          + session.sitePool.site.getURL());
+      this.destroy(session.protocol);
+    }
+    this.evictedCount.addAndGet(evicted.size());
+    return evicted.size();
+  }
+
+  /**
+   * Disconnects all the idle sessions. Sessions in use are disconnected when
+   * they are given back.
+   */
+  public void clear() {
+    for (SitePool sitePool : this.sitePools.values()) {
+      List<PooledSession> sessions;
+      synchronized (sitePool) {
+        sessions = new LinkedList<PooledSession>(sitePool.idle);
+        this.idleCount.addAndGet(-sitePool.idle.size());
+        sitePool.idle.clear();
+      }
+      for (PooledSession session : sessions)
+        this.destroy(session.protocol);
+    }
+  }
+
+  /**
+   * Closes the pool: no more sessions may be borrowed, and all sessions are
+   * disconnected (those in use once they are given back).
+   */
+  public void close() {
+    this.closed = true;
+    synchronized (this) {
+      if (this.evictor != null) {
+        this.evictor.cancel();
+        this.evictor = null;
+      }
+    }
+    this.clear();
+  }
+
+  /**
+   * @return The number of sessions borrowed so far
+   */
+  public long getBorrowCount() {
+    return this.borrowCount.get();
+  }
+
+  /**
+   * @return The total time borrowers have spent waiting for a session
+   */
+  public long getTotalWaitMillis() {
+    return this.totalWaitNanos.get() / 1000000;
+  }
+
+  /**
+   * @return The longest time a borrower has waited for a session
+   */
+  public long getMaxWaitMillis() {
+    return this.maxWaitNanos.get() / 1000000;
+  }
+
+  /**
+   * @return The average time a borrower has waited for a session
+   */
+  public double getAverageWaitMillis() {
+    long borrows = this.borrowCount.get();
+    return borrows == 0 ? 0.0 : this.totalWaitNanos.get() / 1000000.0
+        / borrows;
+  }
+
+  /**
+   * @return The number of borrowers waiting for a session right now
+   */
+  public int getWaitingCount() {
+    return this.permits.getQueueLength();
+  }
+
+  public synchronized int getActiveCount() {
+    return this.activeCount;
+  }
+
+  public synchronized int getPeakActiveCount() {
+    return this.peakActiveCount;
+  }
+
+  public int getIdleCount() {
+    return this.idleCount.get();
+  }
+
+  /**
+   * @return The fraction of the pool's sessions in use right now
+   */
+  public synchronized double getUtilisation() {
+    return (double) this.activeCount / this.maxTotal;
+  }
+
+  /**
+   * @return The average number of sessions in use since the pool was
+   *         created, as a fraction of the pool's current size
+   */
+  public synchronized double getAverageUtilisation() {
+    long now = System.nanoTime();
+    long elapsed = now - this.createdAt;
+    if (elapsed <= 0)
+      return 0.0;
+    double active = this.activeNanos + (double) this.activeCount
+        * (now - this.lastActiveChange);
+    return active / elapsed / this.maxTotal;
+  }
+
+  public long getCreatedCount() {
+    return this.createdCount.get();
+  }
+
+  public long getDestroyedCount() {
+    return this.destroyedCount.get();
+  }
+
+  public long getEvictedCount() {
+    return this.evictedCount.get();
+  }
+
+  /**
+   * @return The number of idle sessions found unusable when borrowed
+   */
+  public long getValidationFailureCount() {
+    return this.validationFailureCount.get();
+  }
+
+  public String toString() {
+    return "ProtocolSessionPool: active = '" + this.getActiveCount()
+        + "' idle = '" + this.getIdleCount() + "' maxTotal = '"
+        + this.getMaxTotal() + "' borrows = '" + this.getBorrowCount()
+        + "' avgWaitMillis = '"
+        + String.format("%.2f", this.getAverageWaitMillis())
+        + "' maxWaitMillis = '" + this.getMaxWaitMillis()
+        + "' avgUtilisation = '"
+        + String.format("%.2f", this.getAverageUtilisation())
+        + "' created = '" + this.getCreatedCount() + "' evicted = '"
+        + this.getEvictedCount() + "' validationFailures = '"
+        + this.getValidationFailureCount() + "'";
+  }
+
+  private SitePool getSitePool(RemoteSite site) {
+    String key = site.getUsername() + "@" + site.getURL().toExternalForm();
+    SitePool sitePool = this.sitePools.get(key);
+    if (sitePool == null) {
+      SitePool newPool = new SitePool(site);
+      sitePool = this.sitePools.putIfAbsent(key, newPool);
+      if (sitePool == null)
+        sitePool = newPool;
+    }
+    return sitePool;
+  }
+
+  /*
+   * Hands out the most recently used idle session that is still connected
+   * and can be navigated to the file, disconnecting any that can't.
+   */
+  private PooledSession takeValidIdleSession(SitePool sitePool,
+      RemoteSiteFile file) {
+    while (true) {
+      PooledSession session;
+      synchronized (sitePool) {
+        if (sitePool.idle.isEmpty())
+          return null;
+        session = sitePool.idle.removeFirst();
+        this.idleCount.decrementAndGet();
+      }
+      try {
+        if (this.protocolHandler.isProtocolConnected(session.protocol)) {
+          this.navigate(session.protocol, file);
+          return session;
+        }
+        LOG.log(Level.FINE, "Idle session to " + sitePool.site.getURL()
+            + " is no longer connected");
+      } catch (Exception e) {
+        LOG.log(Level.FINE, "Idle session to " + sitePool.site.getURL()
+            + " failed validation : " + e.getMessage());
+      }
+      this.validationFailureCount.incrementAndGet();
+      this.destroy(session.protocol);
+    }
+  }
+
+  private PooledSession createSession(SitePool sitePool, RemoteSiteFile file)
+      throws RemoteConnectionException {
+    // make room by closing idle sessions to other sites
+    this.trimIdleSessions();
+    Protocol protocol = this.protocolHandler.getAppropriateProtocol(file,
+    /* reuse */false, /* navigate */true);
+    if (protocol == null)
+      throw new RemoteConnectionException("Failed to create session for "
+          + file);
+    this.createdCount.incrementAndGet();
+    return new PooledSession(protocol, sitePool);
+  }
+
+  private void navigate(Protocol protocol, RemoteSiteFile file)
+      throws ProtocolException {
+    if (file.isDir())
+      this.protocolHandler.cd(protocol, file);
+    else if (file.getParent() != null)
+      this.protocolHandler.cd(protocol, new RemoteSiteFile(file.getParent(),
+          file.getSite()));
+  }
+
+  /*
+   * Disconnects the oldest idle sessions until the number of open sessions
+   * is within the pool's size.
+   */
+  private void trimIdleSessions() {
+    while (this.getActiveCount() + this.idleCount.get() >= this.getMaxTotal()) {
+      PooledSession oldest = null;
+      for (SitePool sitePool : this.sitePools.values()) {
+        synchronized (sitePool) {
+          if (!sitePool.idle.isEmpty()
+              && (oldest == null || sitePool.idle.getLast().lastUsed < oldest.lastUsed))
+            oldest = sitePool.idle.getLast();
+        }
+      }
+      if (oldest == null)
+        return;
+      synchronized (oldest.sitePool) {
+        if (!oldest.sitePool.idle.remove(oldest))
+          continue;
+        this.idleCount.decrementAndGet();
+      }
+      this.destroy(oldest.protocol);
+    }
+  }
+
+  private synchronized void startEvictor() {
+    if (this.evictor != null || this.closed || this.idleTimeoutMillis <= 0)
+      return;
+    long period = Math.max(1000, this.idleTimeoutMillis / 2);
+    this.evictor = new Timer("ProtocolSessionPool evictor", true);
+    this.evictor.schedule(new TimerTask() {
+      public void run() {
+        try {
+          ProtocolSessionPool.this.evictIdleSessions();
+        } catch (Exception e) {
+          LOG.log(Level.WARNING, "Failed to evict idle sessions : "
+              + e.getMessage(), e);
+        }
+      }
+    }, period, period);
+  }
+
+  private PooledSession removeBorrowed(Protocol protocol) {
+    PooledSession session;
+    synchronized (this.borrowed) {
+      session = this.borrowed.remove(protocol);
+    }
+    if (session != null)
+      this.changeActiveCount(-1);
+    return session;
+  }
+
+  private void releasePermits(SitePool sitePool) {
+    this.permits.release();
+    sitePool.permits.release();
+  }
+
+  private void destroy(Protocol protocol) {
+    this.disconnect(protocol);
+    this.destroyedCount.incrementAndGet();
+  }
+
+  private void disconnect(Protocol protocol) {
+    try {
+      this.protocolHandler.disconnect(protocol);
+    } catch (Exception e) {
+      LOG.log(Level.WARNING, "Failed to disconnect session : "
+          + e.getMessage());
+    }
+  }
+
+  private void recordWait(long waitNanos) {
+    this.borrowCount.incrementAndGet();
+    this.totalWaitNanos.addAndGet(waitNanos);
+    long max;
+    while ((max = this.maxWaitNanos.get()) < waitNanos
+        && !this.maxWaitNanos.compareAndSet(max, waitNanos))
+      ;
+  }
+
+  private synchronized void changeActiveCount(int delta) {
+    long now = System.nanoTime();
+    this.activeNanos += this.activeCount * (now - this.lastActiveChange);
+    this.lastActiveChange = now;
+    this.activeCount += delta;
+    if (this.activeCount > this.peakActiveCount)
+      this.peakActiveCount = this.activeCount;
+  }
+
+  private static class SitePool {
+
+    private final RemoteSite site;
+
+    private final ResizableSemaphore permits;
+
+    /* the site's own limit, Integer.MAX_VALUE if it has none */
+    private final int siteMaxSessions;
+
+    /* most recently used first, guarded by this */
+    private final LinkedList<PooledSession> idle;
+
+    /* guarded by permits */
+    private int maxSessions;
+
+    private SitePool(RemoteSite site) {
+      this.site = site;
+      this.siteMaxSessions = site.getMaxConnections() > 0 ? site
+          .getMaxConnections() : Integer.MAX_VALUE;
+      this.maxSessions = this.siteMaxSessions;
+      this.permits = new ResizableSemaphore(this.maxSessions);
+      this.idle = new LinkedList<PooledSession>();
+    }
+
+    private void setMaxSessions(int maxSessions) {
+      synchronized (this.permits) {
+        maxSessions = Math.max(1, Math.min(maxSessions, this.siteMaxSessions));
+        int delta = maxSessions - this.maxSessions;
+        this.maxSessions = maxSessions;
+        if (delta > 0)
+          this.permits.release(delta);
+        else if (delta < 0)
+          this.permits.reducePermits(-delta);
+      }
+    }
+
+    private int getMaxSessions() {
+      synchronized (this.permits) {
+        return this.maxSessions;
+      }
+    }
+  }
+
+  private static class PooledSession {
+
+    private final Protocol protocol;
+
+    private final SitePool sitePool;
+
+    private long lastUsed;
+
+    private PooledSession(Protocol protocol, SitePool sitePool) {
+      this.protocol = protocol;
+      this.sitePool = sitePool;
+    }
+  }
+
+  /*
+   * A fair semaphore whose permits may be taken away while they are held.
+   */
+  private static class ResizableSemaphore extends Semaphore {
+
+    private static final long serialVersionUID = 3914716211478436147L;
+
+    private ResizableSemaphore(int permits) {
+      super(permits, true);
+    }
+
+    protected void reducePermits(int reduction) {
+      super.reducePermits(reduction);
+    }
+  }
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.pushpull.retrievalsystem;
+
+//OODT imports
+import org.apache.oodt.cas.pushpull.protocol.RemoteSite;
+
+//JDK imports
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * Adapts the number of concurrent downloads from each {@link RemoteSite} to
+ * what the site can sustain. Every window (at least
+ * <code>org.apache.oodt.cas.pushpull.concurrency.window.millis</code>, default
+ * 5000, and at least one finished download per allowed download) the bytes
+ * downloaded from the site are turned into a throughput, which is compared
+ * with the previous window's:
+ * <ul>
+ * <li>if the last change of limit raised throughput, the limit keeps moving
+ * the same way (doubling while the site is first being probed, one at a time
+ * after that)</li>
+ * <li>if it lowered throughput, the change is undone and the limit turns
+ * around</li>
+ * <li>if throughput stayed within 5%, the limit drops by one, since the same
+ * throughput with fewer sessions is better</li>
+ * </ul>
+ * A failed download cuts the site's limit by
+ * <code>org.apache.oodt.cas.pushpull.concurrency.backoff</code> (default 0.5),
+ * at most once per window, after which the limit climbs back additively. The
+ * limit of each site thus settles around the fewest sessions that give the
+ * site's best throughput.
+ * </p>
+ */
+public class DownloadConcurrencyLimiter {
+
+    /* our log stream */
+    private static final Logger LOG = Logger
+            .getLogger(DownloadConcurrencyLimiter.class.getName());
+
+    /**
+     * Told when the limit of a site changes.
+     */
+    public interface LimitListener {
+        public void limitChanged(RemoteSite site, int limit);
+    }
+
+    private static final double TOLERANCE = 0.05;
+
+    private final int initialLimit;
+
+    private final int maxLimit;
+
+    private final long windowMillis;
+
+    private final double backoff;
+
+    private final ConcurrentHashMap<String, SiteState> sites;
+
+    private final List<LimitListener> listeners;
+
+    /**
+     * @param initialLimit
+     *            The limit each site starts out with
+     * @param maxLimit
+     *            The highest limit any site may get
+     */
+    public DownloadConcurrencyLimiter(int initialLimit, int maxLimit) {
+        this(initialLimit, maxLimit, Long.getLong(
+                "org.apache.oodt.cas.pushpull.concurrency.window.millis", 5000)
+                .longValue(), Double.parseDouble(System.getProperty(
+                "org.apache.oodt.cas.pushpull.concurrency.backoff", "0.5")));
+    }
+
+    public DownloadConcurrencyLimiter(int initialLimit, int maxLimit,
+            long windowMillis, double backoff) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.initialLimit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+        this.windowMillis = windowMillis;
+        this.backoff = backoff;
+        this.sites = new ConcurrentHashMap<String, SiteState>();
+        this.listeners = new Vector<LimitListener>();
+    }
+
+    public void addLimitListener(LimitListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Makes sure the given site has a limit, telling the listeners of a new
+     * site's initial limit.
+     *
+     * @return The site's limit
+     */
+    public int register(RemoteSite site) {
+        return this.getSiteState(site).getLimit();
+    }
+
+    /**
+     * @return The number of downloads allowed from the given site at once
+     */
+    public int getLimit(RemoteSite site) {
+        return this.getSiteState(site).getLimit();
+    }
+
+    /**
+     * @return The sum of the limits of all the sites
+     */
+    public int getTotalLimit() {
+        int total = 0;
+        for (SiteState state : this.sites.values()) {
+            total += state.getLimit();
+        }
+        return total;
+    }
+
+    /**
+     * @return The throughput of the given site in its last window, in bytes
+     *         per second
+     */
+    public double getThroughput(RemoteSite site) {
+        SiteState state = this.getSiteState(site);
+        synchronized (state) {
+            return state.lastThroughput;
+        }
+    }
+
+    /**
+     * Records a finished download, possibly changing the site's limit.
+     *
+     * @param site
+     *            The site the file came from
+     * @param bytes
+     *            The size of the downloaded file
+     */
+    public void downloadFinished(RemoteSite site, long bytes) {
+        SiteState state = this.getSiteState(site);
+        int oldLimit, newLimit;
+        synchronized (state) {
+            oldLimit = state.limit;
+            long now = this.currentTimeMillis();
+            state.windowBytes += bytes;
+            state.windowDownloads++;
+            long elapsed = now - state.windowStart;
+            if (elapsed < this.windowMillis
+                    || state.windowDownloads < state.limit)
+                return;
+            state.adjust(state.windowBytes * 1000.0 / elapsed);
+            state.startWindow(now);
+            newLimit = state.limit;
+        }
+        this.limitChanged(state, oldLimit, newLimit);
+    }
+
+    /**
+     * Records a failed download, cutting the site's limit.
+     *
+     * @param site
+     *            The site the file was to come from
+     */
+    public void downloadFailed(RemoteSite site) {
+        SiteState state = this.getSiteState(site);
+        int oldLimit, newLimit;
+        synchronized (state) {
+            oldLimit = state.limit;
+            long now = this.currentTimeMillis();
+            if (state.lastBackoff >= 0
+                    && now - state.lastBackoff < this.windowMillis)
+                return;
+            state.lastBackoff = now;
+            state.probing = false;
+            state.direction = 1;
+            state.lastThroughput = 0;
+            state.setLimit((int) (state.limit * this.backoff));
+            state.startWindow(now);
+            newLimit = state.limit;
+        }
+        this.limitChanged(state, oldLimit, newLimit);
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void limitChanged(SiteState state, int oldLimit, int newLimit) {
+        if (oldLimit == newLimit)
+            return;
+        LOG.log(Level.INFO, "Download limit for " + state.site.getURL()
+                + " changed from " + oldLimit + " to " + newLimit);
+        for (LimitListener listener : this.listeners) {
+            listener.limitChanged(state.site, newLimit);
+        }
+    }
+
+    private SiteState getSiteState(RemoteSite site) {
+        String key = site.getUsername() + "@" + site.getURL().toExternalForm();
+        SiteState state = this.sites.get(key);
+        if (state == null) {
+            SiteState newState = new SiteState(site);
+            state = this.sites.putIfAbsent(key, newState);
+            if (state == null) {
+                state = newState;
+                for (LimitListener listener : this.listeners) {
+                    listener.limitChanged(site, state.getLimit());
+                }
+            }
+        }
+        return state;
+    }
+
+    private class SiteState {
+
+        private final RemoteSite site;
+
+        private final int maxLimit;
+
+        /* guarded by this */
+        private int limit;
+
+        private int previousLimit;
+
+        private int direction = 1;
+
+        private boolean probing = true;
+
+        private double lastThroughput;
+
+        private long windowStart;
+
+        private long windowBytes;
+
+        private int windowDownloads;
+
+        private long lastBackoff = -1;
+
+        private SiteState(RemoteSite site) {
+            this.site = site;
+            this.maxLimit = site.getMaxConnections() > 0 ? Math.min(
+                    site.getMaxConnections(),
+                    DownloadConcurrencyLimiter.this.maxLimit)
+                    : DownloadConcurrencyLimiter.this.maxLimit;
+            this.limit = this.previousLimit = Math.min(initialLimit,
+                    this.maxLimit);
+            this.startWindow(currentTimeMillis());
+        }
+
+        private synchronized int getLimit() {
+            return this.limit;
+        }
+
+        private void adjust(double throughput) {
+            int limit = this.limit;
+            if (this.lastThroughput <= 0) {
+                // nothing to compare with yet
+                this.direction = 1;
+                this.setLimit(limit + 1);
+            } else {
+                double gradient = (throughput - this.lastThroughput)
+                        / this.lastThroughput;
+                if (gradient > TOLERANCE) {
+                    // the last change helped: keep going
+                    if (this.direction > 0)
+                        this.setLimit(this.probing ? limit * 2 : limit + 1);
+                    else
+                        this.setLimit(limit - 1);
+                } else if (gradient < -TOLERANCE) {
+                    // the last change hurt: undo it and turn around
+                    this.probing = false;
+                    this.direction = -this.direction;
+                    this.setLimit(this.previousLimit != limit ? this.previousLimit
+                            : limit + this.direction);
+                } else {
+                    // no gain: try doing the same with fewer sessions
+                    this.probing = false;
+                    this.direction = -1;
+                    this.setLimit(limit - 1);
+                }
+            }
+            this.previousLimit = limit;
+            this.lastThroughput = throughput;
+        }
+
+        private void setLimit(int limit) {
+            this.limit = Math.max(1, Math.min(limit, this.maxLimit));
+        }
+
+        private void startWindow(long now) {
+            this.windowStart = now;
+            this.windowBytes = 0;
+            this.windowDownloads = 0;
+        }
+    }
+
+}
@@ -25,7 +25,6 @@ import org.apache.oodt.cas.pushpull.exceptions.AlreadyInDatabaseException;
 import org.apache.oodt.cas.pushpull.exceptions.CrawlerException;
 import org.apache.oodt.cas.pushpull.exceptions.ProtocolFileException;
 import org.apache.oodt.cas.pushpull.exceptions.RemoteConnectionException;
-import org.apache.oodt.cas.pushpull.exceptions.ThreadEvaluatorException;
 import org.apache.oodt.cas.pushpull.exceptions.ToManyFailedDownloadsException;
 import org.apache.oodt.cas.pushpull.exceptions.UndefinedTypeException;
 import org.apache.oodt.cas.pushpull.filerestrictions.renamingconventions.RenamingConvention;
@@ -34,6 +33,7 @@ import org.apache.oodt.cas.protocol.util.ProtocolFileFilter;
 import org.apache.oodt.cas.protocol.Protocol;
 import org.apache.oodt.cas.protocol.ProtocolFile;
 import org.apache.oodt.cas.pushpull.protocol.ProtocolHandler;
+import org.apache.oodt.cas.pushpull.protocol.ProtocolSessionPool;
 import org.apache.oodt.cas.pushpull.protocol.RemoteSite;
 import org.apache.oodt.cas.pushpull.protocol.RemoteSiteFile;
 import org.apache.oodt.cas.filemgr.structs.exceptions.CatalogException;
@@ -49,7 +49,6 @@ import java.net.MalformedURLException;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Vector;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -146,16 +145,11 @@ public class FileRetrievalSystem {
     private final static int EXTRA_LAZY_SESSIONS_TIMEOUT = 10;
 
     /**
-     * A list of created protocol sessions (devoted to grabbing files from the
-     * crawling directory structure) that are not presently in use.
+     * The protocol sessions (devoted to grabbing files from the crawling
+     * directory structure), which are handed to the download threads and
+     * reused between downloads.
      */
-    private Vector<Protocol> avaliableSessions;
-
-    /**
-     * The number of sessions that have been created (should always be less than
-     * or equal to MAX_SESSIONS).
-     */
-    private int numberOfSessions;
+    private ProtocolSessionPool sessionPool;
 
     /**
      * The thread pool that is in charge of the sessions.
@@ -169,9 +163,9 @@ public class FileRetrievalSystem {
     private ProtocolHandler protocolHandler;
 
     /**
-     * max_sessions tracker
+     * Adapts the number of sessions per site to what each site sustains
      */
-    private DownloadThreadEvaluator dtEval;
+    private DownloadConcurrencyLimiter concurrencyLimiter;
 
     private DownloadListener dListener;
 
@@ -228,13 +222,9 @@ public class FileRetrievalSystem {
 
     /**
      * Initializes variables that must be reset when more than one crawl is done
-     *
-     * @throws ThreadEvaluatorException
      */
-    void resetVariables() throws ThreadEvaluatorException {
-        numberOfSessions = 0;
+    void resetVariables() {
         stagingAreas = new HashSet<File>();
-        avaliableSessions = new Vector<Protocol>();
         currentlyDownloading = new HashSet<ProtocolFile>();
         failedDownloadList = new LinkedList<ProtocolFile>();
         max_allowed_failed_downloads = config.getMaxFailedDownloads();
@@ -242,8 +232,40 @@ public class FileRetrievalSystem {
         threadController = new ThreadPoolExecutor(this.max_sessions,
                 this.max_sessions, EXTRA_LAZY_SESSIONS_TIMEOUT,
                 TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
-        if (config.useTracker())
-            dtEval = new DownloadThreadEvaluator(this.absMaxAllowedSessions);
+        if (sessionPool != null)
+            sessionPool.close();
+        sessionPool = new ProtocolSessionPool(protocolHandler, max_sessions);
+        if (config.useTracker()) {
+            concurrencyLimiter = new DownloadConcurrencyLimiter(max_sessions,
+                    absMaxAllowedSessions);
+            concurrencyLimiter
+                    .addLimitListener(new DownloadConcurrencyLimiter.LimitListener() {
+                        public void limitChanged(RemoteSite site, int limit) {
+                            sessionPool.setMaxSessions(site, limit);
+                            resizeSessions(Math.min(absMaxAllowedSessions,
+                                    concurrencyLimiter.getTotalLimit()));
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Resizes the thread pool and session pool in place, letting running
+     * downloads finish
+     *
+     * @param sessions
+     *            The new max number of downloads at once
+     */
+    synchronized void resizeSessions(int sessions) {
+        if (sessions > max_sessions) {
+            threadController.setMaximumPoolSize(sessions);
+            threadController.setCorePoolSize(sessions);
+        } else if (sessions < max_sessions) {
+            threadController.setCorePoolSize(sessions);
+            threadController.setMaximumPoolSize(sessions);
+        }
+        max_sessions = sessions;
+        sessionPool.setMaxTotal(sessions);
     }
 
     /**
@@ -259,11 +281,40 @@ public class FileRetrievalSystem {
                 : false;
     }
 
+    /**
+     * Checks a page of files against the file manager in one call, so that
+     * {@link #isAlreadyInDatabase(RemoteFile)} is answered from the
+     * ingester's existence cache for files whose product name is their file
+     * name (the default).
+     *
+     * @param files
+     *            A page of files from a remote directory
+     */
+    void prefetchAlreadyInDatabase(List<RemoteSiteFile> files) {
+        if (config.getIngester() == null)
+            return;
+        List<String> names = new LinkedList<String>();
+        for (RemoteSiteFile file : files) {
+            if (!file.isDir())
+                names.add(file.getName());
+        }
+        if (names.isEmpty())
+            return;
+        try {
+            config.getIngester().hasProducts(config.getFmUrl(), names);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to check " + names.size()
+                    + " files against the file manager up front : "
+                    + e.getMessage());
+        }
+    }
+
     public List<RemoteSiteFile> getNextPage(final RemoteSiteFile dir,
             final ProtocolFileFilter filter) throws RemoteConnectionException {
         for (int i = 0; i < 3; i++) {
+            List<RemoteSiteFile> page;
             try {
-                return protocolHandler.nextPage(dir.getSite(), protocolHandler
+                page = protocolHandler.nextPage(dir.getSite(), protocolHandler
                         .getAppropriateProtocol(dir, true, true),
                         new ProtocolFileFilter() {
                             @Override
@@ -276,7 +327,10 @@ public class FileRetrievalSystem {
             } catch (Exception e) {
                 LOG.log(Level.WARNING, "Retrying to get next page for " + dir
                         + " because operation failed : " + e.getMessage(), e);
+                continue;
             }
+            prefetchAlreadyInDatabase(page);
+            return page;
         }
         throw new RemoteConnectionException("Failed to get next page for "
                 + dir);
@@ -388,7 +442,7 @@ public class FileRetrievalSystem {
         synchronized (this) {
             for (int i = 0; i < 180; i++) {
                 try {
-                    if (this.avaliableSessions.size() == this.numberOfSessions)
+                    if (this.sessionPool.getActiveCount() == 0)
                         return;
                     else
                         this.wait(5000);
@@ -576,134 +630,45 @@ public class FileRetrievalSystem {
         }
     }
 
-    Protocol getNextAvaliableSession(RemoteSiteFile file) throws CrawlerException {
-        // wait for available session, then load it
-        Protocol session;
-        while ((session = getSession(file)) == null) {
-            try {
-                waitMainThread();
-            } catch (InterruptedException e1) {
-            }
-        }
-        return session;
-    }
-
-    /**
-     * Sleeps the crawling thread
-     *
-     * @throws InterruptedException
-     */
-    synchronized void waitMainThread() throws InterruptedException {
-        wait();
-    }
-
-    /**
-     * Wakes up the crawling thread
-     */
-    synchronized void wakeUpMainThread() {
-        notify();
-    }
-
-    /**
-     * Increments the number of downloading session
-     */
-    synchronized void incrementSessions() {
-        numberOfSessions++;
-    }
-
-    synchronized void decrementSessions() {
-        this.numberOfSessions--;
-    }
-
     /**
-     * Gets an available downloading session Protocol. Returns null if none are
-     * available
+     * Borrows a downloading session Protocol for the given file from the
+     * session pool, waiting (in turn with the download threads) for one to be
+     * given back if all are in use
      *
-     * @param path
-     *            The session returned will be checked against the Path passed
-     *            in and if not presently connected to the Path's URL, it will
-     *            be disconnected from it's current server and connected to the
-     *            server specified by the Path.
-     * @return The found downloading session Protocol
-     * @throws RemoteCommunicationException
-     *             If downloading session Protocol has to be reconnected and
-     *             there is an error communicating with the server
+     * @param file
+     *            The session returned will have navigated to the file's
+     *            directory on the file's site
+     * @return The borrowed downloading session Protocol
+     * @throws CrawlerException
+     *             If no session could be connected to the file's site
      */
-    synchronized Protocol getSession(RemoteSiteFile file) throws CrawlerException {
+    Protocol getNextAvaliableSession(RemoteSiteFile file) throws CrawlerException {
         try {
-            Protocol session = null;
-			if (file.getSite().getMaxConnections() < 0
-					|| file.getSite().getMaxConnections() > this.getCurrentlyDownloadingFiles().size()) {
-	            if (avaliableSessions.size() > 0) {
-	                session = modifyAvailableSessionForPath(file);
-	            } else if (numberOfSessions < max_sessions) {
-	                session = createNewSessionForPath(file);
-	                incrementSessions();
-	            }
-            }
-            return session;
+            if (config.useTracker())
+                concurrencyLimiter.register(file.getSite());
+            return sessionPool.borrow(file);
         } catch (Exception e) {
             throw new CrawlerException("Failed to get new session : "
                     + e.getMessage(), e);
         }
     }
 
-    Protocol createNewSessionForPath(RemoteSiteFile file)
-            throws RemoteConnectionException {
-        return protocolHandler.getAppropriateProtocol(file, /* reuse */false, /* navigate */
-        true);
-    }
-
-    Protocol modifyAvailableSessionForPath(RemoteSiteFile file)
-            throws ProtocolException, RemoteConnectionException {
-        Protocol session = getAvailableSession();
-        if (!file.getSite().getURL().getHost().equals(
-                file.getSite().getURL().getHost())
-                || !protocolHandler.isProtocolConnected(session)) {
-            protocolHandler.disconnect(session);
-            session = protocolHandler.getAppropriateProtocol(file, /* reuse */
-            false, /* navigate */true);
-        } else {
-            try {
-                if (file.isDir())
-                    protocolHandler.cd(session, file);
-                else
-                    protocolHandler.cd(session,
-                          new RemoteSiteFile(file.getParent(), file.getSite()));
-            } catch (Exception e) {
-                e.printStackTrace();
-                try {
-                    protocolHandler.disconnect(session);
-                } catch (Exception exc) {
-                }
-                session = protocolHandler.getAppropriateProtocol(file, /* reuse */
-                false, /* navigate */true);
-            }
-        }
-        return session;
-    }
-
     /**
-     * Puts a session in the available session list
-     *
-     * @param session
-     *            The Protocol session to be added to the available list
+     * Wakes up the crawling thread
      */
-    synchronized void addAvailableSession(Protocol session) {
-        avaliableSessions.add(session);
+    synchronized void wakeUpMainThread() {
+        notifyAll();
     }
 
-    /**
-     * Removes a session from the available list and returns it
-     *
-     * @return An available downloading Protocol session
-     */
-    synchronized Protocol getAvailableSession() {
-        return avaliableSessions.remove(0);
+    int getNumberOfUsedSessions() {
+        return sessionPool.getActiveCount();
     }
 
-    synchronized int getNumberOfUsedSessions() {
-        return numberOfSessions - avaliableSessions.size();
+    /**
+     * @return The session pool, for its wait time and utilisation metrics
+     */
+    public ProtocolSessionPool getSessionPool() {
+        return sessionPool;
     }
 
     /**
@@ -737,17 +702,14 @@ public class FileRetrievalSystem {
                     try {
                         // if thread tracker is to be used
                         if (config.useTracker()) {
-                            dtEval.startTrackingDownloadRuntimeForFile(newFile);
                             protocolHandler.download(curSession, remoteFile
                                     .getProtocolFile(), newFile, remoteFile
                                     .getMetadata(
                                             RemoteFile.DELETE_AFTER_DOWNLOAD)
                                     .equals("true"));
-                            dtEval.fileDownloadComplete(newFile);
-                            threadController
-                                    .setCorePoolSize(max_sessions = dtEval
-                                            .getRecommendedThreadCount());
-                            threadController.setMaximumPoolSize(max_sessions);
+                            concurrencyLimiter.downloadFinished(remoteFile
+                                    .getProtocolFile().getSite(), newFile
+                                    .length());
                             // if static number of threads are to be used
                         } else {
                             protocolHandler.download(curSession, remoteFile
@@ -786,9 +748,10 @@ public class FileRetrievalSystem {
 
                     } catch (Exception e) {
 
-                        // if tracker is being used cancel tracking
+                        // if tracker is being used back off from the site
                         if (config.useTracker())
-                            dtEval.cancelRuntimeTracking(newFile);
+                            concurrencyLimiter.downloadFailed(remoteFile
+                                    .getProtocolFile().getSite());
 
                         // delete any created file from staging area
                         newFile.delete();
@@ -817,14 +780,10 @@ public class FileRetrievalSystem {
                                     + " because download failed : "
                                     + e.getMessage(), e);
                             try {
-                                protocolHandler.disconnect(curSession);
-                            } catch (Exception exc) {
-                            }
-                            try {
-                                curSession = protocolHandler
-                                        .getAppropriateProtocol(remoteFile
-                                                .getProtocolFile(), false, true);
+                                curSession = sessionPool.replace(curSession,
+                                        remoteFile.getProtocolFile());
                             } catch (Exception exc) {
+                                curSession = null;
                                 LOG.log(Level.SEVERE,
                                         "Failed to reconnect protocol to retry download of file "
                                                 + remoteFile.getProtocolFile()
@@ -851,9 +810,15 @@ public class FileRetrievalSystem {
                     }
                 } while (!successful);
 
+                // a partial download is only kept for this file's retries
+                if (!successful)
+                    protocolHandler.discardPartialDownload(remoteFile
+                            .getProtocolFile().getSite(), newFile);
+
                 FileRetrievalSystem.this.removeFromDownloadingList(remoteFile
                         .getProtocolFile());
-                determineSessionFate(curSession);
+                if (curSession != null)
+                    determineSessionFate(curSession);
             }
         });
     }
@@ -884,29 +849,12 @@ public class FileRetrievalSystem {
         this.failedDownloadList.clear();
     }
 
-    synchronized void determineSessionFate(Protocol session) {
-        // determine whether thread should be keep or should be thrown away
-        if (numberOfSessions <= max_sessions) {
-            giveBackSession(session);
-        } else {
-            disposeOfSession(session);
-        }
-    }
-
-    void giveBackSession(Protocol session) {
-        addAvailableSession(session);
+    void determineSessionFate(Protocol session) {
+        // the pool keeps the session, or throws it away if it has shrunk
+        sessionPool.giveBack(session);
         wakeUpMainThread();
     }
 
-    void disposeOfSession(Protocol session) {
-        try {
-            protocolHandler.disconnect(session);
-        } catch (Exception e) {
-            // log failure
-        }
-        numberOfSessions--;
-    }
-
     public void shutdown() {
         try {
             // close out threadpool
@@ -917,16 +865,17 @@ public class FileRetrievalSystem {
             // log failure
         }
 
+        LOG.log(Level.INFO, "Download sessions : " + sessionPool);
         try {
-            this.resetVariables();
+            closeSessions();
         } catch (Exception e) {
-
+            // log failure!!!
         }
 
         try {
-            closeSessions();
+            this.resetVariables();
         } catch (Exception e) {
-            // log failure!!!
+
         }
 
         try {
@@ -938,8 +887,8 @@ public class FileRetrievalSystem {
     }
 
     /**
-     * Disconnects all downloading Protocol sessions in the avaiableSessions
-     * list. The ThreadPoolExecutor needs to be completely shutdown before this
+     * Disconnects all idle downloading Protocol sessions in the session pool.
+     * The ThreadPoolExecutor needs to be completely shutdown before this
      * method should be called. Otherwise some Protocols might not be
      * disconnected or left downloading.
      *
@@ -947,12 +896,7 @@ public class FileRetrievalSystem {
      * @throws RemoteConnectionException
      */
     public boolean closeSessions() throws RemoteConnectionException {
-        for (Protocol session : avaliableSessions) {
-            protocolHandler.disconnect(session);
-        }
-        // sessions.clear();
-        avaliableSessions.clear();
-        numberOfSessions = 0;
+        sessionPool.clear();
         return true;
     }
 }
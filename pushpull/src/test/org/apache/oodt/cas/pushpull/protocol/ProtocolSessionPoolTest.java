@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.pushpull.protocol;
+
+// JUnit static imports
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// Mockito static imports
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// JDK imports
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicReference;
+
+// OODT imports
+import org.apache.oodt.cas.protocol.Protocol;
+import org.apache.oodt.cas.pushpull.config.ProtocolInfo;
+import org.apache.oodt.cas.pushpull.exceptions.RemoteConnectionException;
+
+// JUnit imports
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Test class for {@link ProtocolSessionPool}.
+ *
+ */
+@RunWith(JUnit4.class)
+public class ProtocolSessionPoolTest {
+
+  private ProtocolHandler protocolHandler;
+
+  private RemoteSiteFile siteFile;
+
+  @Before
+  public void setUp() throws Exception {
+    protocolHandler = new ProtocolHandler(new ProtocolInfo()) {
+      @Override
+      public Protocol getAppropriateProtocol(RemoteSiteFile pFile,
+          boolean allowReuse, boolean navigateToPathLoc) {
+        Protocol protocol = mock(Protocol.class);
+        when(protocol.connected()).thenReturn(true);
+        return protocol;
+      }
+    };
+    siteFile = newSiteFile("ftp://localhost", -1);
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    ProtocolSessionPool pool = new ProtocolSessionPool(protocolHandler, 2, 8,
+        0, 0);
+    Protocol session = pool.borrow(siteFile);
+    assertEquals(1, pool.getActiveCount());
+    pool.giveBack(session);
+    assertEquals(0, pool.getActiveCount());
+    assertEquals(1, pool.getIdleCount());
+
+    assertSame(session, pool.borrow(siteFile));
+    assertEquals(1, pool.getCreatedCount());
+    assertEquals(2, pool.getBorrowCount());
+  }
+
+  @Test
+  public void testValidationOnBorrow() throws Exception {
+    ProtocolSessionPool pool = new ProtocolSessionPool(protocolHandler, 2, 8,
+        0, 0);
+    Protocol session = pool.borrow(siteFile);
+    pool.giveBack(session);
+    when(session.connected()).thenReturn(false);
+
+    Protocol newSession = pool.borrow(siteFile);
+    assertNotSame(session, newSession);
+    assertEquals(1, pool.getValidationFailureCount());
+    verify(session).close();
+  }
+
+  @Test
+  public void testSessionsPerSite() throws Exception {
+    ProtocolSessionPool pool = new ProtocolSessionPool(protocolHandler, 4, 8,
+        0, 0);
+    Protocol session = pool.borrow(siteFile);
+    pool.giveBack(session);
+    Protocol otherSession = pool.borrow(newSiteFile("ftp://otherhost", -1));
+    assertNotSame(session, otherSession);
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  @Test
+  public void testHandoffToWaitingBorrower() throws Exception {
+    ProtocolSessionPool pool = new ProtocolSessionPool(protocolHandler, 1, 8,
+        0, 0);
+    Protocol session = pool.borrow(siteFile);
+    BorrowThread waiter = new BorrowThread(pool, siteFile);
+    waiter.start();
+    waitForWaiters(pool, 1);
+
+    Thread.sleep(50);
+    pool.giveBack(session);
+    waiter.join(5000);
+    assertSame(session, waiter.borrowed.get());
+    assertTrue(pool.getMaxWaitMillis() >= 50);
+    assertEquals(1.0, pool.getUtilisation(), 0.0);
+  }
+
+  @Test
+  public void testSetMaxTotal() throws Exception {
+    ProtocolSessionPool pool = new ProtocolSessionPool(protocolHandler, 1, 8,
+        0, 0);
+    Protocol session = pool.borrow(siteFile);
+    BorrowThread waiter = new BorrowThread(pool, siteFile);
+    waiter.start();
+    waitForWaiters(pool, 1);
+
+    // growing the pool lets the waiting borrower through
+    pool.setMaxTotal(2);
+    waiter.join(5000);
+    assertEquals(2, pool.getActiveCount());
+
+    // shrinking it throws away the extra session once it is given back
+    pool.setMaxTotal(1);
+    pool.giveBack(session);
+    pool.giveBack(waiter.borrowed.get());
+    assertEquals(1, pool.getIdleCount());
+    assertEquals(1, pool.getDestroyedCount());
+  }
+
+  @Test
+  public void testSiteMaxConnections() throws Exception {
+    ProtocolSessionPool pool = new ProtocolSessionPool(protocolHandler, 4, 8,
+        0, 0);
+    RemoteSiteFile limitedFile = newSiteFile("ftp://limitedhost", 1);
+    pool.borrow(limitedFile);
+    BorrowThread waiter = new BorrowThread(pool, limitedFile);
+    waiter.start();
+
+    // other sites are not held up by the limited site
+    pool.borrow(siteFile);
+    Thread.sleep(50);
+    assertTrue(waiter.isAlive());
+    assertEquals(2, pool.getActiveCount());
+    pool.close();
+    waiter.interrupt();
+    waiter.join(5000);
+  }
+
+  @Test
+  public void testIdleEviction() throws Exception {
+    ProtocolSessionPool pool = new ProtocolSessionPool(protocolHandler, 3, 8,
+        1, 1);
+    Protocol[] sessions = new Protocol[3];
+    for (int i = 0; i < sessions.length; i++)
+      sessions[i] = pool.borrow(siteFile);
+    for (Protocol session : sessions)
+      pool.giveBack(session);
+    Thread.sleep(20);
+
+    assertEquals(2, pool.evictIdleSessions());
+    assertEquals(1, pool.getIdleCount());
+    assertEquals(2, pool.getEvictedCount());
+    pool.close();
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test(expected = RemoteConnectionException.class)
+  public void testBorrowFromClosedPool() throws Exception {
+    ProtocolSessionPool pool = new ProtocolSessionPool(protocolHandler, 1, 8,
+        0, 0);
+    pool.close();
+    pool.borrow(siteFile);
+  }
+
+  private static RemoteSiteFile newSiteFile(String url, int maxConnections)
+      throws Exception {
+    return new RemoteSiteFile("/data/file.txt", false, new RemoteSite("site",
+        new URL(url), "user", "pass", null, maxConnections));
+  }
+
+  private static void waitForWaiters(ProtocolSessionPool pool, int waiters)
+      throws InterruptedException {
+    for (int i = 0; i < 500 && pool.getWaitingCount() < waiters; i++)
+      Thread.sleep(10);
+    assertEquals(waiters, pool.getWaitingCount());
+  }
+
+  private static class BorrowThread extends Thread {
+
+    private final ProtocolSessionPool pool;
+
+    private final RemoteSiteFile file;
+
+    private final AtomicReference<Protocol> borrowed = new AtomicReference<Protocol>();
+
+    BorrowThread(ProtocolSessionPool pool, RemoteSiteFile file) {
+      this.pool = pool;
+      this.file = file;
+    }
+
+    @Override
+    public void run() {
+      try {
+        borrowed.set(pool.borrow(file));
+      } catch (RemoteConnectionException ignore) {
+      }
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.pushpull.retrievalsystem;
+
+// JDK imports
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+// OODT imports
+import org.apache.oodt.cas.pushpull.protocol.RemoteSite;
+
+/**
+ * Shows how {@link DownloadConcurrencyLimiter} settles on the number of
+ * sessions for simulated sites. Each site has a total bandwidth, a bandwidth
+ * per session, and a number of sessions past which it slows down and starts
+ * failing downloads, so its best number of sessions is known. The simulation
+ * runs in simulated time and prints each site's limit and throughput as it
+ * goes.
+ *
+ * <pre>
+ * java -cp ... org.apache.oodt.cas.pushpull.retrievalsystem.DownloadConcurrencyBenchmark [seconds]
+ * </pre>
+ *
+ */
+public class DownloadConcurrencyBenchmark {
+
+  private static final long STEP_MILLIS = 10;
+
+  private static final long FILE_SIZE = 8 * 1024 * 1024;
+
+  private static final double MB = 1024 * 1024;
+
+  private long now;
+
+  private long halfway;
+
+  private final Random random = new Random(42);
+
+  public static void main(String[] args) throws Exception {
+    long seconds = args.length > 0 ? Long.parseLong(args[0]) : 600;
+    new DownloadConcurrencyBenchmark().run(seconds * 1000);
+  }
+
+  private void run(long millis) throws Exception {
+    halfway = millis / 2;
+    DownloadConcurrencyLimiter limiter = new DownloadConcurrencyLimiter(2, 50,
+        5000, 0.5) {
+      @Override
+      protected long currentTimeMillis() {
+        return now;
+      }
+    };
+    List<SimulatedSite> sites = new ArrayList<SimulatedSite>();
+    // a fat pipe where each session is capped: best at 10 sessions
+    sites.add(new SimulatedSite("fast", 40 * MB, 4 * MB, 16));
+    // a small server: best at 4 sessions, overloaded past 6
+    sites.add(new SimulatedSite("slow", 8 * MB, 2 * MB, 6));
+
+    System.out.printf("%8s", "time(s)");
+    for (SimulatedSite site : sites)
+      System.out.printf(" %22s", site.name + " limit MB/s (best)");
+    System.out.println();
+
+    for (now = 0; now < millis; now += STEP_MILLIS) {
+      for (SimulatedSite site : sites)
+        site.step(limiter);
+      if (now % 10000 == 0) {
+        System.out.printf("%8d", now / 1000);
+        for (SimulatedSite site : sites)
+          System.out.printf(" %5d %7.1f (%2d %5.1f)", limiter
+              .getLimit(site.site), site.recentMBps(), site.bestSessions(),
+              site.bestMBps());
+        System.out.println();
+      }
+    }
+
+    System.out.println();
+    for (SimulatedSite site : sites) {
+      System.out.printf(
+          "%s: average limit over last half %.1f (best %d), throughput "
+              + "%.1f MB/s of %.1f MB/s best, %d failed downloads%n",
+          site.name, site.secondHalfLimit / site.secondHalfSteps, site
+              .bestSessions(), site.secondHalfBytes
+              / (site.secondHalfSteps * STEP_MILLIS / 1000.0) / MB, site
+              .bestMBps(), site.failures);
+    }
+  }
+
+  private class SimulatedSite {
+
+    private final String name;
+
+    private final RemoteSite site;
+
+    private final double bandwidth;
+
+    private final double sessionBandwidth;
+
+    private final int overloadSessions;
+
+    private final List<double[]> downloads = new ArrayList<double[]>();
+
+    private double recentBytes;
+
+    private long recentStart;
+
+    private double secondHalfLimit, secondHalfBytes;
+
+    private long secondHalfSteps;
+
+    private int failures;
+
+    private SimulatedSite(String name, double bandwidth,
+        double sessionBandwidth, int overloadSessions) throws Exception {
+      this.name = name;
+      this.site = new RemoteSite(name, new URL("ftp://" + name), "user",
+          "pass");
+      this.bandwidth = bandwidth;
+      this.sessionBandwidth = sessionBandwidth;
+      this.overloadSessions = overloadSessions;
+    }
+
+    /*
+     * Bytes per second the site delivers to each of the given number of
+     * sessions.
+     */
+    private double rate(int sessions) {
+      double total = Math.min(bandwidth, sessions * sessionBandwidth);
+      if (sessions > overloadSessions)
+        total *= Math.max(0.2, 1.0 - 0.08 * (sessions - overloadSessions));
+      return total / sessions;
+    }
+
+    private void step(DownloadConcurrencyLimiter limiter) {
+      int limit = limiter.getLimit(site);
+      while (downloads.size() < limit)
+        downloads.add(new double[] { 0 });
+
+      int sessions = downloads.size();
+      double bytes = rate(sessions) * STEP_MILLIS / 1000.0;
+      double failureChance = sessions > overloadSessions ? 0.0005 * (sessions - overloadSessions)
+          : 0.00001;
+      for (Iterator<double[]> i = downloads.iterator(); i.hasNext();) {
+        double[] download = i.next();
+        download[0] += bytes * (0.9 + 0.2 * random.nextDouble());
+        recentBytes += bytes;
+        if (random.nextDouble() < failureChance) {
+          i.remove();
+          failures++;
+          limiter.downloadFailed(site);
+        } else if (download[0] >= FILE_SIZE) {
+          i.remove();
+          limiter.downloadFinished(site, FILE_SIZE);
+        }
+      }
+      if (now >= halfway) {
+        secondHalfSteps++;
+        secondHalfLimit += limit;
+        secondHalfBytes += sessions * bytes;
+      }
+    }
+
+    private double recentMBps() {
+      double seconds = (now + STEP_MILLIS - recentStart) / 1000.0;
+      double mbps = recentBytes / seconds / MB;
+      recentBytes = 0;
+      recentStart = now + STEP_MILLIS;
+      return mbps;
+    }
+
+    private int bestSessions() {
+      int best = 1;
+      for (int i = 1; i <= 50; i++) {
+        if (rate(i) * i > rate(best) * best * 1.0001)
+          best = i;
+      }
+      return best;
+    }
+
+    private double bestMBps() {
+      return rate(bestSessions()) * bestSessions() / MB;
+    }
+  }
+}
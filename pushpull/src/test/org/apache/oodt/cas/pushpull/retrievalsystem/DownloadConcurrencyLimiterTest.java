@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.pushpull.retrievalsystem;
+
+// JUnit static imports
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// JDK imports
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+// OODT imports
+import org.apache.oodt.cas.pushpull.protocol.RemoteSite;
+
+// JUnit imports
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Test class for {@link DownloadConcurrencyLimiter}.
+ *
+ */
+@RunWith(JUnit4.class)
+public class DownloadConcurrencyLimiterTest {
+
+  private static final long WINDOW_MILLIS = 1000;
+
+  private long now;
+
+  private DownloadConcurrencyLimiter limiter;
+
+  private RemoteSite site;
+
+  @Before
+  public void setUp() throws Exception {
+    now = 0;
+    limiter = new DownloadConcurrencyLimiter(2, 50, WINDOW_MILLIS, 0.5) {
+      @Override
+      protected long currentTimeMillis() {
+        return now;
+      }
+    };
+    site = new RemoteSite("site", new URL("ftp://localhost"), "user", "pass");
+  }
+
+  @Test
+  public void testConvergesOnSiteCapacity() throws Exception {
+    RemoteSite smallSite = new RemoteSite("small", new URL("ftp://smallhost"),
+        "user", "pass");
+    for (int i = 0; i < 40; i++) {
+      runWindow(site, 10);
+      runWindow(smallSite, 3);
+    }
+    assertTrue(limiter.getLimit(site) >= 9 && limiter.getLimit(site) <= 11);
+    assertTrue(limiter.getLimit(smallSite) >= 2
+        && limiter.getLimit(smallSite) <= 4);
+  }
+
+  @Test
+  public void testBackoffOnFailure() {
+    while (limiter.getLimit(site) < 8)
+      runWindow(site, 20);
+    int limit = limiter.getLimit(site);
+
+    limiter.downloadFailed(site);
+    assertEquals(limit / 2, limiter.getLimit(site));
+    // only once per window
+    limiter.downloadFailed(site);
+    assertEquals(limit / 2, limiter.getLimit(site));
+    now += WINDOW_MILLIS;
+    limiter.downloadFailed(site);
+    assertEquals(limit / 4, limiter.getLimit(site));
+  }
+
+  @Test
+  public void testSiteMaxConnections() throws Exception {
+    RemoteSite limitedSite = new RemoteSite("limited", new URL(
+        "ftp://limitedhost"), "user", "pass", null, 3);
+    for (int i = 0; i < 10; i++)
+      runWindow(limitedSite, 20);
+    assertEquals(3, limiter.getLimit(limitedSite));
+  }
+
+  @Test
+  public void testLimitListener() {
+    final List<Integer> limits = new ArrayList<Integer>();
+    limiter.addLimitListener(new DownloadConcurrencyLimiter.LimitListener() {
+      public void limitChanged(RemoteSite site, int limit) {
+        limits.add(limit);
+      }
+    });
+    assertEquals(2, limiter.register(site));
+    assertEquals(2, limiter.getTotalLimit());
+    runWindow(site, 20);
+    assertEquals(2, limits.size());
+    assertEquals(Integer.valueOf(2), limits.get(0));
+    assertEquals(Integer.valueOf(limiter.getLimit(site)), limits.get(1));
+  }
+
+  /*
+   * Finishes a window's worth of downloads from a site whose throughput
+   * grows with each session up to the given capacity.
+   */
+  private void runWindow(RemoteSite site, int capacity) {
+    int limit = limiter.getLimit(site);
+    long bytes = Math.min(limit, capacity) * 1000L;
+    now += WINDOW_MILLIS;
+    for (int i = 0; i < limit; i++)
+      limiter.downloadFinished(site, bytes / limit);
+  }
+}
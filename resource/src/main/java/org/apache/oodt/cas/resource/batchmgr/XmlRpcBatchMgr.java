@@ -31,7 +31,16 @@ import org.apache.oodt.cas.resource.structs.exceptions.MonitorException;
 
 //JDK imports
 import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,6 +52,17 @@ import java.util.logging.Logger;
  * <p>
  * An XML-RPC interface to the batch manager.
  * </p>
+ * 
+ * <p>
+ * By default each job is run by an {@link XmlRpcBatchMgrProxy} thread that
+ * waits on the batch stub until the job is done. With
+ * <code>org.apache.oodt.cas.resource.batchmgr.xmlrpc.async</code> set to
+ * true, jobs are instead handed to the stub, which returns straight away,
+ * and kept in a table of jobs by node. A single thread asks each node with
+ * jobs for all of their statuses every
+ * <code>org.apache.oodt.cas.resource.batchmgr.xmlrpc.pollMillis</code>
+ * (default 5000) milliseconds. A job the stub no longer knows of is failed.
+ * </p>
  */
 public class XmlRpcBatchMgr implements Batchmgr {
     /* our log stream */
@@ -57,9 +77,28 @@ public class XmlRpcBatchMgr implements Batchmgr {
 
     private Map specToProxyMap;
 
+    private final boolean async;
+
+    private final long pollMillis;
+
+    /* jobs handed to the stubs, by node id */
+    private final Map<String, NodeJobs> nodeJobs = new ConcurrentHashMap<String, NodeJobs>();
+
+    private final AtomicLong submissions = new AtomicLong();
+
+    private ScheduledExecutorService statusPoller;
+
     public XmlRpcBatchMgr() {
+        this(Boolean.getBoolean("org.apache.oodt.cas.resource.batchmgr.xmlrpc.async"),
+                Long.getLong("org.apache.oodt.cas.resource.batchmgr.xmlrpc.pollMillis",
+                        5000).longValue());
+    }
+
+    public XmlRpcBatchMgr(boolean async, long pollMillis) {
         nodeToJobMap = new HashMap();
         specToProxyMap = new HashMap();
+        this.async = async;
+        this.pollMillis = pollMillis;
     }
 
     /*
@@ -78,6 +117,10 @@ public class XmlRpcBatchMgr implements Batchmgr {
                     + "] is down: Unable to execute job!");
         }
 
+        if (async) {
+            return submitRemotely(proxy, jobSpec, resNode);
+        }
+
         synchronized (this.specToProxyMap) {
             specToProxyMap.put(jobSpec.getJob().getId(), proxy);
         }
@@ -92,6 +135,115 @@ public class XmlRpcBatchMgr implements Batchmgr {
         return true;
     }
 
+    private boolean submitRemotely(XmlRpcBatchMgrProxy proxy,
+            JobSpec jobSpec, ResourceNode resNode)
+            throws JobExecutionException {
+        String jobId = jobSpec.getJob().getId();
+        synchronized (this.nodeToJobMap) {
+            this.nodeToJobMap.put(jobId, resNode.getNodeId());
+        }
+
+        // the job goes into its node's table before it is handed over, so
+        // that a poll made while the submission is in flight can settle it
+        // if it already finished
+        NodeJobs jobs = getNodeJobs(resNode);
+        jobs.add(jobSpec);
+
+        boolean accepted;
+        try {
+            accepted = proxy.submitJob();
+        } catch (Exception e) {
+            if (!withdraw(jobs, jobId)) {
+                return true;
+            }
+            throw new JobExecutionException("Unable to submit job: [" + jobId
+                    + "] to node: [" + resNode.getNodeId() + "]: Message: "
+                    + e.getMessage(), e);
+        }
+        if (!accepted) {
+            if (!withdraw(jobs, jobId)) {
+                return true;
+            }
+            throw new JobExecutionException("Node: [" + resNode.getNodeId()
+                    + "] refused job: [" + jobId + "]");
+        }
+
+        jobs.submitted(jobSpec, this.submissions.incrementAndGet());
+        return true;
+    }
+
+    /*
+     * Takes a job whose submission failed back out of its node's table.
+     * Returns false if a poll already settled the job, which means the stub
+     * did get it.
+     */
+    private boolean withdraw(NodeJobs jobs, String jobId) {
+        if (!jobs.remove(jobId)) {
+            LOG.log(Level.WARNING, "Job: [" + jobId + "] was reported by node: ["
+                    + jobs.node.getNodeId() + "] although its submission failed");
+            return false;
+        }
+        synchronized (this.nodeToJobMap) {
+            this.nodeToJobMap.remove(jobId);
+        }
+        return true;
+    }
+
+    private NodeJobs getNodeJobs(ResourceNode resNode) {
+        synchronized (this.nodeJobs) {
+            NodeJobs jobs = this.nodeJobs.get(resNode.getNodeId());
+            if (jobs == null) {
+                jobs = new NodeJobs(resNode);
+                this.nodeJobs.put(resNode.getNodeId(), jobs);
+            }
+            if (this.statusPoller == null) {
+                this.statusPoller = Executors
+                        .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                            public Thread newThread(Runnable r) {
+                                Thread thread = new Thread(r,
+                                        "XmlRpcBatchMgr status poller");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                this.statusPoller.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        pollJobStatuses();
+                    }
+                }, this.pollMillis, this.pollMillis, TimeUnit.MILLISECONDS);
+            }
+            return jobs;
+        }
+    }
+
+    /**
+     * Collects the status of the submitted jobs from every node that has any,
+     * settling the jobs that have finished.
+     */
+    protected void pollJobStatuses() {
+        for (NodeJobs jobs : this.nodeJobs.values()) {
+            try {
+                jobs.poll();
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Unable to get job statuses from node: ["
+                        + jobs.node.getNodeId() + "]: Message: "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops asking the nodes for the status of submitted jobs.
+     */
+    public void shutdown() {
+        synchronized (this.nodeJobs) {
+            if (this.statusPoller != null) {
+                this.statusPoller.shutdownNow();
+                this.statusPoller = null;
+            }
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -136,6 +288,8 @@ public class XmlRpcBatchMgr implements Batchmgr {
             return false;
         }
 
+        // a submitted job stays in its node's table until the stub reports
+        // it killed, which is when the node's load is reduced
         XmlRpcBatchMgrProxy proxy = new XmlRpcBatchMgrProxy(spec, node, this);
         return proxy.killJob();
     }
@@ -214,4 +368,94 @@ public class XmlRpcBatchMgr implements Batchmgr {
         }
     }
 
+    /*
+     * The jobs submitted to one node, with the ids of finished jobs whose
+     * outcome is yet to be acknowledged to the node's stub.
+     */
+    private class NodeJobs {
+
+        private final ResourceNode node;
+
+        /* job id to {spec, submission number} */
+        private final Map<String, Object[]> jobs = new ConcurrentHashMap<String, Object[]>();
+
+        private Vector collected = new Vector();
+
+        private NodeJobs(ResourceNode node) {
+            this.node = node;
+        }
+
+        /* a job whose submission is still in flight */
+        private static final long PENDING = Long.MAX_VALUE;
+
+        private void add(JobSpec spec) {
+            this.jobs.put(spec.getJob().getId(), new Object[] { spec,
+                    new Long(PENDING) });
+        }
+
+        /*
+         * Marks a job as accepted by the stub, unless a poll already settled
+         * it while it was being submitted.
+         */
+        private synchronized void submitted(JobSpec spec, long submission) {
+            Object[] job = this.jobs.get(spec.getJob().getId());
+            if (job != null) {
+                job[1] = new Long(submission);
+                jobExecuting(spec);
+            }
+        }
+
+        private synchronized boolean remove(String jobId) {
+            return this.jobs.remove(jobId) != null;
+        }
+
+        private synchronized void poll() throws Exception {
+            if (this.jobs.isEmpty() && this.collected.isEmpty())
+                return;
+
+            // only jobs submitted before the call can be missing from its
+            // answer because the stub lost them, pending ones never can
+            long lastSubmission = submissions.get();
+            Hashtable statuses = XmlRpcBatchMgrProxy.getJobStatuses(this.node,
+                    this.collected);
+            this.collected = new Vector();
+
+            for (Iterator i = statuses.entrySet().iterator(); i.hasNext();) {
+                Map.Entry entry = (Map.Entry) i.next();
+                String jobId = (String) entry.getKey();
+                String status = (String) entry.getValue();
+                if (status.equals(JobStatus.EXECUTED))
+                    continue;
+                this.collected.add(jobId);
+                Object[] job = this.jobs.remove(jobId);
+                if (job != null)
+                    this.finish((JobSpec) job[0], status);
+            }
+
+            for (Iterator i = this.jobs.entrySet().iterator(); i.hasNext();) {
+                Map.Entry entry = (Map.Entry) i.next();
+                Object[] job = (Object[]) entry.getValue();
+                if (!statuses.containsKey(entry.getKey())
+                        && ((Long) job[1]).longValue() <= lastSubmission) {
+                    LOG.log(Level.WARNING, "Job: [" + entry.getKey()
+                            + "] is no longer known to node: ["
+                            + this.node.getNodeId() + "]: failing it");
+                    i.remove();
+                    this.finish((JobSpec) job[0], JobStatus.FAILURE);
+                }
+            }
+        }
+
+        private void finish(JobSpec spec, String status) {
+            if (status.equals(JobStatus.SUCCESS)) {
+                jobSuccess(spec);
+            } else if (status.equals(JobStatus.KILLED)) {
+                jobKilled(spec);
+            } else {
+                jobFailure(spec);
+            }
+            notifyMonitor(this.node, spec);
+        }
+    }
+
 }
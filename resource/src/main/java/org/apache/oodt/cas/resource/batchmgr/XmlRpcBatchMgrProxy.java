@@ -20,6 +20,7 @@ package org.apache.oodt.cas.resource.batchmgr;
 
 //JDK imports
 import java.io.IOException;
+import java.util.Hashtable;
 import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,6 +30,7 @@ import org.apache.oodt.cas.resource.structs.Job;
 import org.apache.oodt.cas.resource.structs.JobSpec;
 import org.apache.oodt.cas.resource.util.XmlRpcStructFactory;
 import org.apache.oodt.cas.resource.structs.ResourceNode;
+import org.apache.oodt.commons.xmlrpc.PooledXmlRpcTransportFactory;
 
 //APACHE imports
 import org.apache.xmlrpc.XmlRpcClient;
@@ -45,6 +47,12 @@ import org.apache.xmlrpc.XmlRpcException;
  * {@link Scheduler} that calls the {@link XmlRpcBatchMgr} to not be stuck
  * waiting for each job to complete before scheduling the next {@link Job}
  * </p>.
+ * 
+ * <p>
+ * When the {@link XmlRpcBatchMgr} dispatches jobs asynchronously, the proxy
+ * is never started: {@link #submitJob()} hands the job to the stub, and the
+ * outcome comes back through {@link #getJobStatuses(ResourceNode, Vector)}.
+ * </p>
  */
 public class XmlRpcBatchMgrProxy extends Thread implements Runnable {
 
@@ -108,6 +116,48 @@ public class XmlRpcBatchMgrProxy extends Thread implements Runnable {
         return result;
     }
 
+    /**
+     * Hands the job to the stub, which runs it without holding the call open.
+     * 
+     * @return True if the stub accepted the job.
+     * @throws XmlRpcException
+     *             If the stub couldn't be called.
+     * @throws IOException
+     *             If the stub couldn't be reached.
+     */
+    public boolean submitJob() throws XmlRpcException, IOException {
+        client = new XmlRpcClient(remoteHost.getIpAddr(),
+                new PooledXmlRpcTransportFactory(remoteHost.getIpAddr()));
+        Vector argList = new Vector();
+        argList.add(XmlRpcStructFactory.getXmlRpcJob(jobSpec.getJob()));
+        argList.add(jobSpec.getIn().write());
+        return ((Boolean) client.execute("batchstub.submitJob", argList))
+                .booleanValue();
+    }
+
+    /**
+     * Asks a stub for the status of every job submitted to it.
+     * 
+     * @param node
+     *            The node the stub runs on.
+     * @param collectedJobIds
+     *            The ids of finished jobs whose outcome was already received.
+     * @return A map from job id to {@link JobStatus} of each job the stub
+     *         still knows of.
+     * @throws XmlRpcException
+     *             If the stub couldn't be called.
+     * @throws IOException
+     *             If the stub couldn't be reached.
+     */
+    public static Hashtable getJobStatuses(ResourceNode node,
+            Vector collectedJobIds) throws XmlRpcException, IOException {
+        XmlRpcClient client = new XmlRpcClient(node.getIpAddr(),
+                new PooledXmlRpcTransportFactory(node.getIpAddr()));
+        Vector argList = new Vector();
+        argList.add(collectedJobIds);
+        return (Hashtable) client.execute("batchstub.getJobStatuses", argList);
+    }
+
     public void run() {
         client = new XmlRpcClient(remoteHost.getIpAddr());
         Vector argList = new Vector();
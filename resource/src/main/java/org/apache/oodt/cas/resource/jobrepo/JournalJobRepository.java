@@ -0,0 +1,626 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.resource.jobrepo;
+
+//JDK imports
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+//XStream imports
+import com.thoughtworks.xstream.XStream;
+
+//OODT imports
+import org.apache.oodt.cas.resource.structs.Job;
+import org.apache.oodt.cas.resource.structs.JobInput;
+import org.apache.oodt.cas.resource.structs.JobSpec;
+import org.apache.oodt.cas.resource.structs.JobStatus;
+import org.apache.oodt.cas.resource.structs.exceptions.JobRepositoryException;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * A {@link JobRepository} that appends every change to a single binary
+ * journal file rather than writing one file per {@link JobSpec}. The current
+ * state of every job is kept in memory, so reads never touch the disk, and is
+ * rebuilt on startup by replaying the journal.
+ * </p>
+ *
+ * <p>
+ * Each record is framed with its length and a CRC32 checksum; a torn record at
+ * the end of the journal (e.g., after a crash) is dropped during replay. A
+ * damaged record elsewhere is skipped by its length, and a journal that can't
+ * be framed past the damage is refused rather than truncated.
+ * Writers append under a short lock and then wait for an fsync, which is
+ * shared by every writer that appended in the meantime (group commit). Once
+ * the journal holds more than <code>compactionThreshold</code> records and
+ * more than twice as many records as live jobs, it is rewritten with one
+ * record per live job.
+ * </p>
+ *
+ * <p>
+ * Like the {@link XStreamJobRepository}, {@link JobInput}s are stored as
+ * XStream XML, so any {@link JobInput} implementation can be persisted.
+ * </p>
+ */
+public class JournalJobRepository implements JobRepository {
+
+    /* our log stream */
+    private static final Logger LOG = Logger
+            .getLogger(JournalJobRepository.class.getName());
+
+    private static final byte OP_PUT = 1;
+
+    private static final byte OP_REMOVE = 2;
+
+    /* length and checksum */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final File journalFile;
+
+    private final int maxHistory;
+
+    private final int compactionThreshold;
+
+    private final XStream xstream;
+
+    /* live jobs, oldest first; guarded by this */
+    private final Map<String, JobSpec> jobMap;
+
+    private FileChannel journal;
+
+    /* records in the journal, live or not; guarded by this */
+    private int numRecords;
+
+    /* the number of the last record appended, and the last one synced */
+    private volatile long appendSeq;
+
+    private long syncedSeq;
+
+    private final Object syncLock = new Object();
+
+    /**
+     * Opens the journal, creating it if necessary, and replays it.
+     *
+     * @param journalFile
+     *            The journal file.
+     * @param maxHistory
+     *            The maximum number of jobs to keep, -1 for no limit. Once it
+     *            is reached the oldest job is dropped for every new one.
+     * @param compactionThreshold
+     *            The number of records the journal may grow to before it is
+     *            considered for compaction.
+     * @throws JobRepositoryException
+     *             If the journal cannot be read or opened.
+     */
+    public JournalJobRepository(File journalFile, int maxHistory,
+            int compactionThreshold) throws JobRepositoryException {
+        this.journalFile = journalFile;
+        this.maxHistory = Math.max(maxHistory == -1 ? Integer.MAX_VALUE
+                : maxHistory, 1);
+        this.compactionThreshold = Math.max(compactionThreshold, 1);
+        this.xstream = new XStream();
+        this.jobMap = new LinkedHashMap<String, JobSpec>();
+        this.numRecords = 0;
+        this.appendSeq = 0L;
+        this.syncedSeq = 0L;
+
+        try {
+            if (journalFile.getParentFile() != null) {
+                journalFile.getParentFile().mkdirs();
+            }
+            long validLength = replay();
+            RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+            if (raf.length() > validLength) {
+                LOG.log(Level.WARNING, "Dropping [" + (raf.length() - validLength)
+                        + "] bytes of a torn record from the end of journal: ["
+                        + journalFile + "]");
+                raf.setLength(validLength);
+            }
+            this.journal = raf.getChannel();
+            this.journal.position(validLength);
+
+            synchronized (this) {
+                if (shouldCompact()) {
+                    compact();
+                }
+            }
+        } catch (IOException e) {
+            throw new JobRepositoryException("Failed to open job journal: ["
+                    + journalFile + "]: " + e.getMessage(), e);
+        }
+        LOG.log(Level.INFO, "Loaded [" + jobMap.size() + "] jobs from journal: ["
+                + journalFile + "]");
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.oodt.cas.resource.jobrepo.JobRepository#addJob(org.apache.oodt.cas.resource.structs.JobSpec)
+     */
+    public String addJob(JobSpec spec) throws JobRepositoryException {
+        long seq;
+        synchronized (this) {
+            if (spec.getJob().getId() == null) {
+                spec.getJob().setId(UUID.randomUUID().toString());
+            } else if (this.jobMap.containsKey(spec.getJob().getId())) {
+                throw new JobRepositoryException("JobId '"
+                        + spec.getJob().getId()
+                        + "' already in use -- must pick unique JobId");
+            }
+
+            try {
+                append(encodePut(spec));
+            } catch (IOException e) {
+                throw new JobRepositoryException(
+                        "Failed to add job spec to repo : " + e.getMessage(), e);
+            }
+            this.jobMap.put(spec.getJob().getId(), spec);
+            if (this.jobMap.size() > this.maxHistory) {
+                // only evict once the new job is safely in the journal
+                Iterator<String> oldest = this.jobMap.keySet().iterator();
+                String oldestId = oldest.next();
+                oldest.remove();
+                try {
+                    append(encodeRemove(oldestId));
+                } catch (IOException e) {
+                    // replay applies the same history limit, so the job
+                    // is still dropped when the journal is next loaded
+                    LOG.log(Level.WARNING, "Failed to journal eviction of job: ["
+                            + oldestId + "]: Message: " + e.getMessage());
+                }
+            }
+            seq = compactIfNeeded();
+        }
+        sync(seq);
+        return spec.getJob().getId();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.oodt.cas.resource.jobrepo.JobRepository#updateJob(org.apache.oodt.cas.resource.structs.JobSpec)
+     */
+    public void updateJob(JobSpec spec) throws JobRepositoryException {
+        long seq;
+        synchronized (this) {
+            if (!this.jobMap.containsKey(spec.getJob().getId())) {
+                throw new JobRepositoryException("Failed to update job '"
+                        + spec.getJob().getId() + "' : no such job");
+            }
+            try {
+                append(encodePut(spec));
+            } catch (IOException e) {
+                throw new JobRepositoryException(
+                        "Failed to update job spec in repo : " + e.getMessage(),
+                        e);
+            }
+            this.jobMap.put(spec.getJob().getId(), spec);
+            seq = compactIfNeeded();
+        }
+        sync(seq);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.oodt.cas.resource.jobrepo.JobRepository#removeJob(org.apache.oodt.cas.resource.structs.JobSpec)
+     */
+    public void removeJob(JobSpec spec) throws JobRepositoryException {
+        long seq;
+        synchronized (this) {
+            if (this.jobMap.remove(spec.getJob().getId()) == null) {
+                throw new JobRepositoryException("Failed to delete job '"
+                        + spec.getJob().getId() + "' : no such job");
+            }
+            try {
+                append(encodeRemove(spec.getJob().getId()));
+            } catch (IOException e) {
+                throw new JobRepositoryException("Failed to delete job '"
+                        + spec.getJob().getId() + "' : " + e.getMessage(), e);
+            }
+            seq = compactIfNeeded();
+        }
+        sync(seq);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.oodt.cas.resource.jobrepo.JobRepository#getJobById(java.lang.String)
+     */
+    public synchronized JobSpec getJobById(String jobId)
+            throws JobRepositoryException {
+        JobSpec spec = this.jobMap.get(jobId);
+        if (spec == null) {
+            throw new JobRepositoryException(
+                    "Failed to load job spec from repo by id '" + jobId
+                            + "' : no such job");
+        }
+        return spec;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.oodt.cas.resource.jobrepo.JobRepository#getStatus(org.apache.oodt.cas.resource.structs.JobSpec)
+     */
+    public String getStatus(JobSpec spec) throws JobRepositoryException {
+        return this.getJobById(spec.getJob().getId()).getJob().getStatus();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.apache.oodt.cas.resource.jobrepo.JobRepository#jobFinished(org.apache.oodt.cas.resource.structs.JobSpec)
+     */
+    public boolean jobFinished(JobSpec spec) throws JobRepositoryException {
+        String status = this.getStatus(spec);
+        return status != null && status.equals(JobStatus.SUCCESS);
+    }
+
+    /**
+     * @return The number of jobs in this repository.
+     */
+    public synchronized int getNumJobs() {
+        return this.jobMap.size();
+    }
+
+    /**
+     * @return The number of records in the journal, including ones that have
+     *         been superseded but not yet compacted away.
+     */
+    public synchronized int getNumRecords() {
+        return this.numRecords;
+    }
+
+    /**
+     * Rewrites the journal with a single record per live job.
+     *
+     * @throws JobRepositoryException
+     *             If the journal cannot be rewritten.
+     */
+    public void compactJournal() throws JobRepositoryException {
+        synchronized (this) {
+            try {
+                compact();
+            } catch (IOException e) {
+                throw new JobRepositoryException("Failed to compact journal: ["
+                        + journalFile + "]: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Closes the journal. The repository may not be used afterwards.
+     */
+    public synchronized void close() {
+        synchronized (syncLock) {
+            if (journal != null) {
+                try {
+                    journal.force(false);
+                    journal.close();
+                } catch (IOException ignore) {
+                }
+                journal = null;
+            }
+        }
+    }
+
+    /* must hold this */
+    private void append(byte[] payload) throws IOException {
+        if (journal == null) {
+            throw new IOException("Journal: [" + journalFile + "] is closed");
+        }
+        ByteBuffer record = frame(payload);
+        while (record.hasRemaining()) {
+            journal.write(record);
+        }
+        numRecords++;
+        appendSeq++;
+    }
+
+    /* must hold this; returns the sequence number callers must sync to */
+    private long compactIfNeeded() {
+        if (shouldCompact()) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // the journal is still valid, just longer than it needs to be
+                LOG.log(Level.WARNING, "Failed to compact journal: ["
+                        + journalFile + "]: Message: " + e.getMessage());
+            }
+        }
+        return appendSeq;
+    }
+
+    private boolean shouldCompact() {
+        return numRecords > compactionThreshold
+                && numRecords > 2 * jobMap.size();
+    }
+
+    /* must hold this */
+    private void compact() throws IOException {
+        File compacted = new File(journalFile.getAbsolutePath() + ".compact");
+        FileOutputStream os = new FileOutputStream(compacted);
+        try {
+            FileChannel out = os.getChannel();
+            for (JobSpec spec : jobMap.values()) {
+                ByteBuffer record = frame(encodePut(spec));
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(false);
+        } finally {
+            os.close();
+        }
+
+        synchronized (syncLock) {
+            if (journal != null) {
+                journal.close();
+            }
+            if (!compacted.renameTo(journalFile)) {
+                // some platforms won't rename over an existing file
+                if (!journalFile.delete() || !compacted.renameTo(journalFile)) {
+                    throw new IOException("Unable to replace journal: ["
+                            + journalFile + "] with: [" + compacted + "]");
+                }
+            }
+            RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+            journal = raf.getChannel();
+            journal.position(journal.size());
+            // everything appended so far is in the compacted, synced file
+            syncedSeq = appendSeq;
+        }
+        LOG.log(Level.FINE, "Compacted journal: [" + journalFile + "] from ["
+                + numRecords + "] to [" + jobMap.size() + "] records");
+        numRecords = jobMap.size();
+    }
+
+    /*
+     * Makes sure every record up to seq is on disk. The first writer in forces
+     * the journal for everyone that appended before it; the writers queued
+     * up behind it usually find their records already synced.
+     */
+    private void sync(long seq) throws JobRepositoryException {
+        synchronized (syncLock) {
+            if (syncedSeq >= seq) {
+                return;
+            }
+            long target = appendSeq;
+            try {
+                if (journal == null) {
+                    throw new IOException("journal is closed");
+                }
+                journal.force(false);
+            } catch (IOException e) {
+                throw new JobRepositoryException("Failed to sync journal: ["
+                        + journalFile + "]: " + e.getMessage(), e);
+            }
+            syncedSeq = target;
+        }
+    }
+
+    /*
+     * Returns the length of the journal once a torn record at its end, if
+     * any, is dropped. A damaged record with more records after it is skipped
+     * by its length; if the journal can't be framed past the damage, it fails
+     * rather than let the constructor truncate good records.
+     */
+    private long replay() throws IOException {
+        if (!journalFile.exists()) {
+            return 0L;
+        }
+
+        long fileLength = journalFile.length();
+        long offset = 0L;
+        boolean skipped = false;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(journalFile)));
+        try {
+            CRC32 crc = new CRC32();
+            while (offset < fileLength) {
+                long remaining = fileLength - offset;
+                if (remaining < RECORD_HEADER_SIZE) {
+                    return tornTail(offset, skipped);
+                }
+                int length = in.readInt();
+                long checksum = in.readInt() & 0xFFFFFFFFL;
+                if (length > remaining - RECORD_HEADER_SIZE) {
+                    return tornTail(offset, skipped);
+                }
+                if (length <= 0) {
+                    if (length == 0 && isZeroFilled(in)) {
+                        // space allocated for appends that never landed
+                        return tornTail(offset, skipped);
+                    }
+                    throw new IOException("Corrupt record header at offset: ["
+                            + offset + "] of journal: [" + journalFile + "]");
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                long end = offset + RECORD_HEADER_SIZE + length;
+
+                crc.reset();
+                crc.update(payload, 0, length);
+                if (crc.getValue() != checksum) {
+                    if (end == fileLength) {
+                        // the last append was only partly written out
+                        return tornTail(offset, skipped);
+                    }
+                    LOG.log(Level.SEVERE, "Skipping corrupt record of ["
+                            + length + "] bytes at offset: [" + offset
+                            + "] of journal: [" + journalFile + "]");
+                    skipped = true;
+                } else {
+                    try {
+                        apply(payload);
+                    } catch (Exception e) {
+                        LOG.log(Level.WARNING, "Skipping unreadable record at offset: ["
+                                + offset + "] of journal: [" + journalFile
+                                + "]: Message: " + e.getMessage());
+                    }
+                }
+                numRecords++;
+                offset = end;
+            }
+        } finally {
+            in.close();
+        }
+        return offset;
+    }
+
+    private long tornTail(long offset, boolean skipped) throws IOException {
+        if (skipped) {
+            // the length we skipped by may itself have been the damage, in
+            // which case this "tail" is really the rest of the journal
+            throw new IOException("Journal: [" + journalFile
+                    + "] cannot be framed after a corrupt record: stopped at offset: ["
+                    + offset + "]");
+        }
+        return offset;
+    }
+
+    private static boolean isZeroFilled(DataInputStream in) throws IOException {
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        if (op == OP_PUT) {
+            JobSpec spec = decodePut(in);
+            // an update keeps the job's original place in the history
+            jobMap.put(spec.getJob().getId(), spec);
+            while (jobMap.size() > maxHistory) {
+                Iterator<String> oldest = jobMap.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        } else if (op == OP_REMOVE) {
+            jobMap.remove(in.readUTF());
+        } else {
+            throw new IOException("Unknown journal operation: [" + op + "]");
+        }
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE
+                + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        record.flip();
+        return record;
+    }
+
+    private byte[] encodePut(JobSpec spec) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Job job = spec.getJob();
+        out.writeByte(OP_PUT);
+        out.writeUTF(job.getId());
+        writeString(out, job.getName());
+        writeString(out, job.getJobInstanceClassName());
+        writeString(out, job.getJobInputClassName());
+        writeString(out, job.getQueueName());
+        writeString(out, job.getStatus());
+        out.writeBoolean(job.getLoadValue() != null);
+        if (job.getLoadValue() != null) {
+            out.writeInt(job.getLoadValue().intValue());
+        }
+        out.writeBoolean(spec.getIn() != null);
+        if (spec.getIn() != null) {
+            byte[] input = xstream.toXML(spec.getIn()).getBytes("UTF-8");
+            out.writeInt(input.length);
+            out.write(input);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private JobSpec decodePut(DataInputStream in) throws IOException {
+        Job job = new Job();
+        job.setId(in.readUTF());
+        job.setName(readString(in));
+        job.setJobInstanceClassName(readString(in));
+        job.setJobInputClassName(readString(in));
+        job.setQueueName(readString(in));
+        job.setStatus(readString(in));
+        if (in.readBoolean()) {
+            job.setLoadValue(new Integer(in.readInt()));
+        }
+        JobInput input = null;
+        if (in.readBoolean()) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            input = (JobInput) xstream.fromXML(new String(bytes, "UTF-8"));
+        }
+        return new JobSpec(input, job);
+    }
+
+    private static byte[] encodeRemove(String jobId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_REMOVE);
+        out.writeUTF(jobId);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String str)
+            throws IOException {
+        out.writeBoolean(str != null);
+        if (str != null) {
+            out.writeUTF(str);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+}
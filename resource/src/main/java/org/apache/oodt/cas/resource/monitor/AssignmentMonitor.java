@@ -19,9 +19,11 @@ package org.apache.oodt.cas.resource.monitor;
 
 //JDK imports
 import java.net.URL;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 //OODT imports
 import org.apache.oodt.cas.resource.structs.ResourceNode;
@@ -40,22 +42,29 @@ import org.apache.oodt.cas.resource.structs.exceptions.MonitorException;
  * This implementation additionally uses an in-memory hash map to monitor the
  * load on a given set of {@link ResourceNode}s.
  * </p>
+ * 
+ * <p>
+ * Load is kept in a per-node {@link AtomicInteger}. Capacity is reserved with a
+ * compare-and-set, so any number of threads may assign and reduce load at the
+ * same time without a lock, and a node is never assigned more than its
+ * capacity.
+ * </p>
  */
 public class AssignmentMonitor implements Monitor {
 	
     /* our nodes map */
-    private static HashMap<String, ResourceNode> nodesMap;
+    private final ConcurrentMap<String, ResourceNode> nodesMap;
 
     /* our load map */
-    private static HashMap<String, Integer> loadMap;
+    private final ConcurrentMap<String, AtomicInteger> loadMap;
 
     public AssignmentMonitor(List<ResourceNode> nodes) {
-        nodesMap = new HashMap<String, ResourceNode>();
-        loadMap = new HashMap<String, Integer>();
+        nodesMap = new ConcurrentHashMap<String, ResourceNode>();
+        loadMap = new ConcurrentHashMap<String, AtomicInteger>();
         
         for (ResourceNode node : nodes) {
             nodesMap.put(node.getNodeId(), node);
-            loadMap.put(node.getNodeId(), new Integer(0));
+            loadMap.put(node.getNodeId(), new AtomicInteger(0));
         }
     }
 
@@ -69,27 +78,33 @@ public class AssignmentMonitor implements Monitor {
     public boolean assignLoad(ResourceNode node, int loadValue)
             throws MonitorException {
         int loadCap = node.getCapacity();
-        int curLoad = loadMap.get(node.getNodeId());
-
-        if (loadValue <= (loadCap - curLoad)) {
-            loadMap.remove(node.getNodeId());
-            loadMap.put(node.getNodeId(), new Integer(curLoad + loadValue));
-            return true;
-        } else {
-            return false;
+        AtomicInteger load = getLoadCounter(node.getNodeId());
+
+        for (;;) {
+            int curLoad = load.get();
+            if (loadValue > (loadCap - curLoad)) {
+                return false;
+            }
+            if (load.compareAndSet(curLoad, curLoad + loadValue)) {
+                return true;
+            }
         }
     }
 
     @Override
     public boolean reduceLoad(ResourceNode node, int loadValue)
             throws MonitorException {
-        int load = loadMap.get(node.getNodeId());
-        int newVal = load - loadValue;
-        if (newVal < 0)
-            newVal = 0; // should not happen but just in case
-        loadMap.remove(node.getNodeId());
-        loadMap.put(node.getNodeId(), new Integer(newVal));
-        return true;
+        AtomicInteger load = getLoadCounter(node.getNodeId());
+
+        for (;;) {
+            int curLoad = load.get();
+            int newVal = curLoad - loadValue;
+            if (newVal < 0)
+                newVal = 0; // should not happen but just in case
+            if (load.compareAndSet(curLoad, newVal)) {
+                return true;
+            }
+        }
     }
 
     /*
@@ -99,7 +114,11 @@ public class AssignmentMonitor implements Monitor {
      */
     public int getLoad(ResourceNode node) throws MonitorException {
         ResourceNode resource = (ResourceNode) nodesMap.get(node.getNodeId());
-        int i = loadMap.get(node.getNodeId());
+        if (resource == null) {
+            throw new MonitorException("Unknown node: [" + node.getNodeId()
+                    + "]");
+        }
+        int i = getLoadCounter(node.getNodeId()).get();
         return (resource.getCapacity() - i);
     }
 
@@ -140,12 +159,20 @@ public class AssignmentMonitor implements Monitor {
 
     public void addNode(ResourceNode node) throws MonitorException {
         nodesMap.put(node.getNodeId(), node);
-        if (!loadMap.containsKey(node.getNodeId()))
-            loadMap.put(node.getNodeId(), new Integer(0));
+        loadMap.putIfAbsent(node.getNodeId(), new AtomicInteger(0));
     }
 
     public void removeNodeById(String nodeId) throws MonitorException {
         nodesMap.remove(nodeId);    
         loadMap.remove(nodeId);
     }
+
+    private AtomicInteger getLoadCounter(String nodeId)
+            throws MonitorException {
+        AtomicInteger load = loadMap.get(nodeId);
+        if (load == null) {
+            throw new MonitorException("Unknown node: [" + nodeId + "]");
+        }
+        return load;
+    }
 }
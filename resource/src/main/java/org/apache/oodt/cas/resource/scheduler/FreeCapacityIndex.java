@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.resource.scheduler;
+
+//JDK imports
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ *
+ * @version $Revision$
+ *
+ * <p>
+ * Keeps the nodes of every queue sorted by free capacity (most free first),
+ * ties broken by least recent use, so the {@link LRUScheduler} can pick a node
+ * for a job, and update a node's capacity, in logarithmic time rather than
+ * asking the {@link org.apache.oodt.cas.resource.monitor.Monitor} about every
+ * node in the queue. A node that belongs to several queues has a single entry
+ * shared by all of them.
+ * </p>
+ */
+public class FreeCapacityIndex {
+
+    private static final Comparator<NodeEntry> MOST_FREE_FIRST = new Comparator<NodeEntry>() {
+        public int compare(NodeEntry e1, NodeEntry e2) {
+            if (e1.free != e2.free) {
+                return e1.free > e2.free ? -1 : 1;
+            }
+            if (e1.lastUsed != e2.lastUsed) {
+                return e1.lastUsed < e2.lastUsed ? -1 : 1;
+            }
+            return e1.nodeId.compareTo(e2.nodeId);
+        }
+    };
+
+    private Map<String, TreeSet<NodeEntry>> queueToNodes;
+
+    private Map<String, NodeEntry> nodes;
+
+    /* logical clock for least-recently-used ordering */
+    private long useClock;
+
+    public FreeCapacityIndex() {
+        this.queueToNodes = new HashMap<String, TreeSet<NodeEntry>>();
+        this.nodes = new HashMap<String, NodeEntry>();
+        this.useClock = 0L;
+    }
+
+    /**
+     * Adds a node to a queue, or updates its free capacity if it is already
+     * known.
+     *
+     * @param queueName
+     *            The queue the node belongs to.
+     * @param nodeId
+     *            The node's id.
+     * @param free
+     *            The node's free capacity.
+     */
+    public synchronized void addNode(String queueName, String nodeId, int free) {
+        NodeEntry entry = nodes.get(nodeId);
+        if (entry == null) {
+            entry = new NodeEntry(nodeId);
+            entry.free = free;
+            nodes.put(nodeId, entry);
+        } else if (entry.free != free) {
+            detach(entry);
+            entry.free = free;
+            attach(entry);
+        }
+
+        if (entry.queues.add(queueName)) {
+            TreeSet<NodeEntry> queueNodes = queueToNodes.get(queueName);
+            if (queueNodes == null) {
+                queueNodes = new TreeSet<NodeEntry>(MOST_FREE_FIRST);
+                queueToNodes.put(queueName, queueNodes);
+            }
+            queueNodes.add(entry);
+        }
+    }
+
+    /**
+     * Picks the node in a queue with the most free capacity, provided it can
+     * take the given load.
+     *
+     * @param queueName
+     *            The queue to pick from.
+     * @param load
+     *            The load the node must be able to take.
+     * @return The id of the chosen node, or null if no node in the queue has
+     *         enough free capacity.
+     */
+    public synchronized String selectNode(String queueName, int load) {
+        TreeSet<NodeEntry> queueNodes = queueToNodes.get(queueName);
+        if (queueNodes == null || queueNodes.isEmpty()) {
+            return null;
+        }
+        NodeEntry entry = queueNodes.first();
+        return entry.free >= load ? entry.nodeId : null;
+    }
+
+    /**
+     * Updates the free capacity of a node in every queue it belongs to.
+     * Unknown nodes are ignored.
+     *
+     * @param nodeId
+     *            The node's id.
+     * @param free
+     *            The node's new free capacity.
+     */
+    public synchronized void updateCapacity(String nodeId, int free) {
+        NodeEntry entry = nodes.get(nodeId);
+        if (entry != null && entry.free != free) {
+            detach(entry);
+            entry.free = free;
+            attach(entry);
+        }
+    }
+
+    /**
+     * Marks a node as the most recently used, in every queue it belongs to.
+     *
+     * @param nodeId
+     *            The node's id.
+     */
+    public synchronized void usedNode(String nodeId) {
+        NodeEntry entry = nodes.get(nodeId);
+        if (entry != null) {
+            detach(entry);
+            entry.lastUsed = ++useClock;
+            attach(entry);
+        }
+    }
+
+    /**
+     * @param nodeId
+     *            The node's id.
+     * @return The free capacity last recorded for the node, or -1 if it is
+     *         unknown.
+     */
+    public synchronized int getFreeCapacity(String nodeId) {
+        NodeEntry entry = nodes.get(nodeId);
+        return entry != null ? entry.free : -1;
+    }
+
+    /**
+     * Forgets every queue and node.
+     */
+    public synchronized void clear() {
+        queueToNodes.clear();
+        nodes.clear();
+    }
+
+    private void detach(NodeEntry entry) {
+        for (String queueName : entry.queues) {
+            queueToNodes.get(queueName).remove(entry);
+        }
+    }
+
+    private void attach(NodeEntry entry) {
+        for (String queueName : entry.queues) {
+            queueToNodes.get(queueName).add(entry);
+        }
+    }
+
+    private static class NodeEntry {
+
+        private final String nodeId;
+
+        private int free;
+
+        private long lastUsed;
+
+        private final Set<String> queues;
+
+        private NodeEntry(String nodeId) {
+            this.nodeId = nodeId;
+            this.free = 0;
+            this.lastUsed = 0L;
+            this.queues = new HashSet<String>();
+        }
+    }
+
+}
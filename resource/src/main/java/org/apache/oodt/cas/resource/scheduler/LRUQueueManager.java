@@ -19,7 +19,6 @@ package org.apache.oodt.cas.resource.scheduler;
 
 //JDK imports
 import java.util.LinkedHashSet;
-import java.util.Vector;
 
 //OODT imports
 import org.apache.oodt.cas.resource.structs.exceptions.QueueManagerException;
@@ -34,6 +33,9 @@ import org.apache.oodt.cas.resource.structs.exceptions.QueueManagerException;
  * </p>
  */
 public class LRUQueueManager extends QueueManager {
+
+	/* bumped whenever a queue or its membership changes */
+	private long modCount = 0L;
     
 	public LRUQueueManager(QueueManager queueManager) throws QueueManagerException {
 		for (String queue : queueManager.getQueues()) {
@@ -44,13 +46,48 @@ public class LRUQueueManager extends QueueManager {
 	}
 	
     public synchronized void usedNode(String queueName, String nodeId) {
-    	Vector<String> nodes = new Vector<String>(this.queueToNodesMapping.get(queueName));
-		nodes.remove(nodeId);
-		nodes.add(nodeId);
-		LinkedHashSet<String> nodeSet = new LinkedHashSet<String>();
-		nodeSet.addAll(nodes);
-		this.queueToNodesMapping.put(queueName, nodeSet);
+    	// LinkedHashSet keeps insertion order: re-inserting moves the node to
+    	// the most recently used end
+    	LinkedHashSet<String> nodes = this.queueToNodesMapping.get(queueName);
+    	if (nodes != null && nodes.remove(nodeId))
+    		nodes.add(nodeId);
     }
+
+	/**
+	 * @return A counter that changes whenever a queue is added or removed, or
+	 *         a node is added to or removed from a queue, so that callers
+	 *         caching queue membership can tell when to reload it.
+	 */
+	public synchronized long getModCount() {
+		return this.modCount;
+	}
+
+	@Override
+	public synchronized void addNodeToQueue(String nodeId, String queueName)
+			throws QueueManagerException {
+		super.addNodeToQueue(nodeId, queueName);
+		this.modCount++;
+	}
+
+	@Override
+	public synchronized void addQueue(String queueName)
+			throws QueueManagerException {
+		super.addQueue(queueName);
+		this.modCount++;
+	}
+
+	@Override
+	public synchronized void removeNodeFromQueue(String nodeId,
+			String queueName) throws QueueManagerException {
+		super.removeNodeFromQueue(nodeId, queueName);
+		this.modCount++;
+	}
+
+	@Override
+	public synchronized void removeQueue(String queueName)
+			throws QueueManagerException {
+		super.removeQueue(queueName);
+		this.modCount++;
+	}
     
 }
-
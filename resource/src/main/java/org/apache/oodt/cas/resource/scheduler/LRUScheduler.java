@@ -20,17 +20,22 @@ package org.apache.oodt.cas.resource.scheduler;
 
 //JDKimports
 import java.lang.Integer;
+import java.net.URL;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 //OODT imports
 import org.apache.oodt.cas.resource.jobqueue.JobQueue;
+import org.apache.oodt.cas.resource.jobrepo.JobRepository;
 import org.apache.oodt.cas.resource.monitor.Monitor;
 import org.apache.oodt.cas.resource.batchmgr.Batchmgr;
 import org.apache.oodt.cas.resource.structs.JobSpec;
 import org.apache.oodt.cas.resource.structs.ResourceNode;
 import org.apache.oodt.cas.resource.structs.exceptions.JobExecutionException;
+import org.apache.oodt.cas.resource.structs.exceptions.JobQueueException;
 import org.apache.oodt.cas.resource.structs.exceptions.MonitorException;
+import org.apache.oodt.cas.resource.structs.exceptions.QueueManagerException;
 import org.apache.oodt.cas.resource.structs.exceptions.SchedulerException;
 
 /**
@@ -44,6 +49,17 @@ import org.apache.oodt.cas.resource.structs.exceptions.SchedulerException;
  * href="http://en.wikipedia.org/wiki/Cache_algorithms">least-recently-used</a>
  * algorithm for scheduling {@link Job}s.
  * </p>
+ * 
+ * <p>
+ * Jobs are placed on the node of their queue with the most free capacity,
+ * least recently used first among equals, looked up in a
+ * {@link FreeCapacityIndex} rather than by asking the {@link Monitor} about
+ * every node. The {@link Monitor} and {@link JobQueue} handed out by this
+ * scheduler are wrapped so that job submissions and completions (load being
+ * reduced on a node) wake the scheduler straight away;
+ * <code>org.apache.oodt.cas.resource.scheduler.wait.seconds</code> only bounds
+ * how long changes made behind the scheduler's back go unnoticed.
+ * </p>
  */
 public class LRUScheduler implements Scheduler {
 
@@ -59,18 +75,45 @@ public class LRUScheduler implements Scheduler {
     /* the batch mgr we'll use to execute jobs */
     private Batchmgr myBatchmgr;
 
-    /* our job queue */
+    /* our job queue, as handed out to job submitters */
     private JobQueue myJobQueue;
 
-    /* our wait time between checking the queue */
+    /* the underlying monitor and job queue, which don't wake us up */
+    private Monitor monitor;
+
+    private JobQueue jobQueue;
+
+    /* our longest wait time between checking the queue */
     private int waitTime = -1;
 
+    /* free capacity of the nodes in each queue */
+    private FreeCapacityIndex freeCapacity;
+
+    /* the queue manager mod count the index was built at */
+    private long indexedModCount = -1L;
+
+    /* set when nodes were added to or removed from the monitor */
+    private volatile boolean indexStale = true;
+
+    /* bumped by every event that may let a queued job run */
+    private long signalCount = 0L;
+
+    private final Object signalLock = new Object();
+
     public LRUScheduler(Monitor m, Batchmgr b, JobQueue q, LRUQueueManager qm) {
 
     	queueManager = qm;
-        myMonitor = m;
+        monitor = m;
+        myMonitor = m != null ? new IndexedMonitor() : null;
         myBatchmgr = b;
-        myJobQueue = q;
+        jobQueue = q;
+        myJobQueue = q != null ? new SignallingJobQueue() : null;
+        freeCapacity = new FreeCapacityIndex();
+
+        // job completions reach us through the batch mgr's monitor
+        if (myBatchmgr != null && myMonitor != null) {
+            myBatchmgr.setMonitor(myMonitor);
+        }
 
         String waitStr = System.getProperty(
                 "org.apache.oodt.cas.resource.scheduler.wait.seconds", "20");
@@ -84,24 +127,24 @@ public class LRUScheduler implements Scheduler {
      */
     public void run() {
         for (;;) {
+            long lastSignal = getSignalCount();
 
-            try {
-                Thread.currentThread().sleep((long) waitTime * 1000);
-            } catch (Exception ignore) {}
-
-            if (!myJobQueue.isEmpty()) {
+            // give every job queued right now one chance to run; jobs that
+            // don't fit go back on the queue until the next signal
+            int pending = jobQueue.getSize();
+            for (int i = 0; i < pending && !jobQueue.isEmpty(); i++) {
                 JobSpec exec = null;
 
                 try {
-                    exec = myJobQueue.getNextJob();
-                    LOG.log(Level.INFO, "Obtained Job: ["
+                    exec = jobQueue.getNextJob();
+                    LOG.log(Level.FINE, "Obtained Job: ["
                             + exec.getJob().getId()
                             + "] from Queue: Scheduling for execution");
                 } catch (Exception e) {
                     LOG.log(Level.WARNING,
                             "Error getting next job from JobQueue: Message: "
                                     + e.getMessage());
-                    continue;
+                    break;
                 }
 
                 try {
@@ -112,11 +155,17 @@ public class LRUScheduler implements Scheduler {
                             + e.getMessage());
                     // place the job spec back on the queue
                     try {
-                        myJobQueue.requeueJob(exec);
+                        jobQueue.requeueJob(exec);
                     } catch (Exception ignore) {
                     }
                 }
             }
+
+            if (!awaitSignal(lastSignal, (long) waitTime * 1000)) {
+                // nothing told us about a change for a while: pick up load
+                // the monitor saw change on its own (e.g., ganglia)
+                indexStale = true;
+            }
         }
 
     }
@@ -135,8 +184,18 @@ public class LRUScheduler implements Scheduler {
 
         if (node != null) {
             try {
-                myMonitor.assignLoad(node, load);
+                if (!myMonitor.assignLoad(node, load)) {
+                    // the index was behind the monitor: it is now refreshed,
+                    // so try again on the next pass
+                    LOG.log(Level.FINE, "Node: [" + node.getNodeId()
+                            + "] could not take load: [" + load
+                            + "]: requeueing job: [" + spec.getJob().getId()
+                            + "]");
+                    safeRequeue(spec);
+                    return true;
+                }
                 queueManager.usedNode(queueName, node.getNodeId());
+                freeCapacity.usedNode(node.getNodeId());
                 
                 // assign via batch system
                 LOG.log(Level.INFO, "Assigning job: ["
@@ -153,10 +212,12 @@ public class LRUScheduler implements Scheduler {
                         // queue the job back up
                         LOG.log(Level.INFO, "Requeueing job: ["
                                 + spec.getJob().getId() + "]");
-                        myJobQueue.requeueJob(spec);
+                        jobQueue.requeueJob(spec);
 
-                        // make sure to decrement the load
-                        myMonitor.reduceLoad(node, load);
+                        // make sure to decrement the load, without waking
+                        // ourselves up to retry the job straight away
+                        monitor.reduceLoad(node, load);
+                        refreshNode(node);
                     } catch (Exception ignore) {
                     }
                 }
@@ -168,10 +229,7 @@ public class LRUScheduler implements Scheduler {
             }
         } else {
             // could not find resource, push onto JobQueue
-            try {
-                myJobQueue.requeueJob(spec);
-            } catch (Exception ignore) {
-            }
+            safeRequeue(spec);
         }
         return true;
     }
@@ -222,31 +280,191 @@ public class LRUScheduler implements Scheduler {
         try {
 	    	String queueName = spec.getJob().getQueueName();
 	        int load = spec.getJob().getLoadValue().intValue();
-	
-	        for (String nodeId : queueManager.getNodes(queueName)) {
-	            int nodeLoad = -1;
-	            ResourceNode resNode = null;
-	
-	            try {
-	                resNode = myMonitor.getNodeById(nodeId);
-	                nodeLoad = myMonitor.getLoad(resNode);
-	            } catch (MonitorException e) {
-	                LOG
-	                        .log(Level.WARNING, "Exception getting load on "
-	                                + "node: [" + resNode.getNodeId()
-	                                + "]: Message: " + e.getMessage());
-	                throw new SchedulerException(e.getMessage());
-	            }
-	
-	            if (load <= nodeLoad) {
-	                return resNode;
-	            }
+
+	        if (!queueManager.containsQueue(queueName)) {
+	        	throw new QueueManagerException("Queue '" + queueName
+	        			+ "' does not exist");
 	        }
-	
-	        return null;
+
+	        syncIndex();
+	        String nodeId = freeCapacity.selectNode(queueName, load);
+	        return nodeId != null ? monitor.getNodeById(nodeId) : null;
         }catch (Exception e) {
         	throw new SchedulerException("Failed to find available node for job spec : " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Wakes the scheduler up to try the queued jobs again.
+     */
+    public void signal() {
+        synchronized (signalLock) {
+            signalCount++;
+            signalLock.notifyAll();
+        }
+    }
+
+    private long getSignalCount() {
+        synchronized (signalLock) {
+            return signalCount;
+        }
+    }
+
+    /* returns false if the wait timed out without a signal */
+    private boolean awaitSignal(long lastSignal, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (signalLock) {
+            long remaining = timeoutMillis;
+            while (signalCount == lastSignal && remaining > 0) {
+                try {
+                    signalLock.wait(remaining);
+                } catch (InterruptedException ignore) {
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return signalCount != lastSignal;
+        }
+    }
+
+    /* rebuilds the index if queue membership or the set of nodes changed */
+    private void syncIndex() throws MonitorException, QueueManagerException {
+        long modCount = queueManager.getModCount();
+        if (!indexStale && modCount == indexedModCount) {
+            return;
+        }
+        indexStale = false;
+        indexedModCount = modCount;
+
+        freeCapacity.clear();
+        for (String queueName : queueManager.getQueues()) {
+            // the queue manager lists nodes least recently used first
+            for (String nodeId : queueManager.getNodes(queueName)) {
+                ResourceNode node = monitor.getNodeById(nodeId);
+                if (node != null) {
+                    freeCapacity.addNode(queueName, nodeId, monitor
+                            .getLoad(node));
+                    freeCapacity.usedNode(nodeId);
+                }
+            }
+        }
+    }
+
+    private void refreshNode(ResourceNode node) {
+        try {
+            freeCapacity.updateCapacity(node.getNodeId(), monitor
+                    .getLoad(node));
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "Unable to get load on node: ["
+                    + node.getNodeId() + "]: rebuilding index: Message: "
+                    + e.getMessage());
+            indexStale = true;
+        }
+    }
+
+    private void safeRequeue(JobSpec spec) {
+        try {
+            jobQueue.requeueJob(spec);
+        } catch (Exception ignore) {
+        }
+    }
+
+    /**
+     * Keeps the {@link FreeCapacityIndex} in step with load changes, and wakes
+     * the scheduler up when load is reduced (i.e., a job finished) or a node
+     * is added.
+     */
+    private class IndexedMonitor implements Monitor {
+
+        public boolean assignLoad(ResourceNode node, int loadValue)
+                throws MonitorException {
+            boolean assigned = monitor.assignLoad(node, loadValue);
+            refreshNode(node);
+            return assigned;
+        }
+
+        public boolean reduceLoad(ResourceNode node, int loadValue)
+                throws MonitorException {
+            boolean reduced = monitor.reduceLoad(node, loadValue);
+            refreshNode(node);
+            signal();
+            return reduced;
+        }
+
+        public int getLoad(ResourceNode node) throws MonitorException {
+            return monitor.getLoad(node);
+        }
+
+        public List getNodes() throws MonitorException {
+            return monitor.getNodes();
+        }
+
+        public ResourceNode getNodeById(String nodeId) throws MonitorException {
+            return monitor.getNodeById(nodeId);
+        }
+
+        public ResourceNode getNodeByURL(URL ipAddr) throws MonitorException {
+            return monitor.getNodeByURL(ipAddr);
+        }
+
+        public void addNode(ResourceNode node) throws MonitorException {
+            monitor.addNode(node);
+            indexStale = true;
+            signal();
+        }
+
+        public void removeNodeById(String nodeId) throws MonitorException {
+            monitor.removeNodeById(nodeId);
+            indexStale = true;
+        }
+
+    }
+
+    /**
+     * Wakes the scheduler up whenever a job is submitted.
+     */
+    private class SignallingJobQueue implements JobQueue {
+
+        public String addJob(JobSpec spec) throws JobQueueException {
+            String jobId = jobQueue.addJob(spec);
+            signal();
+            return jobId;
+        }
+
+        public String requeueJob(JobSpec spec) throws JobQueueException {
+            String jobId = jobQueue.requeueJob(spec);
+            signal();
+            return jobId;
+        }
+
+        public List getQueuedJobs() throws JobQueueException {
+            return jobQueue.getQueuedJobs();
+        }
+
+        public void purge() throws JobQueueException {
+            jobQueue.purge();
+        }
+
+        public boolean isEmpty() {
+            return jobQueue.isEmpty();
+        }
+
+        public JobSpec getNextJob() throws JobQueueException {
+            return jobQueue.getNextJob();
+        }
+
+        public JobRepository getJobRepository() {
+            return jobQueue.getJobRepository();
+        }
+
+        public int getSize() {
+            return jobQueue.getSize();
+        }
+
+        public int getCapacity() {
+            return jobQueue.getCapacity();
+        }
+
+    }
+
 }
@@ -30,13 +30,20 @@ import org.apache.oodt.cas.resource.structs.exceptions.JobRepositoryException;
 import org.apache.oodt.cas.resource.structs.exceptions.MonitorException;
 import org.apache.oodt.cas.resource.structs.exceptions.QueueManagerException;
 import org.apache.oodt.cas.resource.structs.exceptions.SchedulerException;
+import org.apache.oodt.cas.resource.util.BinaryStructFactory;
 import org.apache.oodt.cas.resource.util.GenericResourceManagerObjectFactory;
 import org.apache.oodt.cas.resource.util.XmlRpcStructFactory;
+import org.apache.oodt.commons.rpc.BinaryCodec;
+import org.apache.oodt.commons.rpc.BinaryRpcException;
+import org.apache.oodt.commons.rpc.BinaryRpcHandler;
+import org.apache.oodt.commons.rpc.BinaryRpcServer;
 
 //APACHE imports
 import org.apache.xmlrpc.WebServer;
 
 //JDK imports
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.net.MalformedURLException;
@@ -69,6 +76,9 @@ public class XmlRpcResourceManager {
     /* our xml rpc web server */
     private WebServer webServer = null;
 
+    /* our binary rpc server, if enabled */
+    private BinaryRpcServer binaryRpcServer = null;
+
     /* our scheduler */
     private Scheduler scheduler = null;
 
@@ -101,6 +111,19 @@ public class XmlRpcResourceManager {
         webServer.addHandler("resourcemgr", this);
         webServer.start();
 
+        // 0 picks a free port, which clients learn from getBinaryRpcPort()
+        int binaryPort = Integer.getInteger(
+                "org.apache.oodt.cas.resource.binary.port", -1).intValue();
+        if (binaryPort >= 0) {
+            binaryRpcServer = new BinaryRpcServer(
+                    binaryPort,
+                    Integer.getInteger(
+                            "org.apache.oodt.cas.resource.binary.idleTimeout.millis",
+                            60000).intValue());
+            binaryRpcServer.addHandler("resourcemgr", new BinaryHandler());
+            binaryRpcServer.start();
+        }
+
         LOG.log(Level.INFO, "Resource Manager started by "
                 + System.getProperty("user.name", "unknown"));
 
@@ -109,6 +132,15 @@ public class XmlRpcResourceManager {
     public boolean isAlive() {
         return true;
     }
+
+    /**
+     * @return The port this Resource Manager serves binary RPC calls on, or
+     *         -1 if it doesn't serve them.
+     */
+    public int getBinaryRpcPort() {
+        return this.binaryRpcServer != null ? this.binaryRpcServer.getPort()
+                : -1;
+    }
     
     /**
      * Gets the number of Jobs in JobQueue
@@ -143,6 +175,10 @@ public class XmlRpcResourceManager {
     }
 
     public Hashtable getJobInfo(String jobId) throws JobRepositoryException {
+        return XmlRpcStructFactory.getXmlRpcJob(this.loadJob(jobId));
+    }
+
+    private Job loadJob(String jobId) throws JobRepositoryException {
         JobSpec spec = null;
 
         try {
@@ -156,7 +192,7 @@ public class XmlRpcResourceManager {
                     + "] from repository!");
         }
 
-        return XmlRpcStructFactory.getXmlRpcJob(spec.getJob());
+        return spec.getJob();
     }
 
     public String handleJob(Hashtable jobHash, Hashtable jobIn)
@@ -323,6 +359,10 @@ public class XmlRpcResourceManager {
     }
     
     public boolean shutdown(){
+      if (this.binaryRpcServer != null) {
+        this.binaryRpcServer.shutdown();
+        this.binaryRpcServer = null;
+      }
       if (this.webServer != null) {
         this.webServer.shutdown();
         this.webServer = null;
@@ -431,4 +471,23 @@ public class XmlRpcResourceManager {
 
         return url;
     }
+
+    /*
+     * Serves the binary RPC forms of the calls made while waiting on jobs.
+     */
+    private class BinaryHandler implements BinaryRpcHandler {
+
+        public void execute(String method, DataInputStream args,
+                DataOutputStream result) throws Exception {
+            if (method.equals("isJobComplete")) {
+                result.writeBoolean(isJobComplete(BinaryCodec.readString(args)));
+            } else if (method.equals("getJobInfo")) {
+                BinaryStructFactory.writeJob(result, loadJob(BinaryCodec
+                        .readString(args)));
+            } else {
+                throw new BinaryRpcException("Unknown method: [" + method
+                        + "]");
+            }
+        }
+    }
 }
@@ -19,11 +19,15 @@
 package org.apache.oodt.cas.resource.system;
 
 //APACHE imports
-import org.apache.xmlrpc.CommonsXmlRpcTransportFactory;
 import org.apache.xmlrpc.XmlRpcClient;
 import org.apache.xmlrpc.XmlRpcException;
 
 //OODTimports
+import org.apache.oodt.commons.rpc.BinaryCodec;
+import org.apache.oodt.commons.rpc.BinaryRpcClient;
+import org.apache.oodt.commons.rpc.BinaryRpcException;
+import org.apache.oodt.commons.rpc.BinaryRpcRequest;
+import org.apache.oodt.commons.xmlrpc.PooledXmlRpcTransportFactory;
 import org.apache.oodt.cas.cli.CmdLineUtility;
 import org.apache.oodt.cas.resource.structs.Job;
 import org.apache.oodt.cas.resource.structs.JobInput;
@@ -33,6 +37,7 @@ import org.apache.oodt.cas.resource.structs.exceptions.JobExecutionException;
 import org.apache.oodt.cas.resource.structs.exceptions.JobRepositoryException;
 import org.apache.oodt.cas.resource.structs.exceptions.MonitorException;
 import org.apache.oodt.cas.resource.structs.exceptions.QueueManagerException;
+import org.apache.oodt.cas.resource.util.BinaryStructFactory;
 import org.apache.oodt.cas.resource.util.XmlRpcStructFactory;
 
 //JDK imports
@@ -41,8 +46,11 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.File;
 import java.io.IOException;
@@ -55,12 +63,28 @@ import java.io.IOException;
  * The XML RPC based resource manager client.
  * </p>
  * 
+ * <p>
+ * If the Resource Manager also serves binary RPC calls (see
+ * {@link XmlRpcResourceManager#getBinaryRpcPort()}), job status calls are
+ * made with them instead, falling back to XML-RPC if the binary server can't
+ * be reached.
+ * </p>
+ * 
  */
 public class XmlRpcResourceManagerClient {
 
     /* our xml rpc client */
     private XmlRpcClient client = null;
 
+    /* our binary rpc client, if the resource manager serves binary calls */
+    private BinaryRpcClient binaryClient = null;
+
+    /* whether we've asked the resource manager if it serves binary calls */
+    private boolean binaryNegotiated = false;
+
+    /* how long binary calls wait for a response */
+    private int binaryTimeout;
+
     /* our log stream */
     private static Logger LOG = Logger
             .getLogger(XmlRpcResourceManagerClient.class.getName());
@@ -96,8 +120,6 @@ public class XmlRpcResourceManagerClient {
 
         }
 
-        CommonsXmlRpcTransportFactory transportFactory = new CommonsXmlRpcTransportFactory(
-                url);
         int connectionTimeoutMins = Integer
                 .getInteger(
                         "org.apache.oodt.cas.resource.system.xmlrpc.connectionTimeout.minutes",
@@ -108,10 +130,12 @@ public class XmlRpcResourceManagerClient {
                         "org.apache.oodt.cas.resource.system.xmlrpc.requestTimeout.minutes",
                         60).intValue();
         int requestTimeout = requestTimeoutMins * 60 * 1000;
-        transportFactory.setConnectionTimeout(connectionTimeout);
-        transportFactory.setTimeout(requestTimeout);
+        // shares a pool of keep-alive connections with the other clients
+        PooledXmlRpcTransportFactory transportFactory = new PooledXmlRpcTransportFactory(
+                url, 3, 0, connectionTimeout, requestTimeout);
         client = new XmlRpcClient(url, transportFactory);
         resMgrUrl = url;
+        binaryTimeout = requestTimeout;
     }
 
     public static void main(String[] args) {
@@ -120,6 +144,21 @@ public class XmlRpcResourceManagerClient {
     }
 
     public boolean isJobComplete(String jobId) throws JobRepositoryException {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "resourcemgr.isJobComplete");
+                BinaryCodec.writeString(request, jobId);
+                DataInputStream result = binaryClient.execute(request);
+                return result.readBoolean();
+            } catch (BinaryRpcException e) {
+                throw new JobRepositoryException(e.getMessage(), e);
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
         Vector argList = new Vector();
         argList.add(jobId);
 
@@ -137,7 +176,38 @@ public class XmlRpcResourceManagerClient {
         return complete;
     }
 
+    /**
+     * Like {@link #isJobComplete(String)}, but doesn't wait for the answer.
+     * 
+     * @param jobId
+     *            The id of the job.
+     * @return Whether the job is complete, once the Resource Manager has
+     *         answered.
+     */
+    public Future<Boolean> isJobCompleteAsync(final String jobId) {
+        return PooledXmlRpcTransportFactory.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(isJobComplete(jobId));
+            }
+        });
+    }
+
     public Job getJobInfo(String jobId) throws JobRepositoryException {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "resourcemgr.getJobInfo");
+                BinaryCodec.writeString(request, jobId);
+                DataInputStream result = binaryClient.execute(request);
+                return BinaryStructFactory.readJob(result);
+            } catch (BinaryRpcException e) {
+                throw new JobRepositoryException(e.getMessage(), e);
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
         Vector argList = new Vector();
         argList.add(jobId);
 
@@ -245,6 +315,24 @@ public class XmlRpcResourceManagerClient {
 
     }
 
+    /**
+     * Like {@link #submitJob(Job, JobInput)}, but doesn't wait for the job to
+     * be accepted.
+     * 
+     * @param exec
+     *            The job to submit.
+     * @param in
+     *            The job's input.
+     * @return The id of the job, once the Resource Manager has accepted it.
+     */
+    public Future<String> submitJobAsync(final Job exec, final JobInput in) {
+        return PooledXmlRpcTransportFactory.submit(new Callable<String>() {
+            public String call() throws Exception {
+                return submitJob(exec, in);
+            }
+        });
+    }
+
     public boolean submitJob(Job exec, JobInput in, URL hostUrl)
             throws JobExecutionException {
         Vector argList = new Vector();
@@ -319,6 +407,33 @@ public class XmlRpcResourceManagerClient {
         this.resMgrUrl = resMgrUrl;
     }
 
+    /*
+     * Asks the resource manager, the first time it's needed, whether it
+     * serves binary calls.
+     */
+    private synchronized BinaryRpcClient getBinaryClient() {
+        if (!this.binaryNegotiated) {
+            this.binaryClient = BinaryRpcClient.negotiate(this.client,
+                    this.client.getURL().getHost(), "resourcemgr",
+                    this.binaryTimeout);
+            this.binaryNegotiated = true;
+        }
+        return this.binaryClient;
+    }
+
+    /*
+     * Falls back to XML-RPC for the rest of this client's calls.
+     */
+    private synchronized void binaryFailed(IOException e) {
+        LOG.log(Level.WARNING, "Binary call to resource manager: ["
+                + this.resMgrUrl + "] failed, using XML-RPC: Message: "
+                + e.getMessage());
+        if (this.binaryClient != null) {
+            this.binaryClient.close();
+            this.binaryClient = null;
+        }
+    }
+
     /**
      * Creates a queue with the given name
      * @param queueName The name of the queue to be created
@@ -20,10 +20,17 @@ package org.apache.oodt.cas.resource.system.extern;
 
 //JDK imports
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,6 +38,7 @@ import java.util.logging.Logger;
 import org.apache.oodt.cas.resource.structs.Job;
 import org.apache.oodt.cas.resource.structs.JobInput;
 import org.apache.oodt.cas.resource.structs.JobInstance;
+import org.apache.oodt.cas.resource.structs.JobStatus;
 import org.apache.oodt.cas.resource.structs.exceptions.JobException;
 import org.apache.oodt.cas.resource.structs.exceptions.JobInputException;
 import org.apache.oodt.cas.resource.util.GenericResourceManagerObjectFactory;
@@ -47,6 +55,14 @@ import org.apache.xmlrpc.WebServer;
  * An XML RPC-based Batch Submission System.
  * </p>
  * 
+ * <p>
+ * Jobs are run on a shared pool of threads. A job sent to
+ * <code>executeJob</code> holds the call open until it finishes, while a job
+ * sent to <code>submitJob</code> is accepted straight away, and its outcome is
+ * picked up later, along with that of every other submitted job, through
+ * <code>getJobStatuses</code>.
+ * </p>
+ * 
  */
 public class XmlRpcBatchStub {
 
@@ -60,7 +76,20 @@ public class XmlRpcBatchStub {
     private static Logger LOG = Logger.getLogger(XmlRpcBatchStub.class
             .getName());
 
-    private static Map jobThreadMap = null;
+    /* the jobs running on this stub, by job id */
+    private final Map<String, JobTask> runningJobs = new ConcurrentHashMap<String, JobTask>();
+
+    /* the outcome of submitted jobs that the batch manager hasn't collected */
+    private final Map<String, String> finishedJobs = new ConcurrentHashMap<String, String>();
+
+    private final ExecutorService jobExecutor = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "XmlRpcBatchStub job");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
 
     public XmlRpcBatchStub(int port) throws Exception {
         webServerPort = port;
@@ -70,8 +99,6 @@ public class XmlRpcBatchStub {
         webServer.addHandler("batchstub", this);
         webServer.start();
 
-        jobThreadMap = new HashMap();
-
         LOG.log(Level.INFO, "XmlRpc Batch Stub started by "
                 + System.getProperty("user.name", "unknown"));
     }
@@ -115,72 +142,153 @@ public class XmlRpcBatchStub {
         return genericExecuteJob(jobHash, jobInput);
     }
 
-    public synchronized boolean killJob(Hashtable jobHash) {
+    public boolean submitJob(Hashtable jobHash, Hashtable jobInput)
+            throws JobException {
+        return genericSubmitJob(jobHash, jobInput);
+    }
+
+    public boolean submitJob(Hashtable jobHash, Date jobInput)
+            throws JobException {
+        return genericSubmitJob(jobHash, jobInput);
+    }
+
+    public boolean submitJob(Hashtable jobHash, double jobInput)
+            throws JobException {
+        return genericSubmitJob(jobHash, new Double(jobInput));
+    }
+
+    public boolean submitJob(Hashtable jobHash, int jobInput)
+            throws JobException {
+        return genericSubmitJob(jobHash, new Integer(jobInput));
+    }
+
+    public boolean submitJob(Hashtable jobHash, boolean jobInput)
+            throws JobException {
+        return genericSubmitJob(jobHash, new Boolean(jobInput));
+    }
+
+    public boolean submitJob(Hashtable jobHash, Vector jobInput)
+            throws JobException {
+        return genericSubmitJob(jobHash, jobInput);
+    }
+
+    public boolean submitJob(Hashtable jobHash, byte[] jobInput)
+            throws JobException {
+        return genericSubmitJob(jobHash, jobInput);
+    }
+
+    /**
+     * Reports on the jobs sent to <code>submitJob</code>.
+     * 
+     * @param collectedJobIds
+     *            The ids of finished jobs whose outcome the caller has
+     *            already received, which are forgotten.
+     * @return A map from the id of every submitted job still running or
+     *         finished but not yet collected to its {@link JobStatus}.
+     */
+    public Hashtable getJobStatuses(Vector collectedJobIds) {
+        for (Iterator i = collectedJobIds.iterator(); i.hasNext();) {
+            finishedJobs.remove(i.next());
+        }
+
+        // running jobs first: a job leaves runningJobs only once it is in
+        // finishedJobs, so it can't slip between the two
+        Hashtable statuses = new Hashtable();
+        for (JobTask task : runningJobs.values()) {
+            if (task.submitted) {
+                statuses.put(task.jobId, JobStatus.EXECUTED);
+            }
+        }
+        statuses.putAll(finishedJobs);
+        return statuses;
+    }
+
+    public boolean killJob(Hashtable jobHash) {
         Job job = XmlRpcStructFactory.getJobFromXmlRpc(jobHash);
-        Thread jobThread = (Thread) jobThreadMap.get(job.getId());
-        if (jobThread == null) {
+        JobTask task = runningJobs.get(job.getId());
+        if (task == null) {
             LOG.log(Level.WARNING, "Job: [" + job.getId()
                     + "] not managed by this batch stub");
             return false;
         }
 
         // okay, so interrupt it, which should cause it to stop
-        jobThread.interrupt();
+        task.future.cancel(true);
+        if (task.submitted) {
+            finishedJobs.put(task.jobId, JobStatus.KILLED);
+        }
+        runningJobs.remove(task.jobId);
         return true;
     }
 
     private boolean genericExecuteJob(Hashtable jobHash, Object jobInput)
             throws JobException {
-        JobInstance exec = null;
-        JobInput in = null;
         try {
-            Job job = XmlRpcStructFactory.getJobFromXmlRpc(jobHash);
-
-            LOG.log(Level.INFO, "stub attempting to execute class: ["
-                    + job.getJobInstanceClassName() + "]");
-
-            exec = GenericResourceManagerObjectFactory
-                    .getJobInstanceFromClassName(job.getJobInstanceClassName());
-            in = GenericResourceManagerObjectFactory
-                    .getJobInputFromClassName(job.getJobInputClassName());
-
-            // load the input obj
-            in.read(jobInput);
-
-            // create threaded job
-            // so that it can be interrupted
-            RunnableJob runner = new RunnableJob(exec, in);
-            Thread threadRunner = new Thread(runner);
-            /* save this job thread in a map so we can kill it later */
-            jobThreadMap.put(job.getId(), threadRunner);
-            threadRunner.start();
-
+            JobTask task = startJob(jobHash, jobInput, false);
             try {
-                threadRunner.join();
-            } catch (InterruptedException e) {
-                LOG.log(Level.INFO, "Current job: [" + job.getName()
+                return task.future.get().booleanValue();
+            } catch (CancellationException e) {
+                LOG.log(Level.INFO, "Current job: [" + task.jobId
                         + "]: killed: exiting gracefully");
-                synchronized (jobThreadMap) {
-                    Thread endThread = (Thread) jobThreadMap.get(job.getId());
-                    if (endThread != null)
-                        endThread = null;
-                }
                 return false;
+            } finally {
+                runningJobs.remove(task.jobId);
             }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
 
-            synchronized (jobThreadMap) {
-                Thread endThread = (Thread) jobThreadMap.get(job.getId());
-                if (endThread != null)
-                    endThread = null;
-            }
-
-            return runner.wasSuccessful();
+    private boolean genericSubmitJob(Hashtable jobHash, Object jobInput)
+            throws JobException {
+        try {
+            startJob(jobHash, jobInput, true);
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
             return false;
         }
     }
 
+    private JobTask startJob(Hashtable jobHash, Object jobInput,
+            boolean submitted) throws Exception {
+        Job job = XmlRpcStructFactory.getJobFromXmlRpc(jobHash);
+        if (submitted
+                && (runningJobs.containsKey(job.getId()) || finishedJobs
+                        .containsKey(job.getId()))) {
+            // a resent submission, the job must only run once
+            LOG.log(Level.WARNING, "Job: [" + job.getId()
+                    + "] was already submitted: ignoring it");
+            return runningJobs.get(job.getId());
+        }
+
+        LOG.log(Level.INFO, "stub attempting to execute class: ["
+                + job.getJobInstanceClassName() + "]");
+
+        JobInstance exec = GenericResourceManagerObjectFactory
+                .getJobInstanceFromClassName(job.getJobInstanceClassName());
+        JobInput in = GenericResourceManagerObjectFactory
+                .getJobInputFromClassName(job.getJobInputClassName());
+        if (exec == null || in == null) {
+            throw new JobException("Unable to load job: [" + job.getId()
+                    + "]: instance: [" + job.getJobInstanceClassName()
+                    + "]: input: [" + job.getJobInputClassName() + "]");
+        }
+
+        // load the input obj
+        in.read(jobInput);
+
+        // run the job on its own thread so that it can be interrupted, and
+        // save it in a map so we can kill it later
+        JobTask task = new JobTask(job.getId(), exec, in, submitted);
+        synchronized (task) {
+            runningJobs.put(job.getId(), task);
+            task.future = jobExecutor.submit(task);
+        }
+        return task;
+    }
+
     public static void main(String[] args) throws Exception {
         int portNum = -1;
         String usage = "XmlRpcBatchStub --portNum <port number for xml rpc service>\n";
@@ -205,37 +313,53 @@ public class XmlRpcBatchStub {
             }
     }
 
-    private class RunnableJob implements Runnable {
+    private class JobTask implements Callable<Boolean> {
+
+        private final String jobId;
+
+        private final JobInstance job;
+
+        private final JobInput in;
 
-        private JobInput in;
+        private final boolean submitted;
 
-        private JobInstance job;
+        private Future<Boolean> future;
 
-        private boolean successful;
-        
-        public RunnableJob(JobInstance job, JobInput in) {
+        public JobTask(String jobId, JobInstance job, JobInput in,
+                boolean submitted) {
+            this.jobId = jobId;
             this.job = job;
             this.in = in;
-            this.successful = false;
+            this.submitted = submitted;
         }
 
         /*
          * (non-Javadoc)
          * 
-         * @see java.lang.Runnable#run()
+         * @see java.util.concurrent.Callable#call()
          */
-        public void run() {
+        public Boolean call() {
+            boolean successful = false;
             try {
-                this.successful = job.execute(in);
+                successful = job.execute(in);
             } catch (JobInputException e) {
                 e.printStackTrace();
-                this.successful = false;
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Job: [" + jobId + "] failed: Message: "
+                        + e.getMessage(), e);
             }
 
-        }
-
-        public boolean wasSuccessful() {
-        	return this.successful;
+            if (submitted) {
+                // wait for startJob to be done with us
+                synchronized (this) {
+                    if (!future.isCancelled()) {
+                        finishedJobs.put(jobId, successful ? JobStatus.SUCCESS
+                                : JobStatus.FAILURE);
+                        runningJobs.remove(jobId);
+                    }
+                }
+            }
+            return Boolean.valueOf(successful);
         }
     }
 }
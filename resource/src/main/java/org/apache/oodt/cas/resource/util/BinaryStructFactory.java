@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.resource.util;
+
+//OODT imports
+import org.apache.oodt.cas.resource.structs.Job;
+import org.apache.oodt.commons.rpc.BinaryCodec;
+
+//JDK imports
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * The binary RPC counterpart of {@link XmlRpcStructFactory}: writes Resource
+ * Manager structs straight to, and reads them straight from, a binary RPC
+ * call, field by field in a fixed order.
+ * </p>
+ */
+public final class BinaryStructFactory {
+
+    private BinaryStructFactory() throws InstantiationException {
+        throw new InstantiationException("Don't construct factory classes!");
+    }
+
+    public static void writeJob(DataOutput out, Job job) throws IOException {
+        out.writeBoolean(job != null);
+        if (job == null) {
+            return;
+        }
+        BinaryCodec.writeString(out, job.getId());
+        BinaryCodec.writeString(out, job.getName());
+        BinaryCodec.writeString(out, job.getJobInstanceClassName());
+        BinaryCodec.writeString(out, job.getJobInputClassName());
+        BinaryCodec.writeString(out, job.getQueueName());
+        out.writeBoolean(job.getLoadValue() != null);
+        if (job.getLoadValue() != null) {
+            out.writeInt(job.getLoadValue().intValue());
+        }
+        BinaryCodec.writeString(out, job.getStatus());
+    }
+
+    public static Job readJob(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Job job = new Job();
+        job.setId(BinaryCodec.readString(in));
+        job.setName(BinaryCodec.readString(in));
+        job.setJobInstanceClassName(BinaryCodec.readString(in));
+        job.setJobInputClassName(BinaryCodec.readString(in));
+        job.setQueueName(BinaryCodec.readString(in));
+        if (in.readBoolean()) {
+            job.setLoadValue(new Integer(in.readInt()));
+        }
+        job.setStatus(BinaryCodec.readString(in));
+        return job;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.resource.batchmgr;
+
+//JDK imports
+import java.net.URL;
+import java.util.Collections;
+
+//OODT imports
+import org.apache.oodt.cas.resource.examples.LongJob;
+import org.apache.oodt.cas.resource.jobrepo.MemoryJobRepository;
+import org.apache.oodt.cas.resource.scheduler.MockLoadMonitor;
+import org.apache.oodt.cas.resource.structs.Job;
+import org.apache.oodt.cas.resource.structs.JobSpec;
+import org.apache.oodt.cas.resource.structs.JobStatus;
+import org.apache.oodt.cas.resource.structs.NameValueJobInput;
+import org.apache.oodt.cas.resource.structs.ResourceNode;
+import org.apache.oodt.cas.resource.structs.exceptions.JobExecutionException;
+import org.apache.oodt.cas.resource.system.extern.XmlRpcBatchStub;
+
+//JUnit imports
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ *
+ * <p>
+ * Test case for the asynchronous dispatch of the {@link XmlRpcBatchMgr}.
+ * </p>
+ */
+public class TestXmlRpcBatchMgr extends TestCase {
+
+    private static final int STUB_PORT = 50002;
+
+    private static XmlRpcBatchStub stub;
+
+    private ResourceNode node;
+
+    private MockLoadMonitor monitor;
+
+    private MemoryJobRepository repo;
+
+    private XmlRpcBatchMgr batchmgr;
+
+    protected void setUp() throws Exception {
+        // the stub's web server can't be stopped, so all the tests share it
+        if (stub == null) {
+            stub = new XmlRpcBatchStub(STUB_PORT);
+        }
+
+        node = new ResourceNode("node", new URL("http://localhost:"
+                + STUB_PORT), 4);
+        monitor = new MockLoadMonitor(Collections.singletonList(node));
+        repo = new MemoryJobRepository();
+        batchmgr = new XmlRpcBatchMgr(true, 100);
+        batchmgr.setMonitor(monitor);
+        batchmgr.setJobRepository(repo);
+    }
+
+    protected void tearDown() throws Exception {
+        batchmgr.shutdown();
+    }
+
+    public void testSubmitReturnsBeforeJobFinishes() throws Exception {
+        JobSpec spec = createJob("quick", 1);
+        long start = System.currentTimeMillis();
+        assertTrue(batchmgr.executeRemotely(spec, node));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(JobStatus.EXECUTED, repo.getStatus(spec));
+        assertEquals("node", batchmgr.getExecutionNode("quick"));
+
+        waitForStatus(spec, JobStatus.SUCCESS);
+        assertEquals(4, monitor.getLoad(node));
+        assertNull(batchmgr.getExecutionNode("quick"));
+    }
+
+    public void testKillSubmittedJob() throws Exception {
+        JobSpec spec = createJob("long", 30);
+        assertTrue(batchmgr.executeRemotely(spec, node));
+        assertEquals(3, monitor.getLoad(node));
+
+        assertTrue(batchmgr.killJob("long", node));
+        waitForStatus(spec, JobStatus.KILLED);
+        // the load is given back once the stub reports the job killed
+        for (int i = 0; i < 50 && monitor.getLoad(node) != 4; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(4, monitor.getLoad(node));
+    }
+
+    public void testRefusedJob() throws Exception {
+        JobSpec spec = createJob("refused", 1);
+        spec.getJob().setJobInstanceClassName("no.such.JobInstance");
+        try {
+            batchmgr.executeRemotely(spec, node);
+            fail("A job the stub can't run should not be accepted");
+        } catch (JobExecutionException expected) {
+        }
+        assertNull(batchmgr.getExecutionNode("refused"));
+    }
+
+    private JobSpec createJob(String id, int waitSeconds) throws Exception {
+        NameValueJobInput input = new NameValueJobInput();
+        input.setNameValuePair("wait", Integer.toString(waitSeconds));
+        JobSpec spec = new JobSpec(input, new Job(id, id, LongJob.class
+                .getName(), NameValueJobInput.class.getName(), "default",
+                new Integer(1)));
+        spec.getJob().setStatus(JobStatus.SCHEDULED);
+        repo.updateJob(spec);
+        monitor.assignLoad(node, 1);
+        return spec;
+    }
+
+    private void waitForStatus(JobSpec spec, String status) throws Exception {
+        for (int i = 0; i < 100 && !status.equals(repo.getStatus(spec)); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(status, repo.getStatus(spec));
+    }
+
+}
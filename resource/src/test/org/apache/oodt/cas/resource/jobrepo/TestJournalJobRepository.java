@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.resource.jobrepo;
+
+//JDK imports
+import java.io.File;
+import java.io.RandomAccessFile;
+
+//OODT imports
+import org.apache.oodt.cas.resource.structs.Job;
+import org.apache.oodt.cas.resource.structs.JobSpec;
+import org.apache.oodt.cas.resource.structs.JobStatus;
+import org.apache.oodt.cas.resource.structs.NameValueJobInput;
+import org.apache.oodt.cas.resource.structs.exceptions.JobRepositoryException;
+
+//Junit imports
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Test Suite for the {@link JournalJobRepository} class.
+ * </p>.
+ */
+public class TestJournalJobRepository extends TestCase {
+
+    private File journalFile;
+
+    protected void setUp() throws Exception {
+        journalFile = File.createTempFile("test", ".journal");
+        journalFile.delete();
+    }
+
+    protected void tearDown() throws Exception {
+        journalFile.delete();
+        new File(journalFile.getAbsolutePath() + ".compact").delete();
+    }
+
+    public void testAddUpdateRemove() throws JobRepositoryException {
+        JournalJobRepository repo = new JournalJobRepository(journalFile, -1,
+                1000);
+        JobSpec spec = createSpec(null);
+        String jobId = repo.addJob(spec);
+        assertNotNull(jobId);
+        assertEquals(jobId, spec.getJob().getId());
+        assertEquals(spec.getJob().getName(), repo.getJobById(jobId)
+                .getJob().getName());
+        assertFalse(repo.jobFinished(spec));
+
+        spec.getJob().setStatus(JobStatus.SUCCESS);
+        repo.updateJob(spec);
+        assertTrue(repo.jobFinished(spec));
+
+        try {
+            repo.addJob(createSpec(jobId));
+            fail("Should have rejected a duplicate job id");
+        } catch (JobRepositoryException e) {
+        }
+
+        repo.removeJob(spec);
+        try {
+            repo.getJobById(jobId);
+            fail("Should have removed job: " + jobId);
+        } catch (JobRepositoryException e) {
+        }
+        repo.close();
+    }
+
+    public void testReplay() throws JobRepositoryException {
+        JournalJobRepository repo = new JournalJobRepository(journalFile, -1,
+                1000);
+        for (int i = 0; i < 10; i++) {
+            repo.addJob(createSpec("job" + i));
+        }
+        JobSpec spec = repo.getJobById("job3");
+        spec.getJob().setStatus(JobStatus.SUCCESS);
+        repo.updateJob(spec);
+        repo.removeJob(repo.getJobById("job5"));
+        repo.close();
+
+        repo = new JournalJobRepository(journalFile, -1, 1000);
+        assertEquals(9, repo.getNumJobs());
+        assertEquals(JobStatus.SUCCESS, repo.getStatus(spec));
+        JobSpec loaded = repo.getJobById("job7");
+        assertEquals("Job job7", loaded.getJob().getName());
+        assertEquals("queue", loaded.getJob().getQueueName());
+        assertEquals(new Integer(2), loaded.getJob().getLoadValue());
+        assertEquals("value7", ((NameValueJobInput) loaded.getIn())
+                .getValue("key"));
+        try {
+            repo.getJobById("job5");
+            fail("Removed job should not have been replayed");
+        } catch (JobRepositoryException e) {
+        }
+        repo.close();
+    }
+
+    public void testMaxHistory() throws JobRepositoryException {
+        JournalJobRepository repo = new JournalJobRepository(journalFile, 5,
+                1000);
+        for (int i = 0; i < 8; i++) {
+            repo.addJob(createSpec("job" + i));
+        }
+        assertEquals(5, repo.getNumJobs());
+        try {
+            repo.getJobById("job2");
+            fail("Oldest jobs should have been dropped");
+        } catch (JobRepositoryException e) {
+        }
+        repo.close();
+
+        repo = new JournalJobRepository(journalFile, 5, 1000);
+        assertEquals(5, repo.getNumJobs());
+        assertNotNull(repo.getJobById("job3"));
+        repo.close();
+    }
+
+    public void testCompaction() throws JobRepositoryException {
+        JournalJobRepository repo = new JournalJobRepository(journalFile, -1,
+                10);
+        JobSpec spec = createSpec("job");
+        repo.addJob(spec);
+        for (int i = 0; i < 100; i++) {
+            spec.getJob().setStatus("status" + i);
+            repo.updateJob(spec);
+        }
+        assertTrue(repo.getNumRecords() <= 11);
+        long compactedLength = journalFile.length();
+        repo.compactJournal();
+        assertEquals(1, repo.getNumRecords());
+        assertTrue(journalFile.length() <= compactedLength);
+        repo.close();
+
+        repo = new JournalJobRepository(journalFile, -1, 10);
+        assertEquals("status99", repo.getStatus(spec));
+        repo.close();
+    }
+
+    public void testTruncatedTail() throws Exception {
+        JournalJobRepository repo = new JournalJobRepository(journalFile, -1,
+                1000);
+        repo.addJob(createSpec("job1"));
+        repo.addJob(createSpec("job2"));
+        repo.close();
+
+        // simulate a crash halfway through writing the last record
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        raf.setLength(raf.length() - 5);
+        raf.close();
+
+        repo = new JournalJobRepository(journalFile, -1, 1000);
+        assertEquals(1, repo.getNumJobs());
+        assertNotNull(repo.getJobById("job1"));
+        repo.addJob(createSpec("job3"));
+        repo.close();
+
+        repo = new JournalJobRepository(journalFile, -1, 1000);
+        assertEquals(2, repo.getNumJobs());
+        assertNotNull(repo.getJobById("job3"));
+        repo.close();
+    }
+
+    public void testCorruptRecordSkipped() throws Exception {
+        JournalJobRepository repo = new JournalJobRepository(journalFile, -1,
+                1000);
+        repo.addJob(createSpec("job1"));
+        repo.addJob(createSpec("job2"));
+        repo.addJob(createSpec("job3"));
+        repo.close();
+        long length = journalFile.length();
+
+        // damage the first record's payload, leaving its framing intact
+        flipByte(12);
+
+        repo = new JournalJobRepository(journalFile, -1, 1000);
+        assertEquals(2, repo.getNumJobs());
+        assertNotNull(repo.getJobById("job2"));
+        assertNotNull(repo.getJobById("job3"));
+        assertEquals(length, journalFile.length());
+        repo.close();
+    }
+
+    public void testCorruptTailRecord() throws Exception {
+        JournalJobRepository repo = new JournalJobRepository(journalFile, -1,
+                1000);
+        repo.addJob(createSpec("job1"));
+        repo.addJob(createSpec("job2"));
+        repo.close();
+
+        // the last record was written out in full but not its contents
+        flipByte(journalFile.length() - 1);
+
+        repo = new JournalJobRepository(journalFile, -1, 1000);
+        assertEquals(1, repo.getNumJobs());
+        assertNotNull(repo.getJobById("job1"));
+        repo.close();
+    }
+
+    public void testUnframeableJournalRefused() throws Exception {
+        JournalJobRepository repo = new JournalJobRepository(journalFile, -1,
+                1000);
+        repo.addJob(createSpec("job1"));
+        repo.addJob(createSpec("job2"));
+        repo.close();
+        long length = journalFile.length();
+
+        // a damaged length leaves the rest of the journal unreadable
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        raf.writeInt(3);
+        raf.close();
+
+        try {
+            new JournalJobRepository(journalFile, -1, 1000);
+            fail("Should have refused a journal it cannot frame");
+        } catch (JobRepositoryException e) {
+        }
+        assertEquals(length, journalFile.length());
+    }
+
+    private void flipByte(long offset) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(journalFile, "rw");
+        try {
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static JobSpec createSpec(String jobId) {
+        Job job = new Job();
+        job.setId(jobId);
+        job.setName("Job " + jobId);
+        job.setJobInstanceClassName("org.apache.oodt.cas.resource.examples.HelloWorldJob");
+        job.setJobInputClassName(NameValueJobInput.class.getName());
+        job.setQueueName("queue");
+        job.setLoadValue(new Integer(2));
+        job.setStatus(JobStatus.QUEUED);
+        NameValueJobInput in = new NameValueJobInput();
+        in.setNameValuePair("key", "value" + (jobId != null ? jobId.substring(3) : ""));
+        return new JobSpec(in, job);
+    }
+
+}
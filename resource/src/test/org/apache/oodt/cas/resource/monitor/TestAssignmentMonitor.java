@@ -31,6 +31,7 @@ import java.net.URL;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 //JUnit imports
 import junit.framework.TestCase;
@@ -135,6 +136,46 @@ public class TestAssignmentMonitor extends TestCase {
     }
 
 
+    public void testConcurrentLoadAssignment() throws Exception {
+        final ResourceNode node = this.assgnMon.getNodeById("localhost");
+        final AtomicInteger assigned = new AtomicInteger();
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        try {
+                            if (assgnMon.assignLoad(node, 1)) {
+                                assigned.incrementAndGet();
+                            }
+                        } catch (MonitorException e) {
+                            fail(e.getMessage());
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        // never more than the node's capacity of 8
+        assertEquals(8, assigned.get());
+        assertEquals(0, this.assgnMon.getLoad(node));
+        assertFalse(this.assgnMon.assignLoad(node, 1));
+
+        // load never drops below zero
+        assertTrue(this.assgnMon.reduceLoad(node, 100));
+        assertEquals(8, this.assgnMon.getLoad(node));
+
+        try {
+            this.assgnMon.getLoad(new ResourceNode("unknown", null, 1));
+            fail("Expected MonitorException for unknown node");
+        } catch (MonitorException expected) {
+        }
+    }
+
     private void generateTestConfig() throws IOException {
         String propertiesFile = "." + File.separator + "src" + File.separator +
                 "testdata" + File.separator + "test.resource.properties";
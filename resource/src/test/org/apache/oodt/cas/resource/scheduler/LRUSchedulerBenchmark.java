@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.resource.scheduler;
+
+//JDK imports
+import java.util.List;
+import java.util.Vector;
+
+//OODT imports
+import org.apache.oodt.cas.resource.jobqueue.JobStack;
+import org.apache.oodt.cas.resource.jobrepo.MemoryJobRepository;
+import org.apache.oodt.cas.resource.structs.Job;
+import org.apache.oodt.cas.resource.structs.JobSpec;
+import org.apache.oodt.cas.resource.structs.ResourceNode;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Measures how many jobs per second the {@link LRUScheduler} gets through
+ * against a mocked {@link org.apache.oodt.cas.resource.batchmgr.Batchmgr}
+ * whose jobs finish after a fixed time. Run with:
+ * </p>
+ * 
+ * <pre>
+ * java org.apache.oodt.cas.resource.scheduler.LRUSchedulerBenchmark \
+ *   [numNodes] [numJobs] [jobMillis]
+ * </pre>
+ * 
+ * <p>
+ * Not run as part of the unit tests.
+ * </p>
+ */
+public class LRUSchedulerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numNodes = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int numJobs = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        long jobMillis = args.length > 2 ? Long.parseLong(args[2]) : 5;
+
+        System.setProperty(
+                "org.apache.oodt.cas.resource.scheduler.wait.seconds", "20");
+
+        List<ResourceNode> nodes = new Vector<ResourceNode>();
+        QueueManager qm = new QueueManager();
+        qm.addQueue("benchmark");
+        for (int i = 0; i < numNodes; i++) {
+            nodes.add(new ResourceNode("node" + i, null, 4));
+            qm.addNodeToQueue("node" + i, "benchmark");
+        }
+        MockLoadMonitor monitor = new MockLoadMonitor(nodes);
+        MockCompletingBatchmgr batchmgr = new MockCompletingBatchmgr(
+                jobMillis);
+        LRUScheduler scheduler = new LRUScheduler(monitor, batchmgr,
+                new JobStack(numJobs, new MemoryJobRepository()),
+                new LRUQueueManager(qm));
+
+        Thread schedulerThread = new Thread(scheduler);
+        schedulerThread.setDaemon(true);
+
+        long start = System.currentTimeMillis();
+        schedulerThread.start();
+        for (int i = 0; i < numJobs; i++) {
+            scheduler.getJobQueue().addJob(
+                    new JobSpec(null, new Job(null, "job" + i, null, null,
+                            "benchmark", 1)));
+        }
+        while (batchmgr.getCompleted() < numJobs) {
+            Thread.sleep(1);
+        }
+        long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+        batchmgr.shutdown();
+
+        System.out.println("Nodes: [" + numNodes + "] jobs: [" + numJobs
+                + "] job time: [" + jobMillis + "] ms");
+        System.out.println("Scheduled all jobs in: [" + elapsed + "] ms: ["
+                + (numJobs * 1000L / elapsed) + "] jobs/sec");
+        System.out.println("Monitor load lookups per job: ["
+                + ((double) monitor.getLoadCalls() / numJobs) + "]");
+    }
+
+}
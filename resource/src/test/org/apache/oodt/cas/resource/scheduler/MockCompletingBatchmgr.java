@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.resource.scheduler;
+
+//JDK imports
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//OODT imports
+import org.apache.oodt.cas.resource.batchmgr.Batchmgr;
+import org.apache.oodt.cas.resource.jobrepo.JobRepository;
+import org.apache.oodt.cas.resource.monitor.Monitor;
+import org.apache.oodt.cas.resource.structs.JobSpec;
+import org.apache.oodt.cas.resource.structs.ResourceNode;
+import org.apache.oodt.cas.resource.structs.exceptions.JobExecutionException;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * A {@link Batchmgr} that "runs" every job for a fixed time and then reports
+ * it complete to its {@link Monitor}, like the XML-RPC batch manager does, for
+ * use in testing.
+ * </p>
+ */
+public class MockCompletingBatchmgr implements Batchmgr {
+
+    private Monitor monitor;
+
+    private long jobMillis;
+
+    private ScheduledExecutorService completer;
+
+    private AtomicInteger executed;
+
+    private AtomicInteger completed;
+
+    public MockCompletingBatchmgr(long jobMillis) {
+        this.jobMillis = jobMillis;
+        this.completer = Executors.newSingleThreadScheduledExecutor();
+        this.executed = new AtomicInteger();
+        this.completed = new AtomicInteger();
+    }
+
+    public boolean executeRemotely(final JobSpec job, final ResourceNode resNode)
+            throws JobExecutionException {
+        executed.incrementAndGet();
+        completer.schedule(new Runnable() {
+            public void run() {
+                try {
+                    monitor.reduceLoad(resNode, job.getJob().getLoadValue()
+                            .intValue());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                completed.incrementAndGet();
+            }
+        }, jobMillis, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    public void setMonitor(Monitor monitor) {
+        this.monitor = monitor;
+    }
+
+    public void setJobRepository(JobRepository repository) {
+    }
+
+    public boolean killJob(String jobId, ResourceNode node) {
+        return false;
+    }
+
+    public String getExecutionNode(String jobId) {
+        return null;
+    }
+
+    public int getExecuted() {
+        return executed.get();
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public void shutdown() {
+        completer.shutdownNow();
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.resource.scheduler;
+
+//JDK imports
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+//OODT imports
+import org.apache.oodt.cas.resource.monitor.Monitor;
+import org.apache.oodt.cas.resource.structs.ResourceNode;
+import org.apache.oodt.cas.resource.structs.exceptions.MonitorException;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * A thread-safe, in-memory {@link Monitor} that tracks assigned load against
+ * each node's capacity, for use in testing.
+ * </p>
+ */
+public class MockLoadMonitor implements Monitor {
+
+    private Map<String, ResourceNode> nodes;
+
+    private Map<String, Integer> loads;
+
+    private int getLoadCalls;
+
+    public MockLoadMonitor(List<ResourceNode> nodes) {
+        this.nodes = new HashMap<String, ResourceNode>();
+        this.loads = new HashMap<String, Integer>();
+        for (ResourceNode node : nodes) {
+            this.nodes.put(node.getNodeId(), node);
+            this.loads.put(node.getNodeId(), 0);
+        }
+        this.getLoadCalls = 0;
+    }
+
+    public synchronized boolean assignLoad(ResourceNode node, int loadValue)
+            throws MonitorException {
+        int curLoad = loads.get(node.getNodeId());
+        if (loadValue > node.getCapacity() - curLoad) {
+            return false;
+        }
+        loads.put(node.getNodeId(), curLoad + loadValue);
+        return true;
+    }
+
+    public synchronized boolean reduceLoad(ResourceNode node, int loadValue)
+            throws MonitorException {
+        loads.put(node.getNodeId(), Math.max(0, loads.get(node.getNodeId())
+                - loadValue));
+        return true;
+    }
+
+    public synchronized int getLoad(ResourceNode node) throws MonitorException {
+        getLoadCalls++;
+        return nodes.get(node.getNodeId()).getCapacity()
+                - loads.get(node.getNodeId());
+    }
+
+    public synchronized List getNodes() throws MonitorException {
+        return new Vector<ResourceNode>(nodes.values());
+    }
+
+    public synchronized ResourceNode getNodeById(String nodeId)
+            throws MonitorException {
+        return nodes.get(nodeId);
+    }
+
+    public synchronized ResourceNode getNodeByURL(URL ipAddr)
+            throws MonitorException {
+        return null;
+    }
+
+    public synchronized void addNode(ResourceNode node) throws MonitorException {
+        nodes.put(node.getNodeId(), node);
+        if (!loads.containsKey(node.getNodeId())) {
+            loads.put(node.getNodeId(), 0);
+        }
+    }
+
+    public synchronized void removeNodeById(String nodeId)
+            throws MonitorException {
+        nodes.remove(nodeId);
+        loads.remove(nodeId);
+    }
+
+    /**
+     * @return The number of times {@link #getLoad(ResourceNode)} was called.
+     */
+    public synchronized int getLoadCalls() {
+        return getLoadCalls;
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.resource.scheduler;
+
+//JUnit imports
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Test case for the {@link FreeCapacityIndex}.
+ * </p>
+ */
+public class TestFreeCapacityIndex extends TestCase {
+
+    public void testSelectsMostFreeNode() {
+        FreeCapacityIndex index = new FreeCapacityIndex();
+        index.addNode("queue", "node1", 2);
+        index.addNode("queue", "node2", 5);
+        index.addNode("queue", "node3", 3);
+        assertEquals("node2", index.selectNode("queue", 4));
+        assertNull(index.selectNode("queue", 6));
+        assertNull(index.selectNode("unknown", 1));
+
+        index.updateCapacity("node2", 1);
+        assertEquals("node3", index.selectNode("queue", 3));
+        assertEquals(1, index.getFreeCapacity("node2"));
+        assertEquals(-1, index.getFreeCapacity("unknown"));
+    }
+
+    public void testLeastRecentlyUsedBreaksTies() {
+        FreeCapacityIndex index = new FreeCapacityIndex();
+        index.addNode("queue", "node1", 2);
+        index.addNode("queue", "node2", 2);
+        index.usedNode("node1");
+        index.usedNode("node2");
+        assertEquals("node1", index.selectNode("queue", 1));
+        index.usedNode("node1");
+        assertEquals("node2", index.selectNode("queue", 1));
+    }
+
+    public void testNodeSharedBetweenQueues() {
+        FreeCapacityIndex index = new FreeCapacityIndex();
+        index.addNode("queue1", "node1", 4);
+        index.addNode("queue2", "node1", 4);
+        index.addNode("queue2", "node2", 3);
+        assertEquals("node1", index.selectNode("queue2", 1));
+
+        // load assigned through one queue is seen by the other
+        index.updateCapacity("node1", 0);
+        assertNull(index.selectNode("queue1", 1));
+        assertEquals("node2", index.selectNode("queue2", 1));
+
+        index.clear();
+        assertNull(index.selectNode("queue2", 1));
+    }
+
+}
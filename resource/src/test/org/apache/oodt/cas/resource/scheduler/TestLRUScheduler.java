@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.resource.scheduler;
+
+//JDK imports
+import java.util.List;
+import java.util.Vector;
+
+//OODT imports
+import org.apache.oodt.cas.resource.jobqueue.JobStack;
+import org.apache.oodt.cas.resource.jobrepo.MemoryJobRepository;
+import org.apache.oodt.cas.resource.structs.Job;
+import org.apache.oodt.cas.resource.structs.JobSpec;
+import org.apache.oodt.cas.resource.structs.ResourceNode;
+import org.apache.oodt.cas.resource.structs.exceptions.SchedulerException;
+
+//JUnit imports
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Test case for the {@link LRUScheduler}.
+ * </p>
+ */
+public class TestLRUScheduler extends TestCase {
+
+    private MockLoadMonitor monitor;
+
+    private MockCompletingBatchmgr batchmgr;
+
+    private LRUQueueManager queueManager;
+
+    private LRUScheduler scheduler;
+
+    protected void setUp() throws Exception {
+        // long enough that only signals can get jobs run within the test
+        System.setProperty(
+                "org.apache.oodt.cas.resource.scheduler.wait.seconds", "600");
+
+        List<ResourceNode> nodes = new Vector<ResourceNode>();
+        nodes.add(new ResourceNode("node1", null, 4));
+        nodes.add(new ResourceNode("node2", null, 2));
+        monitor = new MockLoadMonitor(nodes);
+
+        QueueManager qm = new QueueManager();
+        qm.addQueue("queue");
+        qm.addNodeToQueue("node1", "queue");
+        qm.addNodeToQueue("node2", "queue");
+        queueManager = new LRUQueueManager(qm);
+
+        batchmgr = new MockCompletingBatchmgr(50);
+        scheduler = new LRUScheduler(monitor, batchmgr, new JobStack(100,
+                new MemoryJobRepository()), queueManager);
+    }
+
+    protected void tearDown() throws Exception {
+        batchmgr.shutdown();
+        System.getProperties().remove(
+                "org.apache.oodt.cas.resource.scheduler.wait.seconds");
+    }
+
+    public void testNodeAvailable() throws Exception {
+        assertEquals("node1", scheduler.nodeAvailable(newJob(3)).getNodeId());
+        assertNull(scheduler.nodeAvailable(newJob(5)));
+
+        scheduler.getMonitor().assignLoad(monitor.getNodeById("node1"), 3);
+        assertEquals("node2", scheduler.nodeAvailable(newJob(2)).getNodeId());
+
+        try {
+            JobSpec spec = newJob(1);
+            spec.getJob().setQueueName("unknown");
+            scheduler.nodeAvailable(spec);
+            fail("Expected SchedulerException for unknown queue");
+        } catch (SchedulerException expected) {
+        }
+    }
+
+    public void testQueueMembershipChanges() throws Exception {
+        ResourceNode node3 = new ResourceNode("node3", null, 8);
+        scheduler.getMonitor().addNode(node3);
+        assertEquals("node1", scheduler.nodeAvailable(newJob(1)).getNodeId());
+
+        queueManager.addNodeToQueue("node3", "queue");
+        assertEquals("node3", scheduler.nodeAvailable(newJob(1)).getNodeId());
+
+        queueManager.removeNodeFromQueue("node3", "queue");
+        assertNull(scheduler.nodeAvailable(newJob(5)));
+    }
+
+    public void testRunsJobsOnSubmitAndCompletion() throws Exception {
+        Thread schedulerThread = new Thread(scheduler);
+        schedulerThread.setDaemon(true);
+        schedulerThread.start();
+
+        // 10 jobs of load 2 only fit 3 at a time: the rest have to wait for
+        // completions to free up capacity
+        for (int i = 0; i < 10; i++) {
+            scheduler.getJobQueue().addJob(newJob(2));
+        }
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (batchmgr.getCompleted() < 10
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(10, batchmgr.getCompleted());
+        assertTrue(scheduler.getJobQueue().isEmpty());
+        assertEquals(4, monitor.getLoad(monitor.getNodeById("node1")));
+        assertEquals(2, monitor.getLoad(monitor.getNodeById("node2")));
+    }
+
+    private static JobSpec newJob(int load) {
+        return new JobSpec(null, new Job(null, "job",
+                "org.apache.oodt.cas.resource.examples.HelloWorldJob",
+                "org.apache.oodt.cas.resource.structs.NameValueJobInput",
+                "queue", load));
+    }
+
+}
@@ -29,6 +29,8 @@ import java.util.Properties;
 import org.apache.commons.io.FileUtils;
 
 //OODT imports
+import org.apache.oodt.cas.resource.structs.Job;
+import org.apache.oodt.cas.resource.structs.NameValueJobInput;
 import org.apache.oodt.cas.resource.structs.exceptions.MonitorException;
 
 //Junit imports
@@ -80,6 +82,51 @@ public class TestXmlRpcResourceManager extends TestCase {
 
   }
 
+  public void testBinaryCalls() throws Exception {
+    assertEquals(-1, this.rm.getBinaryRpcPort());
+
+    // restart the resource manager with binary calls on
+    this.rm.shutdown();
+    System.setProperty("org.apache.oodt.cas.resource.binary.port", "0");
+    try {
+      this.rm = new XmlRpcResourceManager(RM_PORT);
+    } finally {
+      System.getProperties().remove("org.apache.oodt.cas.resource.binary.port");
+    }
+    assertTrue(this.rm.getBinaryRpcPort() > 0);
+
+    URL rmUrl = new URL("http://localhost:" + RM_PORT);
+    XmlRpcResourceManagerClient rmc = new XmlRpcResourceManagerClient(rmUrl);
+    Job job = new Job(null, "HelloWorld",
+        "org.apache.oodt.cas.resource.examples.HelloWorldJob",
+        "org.apache.oodt.cas.resource.structs.NameValueJobInput", "quick",
+        new Integer(1));
+    String jobId = rmc.submitJob(job, new NameValueJobInput());
+
+    Job binaryJob = rmc.getJobInfo(jobId);
+    boolean binaryComplete = rmc.isJobComplete(jobId);
+
+    // same answers over XML-RPC
+    System.setProperty("org.apache.oodt.commons.rpc.binary", "false");
+    Job xmlRpcJob = null;
+    try {
+      XmlRpcResourceManagerClient xmlRpcClient = new XmlRpcResourceManagerClient(
+          rmUrl);
+      xmlRpcJob = xmlRpcClient.getJobInfo(jobId);
+      assertEquals(binaryComplete, xmlRpcClient.isJobComplete(jobId));
+    } finally {
+      System.getProperties().remove("org.apache.oodt.commons.rpc.binary");
+    }
+    assertEquals(xmlRpcJob.getId(), binaryJob.getId());
+    assertEquals(xmlRpcJob.getName(), binaryJob.getName());
+    assertEquals(xmlRpcJob.getJobInstanceClassName(), binaryJob
+        .getJobInstanceClassName());
+    assertEquals(xmlRpcJob.getJobInputClassName(), binaryJob
+        .getJobInputClassName());
+    assertEquals(xmlRpcJob.getQueueName(), binaryJob.getQueueName());
+    assertEquals(xmlRpcJob.getLoadValue(), binaryJob.getLoadValue());
+  }
+
   /*
    * (non-Javadoc)
    *
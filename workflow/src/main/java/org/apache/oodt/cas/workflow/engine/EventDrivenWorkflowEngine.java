@@ -0,0 +1,362 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.workflow.engine;
+
+//OODT imports
+import org.apache.oodt.cas.metadata.Metadata;
+import org.apache.oodt.cas.resource.system.XmlRpcResourceManagerClient;
+import org.apache.oodt.cas.workflow.instrepo.WorkflowInstanceRepository;
+import org.apache.oodt.cas.workflow.structs.Workflow;
+import org.apache.oodt.cas.workflow.structs.WorkflowInstance;
+import org.apache.oodt.cas.workflow.structs.WorkflowStatus;
+import org.apache.oodt.cas.workflow.structs.WorkflowTask;
+import org.apache.oodt.cas.workflow.structs.exceptions.EngineException;
+import org.apache.oodt.cas.workflow.structs.exceptions.InstanceRepositoryException;
+
+//JDK imports
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link WorkflowEngine} that runs each {@link WorkflowInstance} as an
+ * {@link EventDrivenWorkflowProcessor}: a lightweight state machine advanced
+ * by task completion, pre-condition and Resource Manager job status events.
+ * The {@link ThreadPoolWorkflowEngine} ties up a pooled thread per running
+ * instance for its whole life, including while it sleeps waiting on the
+ * Resource Manager; here a small, fixed pool of workers only runs the steps
+ * that have work to do, so the number of in-flight instances is bounded by
+ * memory rather than by the pool size.
+ * 
+ * @version $Revision$
+ * 
+ */
+public class EventDrivenWorkflowEngine implements WorkflowEngine,
+    WorkflowStatus {
+
+  /* our log stream */
+  private static final Logger LOG = Logger
+      .getLogger(EventDrivenWorkflowEngine.class.getName());
+
+  /* runs the steps of all workflow instances */
+  private ExecutorService workers = null;
+
+  /* fires pre-condition rechecks and resmgr job status checks */
+  private ScheduledExecutorService timer = null;
+
+  /* the processors of the workflow instances in flight, by instance id */
+  private ConcurrentHashMap<String, EventDrivenWorkflowProcessor> processors = new ConcurrentHashMap<String, EventDrivenWorkflowProcessor>();
+
+  /* our instance repository */
+  private WorkflowInstanceRepository instRep = null;
+
+  /* our resource manager client */
+  private XmlRpcResourceManagerClient rClient = null;
+
+  /* the URL pointer to the parent Workflow Manager */
+  private URL wmgrUrl = null;
+
+  /**
+   * @param instRep
+   *          The WorkflowInstanceRepository to be used by this engine.
+   * @param numWorkers
+   *          The number of threads running workflow instance steps.
+   * @param resUrl
+   *          A URL pointer to a resource manager. If this is set Tasks will be
+   *          wrapped as Resource Manager {@link Job}s and sent through the
+   *          Resource Manager. If this parameter is not set, local execution
+   *          (the default) will be used
+   */
+  public EventDrivenWorkflowEngine(WorkflowInstanceRepository instRep,
+      int numWorkers, URL resUrl) {
+    this.instRep = instRep;
+    this.workers = Executors.newFixedThreadPool(numWorkers,
+        new NamedThreadFactory("EventDrivenWorkflowEngine-worker"));
+    this.timer = Executors
+        .newSingleThreadScheduledExecutor(new NamedThreadFactory(
+            "EventDrivenWorkflowEngine-timer"));
+
+    if (resUrl != null)
+      rClient = new XmlRpcResourceManagerClient(resUrl);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.apache.oodt.cas.workflow.engine.WorkflowEngine#startWorkflow(org.apache
+   * .oodt.cas.workflow.structs.Workflow, org.apache.oodt.cas.metadata.Metadata)
+   */
+  public WorkflowInstance startWorkflow(Workflow workflow, Metadata metadata)
+      throws EngineException {
+    WorkflowInstance wInst = new WorkflowInstance();
+    wInst.setWorkflow(workflow);
+    wInst.setCurrentTaskId(((WorkflowTask) workflow.getTasks().get(0))
+        .getTaskId());
+    wInst.setSharedContext(metadata);
+    wInst.setStatus(CREATED);
+    persistWorkflowInstance(wInst);
+
+    EventDrivenWorkflowProcessor processor = new EventDrivenWorkflowProcessor(
+        wInst, this, workers, timer, instRep, rClient, wmgrUrl);
+    processors.put(wInst.getId(), processor);
+
+    wInst.setStatus(QUEUED);
+    persistWorkflowInstance(wInst);
+
+    processor.start();
+    return wInst;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.apache.oodt.cas.workflow.engine.WorkflowEngine#stopWorkflow(java.lang
+   * .String)
+   */
+  public void stopWorkflow(String workflowInstId) {
+    EventDrivenWorkflowProcessor processor = getProcessor(workflowInstId,
+        "stop");
+    if (processor != null) {
+      processor.stop();
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.apache.oodt.cas.workflow.engine.WorkflowEngine#pauseWorkflowInstance
+   * (java.lang.String)
+   */
+  public void pauseWorkflowInstance(String workflowInstId) {
+    EventDrivenWorkflowProcessor processor = getProcessor(workflowInstId,
+        "pause");
+    if (processor != null) {
+      processor.pause();
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.apache.oodt.cas.workflow.engine.WorkflowEngine#resumeWorkflowInstance
+   * (java.lang.String)
+   */
+  public void resumeWorkflowInstance(String workflowInstId) {
+    EventDrivenWorkflowProcessor processor = getProcessor(workflowInstId,
+        "resume");
+    if (processor == null) {
+      return;
+    }
+
+    // only can resume WorkflowInstances that are paused
+    if (!processor.isPaused()) {
+      LOG.log(Level.WARNING,
+          "WorkflowEngine: Attempt to resume a workflow that "
+              + "isn't paused currently: instance id: " + workflowInstId);
+      return;
+    }
+
+    processor.resume();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.apache.oodt.cas.workflow.engine.WorkflowEngine#getInstanceRepository()
+   */
+  public WorkflowInstanceRepository getInstanceRepository() {
+    return this.instRep;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.apache.oodt.cas.workflow.engine.WorkflowEngine#updateMetadata(java.
+   * lang.String, org.apache.oodt.cas.metadata.Metadata)
+   */
+  public boolean updateMetadata(String workflowInstId, Metadata met) {
+    EventDrivenWorkflowProcessor processor = getProcessor(workflowInstId,
+        "update metadata context for");
+    if (processor == null) {
+      return false;
+    }
+
+    WorkflowInstance inst = processor.getWorkflowInstance();
+    inst.setSharedContext(met);
+    try {
+      persistWorkflowInstance(inst);
+    } catch (Exception e) {
+      LOG.log(Level.WARNING, "Exception persisting workflow instance: ["
+          + inst.getId() + "]: Message: " + e.getMessage());
+      return false;
+    }
+
+    return true;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.apache.oodt.cas.workflow.engine.WorkflowEngine#setWorkflowManagerUrl
+   * (java.net.URL)
+   */
+  public void setWorkflowManagerUrl(URL url) {
+    this.wmgrUrl = url;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.apache.oodt.cas.workflow.engine.WorkflowEngine#getWallClockMinutes(
+   * java.lang.String)
+   */
+  public double getWallClockMinutes(String workflowInstId) {
+    return ThreadPoolWorkflowEngine
+        .getWallClockMinutes(safeGetWorkflowInstanceById(workflowInstId));
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.oodt.cas.workflow.engine.WorkflowEngine#
+   * getCurrentTaskWallClockMinutes(java.lang.String)
+   */
+  public double getCurrentTaskWallClockMinutes(String workflowInstId) {
+    return ThreadPoolWorkflowEngine
+        .getCurrentTaskWallClockMinutes(safeGetWorkflowInstanceById(workflowInstId));
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.apache.oodt.cas.workflow.engine.WorkflowEngine#getWorkflowInstanceMetadata
+   * (java.lang.String)
+   */
+  public Metadata getWorkflowInstanceMetadata(String workflowInstId) {
+    EventDrivenWorkflowProcessor processor = processors.get(workflowInstId);
+    if (processor != null) {
+      return processor.getWorkflowInstance().getSharedContext();
+    }
+
+    // finished instances are only in the instance repository
+    try {
+      WorkflowInstance inst = instRep.getWorkflowInstanceById(workflowInstId);
+      return inst != null ? inst.getSharedContext() : new Metadata();
+    } catch (InstanceRepositoryException e) {
+      LOG.log(Level.FINEST, "WorkflowEngine: Attempt to get metadata "
+          + "for workflow instance id: " + workflowInstId
+          + ", however, this engine is "
+          + "not tracking its execution and the id: [" + workflowInstId
+          + "] " + "was never persisted to " + "the instance repository");
+      return new Metadata();
+    }
+  }
+
+  /**
+   * @return The number of workflow instances in flight.
+   */
+  public int getNumActiveInstances() {
+    return processors.size();
+  }
+
+  /**
+   * Stops the worker pool and timer of this engine. In-flight instances are
+   * left as they were last persisted.
+   */
+  public void shutdown() {
+    timer.shutdownNow();
+    workers.shutdownNow();
+  }
+
+  /**
+   * Called by a processor once its instance has finished, failed or been
+   * stopped.
+   */
+  void processorDone(String workflowInstId) {
+    processors.remove(workflowInstId);
+  }
+
+  private EventDrivenWorkflowProcessor getProcessor(String workflowInstId,
+      String action) {
+    EventDrivenWorkflowProcessor processor = processors.get(workflowInstId);
+    if (processor == null) {
+      LOG.log(Level.WARNING, "WorkflowEngine: Attempt to " + action
+          + " workflow instance id: " + workflowInstId
+          + ", however, this engine is not tracking its execution");
+    }
+    return processor;
+  }
+
+  private void persistWorkflowInstance(WorkflowInstance wInst)
+      throws EngineException {
+    try {
+      if (wInst.getId() == null || wInst.getId().equals("")) {
+        // we have to persist it by adding it
+        // rather than updating it
+        instRep.addWorkflowInstance(wInst);
+      } else {
+        // persist by update
+        instRep.updateWorkflowInstance(wInst);
+      }
+    } catch (InstanceRepositoryException e) {
+      e.printStackTrace();
+      throw new EngineException(e.getMessage());
+    }
+  }
+
+  private WorkflowInstance safeGetWorkflowInstanceById(String workflowInstId) {
+    try {
+      return instRep.getWorkflowInstanceById(workflowInstId);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+
+    private String prefix = null;
+
+    private AtomicInteger count = new AtomicInteger();
+
+    public NamedThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
+}
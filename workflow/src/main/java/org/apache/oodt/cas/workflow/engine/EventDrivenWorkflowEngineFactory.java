@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.workflow.engine;
+
+//JDK imports
+import static java.lang.Integer.getInteger;
+
+/**
+ * A Factory class for creating {@link EventDrivenWorkflowEngine}s. Shares the
+ * instance repository and Resource Manager configuration of the
+ * {@link ThreadPoolWorkflowEngineFactory}.
+ * 
+ */
+public class EventDrivenWorkflowEngineFactory extends
+    ThreadPoolWorkflowEngineFactory {
+
+  private static final String NUM_WORKERS_PROPERTY = "org.apache.oodt.cas.workflow.engine.eventDriven.numWorkers";
+
+  private static final int DEFAULT_NUM_WORKERS = 8;
+
+  @Override
+  public WorkflowEngine createWorkflowEngine() {
+    return new EventDrivenWorkflowEngine(getWorkflowInstanceRepository(),
+        getNumWorkers(), getResmgrUrl());
+  }
+
+  protected int getNumWorkers() {
+    return getInteger(NUM_WORKERS_PROPERTY, DEFAULT_NUM_WORKERS);
+  }
+}
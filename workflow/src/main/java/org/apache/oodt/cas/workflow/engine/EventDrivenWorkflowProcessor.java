@@ -0,0 +1,541 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.workflow.engine;
+
+//OODT imports
+import org.apache.oodt.cas.metadata.Metadata;
+import org.apache.oodt.cas.resource.structs.Job;
+import org.apache.oodt.cas.resource.structs.exceptions.JobExecutionException;
+import org.apache.oodt.cas.resource.system.XmlRpcResourceManagerClient;
+import org.apache.oodt.cas.workflow.instrepo.WorkflowInstanceRepository;
+import org.apache.oodt.cas.workflow.metadata.CoreMetKeys;
+import org.apache.oodt.cas.workflow.structs.TaskJobInput;
+import org.apache.oodt.cas.workflow.structs.WorkflowCondition;
+import org.apache.oodt.cas.workflow.structs.WorkflowConditionInstance;
+import org.apache.oodt.cas.workflow.structs.WorkflowInstance;
+import org.apache.oodt.cas.workflow.structs.WorkflowStatus;
+import org.apache.oodt.cas.workflow.structs.WorkflowTask;
+import org.apache.oodt.cas.workflow.structs.WorkflowTaskInstance;
+import org.apache.oodt.cas.workflow.structs.exceptions.InstanceRepositoryException;
+import org.apache.oodt.cas.workflow.util.GenericWorkflowObjectFactory;
+import org.apache.oodt.commons.util.DateConvert;
+
+//JDK imports
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link WorkflowInstance} run as a state machine by the
+ * {@link EventDrivenWorkflowEngine}. Unlike the
+ * {@link IterativeWorkflowProcessorThread}, it does not own a thread: each
+ * step (pick the next task, check its pre-conditions, execute it) is handed to
+ * a shared worker pool, and waits (unsatisfied pre-conditions, Resource
+ * Manager job completion) are timer events rather than sleeping threads. A
+ * paused instance simply has no step scheduled until it is resumed.
+ * 
+ * Like the {@link IterativeWorkflowProcessorThread}, this processor runs the
+ * tasks of a {@link Workflow} in sequence.
+ * 
+ * @version $Revision$
+ * 
+ */
+public class EventDrivenWorkflowProcessor implements WorkflowStatus,
+    CoreMetKeys {
+
+  /* the default queue name if we're using resmgr job submission */
+  private static final String DEFAULT_QUEUE_NAME = "high";
+
+  /* our log stream */
+  private static final Logger LOG = Logger
+      .getLogger(EventDrivenWorkflowProcessor.class.getName());
+
+  /* the workflow instance that this processor is processing */
+  private WorkflowInstance workflowInst = null;
+
+  /* the engine that owns this processor */
+  private EventDrivenWorkflowEngine engine = null;
+
+  /* runs the steps of this processor */
+  private Executor workers = null;
+
+  /* fires the timed events of this processor */
+  private ScheduledExecutorService timer = null;
+
+  /* our instance repository used to persist workflow instance info */
+  private WorkflowInstanceRepository instanceRepository = null;
+
+  /*
+   * our client to a resource manager: if null, local task execution will be
+   * performed
+   */
+  private XmlRpcResourceManagerClient rClient = null;
+
+  /* the parent workflow manager url */
+  private URL wmgrParentUrl = null;
+
+  /*
+   * the amount of seconds to wait inbetween checking for task pre-condition
+   * satisfaction
+   */
+  private long waitForConditionSatisfy = -1;
+
+  /* polling wait for res mgr */
+  private long pollingWaitTime = 10L;
+
+  /* the index of the next task to run */
+  private int nextTask = 0;
+
+  /* the task currently being run, or null between tasks */
+  private WorkflowTask currentTask = null;
+
+  /* whether the pre-conditions of the current task are out of the way */
+  private boolean conditionsPassed = false;
+
+  /* whether we are paused because of unsatisfied pre-conditions */
+  private boolean conditionWait = false;
+
+  /* whether a step is queued or running */
+  private boolean stepScheduled = false;
+
+  private boolean started = false;
+
+  private boolean running = true;
+
+  private boolean pause = false;
+
+  /* the currently executing jobId if we're using the resource manager */
+  private String currentJobId = null;
+
+  private Map<String, Map<String, WorkflowConditionInstance>> conditionCache = new HashMap<String, Map<String, WorkflowConditionInstance>>();
+
+  public EventDrivenWorkflowProcessor(WorkflowInstance wInst,
+      EventDrivenWorkflowEngine engine, Executor workers,
+      ScheduledExecutorService timer, WorkflowInstanceRepository instRep,
+      XmlRpcResourceManagerClient rClient, URL wParentUrl) {
+    this.workflowInst = wInst;
+    this.engine = engine;
+    this.workers = workers;
+    this.timer = timer;
+    this.instanceRepository = instRep;
+    this.rClient = rClient;
+    this.wmgrParentUrl = wParentUrl;
+
+    waitForConditionSatisfy = Long.getLong(
+        "org.apache.oodt.cas.workflow.engine.preConditionWaitTime", 10)
+        .longValue();
+
+    pollingWaitTime = Long.getLong(
+        "org.apache.oodt.cas.workflow.engine.resourcemgr.pollingWaitTime", 10)
+        .longValue();
+  }
+
+  /**
+   * Queues the first step of this workflow instance.
+   */
+  public synchronized void start() {
+    scheduleStep();
+  }
+
+  public synchronized void stop() {
+    running = false;
+    // if the resource manager is active
+    // then kill the current job there
+    if (this.rClient != null && this.currentJobId != null) {
+      if (!this.rClient.killJob(this.currentJobId)) {
+        LOG.log(Level.WARNING, "Attempt to kill " + "current resmgr job: ["
+            + this.currentJobId + "]: failed");
+      }
+    }
+
+    workflowInst.setStatus(FINISHED);
+    String isoEndDateTimeStr = DateConvert.isoFormat(new Date());
+    workflowInst.setEndDateTimeIsoStr(isoEndDateTimeStr);
+    persistWorkflowInstance();
+    engine.processorDone(workflowInst.getId());
+  }
+
+  public synchronized void pause() {
+    pause = true;
+    workflowInst.setStatus(PAUSED);
+    persistWorkflowInstance();
+  }
+
+  public synchronized void resume() {
+    pause = false;
+    workflowInst.setStatus(STARTED);
+    persistWorkflowInstance();
+    if (conditionWait) {
+      // resuming an instance held by its pre-conditions runs the task
+      // regardless, as the IterativeWorkflowProcessorThread does
+      conditionWait = false;
+      conditionsPassed = true;
+    }
+    scheduleStep();
+  }
+
+  public synchronized boolean isPaused() {
+    return pause;
+  }
+
+  public synchronized boolean isStopped() {
+    return !running;
+  }
+
+  public synchronized WorkflowInstance getWorkflowInstance() {
+    return workflowInst;
+  }
+
+  /**
+   * @return the waitForConditionSatisfy
+   */
+  public long getWaitforConditionSatisfy() {
+    return waitForConditionSatisfy;
+  }
+
+  /**
+   * @param waitforConditionSatisfy
+   *          The waitForConditionSatisfy to set.
+   */
+  public void setWaitforConditionSatisfy(long waitforConditionSatisfy) {
+    this.waitForConditionSatisfy = waitforConditionSatisfy;
+  }
+
+  /**
+   * @param pollingWaitTime
+   *          The seconds to wait between Resource Manager job status checks.
+   */
+  public void setPollingWaitTime(long pollingWaitTime) {
+    this.pollingWaitTime = pollingWaitTime;
+  }
+
+  private void scheduleStep() {
+    if (!running || stepScheduled) {
+      return;
+    }
+    stepScheduled = true;
+    workers.execute(new Runnable() {
+      public void run() {
+        step();
+      }
+    });
+  }
+
+  private void step() {
+    WorkflowTask task = null;
+    synchronized (this) {
+      stepScheduled = false;
+      if (!running || (pause && !conditionWait)) {
+        // stopped, or parked until resume()
+        return;
+      }
+
+      if (!started) {
+        started = true;
+        workflowInst.setStartDateTimeIsoStr(DateConvert.isoFormat(new Date()));
+        persistWorkflowInstance();
+      }
+
+      if (currentTask == null) {
+        List<WorkflowTask> tasks = workflowInst.getWorkflow().getTasks();
+        if (nextTask >= tasks.size()) {
+          LOG.log(Level.FINEST, "EventDrivenWorkflowProcessor: Completed workflow: "
+              + workflowInst.getWorkflow().getName());
+          stop();
+          return;
+        }
+        currentTask = tasks.get(nextTask++);
+        conditionsPassed = false;
+        workflowInst.setCurrentTaskId(currentTask.getTaskId());
+        persistWorkflowInstance();
+
+        // check to see if req met fields are present
+        // if they aren't, set the status to METERROR, and then fail
+        if (!checkTaskRequiredMetadata(currentTask,
+            workflowInst.getSharedContext())) {
+          workflowInst.setStatus(METADATA_MISSING);
+          persistWorkflowInstance();
+          running = false;
+          engine.processorDone(workflowInst.getId());
+          return;
+        }
+      }
+
+      task = currentTask;
+      if (!conditionsPassed && task.getConditions() != null) {
+        if (!satisfied(task.getConditions(), task.getTaskId())) {
+          if (!pause) {
+            pause();
+          }
+          conditionWait = true;
+          LOG.log(Level.FINEST, "Pre-conditions for task: "
+              + task.getTaskName() + " unsatisfied: waiting: "
+              + waitForConditionSatisfy + " seconds before checking again.");
+          timer.schedule(new Runnable() {
+            public void run() {
+              conditionCheckDue();
+            }
+          }, waitForConditionSatisfy, TimeUnit.SECONDS);
+          return;
+        }
+        conditionsPassed = true;
+        if (pause) {
+          conditionWait = false;
+          pause = false;
+          workflowInst.setStatus(STARTED);
+          persistWorkflowInstance();
+        }
+      }
+    }
+
+    executeTask(task);
+  }
+
+  private synchronized void conditionCheckDue() {
+    // if resume() got here first, the task has already been released
+    if (conditionWait) {
+      scheduleStep();
+    }
+  }
+
+  private void executeTask(WorkflowTask task) {
+    LOG.log(Level.FINEST, "EventDrivenWorkflowProcessor: Executing task: "
+        + task.getTaskName());
+
+    synchronized (this) {
+      Metadata context = workflowInst.getSharedContext();
+      context.replaceMetadata(TASK_ID, task.getTaskId());
+      context.replaceMetadata(WORKFLOW_INST_ID, workflowInst.getId());
+      context.replaceMetadata(JOB_ID, workflowInst.getId());
+      context.replaceMetadata(PROCESSING_NODE, getHostname());
+      context.replaceMetadata(WORKFLOW_MANAGER_URL,
+          this.wmgrParentUrl.toString());
+    }
+
+    if (rClient != null) {
+      submitTask(task);
+    } else {
+      executeTaskLocally(task);
+      taskDone();
+    }
+  }
+
+  private void executeTaskLocally(WorkflowTask task) {
+    WorkflowTaskInstance taskInstance = GenericWorkflowObjectFactory
+        .getTaskObjectFromClassName(task.getTaskInstanceClassName());
+
+    synchronized (this) {
+      workflowInst.setStatus(STARTED);
+      workflowInst.setCurrentTaskStartDateTimeIsoStr(DateConvert
+          .isoFormat(new Date()));
+      workflowInst.setCurrentTaskEndDateTimeIsoStr(null);
+      persistWorkflowInstance();
+    }
+
+    try {
+      LOG.log(Level.INFO, "Executing task: [" + task.getTaskName()
+          + "] locally");
+      taskInstance.run(workflowInst.getSharedContext(), task.getTaskConfig());
+    } catch (Exception e) {
+      e.printStackTrace();
+      LOG.log(Level.WARNING, "Exception executing task: ["
+          + task.getTaskName() + "] locally: Message: " + e.getMessage());
+    }
+
+    synchronized (this) {
+      workflowInst.setCurrentTaskEndDateTimeIsoStr(DateConvert
+          .isoFormat(new Date()));
+      persistWorkflowInstance();
+    }
+  }
+
+  private void submitTask(WorkflowTask task) {
+    Job taskJob = new Job();
+    taskJob.setName(task.getTaskId());
+    taskJob
+        .setJobInstanceClassName("org.apache.oodt.cas.workflow.structs.TaskJob");
+    taskJob
+        .setJobInputClassName("org.apache.oodt.cas.workflow.structs.TaskJobInput");
+    taskJob.setLoadValue(task.getTaskConfig().getProperty(TASK_LOAD) != null ? Integer
+        .parseInt(task.getTaskConfig().getProperty(TASK_LOAD)) : new Integer(2));
+    taskJob
+        .setQueueName(task.getTaskConfig().getProperty(QUEUE_NAME) != null ? task
+            .getTaskConfig().getProperty(QUEUE_NAME) : DEFAULT_QUEUE_NAME);
+
+    TaskJobInput in = new TaskJobInput();
+    in.setDynMetadata(workflowInst.getSharedContext());
+    in.setTaskConfig(task.getTaskConfig());
+    in.setWorkflowTaskInstanceClassName(task.getTaskInstanceClassName());
+
+    synchronized (this) {
+      workflowInst.setStatus(RESMGR_SUBMIT);
+      persistWorkflowInstance();
+    }
+
+    try {
+      // this is * NOT * a blocking operation: job completion is picked up
+      // by polling from the timer, without holding a worker
+      String jobId = rClient.submitJob(taskJob, in);
+      synchronized (this) {
+        currentJobId = jobId;
+        if (!running) {
+          return;
+        }
+      }
+      scheduleJobCheck();
+    } catch (JobExecutionException e) {
+      LOG.log(Level.WARNING,
+          "Job execution exception using resource manager to execute job: Message: "
+              + e.getMessage());
+      taskDone();
+    }
+  }
+
+  private void scheduleJobCheck() {
+    timer.schedule(new Runnable() {
+      public void run() {
+        // the check is a remote call, so make it from a worker
+        workers.execute(new Runnable() {
+          public void run() {
+            checkJob();
+          }
+        });
+      }
+    }, pollingWaitTime, TimeUnit.SECONDS);
+  }
+
+  private void checkJob() {
+    if (isStopped()) {
+      return;
+    }
+    if (!safeCheckJobComplete(currentJobId)) {
+      scheduleJobCheck();
+      return;
+    }
+
+    // the task update time was set remotely by the remote task, so read
+    // the updated instance back from the instance repository
+    synchronized (this) {
+      try {
+        workflowInst = instanceRepository.getWorkflowInstanceById(workflowInst
+            .getId());
+      } catch (InstanceRepositoryException e) {
+        LOG.log(Level.WARNING, "Unable to get " + "updated workflow "
+            + "instance record " + "when executing remote job: Message: "
+            + e.getMessage());
+      }
+      currentJobId = null;
+    }
+    taskDone();
+  }
+
+  private synchronized void taskDone() {
+    LOG.log(Level.FINEST, "EventDrivenWorkflowProcessor: Completed task: "
+        + (currentTask != null ? currentTask.getTaskName() : null));
+    currentTask = null;
+    conditionsPassed = false;
+    scheduleStep();
+  }
+
+  private boolean checkTaskRequiredMetadata(WorkflowTask task,
+      Metadata dynMetadata) {
+    if (task.getRequiredMetFields() == null
+        || task.getRequiredMetFields().size() == 0) {
+      LOG.log(Level.INFO, "Task: [" + task.getTaskName()
+          + "] has no required metadata fields");
+      return true; /* no required metadata, so we're fine */
+    }
+
+    for (Iterator i = task.getRequiredMetFields().iterator(); i.hasNext();) {
+      String reqField = (String) i.next();
+      if (!dynMetadata.containsKey(reqField)) {
+        LOG.log(Level.SEVERE, "Checking metadata key: [" + reqField
+            + "] for task: [" + task.getTaskName()
+            + "]: failed: aborting workflow");
+        return false;
+      }
+    }
+
+    LOG.log(Level.INFO, "All required metadata fields present for task: ["
+        + task.getTaskName() + "]");
+    return true;
+  }
+
+  private boolean satisfied(List conditionList, String taskId) {
+    Map<String, WorkflowConditionInstance> conditionMap = conditionCache
+        .get(taskId);
+    if (conditionMap == null) {
+      conditionMap = new HashMap<String, WorkflowConditionInstance>();
+      conditionCache.put(taskId, conditionMap);
+    }
+
+    for (Iterator i = conditionList.iterator(); i.hasNext();) {
+      WorkflowCondition c = (WorkflowCondition) i.next();
+      WorkflowConditionInstance cInst = conditionMap.get(c.getConditionId());
+      if (cInst == null) {
+        cInst = GenericWorkflowObjectFactory.getConditionObjectFromClassName(c
+            .getConditionInstanceClassName());
+        conditionMap.put(c.getConditionId(), cInst);
+      }
+
+      if (!cInst.evaluate(workflowInst.getSharedContext(), c.getTaskConfig())) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private String getHostname() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      return null;
+    }
+  }
+
+  private void persistWorkflowInstance() {
+    try {
+      instanceRepository.updateWorkflowInstance(workflowInst);
+    } catch (InstanceRepositoryException e) {
+      LOG.log(Level.WARNING, "Exception persisting workflow instance: ["
+          + workflowInst.getId() + "]: Message: " + e.getMessage());
+    }
+  }
+
+  private boolean safeCheckJobComplete(String jobId) {
+    try {
+      return rClient.isJobComplete(jobId);
+    } catch (Exception e) {
+      LOG.log(Level.WARNING, "Exception checking completion status for job: ["
+          + jobId + "]: Messsage: " + e.getMessage());
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.workflow.engine;
+
+//JDK imports
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * A fixed size, thread-safe histogram of latencies in milliseconds. Bucket
+ * <code>i</code> counts samples in <code>[2^(i-1), 2^i)</code> ms, so
+ * recording is a couple of atomic increments and percentiles are reported as
+ * the upper bound of the bucket they fall in.
+ *
+ * @version $Revision$
+ *
+ */
+public class LatencyHistogram {
+
+  /* the last bucket holds everything at or above 2^(NUM_BUCKETS-2) ms */
+  private static final int NUM_BUCKETS = 32;
+
+  private final String name;
+
+  private final AtomicLongArray buckets;
+
+  private final AtomicLong count;
+
+  private final AtomicLong max;
+
+  public LatencyHistogram(String name) {
+    this.name = name;
+    this.buckets = new AtomicLongArray(NUM_BUCKETS);
+    this.count = new AtomicLong();
+    this.max = new AtomicLong();
+  }
+
+  /**
+   * Records a single sample. Negative samples (clock skew) count as zero.
+   *
+   * @param millis
+   *          The latency to record, in milliseconds.
+   */
+  public void record(long millis) {
+    long sample = Math.max(0L, millis);
+    int bucket = Math.min(NUM_BUCKETS - 1,
+        64 - Long.numberOfLeadingZeros(sample));
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    long currMax = max.get();
+    while (sample > currMax && !max.compareAndSet(currMax, sample)) {
+      currMax = max.get();
+    }
+  }
+
+  /**
+   * @return The number of samples recorded.
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return The largest sample recorded, in milliseconds.
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @param percentile
+   *          A percentile between 0 and 100.
+   * @return An upper bound, in milliseconds, on the given percentile of the
+   *         recorded samples, or 0 if nothing has been recorded.
+   */
+  public long getPercentile(double percentile) {
+    long total = count.get();
+    if (total == 0) {
+      return 0L;
+    }
+    long rank = (long) Math.ceil(total * (percentile / 100.0));
+    long seen = 0L;
+    for (int i = 0; i < NUM_BUCKETS - 1; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        return Math.min(i == 0 ? 0L : 1L << i, max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Clears all recorded samples.
+   */
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      buckets.set(i, 0L);
+    }
+    count.set(0L);
+    max.set(0L);
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return name + ": count=" + getCount() + " p50<=" + getPercentile(50)
+        + "ms p90<=" + getPercentile(90) + "ms p99<=" + getPercentile(99)
+        + "ms max=" + getMax() + "ms";
+  }
+
+}
@@ -55,6 +55,8 @@ public class PrioritizedQueueBasedWorkflowEngine implements WorkflowEngine {
       .getLogger(PrioritizedQueueBasedWorkflowEngine.class.getName());
   private final Thread queuerThread;
   private final Thread runnerThread;
+  private final TaskQuerier querier;
+  private final TaskRunner taskRunner;
   private final WorkflowInstanceRepository repo;
   private final WorkflowRepository modelRepo;
   private final WorkflowLifecycleManager lifecycle;
@@ -76,13 +78,14 @@ public class PrioritizedQueueBasedWorkflowEngine implements WorkflowEngine {
     this.runner.setInstanceRepository(repo);
 
     // Task QUEUER thread
-    TaskQuerier querier = new TaskQuerier(processorQueue, this.prioritizer,
+    querier = new TaskQuerier(processorQueue, this.prioritizer,
         this.repo, querierWaitSeconds);
     queuerThread = new Thread(querier);
     queuerThread.start();
 
     // Task Runner thread
-    runnerThread = new Thread(new TaskRunner(querier, runner));
+    taskRunner = new TaskRunner(querier, runner);
+    runnerThread = new Thread(taskRunner);
     runnerThread.start();
 
   }
@@ -122,9 +125,27 @@ public class PrioritizedQueueBasedWorkflowEngine implements WorkflowEngine {
         "Workflow created by Engine.");
     inst.setState(state);
     persist(inst);
+    // wake the querier up rather than leaving the instance for its next pass
+    processorQueue.signalChange();
     return inst;
   }
 
+  /**
+   * @return The time between tasks becoming ready to run and being queued
+   *         for a runner, in milliseconds.
+   */
+  public LatencyHistogram getQueueLatency() {
+    return querier.getQueueLatency();
+  }
+
+  /**
+   * @return The time between tasks being queued for a runner and being
+   *         handed to it, in milliseconds.
+   */
+  public LatencyHistogram getDispatchLatency() {
+    return taskRunner.getDispatchLatency();
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -18,6 +18,7 @@
 package org.apache.oodt.cas.workflow.engine;
 
 //JDK imports
+import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
 import java.util.logging.Level;
@@ -42,6 +43,13 @@ import org.apache.oodt.cas.workflow.structs.exceptions.InstanceRepositoryExcepti
  * their state to Executing (running Category), so they will be picked up on the
  * next WorkflowState change, and end up executing.
  * 
+ * Rather than sleeping between passes, the querier blocks on the
+ * {@link WorkflowProcessorQueue} until a processor is persisted or changes
+ * state, and wakes any {@link TaskRunner} blocked in
+ * {@link #awaitRunnable(long)} as soon as it queues new work. The wait seconds
+ * only bound how long changes the queue is not told about (e.g., made directly
+ * to the instance repository) go unnoticed.
+ * 
  * @author mattmann
  * @author bfoster
  * @version $Revision$
@@ -53,7 +61,7 @@ public class TaskQuerier implements Runnable {
 
   private WorkflowProcessorQueue processorQueue;
 
-  private List<WorkflowProcessor> runnableProcessors;
+  private final List<WorkflowProcessor> runnableProcessors;
 
   private PrioritySorter prioritizer;
 
@@ -61,6 +69,8 @@ public class TaskQuerier implements Runnable {
   
   private long waitSeconds;
 
+  private final LatencyHistogram queueLatency;
+
   private static final Logger LOG = Logger.getLogger(TaskQuerier.class
       .getName());
 
@@ -89,6 +99,7 @@ public class TaskQuerier implements Runnable {
     this.prioritizer = prioritizer;
     this.repo = repo;
     this.waitSeconds = waitSeconds;
+    this.queueLatency = new LatencyHistogram("TaskQuerier ready-to-queued");
   }
 
   /**
@@ -105,8 +116,12 @@ public class TaskQuerier implements Runnable {
   public void run() {
     LOG.log(Level.FINE, "TaskQuerier configured with wait seconds: ["+this.waitSeconds+"]");
     while (running) {
+      long lastChange = processorQueue.getChangeCount();
       List<WorkflowProcessor> processors = processorQueue.getProcessors();
       List<WorkflowProcessor> processorsToRun = new Vector<WorkflowProcessor>();
+      if (processors == null) {
+        processors = new Vector<WorkflowProcessor>();
+      }
 
       for (WorkflowProcessor processor : processors) {
         // OK now get its lifecycle
@@ -123,6 +138,11 @@ public class TaskQuerier implements Runnable {
             && !processor.isAnyState("Executing")
             && processor.getRunnableWorkflowProcessors().size() > 0) {
           for (TaskProcessor tp : processor.getRunnableWorkflowProcessors()) {
+            WorkflowState readyState = tp.getWorkflowInstance().getState();
+            if (readyState != null && readyState.getStartTime() != null) {
+              queueLatency.record(System.currentTimeMillis()
+                  - readyState.getStartTime().getTime());
+            }
             WorkflowState state = lifecycle.createState("WaitingOnResources",
                 "waiting", "Added to Runnable queue");
             tp.getWorkflowInstance().setState(state);
@@ -132,15 +152,6 @@ public class TaskQuerier implements Runnable {
             processorsToRun.add(tp);
           }
 
-          if (processorsToRun != null && processorsToRun.size() > 1) {
-            prioritizer.sort(processorsToRun);
-          }
-
-          synchronized (runnableProcessors) {
-            if (running)
-              runnableProcessors = processorsToRun;
-          }
-
         } else {
           // simply call nextState and persist it
           LOG.log(Level.FINE, "Processor for workflow instance: ["
@@ -151,13 +162,39 @@ public class TaskQuerier implements Runnable {
           persist(processor.getWorkflowInstance());
         }
       }
-      
-      try{
-        Thread.currentThread().sleep(waitSeconds*1000);
+
+      // add to, rather than replace, the runnable list: tasks the runners
+      // have not taken yet are already WaitingOnResources and would not be
+      // handed out by their processors again. Tasks that left that state
+      // since, e.g., by being paused or stopped, must not be run though.
+      synchronized (runnableProcessors) {
+        for (Iterator<WorkflowProcessor> i = runnableProcessors.iterator(); i
+            .hasNext();) {
+          WorkflowProcessor tp = i.next();
+          if (!tp.isAnyState("WaitingOnResources")) {
+            LOG.log(Level.FINE, "Removing processor for workflow instance: ["
+                + tp.getWorkflowInstance().getId() + "] in state: ["
+                + tp.getWorkflowInstance().getState().getName()
+                + "] from the runnable list");
+            i.remove();
+          }
+        }
+        if (running && processorsToRun.size() > 0) {
+          for (WorkflowProcessor tp : processorsToRun) {
+            if (!runnableProcessors.contains(tp)) {
+              runnableProcessors.add(tp);
+            }
+          }
+          if (runnableProcessors.size() > 1) {
+            prioritizer.sort(runnableProcessors);
+          }
+          runnableProcessors.notifyAll();
+        }
       }
-      catch(InterruptedException ignore){}
-      
+
+      processorQueue.awaitChange(lastChange, waitSeconds * 1000);
     }
+    LOG.log(Level.FINE, queueLatency.toString());
   }
 
   /**
@@ -173,6 +210,13 @@ public class TaskQuerier implements Runnable {
    */
   public void setRunning(boolean running) {
     this.running = running;
+    if (!running) {
+      // release the querier and any runners blocked waiting on us
+      processorQueue.signalChange();
+      synchronized (runnableProcessors) {
+        runnableProcessors.notifyAll();
+      }
+    }
   }
 
   /**
@@ -191,9 +235,63 @@ public class TaskQuerier implements Runnable {
    *         {@link #runnableProcessors}.
    */
   public TaskProcessor getNext() {
-    if (getRunnableProcessors().size() == 0)
-      return null;
-    return (TaskProcessor) getRunnableProcessors().remove(0);
+    synchronized (runnableProcessors) {
+      if (runnableProcessors.size() == 0)
+        return null;
+      return (TaskProcessor) runnableProcessors.remove(0);
+    }
+  }
+
+  /**
+   * Blocks until the {@link #runnableProcessors} list is non-empty, this
+   * querier is stopped, or the timeout elapses.
+   * 
+   * @param timeoutMillis
+   *          The longest time to wait, in milliseconds.
+   * @return True if there is a {@link TaskProcessor} available from
+   *         {@link #getNext()}.
+   */
+  public boolean awaitRunnable(long timeoutMillis) {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized (runnableProcessors) {
+      long remaining = timeoutMillis;
+      while (running && runnableProcessors.size() == 0 && remaining > 0) {
+        try {
+          runnableProcessors.wait(remaining);
+        } catch (InterruptedException ignore) {
+          break;
+        }
+        remaining = deadline - System.currentTimeMillis();
+      }
+      return runnableProcessors.size() > 0;
+    }
+  }
+
+  /**
+   * Puts a {@link TaskProcessor} taken with {@link #getNext()} back at its
+   * priority position, e.g., when no runner slot was free for it.
+   * 
+   * @param taskProcessor
+   *          The {@link TaskProcessor} to requeue.
+   */
+  public void requeue(TaskProcessor taskProcessor) {
+    synchronized (runnableProcessors) {
+      if (!runnableProcessors.contains(taskProcessor)) {
+        runnableProcessors.add(taskProcessor);
+        if (runnableProcessors.size() > 1) {
+          prioritizer.sort(runnableProcessors);
+        }
+      }
+      runnableProcessors.notifyAll();
+    }
+  }
+
+  /**
+   * @return The time between a task becoming ready to run and it being added
+   *         to the runnable list, in milliseconds.
+   */
+  public LatencyHistogram getQueueLatency() {
+    return queueLatency;
   }
 
   private synchronized void persist(WorkflowInstance instance) {
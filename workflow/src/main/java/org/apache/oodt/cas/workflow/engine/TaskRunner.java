@@ -24,6 +24,7 @@ import java.util.logging.Logger;
 //OODT imports
 import org.apache.oodt.cas.workflow.engine.processor.TaskProcessor;
 import org.apache.oodt.cas.workflow.engine.runner.EngineRunner;
+import org.apache.oodt.cas.workflow.lifecycle.WorkflowState;
 import org.apache.oodt.cas.workflow.structs.ParentChildWorkflow;
 import org.apache.oodt.cas.workflow.structs.WorkflowInstance;
 import org.apache.oodt.cas.workflow.structs.WorkflowTask;
@@ -46,6 +47,11 @@ import org.apache.oodt.cas.workflow.structs.WorkflowTask;
  * {@link #waitSeconds} seconds, wakes up to see if it's unpaused, and then goes
  * back to sleep if not, otherwise, resumes executing if it was unpaused.
  * 
+ * While there is nothing to run the thread blocks in
+ * {@link TaskQuerier#awaitRunnable(long)} instead of spinning on
+ * {@link TaskQuerier#getNext()}. A task that finds no open slot is handed back
+ * to the querier and retried after a short backoff, rather than being dropped.
+ * 
  * @since Apache OODT 0.5
  * 
  * @author mattmann
@@ -62,6 +68,15 @@ public class TaskRunner implements Runnable {
 
   private final EngineRunner runner;
 
+  private final LatencyHistogram dispatchLatency;
+
+  /* how long to block waiting on the querier before rechecking running */
+  private static final long AWAIT_MILLIS = 1000L;
+
+  private static final long MIN_BACKOFF_MILLIS = 10L;
+
+  private static final long MAX_BACKOFF_MILLIS = 1000L;
+
   private static final Logger LOG = Logger
       .getLogger(TaskRunner.class.getName());
 
@@ -69,6 +84,7 @@ public class TaskRunner implements Runnable {
     this.running = true;
     this.taskQuerier = taskQuerier;
     this.runner = runner;
+    this.dispatchLatency = new LatencyHistogram("TaskRunner queued-to-executing");
   }
 
   /*
@@ -79,13 +95,31 @@ public class TaskRunner implements Runnable {
   @Override
   public void run() {
     TaskProcessor nextTaskProcessor = null;
+    long backoffMillis = MIN_BACKOFF_MILLIS;
 
     while (running) {
+      if (!taskQuerier.awaitRunnable(AWAIT_MILLIS)) {
+        continue;
+      }
       nextTaskProcessor = taskQuerier.getNext();
+      if (nextTaskProcessor == null) {
+        continue;
+      }
 
       try {
-        if (nextTaskProcessor != null && runner.hasOpenSlots(nextTaskProcessor)) {
+        if (runner.hasOpenSlots(nextTaskProcessor)) {
+          recordDispatch(nextTaskProcessor);
           runner.execute(nextTaskProcessor);
+          backoffMillis = MIN_BACKOFF_MILLIS;
+        } else {
+          // the runner can't tell us when a slot frees up, so back off
+          taskQuerier.requeue(nextTaskProcessor);
+          nextTaskProcessor = null;
+          try {
+            Thread.sleep(backoffMillis);
+          } catch (InterruptedException ignore) {
+          }
+          backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
         }
       } catch (Exception e) {
         e.printStackTrace();
@@ -98,7 +132,7 @@ public class TaskRunner implements Runnable {
         }
       }
     }
-
+    LOG.log(Level.FINE, dispatchLatency.toString());
   }
 
   /**
@@ -116,6 +150,14 @@ public class TaskRunner implements Runnable {
     this.running = running;
   }
 
+  /**
+   * @return The time between a task being added to the runnable list and it
+   *         being handed to the {@link EngineRunner}, in milliseconds.
+   */
+  public LatencyHistogram getDispatchLatency() {
+    return dispatchLatency;
+  }
+
   protected WorkflowTask extractTaskFromProcessor(TaskProcessor taskProcessor) {
     WorkflowInstance inst = taskProcessor.getWorkflowInstance();
     ParentChildWorkflow workflow = inst.getParentChildWorkflow();
@@ -129,6 +171,14 @@ public class TaskRunner implements Runnable {
     return null;
   }
 
+  private void recordDispatch(TaskProcessor taskProcessor) {
+    WorkflowState state = taskProcessor.getWorkflowInstance().getState();
+    if (state != null && state.getStartTime() != null) {
+      dispatchLatency.record(System.currentTimeMillis()
+          - state.getStartTime().getTime());
+    }
+  }
+
   private void flagProcessorAsFailed(TaskProcessor nextTaskProcessor, String msg) {
     nextTaskProcessor.getWorkflowInstance().setState(nextTaskProcessor
         .getLifecycleManager()
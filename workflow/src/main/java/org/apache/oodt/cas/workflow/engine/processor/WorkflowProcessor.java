@@ -309,6 +309,7 @@ public abstract class WorkflowProcessor implements WorkflowProcessorListener,
 
       if (nextState != null) {
         this.workflowInstance.setState(nextState);
+        this.notifyChange(this, ChangeType.STATE);
       }
 
     } else {
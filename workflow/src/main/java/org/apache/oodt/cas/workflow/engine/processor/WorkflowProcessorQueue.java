@@ -26,6 +26,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 //OODT imports
+import org.apache.oodt.cas.workflow.engine.ChangeType;
 import org.apache.oodt.cas.workflow.engine.TaskQuerier;
 import org.apache.oodt.cas.workflow.instrepo.WorkflowInstanceRepository;
 import org.apache.oodt.cas.workflow.lifecycle.WorkflowLifecycle;
@@ -54,7 +55,7 @@ import org.apache.oodt.cas.workflow.structs.exceptions.RepositoryException;
  * @version $Revision$
  * 
  */
-public class WorkflowProcessorQueue {
+public class WorkflowProcessorQueue implements WorkflowProcessorListener {
 
   private static final Logger LOG = Logger
       .getLogger(WorkflowProcessorQueue.class.getName());
@@ -67,12 +68,80 @@ public class WorkflowProcessorQueue {
 
   private Map<String, WorkflowProcessor> processorCache;
 
+  /* bumped on every change that may make a processor runnable */
+  private long changeCount;
+
+  private final Object changeLock = new Object();
+
   public WorkflowProcessorQueue(WorkflowInstanceRepository repo,
       WorkflowLifecycleManager lifecycle, WorkflowRepository modelRepo) {
     this.repo = repo;
     this.lifecycle = lifecycle;
     this.modelRepo = modelRepo;
     this.processorCache = new HashMap<String, WorkflowProcessor>();
+    this.changeCount = 0L;
+  }
+
+  /**
+   * Wakes up anyone blocked in {@link #awaitChange(long, long)}. Called
+   * whenever a workflow instance is persisted or a queued processor changes
+   * state.
+   */
+  public void signalChange() {
+    synchronized (changeLock) {
+      changeCount++;
+      changeLock.notifyAll();
+    }
+  }
+
+  /**
+   * @return The current change count, to be handed to
+   *         {@link #awaitChange(long, long)} before scanning the queue.
+   */
+  public long getChangeCount() {
+    synchronized (changeLock) {
+      return changeCount;
+    }
+  }
+
+  /**
+   * Blocks until a change newer than <code>lastSeen</code> has been signalled
+   * or the timeout elapses. Returns straight away if a change already
+   * happened, so nothing signalled during a scan of the queue is missed.
+   *
+   * @param lastSeen
+   *          The change count obtained from {@link #getChangeCount()}.
+   * @param timeoutMillis
+   *          The longest time to wait, in milliseconds.
+   * @return The current change count.
+   */
+  public long awaitChange(long lastSeen, long timeoutMillis) {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized (changeLock) {
+      long remaining = timeoutMillis;
+      while (changeCount == lastSeen && remaining > 0) {
+        try {
+          changeLock.wait(remaining);
+        } catch (InterruptedException ignore) {
+          break;
+        }
+        remaining = deadline - System.currentTimeMillis();
+      }
+      return changeCount;
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see
+   * org.apache.oodt.cas.workflow.engine.processor.WorkflowProcessorListener
+   * #notifyChange(org.apache.oodt.cas.workflow.engine.processor.
+   * WorkflowProcessor, org.apache.oodt.cas.workflow.engine.ChangeType)
+   */
+  @Override
+  public void notifyChange(WorkflowProcessor processor, ChangeType changeType) {
+    signalChange();
   }
 
   /**
@@ -133,6 +202,7 @@ public class WorkflowProcessorQueue {
               + "] with status: [" + inst.getState().getName() + "]: Message: "
               + e.getMessage());
     }
+    signalChange();
   }  
 
   private WorkflowProcessor fromWorkflowInstance(WorkflowInstance inst)
@@ -359,6 +429,11 @@ public class WorkflowProcessorQueue {
         persist(inst);
       }
 
+      if (processor != null) {
+        // state changes made outside of the querier (e.g., by the runner)
+        // should wake it up
+        processor.getListeners().add(this);
+      }
       synchronized (processorCache) {
         processorCache.put(inst.getId(), processor);
       }
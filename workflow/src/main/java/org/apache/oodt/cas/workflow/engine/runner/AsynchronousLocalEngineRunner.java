@@ -27,6 +27,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 //OODT imports
+import org.apache.oodt.cas.workflow.engine.ChangeType;
 import org.apache.oodt.cas.workflow.engine.processor.TaskProcessor;
 import org.apache.oodt.cas.workflow.instrepo.WorkflowInstanceRepository;
 import org.apache.oodt.cas.workflow.lifecycle.WorkflowLifecycle;
@@ -89,6 +90,7 @@ public class AsynchronousLocalEngineRunner extends AbstractEngineRunnerBase {
           WorkflowState state = lifecycle.createState("ExecutionComplete", "transition", msg);
           taskProcessor.getWorkflowInstance().setState(state);
           persist(taskProcessor.getWorkflowInstance());
+          taskProcessor.notifyChange(taskProcessor, ChangeType.STATE);
         } catch (Exception e) {
           e.printStackTrace();
           String msg = "Exception executing task: ["
@@ -97,6 +99,7 @@ public class AsynchronousLocalEngineRunner extends AbstractEngineRunnerBase {
           WorkflowState state = lifecycle.createState("Failure", "done", msg);
           taskProcessor.getWorkflowInstance().setState(state);
           persist(taskProcessor.getWorkflowInstance());
+          taskProcessor.notifyChange(taskProcessor, ChangeType.STATE);
         }
 
       }
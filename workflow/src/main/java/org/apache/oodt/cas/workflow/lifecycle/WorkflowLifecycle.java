@@ -24,6 +24,7 @@ import org.apache.oodt.cas.workflow.structs.WorkflowStatus; //javadoc
 
 //JDK imports
 import java.util.Comparator;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.SortedSet;
@@ -256,6 +257,7 @@ public class WorkflowLifecycle {
     state.setName(name);
     state.setCategory(getCategoryByName(category));
     state.setMessage(message);
+    state.setStartTime(new Date());
     return state;
   }
 
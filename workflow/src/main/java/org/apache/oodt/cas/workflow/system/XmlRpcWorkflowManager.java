@@ -38,8 +38,15 @@ import org.apache.oodt.cas.workflow.structs.exceptions.EngineException;
 import org.apache.oodt.cas.workflow.structs.exceptions.InstanceRepositoryException;
 import org.apache.oodt.cas.workflow.structs.exceptions.RepositoryException;
 import org.apache.oodt.cas.metadata.Metadata;
+import org.apache.oodt.cas.metadata.util.BinaryMetadataCodec;
+import org.apache.oodt.commons.rpc.BinaryCodec;
+import org.apache.oodt.commons.rpc.BinaryRpcException;
+import org.apache.oodt.commons.rpc.BinaryRpcHandler;
+import org.apache.oodt.commons.rpc.BinaryRpcServer;
 
 //JDK imports
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -78,6 +85,7 @@ public class XmlRpcWorkflowManager {
 
    private final int webServerPort;
    private WebServer webServer;
+   private BinaryRpcServer binaryRpcServer;
    private final WorkflowEngine engine;
    private final WorkflowRepository repo;
 
@@ -99,11 +107,40 @@ public class XmlRpcWorkflowManager {
       webServer.addHandler(XML_RPC_HANDLER_NAME, this);
       webServer.start();
 
+      // 0 picks a free port, which clients learn from getBinaryRpcPort()
+      int binaryPort = Integer.getInteger(
+            "org.apache.oodt.cas.workflow.binary.port", -1);
+      if (binaryPort >= 0) {
+         binaryRpcServer = new BinaryRpcServer(binaryPort, Integer.getInteger(
+               "org.apache.oodt.cas.workflow.binary.idleTimeout.millis",
+               60000));
+         binaryRpcServer.addHandler(XML_RPC_HANDLER_NAME, new BinaryHandler());
+         try {
+            binaryRpcServer.start();
+         } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to start binary RPC server on port: ["
+                  + binaryPort + "]: Message: " + e.getMessage());
+            binaryRpcServer = null;
+         }
+      }
+
       LOG.log(Level.INFO, "Workflow Manager started by "
             + System.getProperty("user.name", "unknown"));
    }
 
+   /**
+    * @return The port this Workflow Manager serves binary RPC calls on, or -1
+    *         if it doesn't serve them.
+    */
+   public int getBinaryRpcPort() {
+      return binaryRpcServer != null ? binaryRpcServer.getPort() : -1;
+   }
+
    public boolean shutdown() {
+      if (binaryRpcServer != null) {
+         binaryRpcServer.shutdown();
+         binaryRpcServer = null;
+      }
       if (webServer != null) {
          webServer.shutdown();
          webServer = null;
@@ -715,4 +752,33 @@ public class XmlRpcWorkflowManager {
         }
     }
 
+    /*
+     * Serves the binary RPC forms of the metadata heavy calls tasks make.
+     */
+    private class BinaryHandler implements BinaryRpcHandler {
+
+        public void execute(String method, DataInputStream args,
+                DataOutputStream result) throws Exception {
+            if (method.equals("getWorkflowInstanceMetadata")) {
+                BinaryMetadataCodec.writeMetadata(result, engine
+                        .getWorkflowInstanceMetadata(BinaryCodec
+                                .readString(args)));
+            } else if (method.equals("updateMetadataForWorkflow")) {
+                String workflowInstId = BinaryCodec.readString(args);
+                Metadata met = BinaryMetadataCodec.readMetadata(args);
+                synchronized (XmlRpcWorkflowManager.this) {
+                    result.writeBoolean(engine.updateMetadata(workflowInstId,
+                            met));
+                }
+            } else if (method.equals("updateWorkflowInstanceStatus")) {
+                String workflowInstId = BinaryCodec.readString(args);
+                result.writeBoolean(updateWorkflowInstanceStatus(
+                        workflowInstId, BinaryCodec.readString(args)));
+            } else {
+                throw new BinaryRpcException("Unknown method: [" + method
+                        + "]");
+            }
+        }
+    }
+
 }
@@ -28,10 +28,19 @@ import java.util.Hashtable;
 import java.util.Vector;
 import java.util.List;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.io.DataInputStream;
 import java.io.IOException;
 
 //OODT imports
+import org.apache.oodt.commons.rpc.BinaryCodec;
+import org.apache.oodt.commons.rpc.BinaryRpcClient;
+import org.apache.oodt.commons.rpc.BinaryRpcException;
+import org.apache.oodt.commons.rpc.BinaryRpcRequest;
+import org.apache.oodt.commons.xmlrpc.PooledXmlRpcTransportFactory;
 import org.apache.oodt.cas.workflow.structs.WorkflowInstancePage;
 import org.apache.oodt.cas.workflow.structs.WorkflowTask;
 import org.apache.oodt.cas.workflow.structs.WorkflowCondition;
@@ -40,6 +49,7 @@ import org.apache.oodt.cas.workflow.structs.Workflow;
 import org.apache.oodt.cas.workflow.util.XmlRpcStructFactory;
 import org.apache.oodt.cas.cli.CmdLineUtility;
 import org.apache.oodt.cas.metadata.Metadata;
+import org.apache.oodt.cas.metadata.util.BinaryMetadataCodec;
 
 /**
  * @author mattmann
@@ -49,12 +59,25 @@ import org.apache.oodt.cas.metadata.Metadata;
  * The XML RPC based workflow manager client.
  * </p>
  * 
+ * <p>
+ * If the Workflow Manager also serves binary RPC calls (see
+ * {@link XmlRpcWorkflowManager#getBinaryRpcPort()}), instance metadata and
+ * status calls are made with them instead, falling back to XML-RPC if the
+ * binary server can't be reached.
+ * </p>
+ * 
  */
 public class XmlRpcWorkflowManagerClient {
 
     /* our xml rpc client */
     private XmlRpcClient client = null;
 
+    /* our binary rpc client, if the workflow manager serves binary calls */
+    private BinaryRpcClient binaryClient = null;
+
+    /* whether we've asked the workflow manager if it serves binary calls */
+    private boolean binaryNegotiated = false;
+
     /* our log stream */
     private static Logger LOG = Logger
             .getLogger(XmlRpcWorkflowManagerClient.class.getName());
@@ -72,7 +95,7 @@ public class XmlRpcWorkflowManagerClient {
      *            The url pointer to the xml rpc workflow manager service.
      */
     public XmlRpcWorkflowManagerClient(URL url) {
-        client = new XmlRpcClient(url);
+        client = createClient(url);
         workflowManagerUrl = url;
     }
     
@@ -256,6 +279,21 @@ public class XmlRpcWorkflowManagerClient {
     }
 
     public Metadata getWorkflowInstanceMetadata(String wInstId) throws Exception {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "workflowmgr.getWorkflowInstanceMetadata");
+                BinaryCodec.writeString(request, wInstId);
+                DataInputStream result = binaryClient.execute(request);
+                return BinaryMetadataCodec.readMetadata(result);
+            } catch (BinaryRpcException e) {
+                throw new Exception(e.getMessage());
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
         Vector argList = new Vector();
         argList.add(wInstId);
         Metadata met = null;
@@ -400,6 +438,22 @@ public class XmlRpcWorkflowManagerClient {
 
     public synchronized boolean updateWorkflowInstanceStatus(
             String workflowInstId, String status) throws Exception {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "workflowmgr.updateWorkflowInstanceStatus");
+                BinaryCodec.writeString(request, workflowInstId);
+                BinaryCodec.writeString(request, status);
+                DataInputStream result = binaryClient.execute(request);
+                return result.readBoolean();
+            } catch (BinaryRpcException e) {
+                throw new Exception(e.getMessage());
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
         Vector argList = new Vector();
         argList.add(workflowInstId);
         argList.add(status);
@@ -417,6 +471,27 @@ public class XmlRpcWorkflowManagerClient {
 
     }
 
+    /**
+     * Like {@link #updateWorkflowInstanceStatus(String, String)}, but doesn't
+     * wait for the update to be made. Updates made this way may reach the
+     * Workflow Manager in any order.
+     * 
+     * @param workflowInstId
+     *            The id of the workflow instance.
+     * @param status
+     *            The instance's new status.
+     * @return Whether the status was updated, once it has been.
+     */
+    public Future<Boolean> updateWorkflowInstanceStatusAsync(
+            final String workflowInstId, final String status) {
+        return PooledXmlRpcTransportFactory.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(updateWorkflowInstanceStatus(
+                        workflowInstId, status));
+            }
+        });
+    }
+
     public synchronized boolean updateWorkflowInstance(WorkflowInstance instance)
             throws Exception {
         Vector argList = new Vector();
@@ -436,6 +511,22 @@ public class XmlRpcWorkflowManagerClient {
 
     public synchronized boolean updateMetadataForWorkflow(
             String workflowInstId, Metadata metadata) throws Exception {
+        BinaryRpcClient binaryClient = this.getBinaryClient();
+        if (binaryClient != null) {
+            try {
+                BinaryRpcRequest request = new BinaryRpcRequest(
+                        "workflowmgr.updateMetadataForWorkflow");
+                BinaryCodec.writeString(request, workflowInstId);
+                BinaryMetadataCodec.writeMetadata(request, metadata);
+                DataInputStream result = binaryClient.execute(request);
+                return result.readBoolean();
+            } catch (BinaryRpcException e) {
+                throw new Exception(e.getMessage());
+            } catch (IOException e) {
+                this.binaryFailed(e);
+            }
+        }
+
         Vector argList = new Vector();
         argList.add(workflowInstId);
         argList.add(metadata.getHashtable());
@@ -453,6 +544,27 @@ public class XmlRpcWorkflowManagerClient {
 
     }
 
+    /**
+     * Like {@link #updateMetadataForWorkflow(String, Metadata)}, but doesn't
+     * wait for the update to be made. Updates made this way may reach the
+     * Workflow Manager in any order.
+     * 
+     * @param workflowInstId
+     *            The id of the workflow instance.
+     * @param metadata
+     *            The instance's new metadata.
+     * @return Whether the metadata was updated, once it has been.
+     */
+    public Future<Boolean> updateMetadataForWorkflowAsync(
+            final String workflowInstId, final Metadata metadata) {
+        return PooledXmlRpcTransportFactory.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(updateMetadataForWorkflow(
+                        workflowInstId, metadata));
+            }
+        });
+    }
+
     public boolean sendEvent(String eventName, Metadata metadata)
             throws Exception {
         Vector argList = new Vector();
@@ -471,6 +583,25 @@ public class XmlRpcWorkflowManagerClient {
         }
     }
 
+    /**
+     * Like {@link #sendEvent(String, Metadata)}, but doesn't wait for the
+     * event to be handled.
+     * 
+     * @param eventName
+     *            The name of the event.
+     * @param metadata
+     *            The event's metadata.
+     * @return Whether the event was handled, once it has been.
+     */
+    public Future<Boolean> sendEventAsync(final String eventName,
+            final Metadata metadata) {
+        return PooledXmlRpcTransportFactory.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(sendEvent(eventName, metadata));
+            }
+        });
+    }
+
     public WorkflowTask getTaskById(String taskId) throws Exception {
         Vector argList = new Vector();
         argList.add(taskId);
@@ -693,7 +824,60 @@ public class XmlRpcWorkflowManagerClient {
         this.workflowManagerUrl = workflowManagerUrl;
 
         // reset the client
-        client = new XmlRpcClient(workflowManagerUrl);
+        client = createClient(workflowManagerUrl);
+        synchronized (this) {
+            if (binaryClient != null) {
+                binaryClient.close();
+            }
+            binaryClient = null;
+            binaryNegotiated = false;
+        }
+    }
+
+    /*
+     * Asks the workflow manager, the first time it's needed, whether it
+     * serves binary calls.
+     */
+    private synchronized BinaryRpcClient getBinaryClient() {
+        if (!binaryNegotiated) {
+            binaryClient = BinaryRpcClient.negotiate(client,
+                    workflowManagerUrl.getHost(), "workflowmgr", Integer
+                            .getInteger(
+                                    "org.apache.oodt.cas.workflow.system.xmlrpc.requestTimeout.minutes",
+                                    60).intValue() * 60 * 1000);
+            binaryNegotiated = true;
+        }
+        return binaryClient;
+    }
+
+    /*
+     * Falls back to XML-RPC for the rest of this client's calls.
+     */
+    private synchronized void binaryFailed(IOException e) {
+        LOG.log(Level.WARNING, "Binary call to workflow manager: ["
+                + workflowManagerUrl + "] failed, using XML-RPC: Message: "
+                + e.getMessage());
+        if (binaryClient != null) {
+            binaryClient.close();
+            binaryClient = null;
+        }
+    }
+
+    /*
+     * All clients share a pool of keep-alive connections; see
+     * PooledXmlRpcTransportFactory.
+     */
+    private static XmlRpcClient createClient(URL url) {
+        int connectionTimeout = Integer
+                .getInteger(
+                        "org.apache.oodt.cas.workflow.system.xmlrpc.connectionTimeout.minutes",
+                        20).intValue() * 60 * 1000;
+        int requestTimeout = Integer
+                .getInteger(
+                        "org.apache.oodt.cas.workflow.system.xmlrpc.requestTimeout.minutes",
+                        60).intValue() * 60 * 1000;
+        return new XmlRpcClient(url, new PooledXmlRpcTransportFactory(url, 3,
+                0, connectionTimeout, requestTimeout));
     }
 
 }
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.oodt.cas.workflow.engine;
+
+//OODT imports
+import org.apache.oodt.cas.metadata.Metadata;
+import org.apache.oodt.cas.workflow.instrepo.MemoryWorkflowInstanceRepository;
+import org.apache.oodt.cas.workflow.structs.Workflow;
+import org.apache.oodt.cas.workflow.structs.WorkflowCondition;
+import org.apache.oodt.cas.workflow.structs.WorkflowInstance;
+import org.apache.oodt.cas.workflow.structs.WorkflowStatus;
+import org.apache.oodt.cas.workflow.structs.WorkflowTask;
+
+//JDK imports
+import java.net.URL;
+import java.util.List;
+import java.util.Vector;
+
+//Junit imports
+import junit.framework.TestCase;
+
+/**
+ * @version $Revision$
+ * 
+ * <p>
+ * Test suite for the {@link EventDrivenWorkflowEngine}.
+ * </p>.
+ */
+public class TestEventDrivenWorkflowEngine extends TestCase {
+
+  private static final long TIMEOUT_MILLIS = 20000;
+
+  private MemoryWorkflowInstanceRepository instRep;
+
+  private EventDrivenWorkflowEngine engine;
+
+  protected void setUp() throws Exception {
+    System.setProperty(
+        "org.apache.oodt.cas.workflow.engine.preConditionWaitTime", "1");
+    instRep = new MemoryWorkflowInstanceRepository(20);
+    engine = new EventDrivenWorkflowEngine(instRep, 2, null);
+    engine.setWorkflowManagerUrl(new URL("http://localhost:9001"));
+  }
+
+  protected void tearDown() throws Exception {
+    engine.shutdown();
+    System.getProperties().remove(
+        "org.apache.oodt.cas.workflow.engine.preConditionWaitTime");
+  }
+
+  public void testManyInstancesFewWorkers() throws Exception {
+    Workflow workflow = createWorkflow(3, null);
+    List<WorkflowInstance> insts = new Vector<WorkflowInstance>();
+    for (int i = 0; i < 200; i++) {
+      insts.add(engine.startWorkflow(workflow, new Metadata()));
+    }
+
+    for (WorkflowInstance inst : insts) {
+      waitForStatus(inst.getId(), WorkflowStatus.FINISHED);
+      WorkflowInstance persisted = instRep.getWorkflowInstanceById(inst
+          .getId());
+      assertEquals("urn:oodt:task2", persisted.getCurrentTaskId());
+      assertNotNull(persisted.getEndDateTimeIsoStr());
+    }
+    assertEquals(0, engine.getNumActiveInstances());
+  }
+
+  public void testMissingMetadata() throws Exception {
+    Workflow workflow = createWorkflow(2, null);
+    workflow.getTasks().get(1).getRequiredMetFields().add("NeededKey");
+
+    WorkflowInstance inst = engine.startWorkflow(workflow, new Metadata());
+    waitForStatus(inst.getId(), WorkflowStatus.METADATA_MISSING);
+    assertEquals("urn:oodt:task1", instRep.getWorkflowInstanceById(
+        inst.getId()).getCurrentTaskId());
+  }
+
+  public void testPreConditionPauseAndResume() throws Exception {
+    WorkflowCondition falseCondition = new WorkflowCondition();
+    falseCondition.setConditionId("urn:oodt:falseCondition");
+    falseCondition.setConditionName("FalseCondition");
+    falseCondition
+        .setConditionInstanceClassName("org.apache.oodt.cas.workflow.examples.FalseCondition");
+    Workflow workflow = createWorkflow(2, falseCondition);
+
+    WorkflowInstance inst = engine.startWorkflow(workflow, new Metadata());
+    // held by its pre-condition
+    waitForStatus(inst.getId(), WorkflowStatus.PAUSED);
+    Thread.sleep(1500);
+    assertEquals(WorkflowStatus.PAUSED, instRep.getWorkflowInstanceById(
+        inst.getId()).getStatus());
+
+    // resuming overrides the pre-condition of the held task only
+    engine.resumeWorkflowInstance(inst.getId());
+    waitForStatus(inst.getId(), WorkflowStatus.PAUSED);
+    assertEquals("urn:oodt:task1", instRep.getWorkflowInstanceById(
+        inst.getId()).getCurrentTaskId());
+
+    engine.resumeWorkflowInstance(inst.getId());
+    waitForStatus(inst.getId(), WorkflowStatus.FINISHED);
+  }
+
+  public void testStop() throws Exception {
+    WorkflowCondition falseCondition = new WorkflowCondition();
+    falseCondition.setConditionId("urn:oodt:falseCondition");
+    falseCondition
+        .setConditionInstanceClassName("org.apache.oodt.cas.workflow.examples.FalseCondition");
+    Workflow workflow = createWorkflow(1, falseCondition);
+
+    WorkflowInstance inst = engine.startWorkflow(workflow, new Metadata());
+    waitForStatus(inst.getId(), WorkflowStatus.PAUSED);
+    engine.stopWorkflow(inst.getId());
+    waitForStatus(inst.getId(), WorkflowStatus.FINISHED);
+    assertEquals(0, engine.getNumActiveInstances());
+  }
+
+  private Workflow createWorkflow(int numTasks, WorkflowCondition condition) {
+    Workflow workflow = new Workflow();
+    workflow.setId("urn:oodt:testWorkflow");
+    workflow.setName("testWorkflow");
+    for (int i = 0; i < numTasks; i++) {
+      WorkflowTask task = new WorkflowTask();
+      task.setTaskId("urn:oodt:task" + i);
+      task.setTaskName("task" + i);
+      task.setTaskInstanceClassName("org.apache.oodt.cas.workflow.examples.NoOpTask");
+      if (condition != null) {
+        task.getPreConditions().add(condition);
+      }
+      workflow.getTasks().add(task);
+    }
+    return workflow;
+  }
+
+  private void waitForStatus(String instId, String status) throws Exception {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (System.currentTimeMillis() < deadline) {
+      if (status.equals(instRep.getWorkflowInstanceById(instId).getStatus())) {
+        return;
+      }
+      Thread.sleep(10);
+    }
+    fail("Workflow instance: [" + instId + "] never reached status: ["
+        + status + "]: status: ["
+        + instRep.getWorkflowInstanceById(instId).getStatus() + "]");
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.oodt.cas.workflow.engine;
+
+//Junit imports
+import junit.framework.TestCase;
+
+/**
+ * 
+ * Test harness for the {@link LatencyHistogram}.
+ * 
+ * @version $Revision$
+ * 
+ */
+public class TestLatencyHistogram extends TestCase {
+
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram("test");
+    assertEquals(0L, histogram.getCount());
+    assertEquals(0L, histogram.getPercentile(50));
+    assertEquals(0L, histogram.getMax());
+  }
+
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram("test");
+    for (int i = 0; i < 90; i++) {
+      histogram.record(3);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(1000);
+    }
+    assertEquals(100L, histogram.getCount());
+    assertEquals(1000L, histogram.getMax());
+    // 3ms falls in the [2, 4) bucket
+    assertEquals(4L, histogram.getPercentile(50));
+    assertEquals(4L, histogram.getPercentile(90));
+    // never report more than the largest sample
+    assertEquals(1000L, histogram.getPercentile(99));
+  }
+
+  public void testNegativeAndZero() {
+    LatencyHistogram histogram = new LatencyHistogram("test");
+    histogram.record(-5);
+    histogram.record(0);
+    assertEquals(2L, histogram.getCount());
+    assertEquals(0L, histogram.getPercentile(100));
+  }
+
+  public void testReset() {
+    LatencyHistogram histogram = new LatencyHistogram("test");
+    histogram.record(10);
+    histogram.reset();
+    assertEquals(0L, histogram.getCount());
+    assertEquals(0L, histogram.getMax());
+  }
+
+}
@@ -22,6 +22,7 @@ import java.util.List;
 
 import org.apache.oodt.cas.workflow.engine.processor.TaskProcessor;
 import org.apache.oodt.cas.workflow.engine.processor.WorkflowProcessor;
+import org.apache.oodt.cas.workflow.lifecycle.WorkflowState;
 import org.apache.oodt.cas.workflow.structs.FILOPrioritySorter;
 
 //Junit imports
@@ -69,6 +70,65 @@ public class TestTaskQuerier extends TestCase {
     assertEquals(1, querier.getRunnableProcessors().size());
   }
 
+  public void testAwaitRunnable() {
+    FILOPrioritySorter prioritizer = new FILOPrioritySorter();
+    MockProcessorQueue processorQueue = new MockProcessorQueue();
+    TaskQuerier querier = new TaskQuerier(processorQueue, prioritizer, null,
+        60);
+    assertFalse(querier.awaitRunnable(10));
+    Thread querierThread = new Thread(querier);
+    querierThread.start();
+    // woken by the querier, long before the timeout
+    long start = System.currentTimeMillis();
+    assertTrue(querier.awaitRunnable(30000));
+    assertTrue(System.currentTimeMillis() - start < 30000);
+    assertNotNull(querier.getNext());
+    assertTrue(querier.getQueueLatency().getCount() > 0);
+
+    // a requeued task is handed out again
+    TaskProcessor next = querier.getNext();
+    assertNotNull(next);
+    querier.requeue(next);
+    assertTrue(querier.awaitRunnable(10));
+    assertSame(next, querier.getNext());
+
+    // stopping the querier ends its wait straight away, despite the 60
+    // second wait
+    querier.setRunning(false);
+    try {
+      querierThread.join(10000);
+    } catch (InterruptedException ignore) {
+    }
+    assertFalse(querierThread.isAlive());
+  }
+
+  public void testPausedProcessorsRemoved() throws InterruptedException {
+    FILOPrioritySorter prioritizer = new FILOPrioritySorter();
+    MockProcessorQueue processorQueue = new MockProcessorQueue();
+    TaskQuerier querier = new TaskQuerier(processorQueue, prioritizer, null,
+        WAIT_SECS);
+    Thread querierThread = new Thread(querier);
+    querierThread.start();
+    while (querier.getRunnableProcessors().size() < 2) {
+      assertTrue(querier.awaitRunnable(10000));
+    }
+
+    // pause a task the runners have not taken yet
+    WorkflowProcessor paused = querier.getRunnableProcessors().get(0);
+    WorkflowState state = new WorkflowState();
+    state.setName("Paused");
+    paused.getWorkflowInstance().setState(state);
+    processorQueue.signalChange();
+    for (int i = 0; i < 100 && querier.getRunnableProcessors().size() > 1; i++) {
+      Thread.sleep(100);
+    }
+    assertEquals(1, querier.getRunnableProcessors().size());
+    assertNotSame(paused, querier.getNext());
+
+    querier.setRunning(false);
+    querierThread.join();
+  }
+
   public void testGetRunnableProcessors() {
     FILOPrioritySorter prioritizer = new FILOPrioritySorter();
     MockProcessorQueue processorQueue = new MockProcessorQueue();    
@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Hashtable;
 import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -71,6 +72,9 @@ public class TestXmlRpcWorkflowManager extends TestCase {
     }
 
     assertEquals(2, workflowInsts.size());
+
+    // the same manager serves binary calls too
+    checkBinaryCalls((String) ((Hashtable) workflowInsts.get(0)).get("id"));
   }
 
   protected void setUp() throws Exception {
@@ -79,7 +83,38 @@ public class TestXmlRpcWorkflowManager extends TestCase {
   }
 
   protected void tearDown() throws Exception {
+    if (wmgr != null) {
+      wmgr.shutdown();
+      wmgr = null;
+    }
+    // later workflow managers in this JVM should only serve XML-RPC
+    System.getProperties().remove("org.apache.oodt.cas.workflow.binary.port");
+  }
+
+  private void checkBinaryCalls(String wInstId) {
+    assertTrue(wmgr.getBinaryRpcPort() > 0);
+
+    XmlRpcWorkflowManagerClient client = null;
+    Metadata met = null;
+    try {
+      client = new XmlRpcWorkflowManagerClient(new URL("http://localhost:"
+          + WM_PORT));
+      met = client.getWorkflowInstanceMetadata(wInstId);
+    } catch (Exception e) {
+      fail(e.getMessage());
+    }
+    assertEquals(wmgr.getWorkflowInstanceMetadata(wInstId), met
+        .getHashtable());
 
+    met.addMetadata("BinaryKey", "BinaryValue");
+    try {
+      if (client.updateMetadataForWorkflow(wInstId, met)) {
+        assertEquals("BinaryValue", client.getWorkflowInstanceMetadata(
+            wInstId).getMetadata("BinaryKey"));
+      }
+    } catch (Exception e) {
+      fail(e.getMessage());
+    }
   }
 
   private void startWorkflow() {
@@ -150,6 +185,9 @@ public class TestXmlRpcWorkflowManager extends TestCase {
       fail(e.getMessage());
     }
 
+    // serve binary calls on any free port
+    System.setProperty("org.apache.oodt.cas.workflow.binary.port", "0");
+
     try {
       wmgr = new XmlRpcWorkflowManager(WM_PORT);
     } catch (Exception e) {